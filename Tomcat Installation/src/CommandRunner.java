@@ -0,0 +1,69 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a command for the stop and uninstall tools, without a shell. The output is printed by a separate
+ * thread while the command runs, and the command is killed if it is still running after its timeout.
+ */
+public class CommandRunner {
+
+	public static final int EXIT_CODE_TIMED_OUT = -1;
+
+	private static final long KILL_GRACE_SECONDS = 5;
+
+	private CommandRunner() {
+	}
+
+	/**
+	 * @param timeoutSeconds maximum run time of the command
+	 * @param directory working directory, null for the current directory
+	 * @param command program and arguments
+	 * @return exit code of the command, EXIT_CODE_TIMED_OUT if it has been killed
+	 */
+	public static int run(long timeoutSeconds, File directory, String... command) throws IOException, InterruptedException {
+		ProcessBuilder processBuilder = new ProcessBuilder(command);
+		if (directory != null) {
+			processBuilder.directory(directory);
+		}
+		// Redirect error stream to standard output to capture any errors
+		processBuilder.redirectErrorStream(true);
+		long start = System.currentTimeMillis();
+		final Process process = processBuilder.start();
+		process.getOutputStream().close();
+
+		Thread drainer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						System.out.println(line);
+					}
+					reader.close();
+				} catch (IOException e) {
+					// the pipe is closed when the command is killed
+				}
+			}
+		}, "output-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+
+		int exitCode;
+		if (process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+			exitCode = process.exitValue();
+		} else {
+			System.out.println(command[0] + " did not complete within " + timeoutSeconds + " seconds, terminating it.");
+			process.destroy();
+			if (!process.waitFor(KILL_GRACE_SECONDS, TimeUnit.SECONDS)) {
+				process.destroyForcibly().waitFor(KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+			}
+			exitCode = EXIT_CODE_TIMED_OUT;
+		}
+		drainer.join(TimeUnit.SECONDS.toMillis(KILL_GRACE_SECONDS));
+		System.out.println(command[0] + " ran for " + (System.currentTimeMillis() - start) + " ms");
+		return exitCode;
+	}
+}
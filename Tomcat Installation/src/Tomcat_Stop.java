@@ -1,33 +1,14 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 public class Tomcat_Stop {
 
+	private static final long TIMEOUT_SECONDS = 60;
+
 	public static void main(String[] args) {
 		 
 		try {
-	            // Construct the command
-	            String command = "sc stop \"Tomcat9\"";
-
-	            // Create a ProcessBuilder
-	            ProcessBuilder processBuilder = new ProcessBuilder("cmd.exe", "/c", command);
-
-	            // Redirect error stream to standard output to capture any errors
-	            processBuilder.redirectErrorStream(true);
-
-	            // Start the process
-	            Process process = processBuilder.start();
-
-	            // Read the output
-	            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-	            String line;
-	            while ((line = reader.readLine()) != null) {
-	                System.out.println(line);
-	            }
-
-	            // Wait for the process to complete
-	            int exitCode = process.waitFor();
+	            // Run sc directly, the service name is passed as an argument
+	            int exitCode = CommandRunner.run(TIMEOUT_SECONDS, null, "sc", "stop", "Tomcat9");
 	            System.out.println("\nExited with error code : " + exitCode);
 
 	            if(exitCode != 0){
@@ -45,4 +26,3 @@ public class Tomcat_Stop {
 		
 		
 	}
-
@@ -0,0 +1,93 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application of the directory and file permissions on the tree, with the ACL backend on Windows and the
+ * POSIX one elsewhere. Every invocation alternates between two permission sets so that all paths are written;
+ * the unchanged case re-applies the permissions already in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AclBenchmark {
+
+    @Param({"200"})
+    public int                  smallJars;
+
+    private File                workDir;
+    private Path                root;
+    private boolean             windows;
+    private Object[]            permissionSets;
+    private int                 next;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        workDir = Files.createTempDirectory("acl-bench").toFile();
+        root = SyntheticTomcatTree.create(new File(workDir, "tomcat"), smallJars, 0, 0).toPath();
+        windows = Files.getFileAttributeView(root, AclFileAttributeView.class) != null;
+        if (windows) {
+            //the current ACL, and the same without its last entry
+            List<AclEntry> current = new WindowsAclBackend().read(root);
+            permissionSets = new Object[] { current, current.subList(0, Math.max(1, current.size() - 1)) };
+        }
+        else {
+            permissionSets = new Object[] { PosixFilePermissions.fromString("rwxr-x---"), PosixFilePermissions.fromString("rwxr-xr-x") };
+        }
+        applyOnTree(permissionSets[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public AclTreeApplier.Report applyChanged() {
+        next = 1 - next;
+        return applyOnTree(permissionSets[next]);
+    }
+
+    @Benchmark
+    public AclTreeApplier.Report applyUnchanged() {
+        return applyOnTree(permissionSets[next]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AclTreeApplier.Report applyOnTree(Object permissions) {
+        if (windows) {
+            List<AclEntry> acl = (List<AclEntry>) permissions;
+            return new AclTreeApplier<List<AclEntry>>(new WindowsAclBackend()).apply(root, acl, acl);
+        }
+        Set<PosixFilePermission> mode = (Set<PosixFilePermission>) permissions;
+        return new AclTreeApplier<Set<PosixFilePermission>>(new PosixAclBackend()).apply(root, mode, mode);
+    }
+}
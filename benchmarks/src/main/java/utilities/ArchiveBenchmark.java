@@ -0,0 +1,81 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the realm and shindig assemblies, into an empty directory and into a directory
+ * which already holds the extracted files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArchiveBenchmark {
+
+    @Param({"200"})
+    public int                  smallJars;
+
+    @Param({"16"})
+    public int                  largeWarMB;
+
+    private File                workDir;
+    private List<File>          archives;
+    private File                extractedDir;
+    private File                emptyDir;
+
+    @Setup(Level.Trial)
+    public void createArchives() throws IOException {
+        workDir = Files.createTempDirectory("archive-bench").toFile();
+        //one assembly of small jars, one with the large wars, as the realm and shindig assemblies
+        File jars = SyntheticTomcatTree.create(new File(workDir, "jars"), smallJars, 0, 0);
+        File wars = SyntheticTomcatTree.create(new File(workDir, "wars"), 0, 2, largeWarMB);
+        archives = Arrays.asList(SyntheticTomcatTree.zip(jars, new File(workDir, "realm.zip")),
+                SyntheticTomcatTree.zip(wars, new File(workDir, "shindig.zip")));
+
+        extractedDir = new File(workDir, "extracted");
+        new ArchiveExtractor(false).extractAll(archives, extractedDir);
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanEmptyDir() throws IOException {
+        emptyDir = new File(workDir, "empty");
+        FileUtils.deleteDirectory(emptyDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchives() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public ArchiveExtractor.ExtractionReport extractIntoEmptyDirectory() {
+        return new ArchiveExtractor(false).extractAll(archives, emptyDir);
+    }
+
+    @Benchmark
+    public ArchiveExtractor.ExtractionReport extractSkippingIdentical() {
+        return new ArchiveExtractor(true).extractAll(archives, extractedDir);
+    }
+}
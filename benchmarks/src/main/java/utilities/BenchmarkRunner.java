@@ -0,0 +1,31 @@
+package utilities;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, by default in jmh-results-&lt;timestamp&gt;.json,
+ * so that the results of two builds can be compared.
+ * Accepts the JMH command line options, for an example "-p largeWarMB=64 FileCopy" or "-rff previous.json".
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String resultFile = "jmh-results-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse(resultFile))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,88 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clean up of the install directory during the outage: deleting every entry in place, as before,
+ * against moving them to the trash of the DeferredDeleter. A fresh tree is created before every invocation,
+ * outside of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CleanupBenchmark {
+
+    @Param({"200"})
+    public int                  smallJars;
+
+    @Param({"4"})
+    public int                  largeWars;
+
+    @Param({"16"})
+    public int                  largeWarMB;
+
+    private File                workDir;
+    private File                installDir;
+
+    @Setup(Level.Trial)
+    public void createWorkDir() throws IOException {
+        workDir = Files.createTempDirectory("cleanup-bench").toFile();
+        installDir = new File(workDir, "tomcat");
+    }
+
+    @Setup(Level.Invocation)
+    public void createTree() throws IOException {
+        FileUtils.deleteDirectory(installDir);
+        FileUtils.deleteDirectory(new File(workDir, "tomcat" + DeferredDeleter.TRASH_SUFFIX));
+        SyntheticTomcatTree.create(installDir, smallJars, largeWars, largeWarMB);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkDir() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public boolean deleteInPlace() {
+        boolean success = true;
+        for (File entry : installDir.listFiles()) {
+            try {
+                FileUtils.forceDelete(entry);
+            }
+            catch (IOException e) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Benchmark
+    public boolean moveToTrash() {
+        DeferredDeleter deleter = new DeferredDeleter(installDir);
+        boolean success = true;
+        for (File entry : installDir.listFiles())
+            success &= deleter.moveToTrash(entry);
+        return success;
+    }
+}
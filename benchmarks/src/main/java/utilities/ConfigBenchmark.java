@@ -0,0 +1,62 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update of tomcatConfig.ini with the CCE_JAVA_HOME and comparison of the Tomcat versions.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConfigBenchmark {
+
+    private static final String JAVA_HOME = "JavaHome=C:\\Program Files (x86)\\OpenJDK\\jre-8.0.392.08-hotspot";
+
+    private File                workDir;
+    private File                configFile;
+
+    @Setup(Level.Trial)
+    public void createConfig() throws IOException {
+        workDir = Files.createTempDirectory("config-bench").toFile();
+        configFile = new File(workDir, "tomcatConfig.ini");
+        Files.write(configFile.toPath(), SyntheticTomcatTree.tomcatConfig().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteConfig() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void updateTomcatConfigFile() {
+        InstallTomcat.updateTomcatConfigFile(configFile, JAVA_HOME);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int compareTomcatVersions() {
+        return InstallTomcat.compareTomcatVersions("9.0.83", "9.0.105");
+    }
+}
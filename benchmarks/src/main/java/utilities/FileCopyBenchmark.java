@@ -0,0 +1,90 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restoration of the jars and wars: the parallel batch copy, and the incremental copy on a destination
+ * which is already up to date, the case of a reinstall of the same build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileCopyBenchmark {
+
+    @Param({"200"})
+    public int                  smallJars;
+
+    @Param({"4"})
+    public int                  largeWars;
+
+    @Param({"16"})
+    public int                  largeWarMB;
+
+    private File                workDir;
+    private File                source;
+    private List<BatchFileCopier.CopyRequest> requests;
+    private File                incrementalDest;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        workDir = Files.createTempDirectory("copy-bench").toFile();
+        source = SyntheticTomcatTree.create(new File(workDir, "tomcat"), smallJars, largeWars, largeWarMB);
+
+        File batchDest = new File(workDir, "batch");
+        requests = new ArrayList<BatchFileCopier.CopyRequest>();
+        String sourcePath = source.getAbsolutePath();
+        for (File file : SyntheticTomcatTree.listFiles(source)) {
+            String relative = file.getAbsolutePath().substring(sourcePath.length() + 1);
+            requests.add(new BatchFileCopier.CopyRequest(file.getPath(), new File(batchDest, relative).getPath(), relative));
+        }
+
+        //first copy outside of the measurement, the benchmark measures the up to date case
+        incrementalDest = new File(workDir, "incremental");
+        incrementalCopy();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public List<BatchFileCopier.CopyResult> batchCopy() {
+        return new BatchFileCopier().copyAll(requests);
+    }
+
+    @Benchmark
+    public IncrementalCopier.CopyStats incrementalCopyUpToDate() throws IOException {
+        return incrementalCopy();
+    }
+
+    private IncrementalCopier.CopyStats incrementalCopy() throws IOException {
+        IncrementalCopier copier = new IncrementalCopier(new File(workDir, "state"));
+        IncrementalCopier.CopyStats stats = copier.copyMatching(new File(source, "lib"), new File(incrementalDest, "lib"), null, false);
+        stats.add(copier.copyMatching(new File(source, "webapps"), new File(incrementalDest, "webapps"), null, false));
+        return stats;
+    }
+}
@@ -0,0 +1,137 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds directory trees with the shape of icm\tomcat for the benchmarks: many small jars under lib and
+ * the webapps, a few large wars, and the configuration files the installer edits.
+ * The content is random, hence incompressible like real jars, but generated from a fixed seed so that
+ * every run works on the same bytes.
+ */
+public final class SyntheticTomcatTree {
+
+    public static final int             DEFAULT_SMALL_JARS = 200;
+    public static final int             DEFAULT_LARGE_WARS = 4;
+    public static final int             DEFAULT_LARGE_WAR_MB = 16;
+
+    private static final int            SMALL_JAR_MIN_BYTES = 8 * 1024;
+    private static final int            SMALL_JAR_MAX_BYTES = 128 * 1024;
+    private static final long           SEED = 20190722L;
+
+    private SyntheticTomcatTree() {
+    }
+
+    /**
+     * Create the tree, the root directory is created if needed
+     * @param root install directory to create
+     * @param smallJars number of small jars, split between lib and the unpacked webapps
+     * @param largeWars number of large wars in webapps
+     * @param largeWarMB size of every large war
+     * @return the root directory
+     */
+    public static File create(File root, int smallJars, int largeWars, int largeWarMB) throws IOException {
+        Random random = new Random(SEED);
+        File lib = new File(root, "lib");
+        File webapps = new File(root, "webapps");
+        for (int i = 0; i < smallJars; i++) {
+            File dir = i % 2 == 0 ? lib : new File(webapps, "app" + (i % 8) + File.separator + "WEB-INF" + File.separator + "lib");
+            int size = SMALL_JAR_MIN_BYTES + random.nextInt(SMALL_JAR_MAX_BYTES - SMALL_JAR_MIN_BYTES);
+            writeRandom(new File(dir, "library-" + i + ".jar"), size, random);
+        }
+        for (int i = 0; i < largeWars; i++)
+            writeRandom(new File(webapps, "application-" + i + ".war"), (long) largeWarMB * 1024 * 1024, random);
+
+        writeRandom(new File(root, "bin" + File.separator + "tomcat9.exe"), 128 * 1024, random);
+        writeText(new File(root, "conf" + File.separator + "server.xml"),
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Server port=\"8005\" shutdown=\"SHUTDOWN\">\n"
+                + "  <Service name=\"Catalina\">\n    <Connector port=\"8443\" protocol=\"HTTP/1.1\"/>\n"
+                + "  </Service>\n</Server>\n");
+        writeText(new File(root, "conf" + File.separator + "catalina.properties"), "package.access=sun.,org.apache.catalina.\n");
+        writeText(new File(root, "tomcatConfig.ini"), tomcatConfig());
+        Files.createDirectories(new File(root, "logs").toPath());
+        return root;
+    }
+
+    public static File create(File root) throws IOException {
+        return create(root, DEFAULT_SMALL_JARS, DEFAULT_LARGE_WARS, DEFAULT_LARGE_WAR_MB);
+    }
+
+    /**
+     * Zip a tree the way the ICM assemblies are packaged
+     * @param root directory to zip, entries are relative to it
+     * @param zipFile zip file to create
+     */
+    public static File zip(File root, File zipFile) throws IOException {
+        String rootPath = root.getAbsolutePath();
+        Collection<File> files = FileUtils.listFiles(root, null, true);
+        byte[] buffer = new byte[64 * 1024];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (File file : files) {
+                String name = file.getAbsolutePath().substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+                out.putNextEntry(new ZipEntry(name));
+                try (InputStream in = new FileInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                        out.write(buffer, 0, read);
+                }
+                out.closeEntry();
+            }
+        }
+        return zipFile;
+    }
+
+    /**
+     * @return the files of the tree, in a stable order
+     */
+    public static List<File> listFiles(File root) {
+        List<File> files = new ArrayList<File>(FileUtils.listFiles(root, null, true));
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * @return content of a tomcatConfig.ini, JavaHome included
+     */
+    public static String tomcatConfig() {
+        StringBuilder config = new StringBuilder();
+        config.append("[Tomcat]\n");
+        config.append("JavaHome=C:\\Program Files (x86)\\OpenJDK\\jre-8.0.272.10-hotspot\n");
+        for (int i = 0; i < 40; i++)
+            config.append("Option").append(i).append("=-Dproperty").append(i).append("=value").append(i).append('\n');
+        return config.toString();
+    }
+
+    private static void writeRandom(File file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = new FileOutputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                random.nextBytes(buffer);
+                int length = (int) Math.min(buffer.length, remaining);
+                out.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    private static void writeText(File file, String text) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
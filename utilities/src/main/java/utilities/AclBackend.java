@@ -0,0 +1,25 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads and writes the permissions of a path for the {@link AclTreeApplier}.
+ * @param <T> permission representation, for an example the list of ACL entries on Windows
+ */
+public interface AclBackend<T> {
+
+    /**
+     * @param path file or directory
+     * @return the current permissions of the path
+     * @throws IOException
+     */
+    T read(Path path) throws IOException;
+
+    /**
+     * @param path file or directory
+     * @param permissions permissions to set
+     * @throws IOException
+     */
+    void write(Path path, T permissions) throws IOException;
+}
@@ -0,0 +1,168 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies permissions on a directory tree in a single traversal: directories get the directory permissions,
+ * regular files the file permissions. Paths which already have the expected permissions are not written.
+ * Every subdirectory is a fork/join task, so subtrees are processed in parallel.
+ * Symbolic links are neither followed nor changed.
+ * @param <T> permission representation of the backend
+ */
+public class AclTreeApplier<T> {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(AclTreeApplier.class);
+
+    private final AclBackend<T>         backend;
+    private final int                   parallelism;
+
+    /**
+     * Counters of a traversal
+     */
+    public static class Report {
+        private final AtomicInteger directories = new AtomicInteger();
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger updated = new AtomicInteger();
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private long                elapsedMillis;
+
+        public int getDirectories() {
+            return directories.get();
+        }
+
+        public int getFiles() {
+            return files.get();
+        }
+
+        public int getUpdated() {
+            return updated.get();
+        }
+
+        public int getUnchanged() {
+            return unchanged.get();
+        }
+
+        public int getFailures() {
+            return failures.get();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return failures.get() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d directories and %d files: %d updated, %d already matching, %d failures in %d ms",
+                    getDirectories(), getFiles(), getUpdated(), getUnchanged(), getFailures(), elapsedMillis);
+        }
+    }
+
+    public AclTreeApplier(AclBackend<T> backend) {
+        this(backend, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param backend permission backend
+     * @param parallelism number of subtrees processed at the same time
+     */
+    public AclTreeApplier(AclBackend<T> backend, int parallelism) {
+        this.backend = backend;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Apply the permissions on the root directory and everything below it
+     * @param root root directory
+     * @param directoryPermissions permissions for the directories, root included
+     * @param filePermissions permissions for the regular files
+     * @return traversal report
+     */
+    public Report apply(Path root, T directoryPermissions, T filePermissions) {
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(root, directoryPermissions, filePermissions, report));
+        }
+        finally {
+            pool.shutdown();
+        }
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        LOGGER.info("Permissions applied on " + root + ": " + report);
+        InstallTimeline.count("files", report.getDirectories() + report.getFiles());
+        InstallTimeline.count("filesUpdated", report.getUpdated());
+        return report;
+    }
+
+    private void applyOn(Path path, T permissions, Report report) {
+        try {
+            if (permissions.equals(backend.read(path))) {
+                report.unchanged.incrementAndGet();
+                return;
+            }
+            backend.write(path, permissions);
+            report.updated.incrementAndGet();
+        }
+        catch (IOException | SecurityException | UnsupportedOperationException e) {
+            LOGGER.warn("Unable to apply permissions on " + path + " - " + e);
+            report.failures.incrementAndGet();
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long   serialVersionUID = 1L;
+
+        private final Path          directory;
+        private final T             directoryPermissions;
+        private final T             filePermissions;
+        private final Report        report;
+
+        DirectoryTask(Path directory, T directoryPermissions, T filePermissions, Report report) {
+            this.directory = directory;
+            this.directoryPermissions = directoryPermissions;
+            this.filePermissions = filePermissions;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            report.directories.incrementAndGet();
+            applyOn(directory, directoryPermissions, report);
+
+            List<DirectoryTask> subTasks = new ArrayList<DirectoryTask>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+                        subTasks.add(new DirectoryTask(entry, directoryPermissions, filePermissions, report));
+                    else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        report.files.incrementAndGet();
+                        applyOn(entry, filePermissions, report);
+                    }
+                }
+            }
+            catch (IOException e) {
+                LOGGER.warn("Unable to list " + directory + " - " + e);
+                report.failures.incrementAndGet();
+            }
+            invokeAll(subTasks);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package utilities;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts zip archives into a directory, entries in parallel.
+ * The central directory of every archive is read once; the entries of all the archives are then
+ * extracted together on a pool sized to the cores, each worker reusing its own buffer.
+ * When two archives contain the same entry with a different content, the conflict is reported and
+ * the archive given last wins, as it would with archives unzipped one after the other.
+ * Optionally, files already on disk with the size and CRC32 recorded in the central directory are skipped.
+ */
+public class ArchiveExtractor {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ArchiveExtractor.class);
+
+    private static final int            BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final int                   workers;
+    private final boolean               skipIdentical;
+
+    /**
+     * Counters of an extraction
+     */
+    public static class ExtractionReport {
+        private final List<String>  failedArchives = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String>  conflicts = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String>  errors = Collections.synchronizedList(new ArrayList<String>());
+        private final AtomicInteger entriesExtracted = new AtomicInteger();
+        private final AtomicInteger entriesSkipped = new AtomicInteger();
+        private final AtomicLong    bytesExtracted = new AtomicLong();
+        private int                 entriesTotal;
+        private long                elapsedMillis;
+
+        public int getEntriesTotal() {
+            return entriesTotal;
+        }
+
+        public int getEntriesExtracted() {
+            return entriesExtracted.get();
+        }
+
+        public int getEntriesSkipped() {
+            return entriesSkipped.get();
+        }
+
+        public long getBytesExtracted() {
+            return bytesExtracted.get();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return archives which could not be opened
+         */
+        public List<String> getFailedArchives() {
+            return failedArchives;
+        }
+
+        /**
+         * @return entries found with a different content in several archives
+         */
+        public List<String> getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return entries which could not be extracted
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public double getThroughputMBps() {
+            return elapsedMillis <= 0 ? 0 : (bytesExtracted.get() / (1024.0 * 1024.0)) / (elapsedMillis / 1000.0);
+        }
+
+        public boolean isSuccess() {
+            return failedArchives.isEmpty() && errors.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries: %d extracted (%d bytes), %d skipped as identical, %d conflicts, %d errors in %d ms (%.1f MB/s)",
+                    entriesTotal, getEntriesExtracted(), getBytesExtracted(), getEntriesSkipped(), conflicts.size(), errors.size(),
+                    elapsedMillis, getThroughputMBps());
+        }
+    }
+
+    //an entry to extract and the archive it comes from
+    private static class Source {
+        final ZipFile   archive;
+        final ZipEntry  entry;
+
+        Source(ZipFile archive, ZipEntry entry) {
+            this.archive = archive;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * @param workers number of entries extracted at the same time
+     * @param skipIdentical true to keep the files already on disk with the size and CRC32 of the entry
+     */
+    public ArchiveExtractor(int workers, boolean skipIdentical) {
+        this.workers = Math.max(1, workers);
+        this.skipIdentical = skipIdentical;
+    }
+
+    public ArchiveExtractor(boolean skipIdentical) {
+        this(Runtime.getRuntime().availableProcessors(), skipIdentical);
+    }
+
+    /**
+     * Extract the archives into the destination directory
+     * @param archives zip files, in precedence order, the last one wins on conflicting entries
+     * @param destDir destination directory, created if needed
+     * @return the extraction report, archives which cannot be opened are reported and skipped
+     */
+    public ExtractionReport extractAll(List<File> archives, File destDir) {
+        long start = System.currentTimeMillis();
+        ExtractionReport report = new ExtractionReport();
+        List<ZipFile> openArchives = new ArrayList<ZipFile>();
+        try {
+            Map<String, Source> sources = new LinkedHashMap<String, Source>();
+            for (File archive : archives) {
+                try {
+                    ZipFile zipFile = new ZipFile(archive);
+                    openArchives.add(zipFile);
+                    collectEntries(zipFile, sources, report);
+                }
+                catch (IOException e) {
+                    LOGGER.warn("Unable to open " + archive + " - " + e.getMessage());
+                    report.failedArchives.add(archive.getPath());
+                }
+            }
+            report.entriesTotal = sources.size();
+            extractEntries(sources, destDir, report);
+        }
+        finally {
+            for (ZipFile zipFile : openArchives)
+                IOUtils.closeQuietly(zipFile);
+        }
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        LOGGER.info("Extracted " + archives + " into " + destDir + ": " + report);
+        InstallTimeline.count("files", report.getEntriesExtracted());
+        InstallTimeline.count("bytes", report.getBytesExtracted());
+        InstallTimeline.count("filesSkipped", report.getEntriesSkipped());
+        return report;
+    }
+
+    private static void collectEntries(ZipFile zipFile, Map<String, Source> sources, ExtractionReport report) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            Source previous = sources.get(entry.getName());
+            if (previous != null && !entry.isDirectory()
+                    && (previous.entry.getCrc() != entry.getCrc() || previous.entry.getSize() != entry.getSize())) {
+                String conflict = entry.getName() + " differs between " + previous.archive.getName() + " and " + zipFile.getName();
+                LOGGER.warn("Conflicting archive entry, keeping the last one: " + conflict);
+                report.conflicts.add(conflict);
+            }
+            sources.put(entry.getName(), new Source(zipFile, entry));
+        }
+    }
+
+    private void extractEntries(Map<String, Source> sources, final File destDir, final ExtractionReport report) {
+        final String destPath;
+        try {
+            destPath = destDir.getCanonicalPath() + File.separator;
+        }
+        catch (IOException e) {
+            report.errors.add(destDir + ": " + e.getMessage());
+            return;
+        }
+
+        //directories first, so that the workers only write files
+        List<Source> files = new ArrayList<Source>();
+        for (Source source : sources.values()) {
+            File target = new File(destDir, source.entry.getName());
+            if (!isInside(target, destPath)) {
+                report.errors.add(source.entry.getName() + ": entry outside of the destination directory");
+                continue;
+            }
+            if (source.entry.isDirectory()) {
+                if (!target.isDirectory() && !target.mkdirs())
+                    report.errors.add(source.entry.getName() + ": unable to create the directory");
+            }
+            else
+                files.add(source);
+        }
+        if (files.isEmpty())
+            return;
+
+        //the central directory gives the total, the entries of unknown size only count as files
+        long bytesTotal = 0;
+        for (Source source : files)
+            bytesTotal += Math.max(0, source.entry.getSize());
+        final InstallProgress.Task progress = InstallProgress.global().begin("Extract into " + destDir.getName(), files.size(), bytesTotal);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, files.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Source source : files) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        extractEntry(source, new File(destDir, source.entry.getName()), report);
+                        progress.advance(1, Math.max(0, source.entry.getSize()));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.errors.add("extraction interrupted");
+        }
+        catch (ExecutionException e) {
+            report.errors.add(String.valueOf(e.getCause()));
+        }
+        finally {
+            pool.shutdownNow();
+            progress.finish();
+        }
+    }
+
+    private void extractEntry(Source source, File target, ExtractionReport report) {
+        ZipEntry entry = source.entry;
+        try {
+            if (skipIdentical && isIdentical(entry, target)) {
+                report.entriesSkipped.incrementAndGet();
+                return;
+            }
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+                throw new IOException("Unable to create " + parent);
+
+            byte[] buffer = BUFFERS.get();
+            long bytes = 0;
+            InputStream in = source.archive.getInputStream(entry);
+            try {
+                OutputStream out = new FileOutputStream(target);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        bytes += read;
+                    }
+                }
+                finally {
+                    out.close();
+                }
+            }
+            finally {
+                in.close();
+            }
+            if (entry.getTime() != -1 && !target.setLastModified(entry.getTime()))
+                LOGGER.debug("Unable to set the time stamp of " + target);
+            report.entriesExtracted.incrementAndGet();
+            report.bytesExtracted.addAndGet(bytes);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Unable to extract " + entry.getName() + " from " + source.archive.getName() + " - " + e.getMessage());
+            report.errors.add(entry.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the file on disk has the size and CRC32 recorded for the entry
+     */
+    private static boolean isIdentical(ZipEntry entry, File target) throws IOException {
+        if (!target.isFile() || entry.getSize() < 0 || entry.getCrc() < 0 || target.length() != entry.getSize())
+            return false;
+        CRC32 crc = new CRC32();
+        byte[] buffer = BUFFERS.get();
+        InputStream in = new FileInputStream(target);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                crc.update(buffer, 0, read);
+        }
+        finally {
+            in.close();
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    private static boolean isInside(File target, String destPath) {
+        try {
+            return target.getCanonicalPath().startsWith(destPath);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package utilities;
+
+/**
+ * Delays between two consecutive probes while waiting on a condition.
+ * The first probes are close to each other so that fast transitions are noticed early,
+ * the delay then grows geometrically up to a maximum so that slow transitions do not cost too many probes.
+ */
+public class BackoffSchedule {
+
+    //250ms, 500ms, 1s, 2s, 4s, then every 5s
+    public static final BackoffSchedule DEFAULT = new BackoffSchedule(250, 2.0, 5000);
+
+    private final long      initialDelayMillis;
+    private final double    multiplier;
+    private final long      maxDelayMillis;
+
+    /**
+     * @param initialDelayMillis delay before the second probe
+     * @param multiplier factor applied to the delay after every probe, at least 1
+     * @param maxDelayMillis upper bound of the delay
+     */
+    public BackoffSchedule(long initialDelayMillis, double multiplier, long maxDelayMillis) {
+        if (initialDelayMillis <= 0 || multiplier < 1.0 || maxDelayMillis < initialDelayMillis)
+            throw new IllegalArgumentException("Invalid backoff schedule " + initialDelayMillis + "/" + multiplier + "/" + maxDelayMillis);
+        this.initialDelayMillis = initialDelayMillis;
+        this.multiplier = multiplier;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * A schedule probing at a fixed interval
+     * @param intervalMillis interval between two probes
+     * @return the schedule
+     */
+    public static BackoffSchedule fixed(long intervalMillis) {
+        return new BackoffSchedule(intervalMillis, 1.0, intervalMillis);
+    }
+
+    /**
+     * @param attempt number of probes already done, starting at 1
+     * @return delay to wait before the next probe
+     */
+    public long delayForAttempt(int attempt) {
+        double delay = initialDelayMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+        return (long) Math.min(delay, maxDelayMillis);
+    }
+
+    /**
+     * Wait before the next probe, never past the deadline
+     * @param attempt number of probes already done, starting at 1
+     * @param deadline absolute deadline in System.currentTimeMillis() time
+     * @throws InterruptedException
+     */
+    public void sleepBeforeNextAttempt(int attempt, long deadline) throws InterruptedException {
+        long remaining = deadline - System.currentTimeMillis();
+        long delay = Math.min(delayForAttempt(attempt), remaining);
+        if (delay > 0)
+            Thread.sleep(delay);
+    }
+
+    @Override
+    public String toString() {
+        return initialDelayMillis + "ms x" + multiplier + " up to " + maxDelayMillis + "ms";
+    }
+}
@@ -0,0 +1,284 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a batch of files on a bounded pool of workers.
+ * Large files are copied with FileChannel.transferTo so the copy stays in the kernel,
+ * every file is written to a temporary file first and then renamed over the destination,
+ * so a destination is either the old or the new file, never a partial one.
+ */
+public class BatchFileCopier {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(BatchFileCopier.class);
+
+    //files from this size on are copied with transferTo, smaller ones with a plain stream copy
+    public static final long            TRANSFER_TO_THRESHOLD = 1024 * 1024;
+    public static final int             DEFAULT_WORKERS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private final int                   workers;
+
+    /**
+     * A file to copy
+     */
+    public static class CopyRequest {
+        private final String    source;
+        private final String    destination;
+        private final String    description;
+
+        /**
+         * @param source source file full path
+         * @param destination destination file full path
+         * @param description what the file is, used in the log, for an example "registry.jar"
+         */
+        public CopyRequest(String source, String destination, String description) {
+            this.source = source;
+            this.destination = destination;
+            this.description = description;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Result of one file copy
+     */
+    public static class CopyResult {
+        private final CopyRequest   request;
+        private final boolean       success;
+        private final long          bytes;
+        private final long          elapsedNanos;
+        private final String        error;
+
+        CopyResult(CopyRequest request, boolean success, long bytes, long elapsedNanos, String error) {
+            this.request = request;
+            this.success = success;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+
+        public CopyRequest getRequest() {
+            return request;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        /**
+         * @return throughput in MB/s, 0 if the copy failed
+         */
+        public double getThroughputMBps() {
+            if (!success || elapsedNanos <= 0)
+                return 0;
+            return (bytes / (1024.0 * 1024.0)) / (elapsedNanos / 1e9);
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (!success)
+                return String.format("%s -> %s failed: %s", request.source, request.destination, error);
+            return String.format("%s -> %s: %d bytes in %d ms (%.1f MB/s)", request.source, request.destination,
+                    bytes, getElapsedMillis(), getThroughputMBps());
+        }
+    }
+
+    public BatchFileCopier() {
+        this(DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param workers maximum number of files copied at the same time
+     */
+    public BatchFileCopier(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Copy all the files of the batch. A failed copy does not stop the others.
+     * @param requests files to copy
+     * @return one result per request, in request order
+     */
+    public List<CopyResult> copyAll(List<CopyRequest> requests) {
+        List<CopyResult> results = new ArrayList<CopyResult>();
+        if (requests.isEmpty())
+            return results;
+
+        long bytesTotal = 0;
+        for (CopyRequest request : requests)
+            bytesTotal += new File(request.getSource()).length();
+        final InstallProgress.Task progress = InstallProgress.global().begin("Copy " + requests.size() + " files", requests.size(), bytesTotal);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, requests.size()));
+        try {
+            List<Future<CopyResult>> futures = new ArrayList<Future<CopyResult>>();
+            for (final CopyRequest request : requests) {
+                futures.add(pool.submit(new Callable<CopyResult>() {
+                    @Override
+                    public CopyResult call() {
+                        CopyResult result = copy(request);
+                        progress.advance(1, result.getBytes());
+                        return result;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    results.add(new CopyResult(requests.get(i), false, 0, 0, String.valueOf(e.getCause())));
+                }
+            }
+            for (CopyResult result : results) {
+                if (result.isSuccess()) {
+                    InstallTimeline.count("files", 1);
+                    InstallTimeline.count("bytes", result.getBytes());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = results.size(); i < requests.size(); i++)
+                results.add(new CopyResult(requests.get(i), false, 0, 0, "interrupted"));
+        }
+        finally {
+            pool.shutdownNow();
+            progress.finish();
+        }
+        return results;
+    }
+
+    /**
+     * Log the result of every copy of a batch
+     * @param results results returned by {@link #copyAll(List)}
+     * @return true if every copy succeeded
+     */
+    public static boolean logResults(List<CopyResult> results) {
+        boolean success = true;
+        long totalBytes = 0;
+        for (CopyResult result : results) {
+            CopyRequest request = result.getRequest();
+            if (result.isSuccess()) {
+                LOGGER.debug("The file " + request.getSource() + " has been copied over to " + request.getDestination() + " - " + result);
+                LOGGER.info(request.getDescription() + " has been restored");
+                totalBytes += result.getBytes();
+            }
+            else {
+                LOGGER.info("Failed to copy " + request.getSource() + " to " + request.getDestination() + " - " + result.getError());
+                success = false;
+            }
+        }
+        LOGGER.debug("Copied " + totalBytes + " bytes in " + results.size() + " files");
+        return success;
+    }
+
+    /**
+     * Copy a single file, in the calling thread
+     * @param request file to copy
+     * @return the copy result
+     */
+    public CopyResult copy(CopyRequest request) {
+        long start = System.nanoTime();
+        Path source = new File(request.getSource()).toPath();
+        Path destination = new File(request.getDestination()).toPath();
+        Path tempFile = destination.resolveSibling("." + destination.getFileName() + ".tmp");
+        try {
+            if (!Files.isRegularFile(source))
+                throw new IOException("Source file " + source + " does not exist");
+            Files.createDirectories(destination.getParent());
+
+            long bytes = Files.size(source);
+            if (bytes >= TRANSFER_TO_THRESHOLD)
+                transfer(source, tempFile, bytes);
+            else
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            FileTime lastModified = Files.getLastModifiedTime(source);
+            Files.setLastModifiedTime(tempFile, lastModified);
+            replace(tempFile, destination);
+            return new CopyResult(request, true, bytes, System.nanoTime() - start, null);
+        }
+        catch (IOException e) {
+            try {
+                Files.deleteIfExists(tempFile);
+            }
+            catch (IOException ignored) {
+                //the temporary file is overwritten by the next attempt
+            }
+            return new CopyResult(request, false, 0, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    private static void transfer(Path source, Path target, long size) throws IOException {
+        FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                long position = 0;
+                while (position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0)
+                        throw new IOException("Unable to transfer " + source + " at position " + position);
+                    position += transferred;
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static void replace(Path tempFile, Path destination) throws IOException {
+        try {
+            Files.move(tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up the web contexts once Tomcat is started, so that the first administrator does not pay for the
+ * class loading and the JSP compilation.
+ * The contexts are first waited for, each until its root is answered; a context root is answered by a redirect
+ * of the Tomcat mapper, so waiting runs no application code. Each deployed context is then requested once, alone,
+ * which gives its first hit latency, and then a number of times from concurrent threads, which gives its steady
+ * state latency. Warming up only reads: a failure is reported, it does not fail the install.
+ */
+public class ContextWarmer {
+
+    public static final String          CONFIG_FILE_NAME = "warmup.properties";
+
+    //keys of the configuration file, path.<context> is the page warmed in a context, the context root by default
+    public static final String          ENABLED = "enabled";
+    public static final String          BASE_URL = "baseUrl";
+    public static final String          REQUESTS_PER_CONTEXT = "requestsPerContext";
+    public static final String          CONCURRENCY = "concurrency";
+    public static final String          DEPLOY_TIMEOUT = "deployTimeoutMillis";
+    public static final String          REQUEST_TIMEOUT = "requestTimeoutMillis";
+    public static final String          PATH_PREFIX = "path.";
+
+    //the contexts are reached through IIS and the AJP connector, as the administrators reach them
+    public static final String          DEFAULT_BASE_URL = "http://localhost";
+    public static final int             DEFAULT_REQUESTS_PER_CONTEXT = 20;
+    public static final int             DEFAULT_CONCURRENCY = 4;
+    public static final long            DEFAULT_DEPLOY_TIMEOUT = 300000;
+    public static final int             DEFAULT_REQUEST_TIMEOUT = 120000;
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ContextWarmer.class);
+
+    private static final int            PROBE_TIMEOUT = 5000;
+    private static final int            BUFFER_SIZE = 8192;
+
+    private final String                baseUrl;
+    private final int                   requestsPerContext;
+    private final int                   concurrency;
+    private final long                  deployTimeoutMillis;
+    private final int                   requestTimeoutMillis;
+    private final Map<String, String>   paths = new LinkedHashMap<String, String>();
+
+    /**
+     * Warm up of one context
+     */
+    public static class ContextResult {
+        private final String        context;
+        private final boolean       deployed;
+        private final long          firstHitMillis;
+        private final List<Long>    steadyMillis;
+        private final int           failures;
+
+        ContextResult(String context, boolean deployed, long firstHitMillis, List<Long> steadyMillis, int failures) {
+            this.context = context;
+            this.deployed = deployed;
+            this.firstHitMillis = firstHitMillis;
+            List<Long> sorted = new ArrayList<Long>(steadyMillis);
+            Collections.sort(sorted);
+            this.steadyMillis = Collections.unmodifiableList(sorted);
+            this.failures = failures;
+        }
+
+        public String getContext() {
+            return context;
+        }
+
+        public boolean isDeployed() {
+            return deployed;
+        }
+
+        /**
+         * @return latency of the first request, -1 if the context was not deployed or the request failed
+         */
+        public long getFirstHitMillis() {
+            return firstHitMillis;
+        }
+
+        /**
+         * @param percent percentile, 50 for the median
+         * @return percentile of the latencies of the requests after the first one, -1 if none succeeded
+         */
+        public long getSteadyPercentile(int percent) {
+            if (steadyMillis.isEmpty())
+                return -1;
+            int index = (int) Math.ceil(percent / 100.0 * steadyMillis.size()) - 1;
+            return steadyMillis.get(Math.max(0, Math.min(steadyMillis.size() - 1, index)));
+        }
+
+        /**
+         * @return number of requests which failed or were answered by a server error
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        public boolean isSuccess() {
+            return deployed && failures == 0;
+        }
+
+        @Override
+        public String toString() {
+            if (!deployed)
+                return context + ": not deployed";
+            return context + ": first hit " + firstHitMillis + " ms, steady p50 " + getSteadyPercentile(50) + " ms, p95 "
+                    + getSteadyPercentile(95) + " ms over " + steadyMillis.size() + " requests, " + failures + " failed";
+        }
+    }
+
+    /**
+     * @param baseUrl scheme, host and port the contexts are requested on, for an example http://localhost
+     * @param requestsPerContext requests sent to each context, the first hit included
+     * @param concurrency threads sending the requests after the first hits
+     * @param deployTimeoutMillis time given to the contexts to be deployed
+     * @param requestTimeoutMillis connect and read timeout of a request
+     */
+    public ContextWarmer(String baseUrl, int requestsPerContext, int concurrency, long deployTimeoutMillis, int requestTimeoutMillis) {
+        if (requestsPerContext < 1 || concurrency < 1 || deployTimeoutMillis < 0 || requestTimeoutMillis < 1)
+            throw new IllegalArgumentException("Invalid warm up settings " + requestsPerContext + " requests, " + concurrency
+                    + " threads, " + deployTimeoutMillis + " ms to deploy, " + requestTimeoutMillis + " ms per request");
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.requestsPerContext = requestsPerContext;
+        this.concurrency = concurrency;
+        this.deployTimeoutMillis = deployTimeoutMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * @param configFile configuration file, the defaults apply to the keys it does not have
+     * @return the warmer, null if the warm up is disabled
+     * @throws IllegalArgumentException on a value which is not a number
+     */
+    public static ContextWarmer fromConfig(File configFile) throws IOException {
+        Properties config = new Properties();
+        if (configFile.isFile()) {
+            try (InputStream in = Files.newInputStream(configFile.toPath())) {
+                config.load(in);
+            }
+        }
+        if ("false".equalsIgnoreCase(config.getProperty(ENABLED, "true").trim()))
+            return null;
+        ContextWarmer warmer = new ContextWarmer(config.getProperty(BASE_URL, DEFAULT_BASE_URL).trim(),
+                (int) number(config, REQUESTS_PER_CONTEXT, DEFAULT_REQUESTS_PER_CONTEXT), (int) number(config, CONCURRENCY, DEFAULT_CONCURRENCY),
+                number(config, DEPLOY_TIMEOUT, DEFAULT_DEPLOY_TIMEOUT), (int) number(config, REQUEST_TIMEOUT, DEFAULT_REQUEST_TIMEOUT));
+        for (String key : config.stringPropertyNames())
+            if (key.startsWith(PATH_PREFIX))
+                warmer.setPath("/" + key.substring(PATH_PREFIX.length()), config.getProperty(key).trim());
+        return warmer;
+    }
+
+    private static long number(Properties config, String key, long defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value " + value + " for the warm up key " + key);
+        }
+    }
+
+    /**
+     * @param context context, for an example /cceadmin
+     * @param path page warmed in the context, for an example /cceadmin/login.jsp
+     */
+    public ContextWarmer setPath(String context, String path) {
+        paths.put(context, path);
+        return this;
+    }
+
+    /**
+     * Wait for the contexts and warm them up
+     * @param contexts contexts, for an example /cceadmin
+     * @return the result of each context, in the order of the contexts
+     */
+    public List<ContextResult> warmUp(List<String> contexts) throws MalformedURLException {
+        //deployment
+        Map<String, ReadinessCondition> probes = new LinkedHashMap<String, ReadinessCondition>();
+        for (String context : contexts)
+            probes.put(context, new RecordingCondition(ReadinessConditions.httpResponding(new URL(baseUrl + context), PROBE_TIMEOUT)));
+        new ReadinessWaiter(BackoffSchedule.DEFAULT, deployTimeoutMillis)
+                .awaitAll("Deployment of " + contexts, probes.values().toArray(new ReadinessCondition[probes.size()]));
+
+        Map<String, URL> deployed = new LinkedHashMap<String, URL>();
+        for (String context : contexts) {
+            if (((RecordingCondition) probes.get(context)).met)
+                deployed.put(context, new URL(baseUrl + (paths.containsKey(context) ? paths.get(context) : context + "/")));
+            else
+                LOGGER.warn(context + " has not been deployed within " + deployTimeoutMillis + " ms, it is not warmed up");
+        }
+
+        //first hits, each context alone but the contexts at the same time
+        Map<String, Long> firstHits = new LinkedHashMap<String, Long>();
+        ExecutorService firstHitPool = Executors.newFixedThreadPool(Math.max(1, deployed.size()), new WarmupThreadFactory());
+        try {
+            Map<String, Future<Long>> futures = new LinkedHashMap<String, Future<Long>>();
+            for (Map.Entry<String, URL> context : deployed.entrySet())
+                futures.put(context.getKey(), firstHitPool.submit(request(context.getValue())));
+            for (Map.Entry<String, Future<Long>> future : futures.entrySet())
+                firstHits.put(future.getKey(), await(future.getKey(), future.getValue()));
+        }
+        finally {
+            firstHitPool.shutdownNow();
+        }
+
+        //steady state, at most concurrency requests in flight
+        List<ContextResult> results = new ArrayList<ContextResult>();
+        ExecutorService steadyPool = Executors.newFixedThreadPool(concurrency, new WarmupThreadFactory());
+        try {
+            Map<String, List<Future<Long>>> steady = new LinkedHashMap<String, List<Future<Long>>>();
+            for (Map.Entry<String, URL> context : deployed.entrySet()) {
+                List<Future<Long>> futures = new ArrayList<Future<Long>>();
+                for (int i = 1; i < requestsPerContext; i++)
+                    futures.add(steadyPool.submit(request(context.getValue())));
+                steady.put(context.getKey(), futures);
+            }
+            for (String context : contexts) {
+                if (!deployed.containsKey(context)) {
+                    results.add(new ContextResult(context, false, -1, Collections.<Long>emptyList(), 0));
+                    continue;
+                }
+                long firstHit = firstHits.get(context);
+                int failures = firstHit < 0 ? 1 : 0;
+                List<Long> latencies = new ArrayList<Long>();
+                for (Future<Long> future : steady.get(context)) {
+                    long latency = await(context, future);
+                    if (latency < 0)
+                        failures++;
+                    else
+                        latencies.add(latency);
+                }
+                results.add(new ContextResult(context, true, firstHit, latencies, failures));
+            }
+        }
+        finally {
+            steadyPool.shutdownNow();
+        }
+        report(results);
+        return results;
+    }
+
+    /**
+     * @return a request of the URL, returning its latency, body read, or -1 if it failed or was answered by a server error
+     */
+    private Callable<Long> request(final URL url) {
+        return () -> {
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setConnectTimeout(requestTimeoutMillis);
+                connection.setReadTimeout(requestTimeoutMillis);
+                int status = connection.getResponseCode();
+                InputStream body = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream();
+                if (body != null) {
+                    //the page is only rendered completely once it is read
+                    try (InputStream in = body) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        while (in.read(buffer) != -1) {
+                            //discarded
+                        }
+                    }
+                }
+                if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    LOGGER.debug(url + " answered " + status);
+                    return -1L;
+                }
+                return (System.nanoTime() - start) / 1000000;
+            }
+            finally {
+                connection.disconnect();
+            }
+        };
+    }
+
+    private static long await(String context, Future<Long> future) {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            LOGGER.debug("Warm up request of " + context + " failed - " + e.getCause());
+            return -1;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static void report(List<ContextResult> results) {
+        for (ContextResult result : results) {
+            if (result.isSuccess())
+                LOGGER.info("Warm up " + result);
+            else
+                LOGGER.warn("Warm up " + result);
+            InstallTimeline.global().start("Warmup " + result.getContext(), "warmup")
+                    .set("firstHitMillis", result.getFirstHitMillis())
+                    .set("steadyP50Millis", result.getSteadyPercentile(50))
+                    .set("steadyP95Millis", result.getSteadyPercentile(95))
+                    .set("failures", result.getFailures())
+                    .end(result.isSuccess());
+        }
+    }
+
+    /**
+     * Remembers whether the condition has been met, the waiter does not tell which conditions were not
+     */
+    private static class RecordingCondition implements ReadinessCondition {
+        private final ReadinessCondition    condition;
+        private volatile boolean            met;
+
+        RecordingCondition(ReadinessCondition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean isMet() {
+            met = met || condition.isMet();
+            return met;
+        }
+
+        @Override
+        public String getDescription() {
+            return condition.getDescription();
+        }
+    }
+
+    //a request stuck on a dead connection must not keep the tool from exiting
+    private static class WarmupThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "warmup-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
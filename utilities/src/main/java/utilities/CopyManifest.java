@@ -0,0 +1,173 @@
+package utilities;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Manifest of the files written into a destination directory by the {@link IncrementalCopier}.
+ * For every file it keeps the size, the last modified time and the content hash, so that a later
+ * copy can tell whether the destination is already identical to the source without rewriting it.
+ * The manifests are stored as properties files in the state directory of the installer, one per destination
+ * directory, so that nothing is added to the directories of ICM and Tomcat.
+ */
+public class CopyManifest {
+
+    public static final String          MANIFESTS_DIRECTORY = "copy-manifests";
+
+    //written into the destination directories by earlier versions, removed when found
+    static final String                 LEGACY_MANIFEST_FILE_NAME = ".tomcat-install-manifest.properties";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(CopyManifest.class);
+
+    private final File                  manifestFile;
+    private final Properties            entries = new Properties();
+    private boolean                     dirty;
+
+    /**
+     * Fingerprint of one file
+     */
+    public static class Entry {
+        final long      size;
+        final long      lastModified;
+        //empty when the hash has not been computed, for an example for a hard linked file
+        final String    hash;
+
+        public Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash == null ? "" : hash;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @param file file on disk
+         * @return true if the file still has the recorded size and last modified time
+         */
+        public boolean matches(File file) {
+            return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+        }
+
+        String format() {
+            return size + "|" + lastModified + "|" + hash;
+        }
+
+        static Entry parse(String value) {
+            String[] parts = value.split("\\|", -1);
+            if (parts.length != 3)
+                return null;
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private CopyManifest(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Load the manifest of a destination directory, an unreadable manifest is treated as empty
+     * @param stateDir state directory of the installer
+     * @param destDir destination directory
+     * @return the manifest
+     */
+    public static CopyManifest load(File stateDir, File destDir) {
+        File legacy = new File(destDir, LEGACY_MANIFEST_FILE_NAME);
+        if (legacy.isFile() && !legacy.delete())
+            LOGGER.warn("Unable to delete the copy manifest " + legacy + " left by an earlier run");
+        CopyManifest manifest = new CopyManifest(manifestFile(stateDir, destDir));
+        if (manifest.manifestFile.isFile()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(manifest.manifestFile);
+                manifest.entries.load(in);
+            }
+            catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable copy manifest " + manifest.manifestFile + " - " + e.getMessage());
+                manifest.entries.clear();
+            }
+            finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * @return the manifest file of a destination, named after the directory and keyed by a hash of its absolute path
+     */
+    static File manifestFile(File stateDir, File destDir) {
+        String path = destDir.getAbsoluteFile().toPath().normalize().toString().toLowerCase(Locale.ENGLISH);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(destDir.getName()).append('-');
+            for (int i = 0; i < 8; i++)
+                key.append(String.format("%02x", digest[i]));
+            return new File(new File(stateDir, MANIFESTS_DIRECTORY), key.append(".properties").toString());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @param fileName file name in the destination directory
+     * @return the recorded fingerprint, null if there is none
+     */
+    public Entry get(String fileName) {
+        String value = entries.getProperty(fileName);
+        return value == null ? null : Entry.parse(value);
+    }
+
+    public void put(String fileName, Entry entry) {
+        entries.setProperty(fileName, entry.format());
+        dirty = true;
+    }
+
+    public void remove(String fileName) {
+        if (entries.remove(fileName) != null)
+            dirty = true;
+    }
+
+    /**
+     * Write the manifest if it changed, through a temporary file renamed over the previous one
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        if (!dirty)
+            return;
+        Files.createDirectories(manifestFile.getParentFile().toPath());
+        File tempFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            entries.store(out, "Files written by the Tomcat installation tool");
+        }
+        finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+}
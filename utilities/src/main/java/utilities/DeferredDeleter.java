@@ -0,0 +1,187 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes directory entries in two phases. During the outage the entries are only renamed into a trash
+ * directory next to the directory they come from, which is immediate on the same volume. The trash is then
+ * deleted by a pool of background threads once the services are running again.
+ * Trash left over by an interrupted run is deleted along with the trash of the current run.
+ */
+public class DeferredDeleter {
+
+    public static final String          TRASH_SUFFIX = ".trash";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(DeferredDeleter.class);
+
+    private final File                  trashRoot;
+    private final File                  batchDir;
+    private final int                   workers;
+    private ExecutorService             pool;
+    private int                         entryCounter;
+
+    /**
+     * @param baseDir directory the entries are removed from, the trash is created next to it
+     * @param workers number of threads deleting the trash
+     */
+    public DeferredDeleter(File baseDir, int workers) {
+        File absolute = baseDir.getAbsoluteFile();
+        this.trashRoot = new File(absolute.getParentFile(), absolute.getName() + TRASH_SUFFIX);
+        this.batchDir = new File(trashRoot, new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()));
+        this.workers = Math.max(1, workers);
+    }
+
+    public DeferredDeleter(File baseDir) {
+        this(baseDir, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public File getTrashRoot() {
+        return trashRoot;
+    }
+
+    /**
+     * Move a file or directory out of the way. When it cannot be renamed into the trash,
+     * for an example because the trash is on another volume, it is deleted right away.
+     * @param entry file or directory to delete
+     * @return true if the entry is gone from its directory
+     */
+    public synchronized boolean moveToTrash(File entry) {
+        if (!entry.exists())
+            return true;
+        long start = System.currentTimeMillis();
+        File target = new File(batchDir, (entryCounter++) + "-" + entry.getName());
+        try {
+            Files.createDirectories(batchDir.toPath());
+            Files.move(entry.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Moved " + entry + " to " + target + " in " + (System.currentTimeMillis() - start) + " ms");
+            InstallTimeline.count("files", 1);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to move " + entry + " to the trash, deleting it now - " + e);
+        }
+        try {
+            FileUtils.forceDelete(entry);
+            LOGGER.debug("Deleted " + entry + " in " + (System.currentTimeMillis() - start) + " ms");
+            InstallTimeline.count("files", 1);
+            return true;
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to delete " + entry + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Start deleting the trash, of this run and of the previous ones, in the background.
+     * The deletion threads are not daemon threads, the tool does not exit before they are done.
+     */
+    public synchronized void startBackgroundDeletion() {
+        if (pool != null)
+            return;
+        List<File> entries = new ArrayList<File>();
+        File[] batches = trashRoot.listFiles();
+        if (batches != null) {
+            for (File batch : batches) {
+                File[] batchEntries = batch.listFiles();
+                if (batchEntries != null) {
+                    for (File batchEntry : batchEntries)
+                        entries.add(batchEntry);
+                }
+            }
+        }
+
+        pool = Executors.newFixedThreadPool(workers);
+        if (entries.isEmpty()) {
+            deleteTrashRoot();
+            pool.shutdown();
+            return;
+        }
+        LOGGER.info("Deleting " + entries.size() + " entries from " + trashRoot + " in the background");
+        final long start = System.currentTimeMillis();
+        final InstallProgress.Task progress = InstallProgress.global().begin("Delete " + trashRoot.getName(), entries.size(), 0);
+        for (final File entry : entries) {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    deleteEntry(entry);
+                    progress.advance(1, 0);
+                }
+            });
+        }
+        pool.shutdown();
+
+        //the last thread to finish removes the empty batch directories and reports the total time
+        Thread finisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (awaitCompletion(Long.MAX_VALUE)) {
+                    progress.finish();
+                    deleteTrashRoot();
+                    LOGGER.info("Background deletion of " + trashRoot + " completed in " + (System.currentTimeMillis() - start) + " ms");
+                }
+            }
+        }, "trash-finisher");
+        finisher.start();
+    }
+
+    /**
+     * Wait for the background deletion to complete
+     * @param timeoutMillis maximum time to wait
+     * @return true if the deletion completed
+     */
+    public boolean awaitCompletion(long timeoutMillis) {
+        ExecutorService current;
+        synchronized (this) {
+            current = pool;
+        }
+        if (current == null)
+            return true;
+        try {
+            return current.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void deleteEntry(File entry) {
+        InstallTimeline.Span span = InstallTimeline.global().start("Delete " + entry.getName(), "cleanup");
+        long start = System.currentTimeMillis();
+        try {
+            FileUtils.forceDelete(entry);
+            LOGGER.debug("Deferred delete of " + entry + " took " + (System.currentTimeMillis() - start) + " ms");
+            span.end(true);
+        }
+        catch (IOException e) {
+            //left in the trash, the next run tries again
+            LOGGER.warn("Deferred delete of " + entry + " failed after " + (System.currentTimeMillis() - start) + " ms - " + e.getMessage());
+            span.end(false);
+        }
+    }
+
+    private void deleteTrashRoot() {
+        File[] batches = trashRoot.listFiles();
+        if (batches != null) {
+            for (File batch : batches)
+                batch.delete();
+        }
+        trashRoot.delete();
+    }
+}
@@ -0,0 +1,364 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Upgrades an installed Tomcat to another point release in place, by patching only the files which differ.
+ * The new distribution, the Tomcat zip or its extracted directory, is compared to the install directory by size
+ * and content hash while Tomcat is still running; only applying the plan needs the services stopped.
+ * The configuration, the web applications and the ICM jars are left alone: only the files of the distribution
+ * are replaced, and only the files of the previous distribution are removed.
+ */
+public class DeltaUpgrader {
+
+    public static final String          DISTRIBUTION_MANIFEST_FILE_NAME = ".tomcat-distribution.properties";
+    public static final String          STAGING_SUFFIX = ".delta";
+
+    //directories owned by ICM or by the running Tomcat, never patched
+    public static final List<String>    DEFAULT_EXCLUDED_DIRS = Collections.unmodifiableList(
+            Arrays.asList("conf", "webapps", "logs", "work", "temp"));
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(DeltaUpgrader.class);
+
+    private static final Pattern        VERSION_PATTERN = Pattern.compile("(\\d+\\.\\d+\\.\\d+)");
+
+    //files of the distribution added when missing; the scripts and docs of the zip are not part of an NSIS install
+    private static final List<String>   INSTALLED_DIRS = Arrays.asList("bin", "lib");
+    private static final List<String>   INSTALLED_EXTENSIONS = Arrays.asList("jar", "dll", "exe");
+
+    //without the manifest of the previous distribution, the only Tomcat file whose name changes between
+    //point releases is the Eclipse compiler jar
+    private static final Pattern        VERSIONED_TOMCAT_JAR = Pattern.compile("lib/ecj-.*\\.jar");
+
+    private final File                  installDir;
+    private final File                  stagingDir;
+    private final List<String>          excludedDirs;
+    private final int                   workers;
+
+    /**
+     * Changes needed to bring the install directory to the new distribution
+     */
+    public static class Plan {
+        private final File              distributionRoot;
+        //true when the distribution has been extracted by the plan, its files are then moved rather than copied
+        private final boolean           staged;
+        private final List<String>      added = new ArrayList<String>();
+        private final List<String>      changed = new ArrayList<String>();
+        private final List<String>      removed = new ArrayList<String>();
+        private final List<String>      distributionFiles = new ArrayList<String>();
+        private int                     unchanged;
+
+        Plan(File distributionRoot, boolean staged) {
+            this.distributionRoot = distributionRoot;
+            this.staged = staged;
+        }
+
+        public File getDistributionRoot() {
+            return distributionRoot;
+        }
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getChanged() {
+            return changed;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return added.size() + " files added, " + changed.size() + " changed, " + removed.size() + " removed, "
+                    + unchanged + " unchanged";
+        }
+    }
+
+    /**
+     * @param installDir Tomcat install directory
+     * @param excludedDirs top level directories left alone
+     * @param workers number of files hashed at the same time
+     */
+    public DeltaUpgrader(File installDir, List<String> excludedDirs, int workers) {
+        File absolute = installDir.getAbsoluteFile();
+        this.installDir = absolute;
+        this.stagingDir = new File(absolute.getParentFile(), absolute.getName() + STAGING_SUFFIX);
+        this.excludedDirs = new ArrayList<String>(excludedDirs);
+        this.workers = Math.max(1, workers);
+    }
+
+    public DeltaUpgrader(File installDir) {
+        this(installDir, DEFAULT_EXCLUDED_DIRS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param name file name of a Tomcat distribution, for an example apache-tomcat-9.0.85-windows-x64.zip
+     * @return the version in the name, null if there is none
+     */
+    public static String versionOf(String name) {
+        Matcher matcher = VERSION_PATTERN.matcher(name);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Compare the distribution to the install directory. A zip is first extracted next to the install directory,
+     * on the same volume, so that applying the plan only renames files.
+     * @param distribution Tomcat zip or extracted distribution directory
+     * @return the plan, to apply or to discard
+     */
+    public Plan plan(File distribution) throws IOException {
+        long start = System.currentTimeMillis();
+        File root = distribution.isDirectory() ? distribution : extract(distribution);
+        final Plan plan = new Plan(root, !distribution.isDirectory());
+        final Path rootPath = root.toPath();
+        final List<String> candidates = new ArrayList<String>();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (rootPath.equals(dir.getParent()) && excludedDirs.contains(dir.getFileName().toString()))
+                    return FileVisitResult.SKIP_SUBTREE;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                candidates.add(relativePath(rootPath, file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(candidates);
+
+        List<String> sameSize = new ArrayList<String>();
+        for (String path : candidates) {
+            File installed = new File(installDir, path);
+            if (!installed.isFile()) {
+                if (isInstalledFile(path)) {
+                    plan.added.add(path);
+                    plan.distributionFiles.add(path);
+                }
+            }
+            else {
+                plan.distributionFiles.add(path);
+                if (installed.length() != new File(root, path).length())
+                    plan.changed.add(path);
+                else
+                    sameSize.add(path);
+            }
+        }
+        compareContent(root, sameSize, plan);
+        Collections.sort(plan.changed);
+        findRemoved(plan);
+
+        LOGGER.info("Delta from " + installDir + " to " + distribution.getName() + ": " + plan + ", planned in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return plan;
+    }
+
+    /**
+     * Apply a plan, the services using the install directory must be stopped.
+     * The replaced and removed files are handed to the deleter, the new files are moved into place.
+     * @param plan plan of this install directory
+     * @param deleter deleter of the replaced files
+     * @return true if every change has been applied
+     */
+    public boolean apply(Plan plan, DeferredDeleter deleter) {
+        long start = System.currentTimeMillis();
+        List<String> updates = new ArrayList<String>(plan.changed);
+        updates.addAll(plan.added);
+        long bytesTotal = 0;
+        for (String path : updates)
+            bytesTotal += new File(plan.distributionRoot, path).length();
+        InstallProgress.Task progress = InstallProgress.global().begin("Apply delta to " + installDir.getName(),
+                plan.removed.size() + updates.size(), bytesTotal);
+        try {
+            for (String path : plan.removed) {
+                if (!deleter.moveToTrash(new File(installDir, path)))
+                    return false;
+                progress.advance(1, 0);
+            }
+            for (String path : updates) {
+                File target = new File(installDir, path);
+                if (!deleter.moveToTrash(target))
+                    return false;
+                Files.createDirectories(target.getParentFile().toPath());
+                Path source = new File(plan.distributionRoot, path).toPath();
+                if (plan.staged)
+                    moveOrCopy(source, target.toPath());
+                else
+                    Files.copy(source, target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                InstallTimeline.count("files", 1);
+                InstallTimeline.count("bytes", target.length());
+                progress.advance(1, target.length());
+            }
+            writeDistributionManifest(plan);
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to apply the delta to " + installDir + " - " + e.getMessage());
+            return false;
+        }
+        finally {
+            progress.finish();
+        }
+        LOGGER.info("Delta applied to " + installDir + " in " + (System.currentTimeMillis() - start) + " ms: " + plan);
+        return true;
+    }
+
+    /**
+     * Delete the extracted distribution, if the plan made one
+     */
+    public void discard() {
+        FileUtils.deleteQuietly(stagingDir);
+    }
+
+    private File extract(File zip) throws IOException {
+        FileUtils.deleteDirectory(stagingDir);
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(workers, false).extractAll(Arrays.asList(zip), stagingDir);
+        if (!report.isSuccess())
+            throw new IOException("unable to extract " + zip + ": " + report);
+        //the Tomcat zips have every entry under apache-tomcat-<version>
+        File[] entries = stagingDir.listFiles();
+        if (entries != null && entries.length == 1 && entries[0].isDirectory())
+            return entries[0];
+        return stagingDir;
+    }
+
+    private static boolean isInstalledFile(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && INSTALLED_DIRS.contains(path.substring(0, slash))
+                && INSTALLED_EXTENSIONS.contains(FilenameUtils.getExtension(path).toLowerCase(Locale.ENGLISH));
+    }
+
+    //files of the same size are told apart by their hash, computed in parallel
+    private void compareContent(final File root, List<String> paths, Plan plan) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final String path : paths) {
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return IncrementalCopier.hash(new File(root, path)).equals(IncrementalCopier.hash(new File(installDir, path)));
+                    }
+                }));
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                if (results.get(i).get())
+                    plan.unchanged++;
+                else
+                    plan.changed.add(paths.get(i));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while comparing " + installDir);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("unable to compare " + installDir + " - " + e.getCause().getMessage());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void findRemoved(Plan plan) {
+        TreeSet<String> current = new TreeSet<String>(plan.distributionFiles);
+        Properties previous = readDistributionManifest();
+        if (previous != null) {
+            for (String path : previous.stringPropertyNames()) {
+                if (!current.contains(path) && new File(installDir, path).isFile())
+                    plan.removed.add(path);
+            }
+        }
+        else {
+            File[] libs = new File(installDir, "lib").listFiles();
+            if (libs != null) {
+                for (File lib : libs) {
+                    String path = "lib/" + lib.getName();
+                    if (VERSIONED_TOMCAT_JAR.matcher(path).matches() && !current.contains(path))
+                        plan.removed.add(path);
+                }
+            }
+        }
+        Collections.sort(plan.removed);
+    }
+
+    private Properties readDistributionManifest() {
+        File manifest = new File(installDir, DISTRIBUTION_MANIFEST_FILE_NAME);
+        if (!manifest.isFile())
+            return null;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest.toPath())) {
+            properties.load(in);
+            return properties;
+        }
+        catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable distribution manifest " + manifest + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    //the files of the distribution now installed, the next delta removes those the distribution after drops
+    private void writeDistributionManifest(Plan plan) throws IOException {
+        Properties properties = new Properties();
+        for (String path : plan.distributionFiles)
+            properties.setProperty(path, Long.toString(new File(installDir, path).length()));
+        File manifest = new File(installDir, DISTRIBUTION_MANIFEST_FILE_NAME);
+        File temp = new File(installDir, DISTRIBUTION_MANIFEST_FILE_NAME + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            properties.store(out, "Files of the Tomcat distribution installed by the delta upgrade");
+        }
+        Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void moveOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
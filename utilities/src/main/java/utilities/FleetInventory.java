@@ -0,0 +1,105 @@
+package utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the list of install targets of a fleet install.
+ * One target per line: name, kind and ICM root directory, separated by blanks. Lines starting with # are comments.
+ * <pre>
+ * # name   kind        ICM root
+ * aw1a     local       C:\icm
+ * </pre>
+ * The tool only knows the local kind, the machine running it, whose ICM root must be the one of the registry:
+ * it goes through the complete install of the tool, pre-flight, snapshot, post install steps and rollback included.
+ * Remote machines are not supported: their registry, services and installer have to be reached by a
+ * {@link TargetFactory} given to {@link #load(File, Map)}, which is how the tests run the pipeline against
+ * in-memory targets.
+ */
+public final class FleetInventory {
+
+    public static final String          KIND_LOCAL = "local";
+
+    /**
+     * Creates the targets of a kind
+     */
+    public interface TargetFactory {
+        /**
+         * @param name target name
+         * @param icmRoot ICM root directory
+         * @return the target
+         * @throws IOException if the target cannot be reached
+         */
+        InstallTarget create(String name, File icmRoot) throws IOException;
+    }
+
+    private FleetInventory() {
+    }
+
+    /**
+     * Read an inventory file with local targets
+     * @param inventoryFile inventory file
+     * @return the targets, in file order
+     * @throws IOException if the file cannot be read or has an invalid line
+     */
+    public static List<InstallTarget> load(File inventoryFile) throws IOException {
+        return load(inventoryFile, Collections.<String, TargetFactory>singletonMap(KIND_LOCAL, FleetInventory::createLocalTarget));
+    }
+
+    /**
+     * Read an inventory file
+     * @param inventoryFile inventory file
+     * @param kinds factory of every known target kind
+     * @return the targets, in file order
+     * @throws IOException if the file cannot be read or has an invalid line
+     */
+    public static List<InstallTarget> load(File inventoryFile, Map<String, TargetFactory> kinds) throws IOException {
+        List<InstallTarget> targets = new ArrayList<InstallTarget>();
+        Set<String> names = new HashSet<String>();
+        boolean localSeen = false;
+        try (BufferedReader reader = Files.newBufferedReader(inventoryFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\\s+", 3);
+                if (fields.length < 3)
+                    throw new IOException(inventoryFile + ":" + lineNumber + ": expected <name> <kind> <ICM root>");
+                if (!names.add(fields[0]))
+                    throw new IOException(inventoryFile + ":" + lineNumber + ": duplicate target " + fields[0]);
+                if (KIND_LOCAL.equals(fields[1])) {
+                    if (localSeen)
+                        throw new IOException(inventoryFile + ":" + lineNumber + ": only one local target is possible");
+                    localSeen = true;
+                }
+                TargetFactory factory = kinds.get(fields[1]);
+                if (factory == null)
+                    throw new IOException(inventoryFile + ":" + lineNumber + ": unknown target kind " + fields[1] + ", expected one of " + kinds.keySet());
+                targets.add(factory.create(fields[0], new File(fields[2])));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Create the target of the machine running the tool
+     * @param name target name
+     * @param icmRoot ICM root directory
+     */
+    public static InstallTarget createLocalTarget(String name, File icmRoot) {
+        return new InstallTarget(name, icmRoot, new SystemRegistryBackend(), new ScServiceBackend(),
+                new SilentExeInstaller(InstallTomcat.TOMCAT_SERVICENAME), true);
+    }
+}
@@ -0,0 +1,129 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the install pipeline against many targets in rolling waves.
+ * The targets of a wave run at most {@code concurrency} at a time; the next wave starts once the previous one
+ * is over. When the number of failed targets reaches {@code maxFailures}, no new target is started and the
+ * remaining ones are reported as skipped, so that a bad installer does not take down the whole fleet.
+ */
+public class FleetOrchestrator {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(FleetOrchestrator.class);
+
+    private final int                   concurrency;
+    private final int                   waveSize;
+    private final int                   maxFailures;
+
+    /**
+     * @param concurrency maximum number of targets installed at the same time
+     * @param waveSize number of targets of a wave
+     * @param maxFailures number of failed targets which halts the run
+     */
+    public FleetOrchestrator(int concurrency, int waveSize, int maxFailures) {
+        this.concurrency = Math.max(1, concurrency);
+        this.waveSize = Math.max(1, waveSize);
+        this.maxFailures = Math.max(1, maxFailures);
+    }
+
+    /**
+     * Install all the targets
+     * @param targets targets, in inventory order
+     * @param pipeline pipeline run against every target
+     * @return the fleet report, in inventory order
+     */
+    public FleetReport run(List<InstallTarget> targets, final TargetInstallPipeline pipeline) {
+        long start = System.currentTimeMillis();
+        final AtomicInteger failures = new AtomicInteger();
+        Map<String, FleetReport.TargetResult> results = new LinkedHashMap<String, FleetReport.TargetResult>();
+        String haltReason = null;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, targets.size())), new FleetThreadFactory());
+        try {
+            for (int waveStart = 0; waveStart < targets.size(); waveStart += waveSize) {
+                List<InstallTarget> wave = targets.subList(waveStart, Math.min(targets.size(), waveStart + waveSize));
+                if (failures.get() >= maxFailures) {
+                    for (InstallTarget target : wave)
+                        results.put(target.getName(), skipped(target, "halted after " + failures.get() + " failures"));
+                    continue;
+                }
+
+                LOGGER.info("Starting wave " + (waveStart / waveSize + 1) + " with " + wave.size() + " targets");
+                Map<InstallTarget, Future<FleetReport.TargetResult>> futures = new LinkedHashMap<InstallTarget, Future<FleetReport.TargetResult>>();
+                for (final InstallTarget target : wave) {
+                    futures.put(target, pool.submit(new Callable<FleetReport.TargetResult>() {
+                        @Override
+                        public FleetReport.TargetResult call() {
+                            //targets queued behind the one which exhausted the failure budget are not started
+                            if (failures.get() >= maxFailures)
+                                return skipped(target, "halted after " + failures.get() + " failures");
+                            FleetReport.TargetResult result = pipeline.run(target);
+                            if (!result.isSuccess())
+                                failures.incrementAndGet();
+                            return result;
+                        }
+                    }));
+                }
+                for (Map.Entry<InstallTarget, Future<FleetReport.TargetResult>> future : futures.entrySet())
+                    results.put(future.getKey().getName(), await(future.getKey(), future.getValue(), failures));
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        if (failures.get() >= maxFailures)
+            haltReason = failures.get() + " targets failed, the limit is " + maxFailures;
+        FleetReport report = new FleetReport(new ArrayList<FleetReport.TargetResult>(results.values()), System.currentTimeMillis() - start, haltReason);
+        report.logSummary();
+        return report;
+    }
+
+    private static FleetReport.TargetResult await(InstallTarget target, Future<FleetReport.TargetResult> future, AtomicInteger failures) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return skipped(target, "interrupted");
+        }
+        catch (ExecutionException e) {
+            LOGGER.error(target.getName() + ": exception caught during the install", e.getCause());
+            failures.incrementAndGet();
+            return new FleetReport.TargetResult(target.getName(), StepResult.Status.FAILED, 0,
+                    Collections.<StepResult>emptyList(), String.valueOf(e.getCause()));
+        }
+    }
+
+    private static FleetReport.TargetResult skipped(InstallTarget target, String reason) {
+        LOGGER.info(target.getName() + ": skipped, " + reason);
+        return new FleetReport.TargetResult(target.getName(), StepResult.Status.SKIPPED, 0, Collections.<StepResult>emptyList(), reason);
+    }
+
+    private static class FleetThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fleet-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a fleet install: the outcome, duration and step timings of every target.
+ */
+public class FleetReport {
+
+    public static final String          REPORT_FILE_NAME = "FleetReport.json";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(FleetReport.class);
+
+    private final List<TargetResult>    results;
+    private final long                  elapsedMillis;
+    private final String                haltReason;
+
+    /**
+     * Result of the install pipeline on one target
+     */
+    public static class TargetResult {
+        private final String            target;
+        private final StepResult.Status status;
+        private final long              elapsedMillis;
+        private final List<StepResult>  steps;
+        private final String            detail;
+
+        public TargetResult(String target, StepResult.Status status, long elapsedMillis, List<StepResult> steps) {
+            this(target, status, elapsedMillis, steps, null);
+        }
+
+        public TargetResult(String target, StepResult.Status status, long elapsedMillis, List<StepResult> steps, String detail) {
+            this.target = target;
+            this.status = status;
+            this.elapsedMillis = elapsedMillis;
+            this.steps = Collections.unmodifiableList(new ArrayList<StepResult>(steps));
+            this.detail = detail;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public StepResult.Status getStatus() {
+            return status;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public List<StepResult> getSteps() {
+            return steps;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public boolean isSuccess() {
+            return status == StepResult.Status.SUCCEEDED;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(status + " in " + elapsedMillis + " ms");
+            if (detail != null)
+                text.append(" (").append(detail).append(')');
+            for (StepResult step : steps)
+                text.append(", ").append(step.getName()).append(' ').append(step.getStatus()).append(' ').append(step.getElapsedMillis()).append(" ms");
+            return text.toString();
+        }
+    }
+
+    /**
+     * @param results result of every target of the inventory, in inventory order
+     * @param elapsedMillis duration of the whole fleet install
+     * @param haltReason why the remaining targets have been skipped, null if the run was not halted
+     */
+    public FleetReport(List<TargetResult> results, long elapsedMillis, String haltReason) {
+        this.results = Collections.unmodifiableList(new ArrayList<TargetResult>(results));
+        this.elapsedMillis = elapsedMillis;
+        this.haltReason = haltReason;
+    }
+
+    public List<TargetResult> getResults() {
+        return results;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public String getHaltReason() {
+        return haltReason;
+    }
+
+    public int count(StepResult.Status status) {
+        int count = 0;
+        for (TargetResult result : results) {
+            if (result.getStatus() == status)
+                count++;
+        }
+        return count;
+    }
+
+    public boolean isSuccess() {
+        return count(StepResult.Status.SUCCEEDED) == results.size();
+    }
+
+    /**
+     * Log the per-target results in one block
+     */
+    public void logSummary() {
+        StringBuilder summary = new StringBuilder(String.format("Fleet install: %d succeeded, %d failed, %d skipped in %d ms",
+                count(StepResult.Status.SUCCEEDED), count(StepResult.Status.FAILED), count(StepResult.Status.SKIPPED), elapsedMillis));
+        if (haltReason != null)
+            summary.append(" - halted: ").append(haltReason);
+        for (TargetResult result : results)
+            summary.append(System.lineSeparator()).append("    ").append(result.getTarget()).append(": ").append(result);
+        LOGGER.info(summary.toString());
+    }
+
+    /**
+     * Write the report as JSON
+     * @param file report file, its directory is created if needed
+     */
+    public void writeJson(File file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsedMillis\": ").append(elapsedMillis);
+        json.append(",\n  \"succeeded\": ").append(count(StepResult.Status.SUCCEEDED));
+        json.append(",\n  \"failed\": ").append(count(StepResult.Status.FAILED));
+        json.append(",\n  \"skipped\": ").append(count(StepResult.Status.SKIPPED));
+        json.append(",\n  \"haltReason\": ").append(haltReason == null ? "null" : InstallTimeline.quote(haltReason));
+        json.append(",\n  \"targets\": [");
+        String separator = "\n";
+        for (TargetResult result : results) {
+            json.append(separator).append("    {\"target\": ").append(InstallTimeline.quote(result.getTarget()));
+            json.append(", \"status\": ").append(InstallTimeline.quote(result.getStatus().name()));
+            json.append(", \"elapsedMillis\": ").append(result.getElapsedMillis());
+            json.append(", \"detail\": ").append(result.getDetail() == null ? "null" : InstallTimeline.quote(result.getDetail()));
+            json.append(", \"steps\": [");
+            String stepSeparator = "";
+            for (StepResult step : result.getSteps()) {
+                json.append(stepSeparator).append("{\"name\": ").append(InstallTimeline.quote(step.getName()));
+                json.append(", \"status\": ").append(InstallTimeline.quote(step.getStatus().name()));
+                json.append(", \"elapsedMillis\": ").append(step.getElapsedMillis());
+                json.append(", \"detail\": ").append(step.getDetail() == null ? "null" : InstallTimeline.quote(step.getDetail()));
+                json.append('}');
+                stepSeparator = ", ";
+            }
+            json.append("]}");
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
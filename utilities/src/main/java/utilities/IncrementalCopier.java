@@ -0,0 +1,294 @@
+package utilities;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Copies files into a destination directory, skipping the files which are already identical.
+ * A file is identical when it is the same file (hard link), or when its size, last modified time
+ * and content hash match the source. Fingerprints of the written files are kept in a {@link CopyManifest}
+ * per destination, under the state directory of the installer, so that unchanged files are not hashed again
+ * on the next run.
+ * Where allowed, files are hard linked instead of copied so the same bytes are not written twice.
+ */
+public class IncrementalCopier {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(IncrementalCopier.class);
+
+    private static final String         HASH_ALGORITHM = "SHA-256";
+    private static final int            BUFFER_SIZE = 1024 * 1024;
+
+    private final File                  stateDir;
+
+    /**
+     * Bytes and files moved, linked and skipped by a copy
+     */
+    public static class CopyStats {
+        private long    bytesCopied;
+        private long    bytesLinked;
+        private long    bytesSkipped;
+        private int     filesCopied;
+        private int     filesLinked;
+        private int     filesSkipped;
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        public long getBytesLinked() {
+            return bytesLinked;
+        }
+
+        public long getBytesSkipped() {
+            return bytesSkipped;
+        }
+
+        public int getFilesCopied() {
+            return filesCopied;
+        }
+
+        public int getFilesLinked() {
+            return filesLinked;
+        }
+
+        public int getFilesSkipped() {
+            return filesSkipped;
+        }
+
+        public void add(CopyStats other) {
+            bytesCopied += other.bytesCopied;
+            bytesLinked += other.bytesLinked;
+            bytesSkipped += other.bytesSkipped;
+            filesCopied += other.filesCopied;
+            filesLinked += other.filesLinked;
+            filesSkipped += other.filesSkipped;
+        }
+
+        void countInTimeline() {
+            InstallTimeline.count("files", filesCopied + filesLinked);
+            InstallTimeline.count("bytes", bytesCopied + bytesLinked);
+            InstallTimeline.count("filesSkipped", filesSkipped);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("copied %d files (%d bytes), linked %d files (%d bytes), skipped %d identical files (%d bytes)",
+                    filesCopied, bytesCopied, filesLinked, bytesLinked, filesSkipped, bytesSkipped);
+        }
+    }
+
+    /**
+     * @param stateDir directory the copy manifests are kept in, outside of the destinations
+     */
+    public IncrementalCopier(File stateDir) {
+        this.stateDir = stateDir;
+    }
+
+    /**
+     * Copy the files of a directory matching a filter, not recursive
+     * @param srcDir source directory
+     * @param destDir destination directory, created if needed
+     * @param filter selects the files to copy
+     * @param allowLink true to hard link the files instead of copying them when possible
+     * @return copy statistics
+     * @throws IOException
+     */
+    public CopyStats copyMatching(File srcDir, File destDir, FileFilter filter, boolean allowLink) throws IOException {
+        CopyStats stats = new CopyStats();
+        File[] files = srcDir.listFiles(filter);
+        if (files == null)
+            throw new IOException("Unable to list " + srcDir);
+
+        Files.createDirectories(destDir.toPath());
+        CopyManifest manifest = CopyManifest.load(stateDir, destDir);
+        long bytesTotal = 0;
+        for (File file : files)
+            bytesTotal += file.length();
+        InstallProgress.Task progress = InstallProgress.global().begin("Copy " + srcDir.getName() + " to " + destDir.getName(), files.length, bytesTotal);
+        try {
+            for (File file : files) {
+                if (file.isFile())
+                    transfer(file, new File(destDir, file.getName()), manifest, allowLink, stats);
+                progress.advance(1, file.length());
+            }
+        }
+        finally {
+            progress.finish();
+        }
+        manifest.save();
+        LOGGER.info(String.format("%s -> %s: %s", srcDir, destDir, stats));
+        stats.countInTimeline();
+        return stats;
+    }
+
+    /**
+     * Copy a single file
+     * @param srcFile source file
+     * @param destFile destination file
+     * @param allowLink true to hard link the file instead of copying it when possible
+     * @return copy statistics
+     * @throws IOException
+     */
+    public CopyStats copyFile(File srcFile, File destFile, boolean allowLink) throws IOException {
+        CopyStats stats = new CopyStats();
+        Files.createDirectories(destFile.getParentFile().toPath());
+        CopyManifest manifest = CopyManifest.load(stateDir, destFile.getParentFile());
+        transfer(srcFile, destFile, manifest, allowLink, stats);
+        manifest.save();
+        LOGGER.info(String.format("%s -> %s: %s", srcFile, destFile, stats));
+        stats.countInTimeline();
+        return stats;
+    }
+
+    private void transfer(File src, File dest, CopyManifest manifest, boolean allowLink, CopyStats stats) throws IOException {
+        long size = src.length();
+        if (isIdentical(src, dest, manifest, allowLink)) {
+            LOGGER.debug(dest + " is identical to " + src + ", skipped");
+            stats.bytesSkipped += size;
+            stats.filesSkipped++;
+            return;
+        }
+
+        if (allowLink && link(src, dest)) {
+            manifest.put(dest.getName(), new CopyManifest.Entry(dest.length(), dest.lastModified(), null));
+            stats.bytesLinked += size;
+            stats.filesLinked++;
+            return;
+        }
+
+        String hash = copy(src, dest);
+        manifest.put(dest.getName(), new CopyManifest.Entry(dest.length(), dest.lastModified(), hash));
+        stats.bytesCopied += size;
+        stats.filesCopied++;
+    }
+
+    /**
+     * @param allowLink false if the destination must be a file of its own, a link to the source is then not identical
+     */
+    private boolean isIdentical(File src, File dest, CopyManifest manifest, boolean allowLink) throws IOException {
+        if (!dest.isFile() || src.length() != dest.length())
+            return false;
+        if (Files.isSameFile(src.toPath(), dest.toPath()))
+            return allowLink;
+
+        CopyManifest.Entry entry = manifest.get(dest.getName());
+        boolean entryValid = entry != null && entry.matches(dest);
+        //a file copied by this class keeps the source time stamp, unchanged on both sides means identical
+        if (entryValid && src.lastModified() == dest.lastModified())
+            return true;
+
+        //same size but different time stamps, compare the content
+        String destHash = entryValid && !entry.getHash().isEmpty() ? entry.getHash() : hash(dest);
+        if (!destHash.equals(hash(src)))
+            return false;
+        if (!dest.setLastModified(src.lastModified()))
+            LOGGER.debug("Unable to update the time stamp of " + dest);
+        manifest.put(dest.getName(), new CopyManifest.Entry(dest.length(), dest.lastModified(), destHash));
+        return true;
+    }
+
+    /**
+     * Hard link the source to the destination, replacing the destination atomically
+     * @return false if a link cannot be created, for an example across volumes
+     */
+    private boolean link(File src, File dest) {
+        File tempFile = tempFileFor(dest);
+        try {
+            Files.deleteIfExists(tempFile.toPath());
+            Files.createLink(tempFile.toPath(), src.toPath());
+            Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug(src + " has been linked to " + dest);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException | SecurityException e) {
+            LOGGER.debug("Unable to link " + src + " to " + dest + ", copying it - " + e);
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Copy through a temporary file renamed over the destination, hashing the content on the way
+     * @return hash of the copied content
+     */
+    private String copy(File src, File dest) throws IOException {
+        File tempFile = tempFileFor(dest);
+        MessageDigest digest = newDigest();
+        InputStream in = new DigestInputStream(new FileInputStream(src), digest);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            IOUtils.copyLarge(in, out, new byte[BUFFER_SIZE]);
+            out.close();
+            out = null;
+        }
+        catch (IOException e) {
+            IOUtils.closeQuietly(out);
+            tempFile.delete();
+            throw e;
+        }
+        finally {
+            in.close();
+        }
+        if (!tempFile.setLastModified(src.lastModified()))
+            LOGGER.debug("Unable to set the time stamp of " + tempFile);
+        Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug(src + " has been copied to " + dest);
+        return toHex(digest.digest());
+    }
+
+    private static File tempFileFor(File dest) {
+        return new File(dest.getParentFile(), "." + dest.getName() + ".tmp");
+    }
+
+    /**
+     * @param file file to hash
+     * @return hex encoded SHA-256 of the file content
+     * @throws IOException
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Durable record of the install steps completed by a run, so that a failed run can be resumed.
+ * Every completed step is recorded with a fingerprint of its inputs and outputs. A resumed run skips a step
+ * when the journal has it completed with the fingerprint the step has now; a step whose files changed since
+ * is run again. Steps run one after the other stop being skipped as soon as one of them runs again; as each of
+ * them changes the files of the ones before it, they are all recorded again when one of them completes.
+ * Every change is written to a temporary file, forced to disk and renamed over the journal, a crash leaves
+ * either the previous journal or the new one.
+ */
+public class InstallJournal {
+
+    public static final String          JOURNAL_FILE_NAME = "InstallJournal.properties";
+
+    //run properties, recorded by the run and read back by the resume
+    public static final String          INSTALLER_PATH = "run.installerPath";
+    public static final String          INSTALLER_VERSION = "run.installerVersion";
+    public static final String          INSTALL_DIRECTORY = "run.installDirectory";
+    public static final String          MODE = "run.mode";
+    public static final String          STATE = "run.state";
+    public static final String          STATE_RUNNING = "running";
+    public static final String          STATE_COMPLETE = "complete";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(InstallJournal.class);
+
+    private static final String         STEP_PREFIX = "step.";
+
+    private final File                  journalFile;
+    private final Properties            entries = new Properties();
+    private final Map<String, Supplier<String>> chain = new LinkedHashMap<String, Supplier<String>>();
+    private final boolean               resuming;
+    private boolean                     chainBroken;
+
+    private InstallJournal(File journalFile, boolean resuming) {
+        this.journalFile = journalFile;
+        this.resuming = resuming;
+    }
+
+    /**
+     * Start the journal of a new run, replacing the journal of the previous run
+     * @param directory directory of the journal, created if needed
+     */
+    public static InstallJournal create(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        InstallJournal journal = new InstallJournal(new File(directory, JOURNAL_FILE_NAME), false);
+        journal.entries.setProperty(STATE, STATE_RUNNING);
+        journal.save();
+        return journal;
+    }
+
+    /**
+     * Open the journal of an earlier run to resume it
+     * @param directory directory of the journal
+     * @return the journal, null if there is none
+     * @throws IOException if the journal cannot be read or is corrupt
+     */
+    public static InstallJournal resume(File directory) throws IOException {
+        File file = new File(directory, JOURNAL_FILE_NAME);
+        if (!file.isFile())
+            return null;
+        InstallJournal journal = new InstallJournal(file, true);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            journal.entries.load(in);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("corrupt install journal " + file + " - " + e.getMessage());
+        }
+        return journal;
+    }
+
+    /**
+     * Fingerprint of step inputs and outputs. A file counts with its path, size and last modified time,
+     * a directory with those of its entries; anything else with its string value.
+     * @return hex encoded SHA-256 of the inputs
+     */
+    public static String fingerprint(Object... inputs) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (Object input : inputs) {
+            if (input instanceof File) {
+                File file = (File) input;
+                update(digest, file);
+                File[] children = file.listFiles();
+                if (children != null) {
+                    Arrays.sort(children);
+                    for (File child : children)
+                        update(digest, child);
+                }
+            }
+            else if (input instanceof Object[])
+                digest.update(Arrays.deepToString((Object[]) input).getBytes(StandardCharsets.UTF_8));
+            else
+                digest.update(String.valueOf(input).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, File file) {
+        String state = file.getPath() + "|" + (file.exists() ? file.length() + "|" + file.lastModified() : "absent");
+        digest.update(state.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isResuming() {
+        return resuming;
+    }
+
+    public synchronized String getProperty(String key) {
+        return entries.getProperty(key);
+    }
+
+    public synchronized void setProperty(String key, String value) throws IOException {
+        entries.setProperty(key, value);
+        save();
+    }
+
+    /**
+     * @return true if the run is resumed, no step before this one ran again, and the step has been
+     * completed with this fingerprint
+     */
+    public synchronized boolean isCompleted(String step, String fingerprint) {
+        return resuming && !chainBroken && fingerprint.equals(entries.getProperty(STEP_PREFIX + step));
+    }
+
+    /**
+     * A step run one after the others is running again, the steps after it cannot be skipped anymore
+     */
+    public synchronized void invalidateRemaining() {
+        chainBroken = true;
+    }
+
+    /**
+     * Record a completed step, the journal is on disk when this returns
+     */
+    public synchronized void recordCompleted(String step, String fingerprint) {
+        entries.setProperty(STEP_PREFIX + step, fingerprint);
+        saveQuietly();
+    }
+
+    /**
+     * Record a completed or skipped step run one after the others. The steps of the chain before it are recorded
+     * again with the fingerprint they have now, so that a resume skips them as long as nothing changed since the
+     * last step of the chain completed.
+     * @param fingerprint fingerprint of the step
+     */
+    public synchronized void recordChained(String step, Supplier<String> fingerprint) {
+        chain.put(step, fingerprint);
+        for (Map.Entry<String, Supplier<String>> entry : chain.entrySet())
+            entries.setProperty(STEP_PREFIX + entry.getKey(), entry.getValue().get());
+        saveQuietly();
+    }
+
+    /**
+     * Forget a step which failed, a resume runs it again
+     */
+    public synchronized void recordFailed(String step) {
+        if (entries.remove(STEP_PREFIX + step) != null)
+            saveQuietly();
+    }
+
+    /**
+     * Mark the run complete, there is nothing left to resume
+     */
+    public synchronized void complete() {
+        entries.setProperty(STATE, STATE_COMPLETE);
+        saveQuietly();
+    }
+
+    /**
+     * Delete the journal, for a run whose changes have been rolled back and which cannot be resumed
+     */
+    public synchronized void discard() {
+        if (!journalFile.delete() && journalFile.exists())
+            LOGGER.warn("Unable to delete the install journal " + journalFile);
+    }
+
+    public synchronized boolean isComplete() {
+        return STATE_COMPLETE.equals(entries.getProperty(STATE));
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        }
+        catch (IOException e) {
+            //the step itself succeeded, at worst a resume runs it again
+            LOGGER.warn("Unable to write the install journal " + journalFile + " - " + e.getMessage());
+        }
+    }
+
+    private void save() throws IOException {
+        File temp = new File(journalFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            entries.store(out, "Install steps completed by the Tomcat installation tool");
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(journalFile.getAbsoluteFile().getParentFile());
+    }
+
+    //makes the rename durable where the platform allows opening a directory, which Windows does not
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            LOGGER.trace("Unable to sync " + directory + " - " + e.getMessage());
+        }
+    }
+}
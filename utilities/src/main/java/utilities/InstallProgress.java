@@ -0,0 +1,303 @@
+package utilities;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the file work of an install, pushed by the engines doing it.
+ * An engine begins a task with the number of files and bytes it is going to process, known from the listing
+ * or the central directory it reads anyway, then advances it as it goes. Advancing costs two atomic additions;
+ * listeners are only called when the task begins, when it finishes, and in between at most once per interval,
+ * by the thread which advanced the task. Nothing walks the tree to find out how far the work got.
+ * Listeners render the events on the console, in the log or as JSON lines.
+ */
+public class InstallProgress {
+
+    public static final String          PROGRESS_FILE_NAME = "InstallProgress.jsonl";
+    public static final long            DEFAULT_INTERVAL_MILLIS = 1000;
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(InstallProgress.class);
+
+    private static final InstallProgress GLOBAL = new InstallProgress(DEFAULT_INTERVAL_MILLIS);
+
+    private final List<Listener>        listeners = new CopyOnWriteArrayList<Listener>();
+    private final long                  intervalNanos;
+
+    /**
+     * Receives the progress events, from the threads doing the work; an implementation must be quick and thread safe
+     */
+    public interface Listener {
+        void onProgress(Event event);
+    }
+
+    /**
+     * State of a task when the event was emitted
+     */
+    public static class Event {
+        private final String    task;
+        private final long      filesDone;
+        private final long      filesTotal;
+        private final long      bytesDone;
+        private final long      bytesTotal;
+        private final long      elapsedMillis;
+        private final boolean   finished;
+
+        Event(String task, long filesDone, long filesTotal, long bytesDone, long bytesTotal, long elapsedMillis, boolean finished) {
+            this.task = task;
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+            this.elapsedMillis = elapsedMillis;
+            this.finished = finished;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        public long getFilesDone() {
+            return filesDone;
+        }
+
+        public long getFilesTotal() {
+            return filesTotal;
+        }
+
+        public long getBytesDone() {
+            return bytesDone;
+        }
+
+        public long getBytesTotal() {
+            return bytesTotal;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return percentage done, by bytes when the total is known, by files otherwise
+         */
+        public int getPercent() {
+            if (finished)
+                return 100;
+            if (bytesTotal > 0)
+                return (int) Math.min(100, bytesDone * 100 / bytesTotal);
+            if (filesTotal > 0)
+                return (int) Math.min(100, filesDone * 100 / filesTotal);
+            return 0;
+        }
+
+        public String toJson() {
+            return "{\"task\": " + InstallTimeline.quote(task) + ", \"filesDone\": " + filesDone + ", \"filesTotal\": " + filesTotal
+                    + ", \"bytesDone\": " + bytesDone + ", \"bytesTotal\": " + bytesTotal + ", \"elapsedMillis\": " + elapsedMillis
+                    + ", \"percent\": " + getPercent() + ", \"finished\": " + finished + "}";
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d%% (%d/%d files, %.1f/%.1f MB) in %d ms", task, getPercent(), filesDone, filesTotal,
+                    bytesDone / (1024.0 * 1024.0), bytesTotal / (1024.0 * 1024.0), elapsedMillis);
+        }
+    }
+
+    /**
+     * Work of an engine with a known amount of files and bytes
+     */
+    public static class Task {
+        private final InstallProgress   progress;
+        private final String            name;
+        private final long              filesTotal;
+        private final long              bytesTotal;
+        private final long              startNanos = System.nanoTime();
+        private final AtomicLong        filesDone = new AtomicLong();
+        private final AtomicLong        bytesDone = new AtomicLong();
+        private final AtomicLong        nextEventNanos;
+        private final AtomicBoolean     finished = new AtomicBoolean();
+
+        Task(InstallProgress progress, String name, long filesTotal, long bytesTotal) {
+            this.progress = progress;
+            this.name = name;
+            this.filesTotal = filesTotal;
+            this.bytesTotal = bytesTotal;
+            this.nextEventNanos = new AtomicLong(startNanos + progress.intervalNanos);
+        }
+
+        /**
+         * Count files and bytes processed, skipped ones included
+         */
+        public void advance(long files, long bytes) {
+            filesDone.addAndGet(files);
+            bytesDone.addAndGet(bytes);
+            if (progress.listeners.isEmpty())
+                return;
+            long now = System.nanoTime();
+            long next = nextEventNanos.get();
+            //one thread wins the interval, the others go on with their work
+            if (now - next >= 0 && nextEventNanos.compareAndSet(next, now + progress.intervalNanos))
+                progress.emit(snapshot(false));
+        }
+
+        /**
+         * End the task, whether all of its work has been done or not
+         */
+        public void finish() {
+            if (finished.compareAndSet(false, true))
+                progress.emit(snapshot(true));
+        }
+
+        private Event snapshot(boolean last) {
+            return new Event(name, filesDone.get(), filesTotal, bytesDone.get(), bytesTotal, (System.nanoTime() - startNanos) / 1000000, last);
+        }
+    }
+
+    /**
+     * @param intervalMillis minimum time between two events of a task, its beginning and its end excepted
+     */
+    public InstallProgress(long intervalMillis) {
+        this.intervalNanos = Math.max(0, intervalMillis) * 1000000;
+    }
+
+    /**
+     * @return the progress of the current install
+     */
+    public static InstallProgress global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Begin a task
+     * @param name what is done, for an example "Extract lib"
+     * @param filesTotal number of files the task processes
+     * @param bytesTotal number of bytes the task processes, 0 if unknown
+     */
+    public Task begin(String name, long filesTotal, long bytesTotal) {
+        Task task = new Task(this, name, filesTotal, bytesTotal);
+        if (!listeners.isEmpty())
+            emit(task.snapshot(false));
+        return task;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void emit(Event event) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onProgress(event);
+            }
+            catch (RuntimeException e) {
+                LOGGER.debug("Progress listener failed on " + event.getTask() + " - " + e);
+            }
+        }
+    }
+
+    /**
+     * @return a listener logging the events
+     */
+    public static Listener logListener(final Logger logger, final Level level) {
+        return event -> logger.log(level, event.toString());
+    }
+
+    /**
+     * @return a listener rendering every task on one console line, rewritten at most once per interval
+     */
+    public static Listener consoleRenderer(PrintStream out, long intervalMillis) {
+        return new ConsoleRenderer(out, intervalMillis);
+    }
+
+    /**
+     * Renders the last event on one console line, overwritten with a carriage return
+     */
+    private static class ConsoleRenderer implements Listener {
+        private final PrintStream   out;
+        private final long          intervalNanos;
+        private long                lastRenderNanos;
+        private int                 lastWidth;
+
+        ConsoleRenderer(PrintStream out, long intervalMillis) {
+            this.out = out;
+            this.intervalNanos = intervalMillis * 1000000;
+            this.lastRenderNanos = System.nanoTime() - intervalNanos;
+        }
+
+        @Override
+        public synchronized void onProgress(Event event) {
+            long now = System.nanoTime();
+            if (!event.isFinished() && now - lastRenderNanos < intervalNanos)
+                return;
+            lastRenderNanos = now;
+            String line = event.toString();
+            StringBuilder rendered = new StringBuilder("\r").append(line);
+            for (int i = line.length(); i < lastWidth; i++)
+                rendered.append(' ');
+            lastWidth = line.length();
+            if (event.isFinished()) {
+                rendered.append(System.lineSeparator());
+                lastWidth = 0;
+            }
+            out.print(rendered);
+            out.flush();
+        }
+    }
+
+    /**
+     * Appends every event as a JSON line to a file
+     */
+    public static class JsonLinesWriter implements Listener, Closeable {
+        private final Writer    writer;
+
+        /**
+         * @param file file the events are appended to, replaced if it exists
+         */
+        public JsonLinesWriter(File file) throws IOException {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            this.writer = new OutputStreamWriter(Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public synchronized void onProgress(Event event) {
+            try {
+                //events are throttled, flushing each one keeps the file readable while the install runs
+                writer.write(event.toJson());
+                writer.write('\n');
+                writer.flush();
+            }
+            catch (IOException e) {
+                LOGGER.debug("Unable to write the progress of " + event.getTask() + " - " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}
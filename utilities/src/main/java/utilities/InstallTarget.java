@@ -0,0 +1,106 @@
+package utilities;
+
+import java.io.File;
+
+/**
+ * A machine the install pipeline runs against: its ICM root directory, the registry holding the Tomcat values,
+ * the backend controlling its services and the installer laying down Tomcat.
+ */
+public class InstallTarget {
+
+    public static final String          TOMCAT_DIRECTORY = "tomcat";
+    public static final String          INSTALL_DIRECTORY = "install";
+    public static final String          SERVICE_EXECUTABLE = "tomcat9.exe";
+    public static final String          UNINSTALLER = "Uninstall.exe";
+
+    private final String                name;
+    private final File                  icmRoot;
+    private final TomcatRegistry        registry;
+    private final ServiceBackend        serviceBackend;
+    private final PackageInstaller      installer;
+    private final boolean               local;
+
+    /**
+     * @param name target name, used in the logs and the report
+     * @param icmRoot ICM root directory, for an example C:\icm
+     * @param registry registry of the target
+     * @param serviceBackend service backend of the target
+     * @param installer installer of the target
+     */
+    public InstallTarget(String name, File icmRoot, TomcatRegistry registry, ServiceBackend serviceBackend, PackageInstaller installer) {
+        this(name, icmRoot, registry, serviceBackend, installer, false);
+    }
+
+    /**
+     * @param local true for the machine running the tool, installed by the complete install of the tool
+     */
+    public InstallTarget(String name, File icmRoot, TomcatRegistry registry, ServiceBackend serviceBackend, PackageInstaller installer,
+                         boolean local) {
+        this.name = name;
+        this.icmRoot = icmRoot;
+        this.registry = registry;
+        this.serviceBackend = serviceBackend;
+        this.installer = installer;
+        this.local = local;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getIcmRoot() {
+        return icmRoot;
+    }
+
+    /**
+     * @return Tomcat directory under the ICM root
+     */
+    public File getTomcatDir() {
+        return new File(icmRoot, TOMCAT_DIRECTORY);
+    }
+
+    /**
+     * @return executable of the Tomcat service, laid down by the installer and removed by the uninstaller
+     */
+    public File getServiceExecutable() {
+        return new File(new File(getTomcatDir(), "bin"), SERVICE_EXECUTABLE);
+    }
+
+    /**
+     * @return uninstaller of the installed Tomcat
+     */
+    public File getUninstaller() {
+        return new File(getTomcatDir(), UNINSTALLER);
+    }
+
+    /**
+     * @return install directory under the ICM root, where tomcatConfig.ini is
+     */
+    public File getInstallDir() {
+        return new File(icmRoot, INSTALL_DIRECTORY);
+    }
+
+    public TomcatRegistry getRegistry() {
+        return registry;
+    }
+
+    public ServiceBackend getServiceBackend() {
+        return serviceBackend;
+    }
+
+    public PackageInstaller getInstaller() {
+        return installer;
+    }
+
+    /**
+     * @return true for the machine running the tool
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + icmRoot + ")";
+    }
+}
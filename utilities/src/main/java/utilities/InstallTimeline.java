@@ -0,0 +1,368 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Records the steps and external commands of an install as spans: start, end, outcome and counters such as
+ * the bytes and files touched. Spans started by a thread while another span of the same thread is open are
+ * nested under it; a span is ended by the thread which started it.
+ * The timeline is written as JSON, and as a Chrome trace-event file which chrome://tracing or Perfetto display.
+ */
+public class InstallTimeline {
+
+    public static final String          TIMELINE_FILE_NAME = "InstallTimeline.json";
+    public static final String          TRACE_FILE_NAME = "InstallTrace.json";
+
+    public static final String          OUTCOME_SUCCESS = "success";
+    public static final String          OUTCOME_FAILURE = "failure";
+    public static final String          OUTCOME_SKIPPED = "skipped";
+    public static final String          OUTCOME_ERROR = "error";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(InstallTimeline.class);
+
+    private static final InstallTimeline GLOBAL = new InstallTimeline();
+
+    private final long                  originNanos = System.nanoTime();
+    private final long                  originMillis = System.currentTimeMillis();
+    private final AtomicInteger         nextId = new AtomicInteger();
+    private final List<Span>            spans = new ArrayList<Span>();
+    private final ThreadLocal<Deque<Span>> openSpans = new ThreadLocal<Deque<Span>>() {
+        @Override
+        protected Deque<Span> initialValue() {
+            return new ArrayDeque<Span>();
+        }
+    };
+
+    /**
+     * A timed operation of the install
+     */
+    public static class Span {
+        private final InstallTimeline   timeline;
+        private final int               id;
+        private final int               parentId;
+        private final String            name;
+        private final String            category;
+        private final String            thread;
+        private final long              startNanos;
+        private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        private volatile long           endNanos = -1;
+        private volatile String         outcome;
+
+        Span(InstallTimeline timeline, int id, int parentId, String name, String category) {
+            this.timeline = timeline;
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.category = category;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = System.nanoTime();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public boolean isEnded() {
+            return endNanos >= 0;
+        }
+
+        /**
+         * @return duration in milliseconds, up to now if the span is still open
+         */
+        public long getDurationMillis() {
+            return ((isEnded() ? endNanos : System.nanoTime()) - startNanos) / 1000000;
+        }
+
+        /**
+         * Set an attribute, such as an exit code or a file name
+         */
+        public synchronized Span set(String key, Object value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Add to a counter attribute, such as the bytes or files touched
+         */
+        public synchronized Span add(String key, long delta) {
+            Object current = attributes.get(key);
+            attributes.put(key, (current instanceof Long ? (Long) current : 0L) + delta);
+            return this;
+        }
+
+        synchronized Map<String, Object> getAttributes() {
+            return new LinkedHashMap<String, Object>(attributes);
+        }
+
+        /**
+         * End the span with the outcome of a boolean step
+         * @return the success given
+         */
+        public boolean end(boolean success) {
+            end(success ? OUTCOME_SUCCESS : OUTCOME_FAILURE);
+            return success;
+        }
+
+        public void end(String outcome) {
+            if (isEnded())
+                return;
+            this.outcome = outcome;
+            this.endNanos = System.nanoTime();
+            timeline.closed(this);
+        }
+
+        void abandon() {
+            if (isEnded())
+                return;
+            this.outcome = OUTCOME_ERROR;
+            this.endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the timeline of the current install
+     */
+    public static InstallTimeline global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Add to a counter of the innermost span open on this thread, if any
+     */
+    public static void count(String key, long delta) {
+        Span span = GLOBAL.currentSpan();
+        if (span != null)
+            span.add(key, delta);
+    }
+
+    /**
+     * Start a span, nested under the innermost span open on this thread
+     * @param name name of the step or command
+     * @param category kind of span, for an example "step", "service" or "command"
+     */
+    public Span start(String name, String category) {
+        Deque<Span> open = openSpans.get();
+        Span parent = open.peek();
+        Span span = new Span(this, nextId.incrementAndGet(), parent == null ? 0 : parent.id, name, category);
+        open.push(span);
+        synchronized (spans) {
+            spans.add(span);
+        }
+        return span;
+    }
+
+    /**
+     * Run a boolean step in a span
+     * @return the result of the step
+     */
+    public boolean time(String name, String category, BooleanSupplier step) {
+        Span span = start(name, category);
+        try {
+            return span.end(step.getAsBoolean());
+        }
+        finally {
+            span.end(OUTCOME_ERROR);
+        }
+    }
+
+    /**
+     * @return the innermost span open on this thread, null if none
+     */
+    public Span currentSpan() {
+        return openSpans.get().peek();
+    }
+
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<Span>(spans);
+        }
+    }
+
+    //spans opened after this one on the same thread and still open were left by an exception, they end with it
+    private void closed(Span span) {
+        Deque<Span> open = openSpans.get();
+        if (!open.contains(span))
+            return;
+        while (!open.isEmpty()) {
+            Span top = open.pop();
+            if (top == span)
+                break;
+            top.abandon();
+        }
+    }
+
+    /**
+     * Write the JSON timeline and the Chrome trace into a directory
+     * @param directory output directory, created if needed
+     * @return true if both files have been written
+     */
+    public boolean writeReports(File directory) {
+        try {
+            Files.createDirectories(directory.toPath());
+            writeTimeline(new File(directory, TIMELINE_FILE_NAME));
+            writeChromeTrace(new File(directory, TRACE_FILE_NAME));
+            LOGGER.info("Install timeline written to " + new File(directory, TIMELINE_FILE_NAME).getAbsolutePath());
+            return true;
+        }
+        catch (IOException e) {
+            LOGGER.warn("Unable to write the install timeline to " + directory + " - " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Write the spans as a JSON document, offsets and durations in milliseconds from the start of the install
+     */
+    public void writeTimeline(File file) throws IOException {
+        long now = System.nanoTime();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"start\": ").append(quote(isoTime(originMillis)));
+        json.append(",\n  \"totalMillis\": ").append((now - originNanos) / 1000000);
+        json.append(",\n  \"spans\": [");
+        String separator = "\n";
+        for (Span span : getSpans()) {
+            long end = span.isEnded() ? span.endNanos : now;
+            json.append(separator).append("    {\"id\": ").append(span.id);
+            json.append(", \"parent\": ").append(span.parentId);
+            json.append(", \"name\": ").append(quote(span.name));
+            json.append(", \"category\": ").append(quote(span.category));
+            json.append(", \"thread\": ").append(quote(span.thread));
+            json.append(", \"startMillis\": ").append((span.startNanos - originNanos) / 1000000);
+            json.append(", \"durationMillis\": ").append((end - span.startNanos) / 1000000);
+            json.append(", \"outcome\": ").append(quote(span.isEnded() ? span.outcome : "open"));
+            json.append(", \"attributes\": ");
+            appendObject(json, span.getAttributes());
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        write(file, json);
+    }
+
+    /**
+     * Write the spans in the Chrome trace-event format, as complete events on one track per thread
+     */
+    public void writeChromeTrace(File file) throws IOException {
+        long now = System.nanoTime();
+        Map<String, Integer> threadIds = new LinkedHashMap<String, Integer>();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+        String separator = "\n";
+        for (Span span : getSpans()) {
+            Integer tid = threadIds.get(span.thread);
+            if (tid == null) {
+                tid = threadIds.size() + 1;
+                threadIds.put(span.thread, tid);
+                json.append(separator).append("  {\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": ").append(tid);
+                json.append(", \"args\": {\"name\": ").append(quote(span.thread)).append("}}");
+                separator = ",\n";
+            }
+            long end = span.isEnded() ? span.endNanos : now;
+            Map<String, Object> args = span.getAttributes();
+            args.put("outcome", span.isEnded() ? span.outcome : "open");
+            json.append(separator).append("  {\"name\": ").append(quote(span.name));
+            json.append(", \"cat\": ").append(quote(span.category));
+            json.append(", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(tid);
+            json.append(", \"ts\": ").append((span.startNanos - originNanos) / 1000);
+            json.append(", \"dur\": ").append((end - span.startNanos) / 1000);
+            json.append(", \"args\": ");
+            appendObject(json, args);
+            json.append('}');
+        }
+        json.append("\n]}\n");
+        write(file, json);
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, Object> values) {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            json.append(separator).append(quote(value.getKey())).append(": ");
+            Object v = value.getValue();
+            if (v instanceof Number || v instanceof Boolean)
+                json.append(v);
+            else
+                json.append(quote(String.valueOf(v)));
+            separator = ", ";
+        }
+        json.append('}');
+    }
+
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    else
+                        quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String isoTime(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    //written next to the target then renamed, a reader never sees a partial file
+    private static void write(File file, CharSequence content) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8);
+        try {
+            writer.append(content);
+        }
+        finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
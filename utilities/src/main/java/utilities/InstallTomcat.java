@@ -2,8 +2,10 @@ package utilities;
 
 import com.sun.jna.platform.win32.WinReg;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import java.io.File;
@@ -22,14 +24,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
-import org.w3c.dom.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 
 
@@ -56,6 +56,9 @@ public class InstallTomcat {
     private static final String         TOMCAT_SERVER_ROOT_PATH = "\\ROOT";
     private static final String         TOMCAT_SERVER_MANAGER_PATH = "\\manager";
     private static final String         TOMCAT_SERVER_DOCS_PATH = "\\docs";
+    //files of the stock ROOT, manager and docs, none of them is left once the cleanup is done
+    static final List<String>           STOCK_WEBAPPS_FILES = Arrays.asList("ROOT/RELEASE-NOTES.txt", "ROOT/tomcat.svg",
+            "manager/status.xsd", "docs/RELEASE-NOTES.txt");
 
     /// post instaqllation files names and locations
     private static final String         WEBXML = "\\conf\\web.xml";
@@ -63,7 +66,12 @@ public class InstallTomcat {
     private static final String         ISAPI = "\\isapi_redirect.dll";
     private static final String         IISCUSTOM = "\\server.xml.IIS.custom";
     private static final String  		uriMapFile = "uriworkermap.properties";
+    //contexts mapped to Tomcat in uriworkermap.properties, warmed up once Tomcat is started
+    private static final List<String>   MAPPED_CONTEXTS = Arrays.asList("/setup", "/unifiedconfig", "/cceadmin", "/cceadminnew", "/gadgets");
     private static final String  		workersFile = "workers.properties";
+    private static final String         SHINDIG_WAR = "ccbu-common-shindig-server.war";
+    private static final String         ROOT_WAR = "ROOT.war";
+    private static final String         JAKARTA_FILTER_NAME = "Jakarta";
 
     //service ctrl
     public static final String          TOMCAT_SERVICENAME ="Tomcat9";
@@ -71,6 +79,7 @@ public class InstallTomcat {
     public static final String          W3SVC_DESCRIPTIVE_NAME = "World Wide Web Publishing Service (W3SVC)";
     public static final int             MAX_ATTEMPTS = 60;
     public static final int             INTERVAL_TO_CHECK_STATE = 5000; //in mil seconds. total 5 minutes to wait for Tomcat to stop or start
+    public static final long            SERVICE_TRANSITION_DEADLINE = (long) MAX_ATTEMPTS * INTERVAL_TO_CHECK_STATE; //probes follow BackoffSchedule.DEFAULT within this deadline
 
     public static final String          LOG_CHECKING_MSG = "For more detailed information, please check the log located in ..\\InstallTomcatResults directory";
     public static final String          LOG_TOMCAT_STARTED_MSG = "Tomcat has been started.";
@@ -79,6 +88,67 @@ public class InstallTomcat {
     public static final String          ISTALL_PROCEED_PROMPT = "Do you want to proceed with the installation? (Yes/No): ";
     private static final String         SERVICE_STARTUP_TYPE_AUTOMATIC = "auto";
     private static final String         TOMACAT_DISPLAY_NAME = "Apache Tomcat9";
+    private static final String         TOMCAT_SERVICE_EXE_PATH = "bin\\tomcat9.exe";
+
+    //maximum time to wait for the installer and uninstaller to complete after they returned
+    private static final long           INSTALL_READY_TIMEOUT = 180000;
+    private static final long           UNINSTALL_READY_TIMEOUT = 180000;
+
+    //external commands, killed when they run longer
+    private static final ProcessRunner  PROCESS_RUNNER = new ProcessRunner();
+    private static final long           INSTALLER_TIMEOUT = 900000;
+    private static final long           IIS_INSTALLER_TIMEOUT = 600000;
+    private static final long           COMMAND_TIMEOUT = 60000;
+    private static final String         CSCRIPT_PATH = "C:\\WINDOWS\\SysWOW64\\cscript.exe";
+
+    //checks run before any service is stopped, the installer hash is the longest of them
+    private static final long           PREFLIGHT_TIMEOUT = 30000;
+    private static final long           DISK_SPACE_MARGIN = 100L * 1024 * 1024;
+
+    //post install steps, run by the StepExecutor
+    private static final int            POST_INSTALL_PARALLELISM = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final String         STEP_CLEANUP_TOMCAT_DIR = "CleanupTomcatDir";
+    private static final String         STEP_UNZIP_ASSEMBLIES = "UnzipAssemblies";
+    private static final String         STEP_RESTORE_WAR_FILES = "RestoreWarFiles";
+    private static final String         STEP_RESTORE_JAR_FILES = "RestoreJarFiles";
+    private static final String         STEP_COPY_AJP_CONNECTOR = "CopyAJPConnector";
+    private static final String         STEP_RESTORE_PROPERTIES_FILES = "RestorePropertiesFiles";
+    private static final String         STEP_GENERATE_SERVER_XML = "GenerateServerXml";
+    private static final String         STEP_EXPAND_WARS = "ExpandWars";
+    private static final String         STEP_RESTORE_WORKER_FILES = "RestoreTomcatWorkerFiles";
+    private static final String         STEP_IIS_INSTALLER = "IISInstaller";
+    private static final String         STEP_RESTORE_TOMCAT_PARAMETERS = "RestoreTomcatParameters";
+    private static final String         STEP_APPLY_PERMISSIONS = "ApplyPermissions";
+    private static final String         STEP_REMOVE_JAKARTA_FILTER = "RemoveJakartaISAPIFilter";
+
+    //entries cleaned up during the outage are moved to a trash next to the install directory,
+    //the trash is deleted in the background once the install work is over
+    private static DeferredDeleter      deferredDeleter;
+    private static final long           DEFERRED_DELETION_TIMEOUT = 600000;
+
+    //directories of icm\tomcat kept by the cleanup, left out of the snapshot and of the rollback
+    private static final List<String>   PRESERVED_DIRS = Arrays.asList("logs");
+
+    //install timeline and trace, written next to InstallTomcat.log
+    private static final String         RESULTS_DIRECTORY = "InstallTomcatResults";
+
+    //steps completed by the run, to resume it after a failure; null when the run is not journaled
+    private static InstallJournal       journal;
+    private static final String         MODE_INSTALL = "install";
+    private static final String         MODE_REINSTALL = "reinstall";
+
+    //delta mode, in place upgrade to another point release from the Tomcat zip
+    private static final String         DELTA_USAGE = "-delta [-noconfirm] <tomcat distribution zip or directory>";
+
+    //staged mode, install built next to the running one and swapped in
+    private static final String         STAGED_USAGE = "-staged <tomcat distribution zip or directory>";
+    private static final long           SWAP_RENAME_TIMEOUT = 30000;
+
+    //fleet mode, install of the targets of an inventory file
+    private static final String         FLEET_USAGE = "-fleet <inventory file> <tomcat installer> [-concurrency <n>] [-wave <n>] [-maxFailures <n>]";
+    private static final int            FLEET_DEFAULT_CONCURRENCY = 4;
+    private static final int            FLEET_DEFAULT_WAVE_SIZE = 8;
+    private static final int            FLEET_DEFAULT_MAX_FAILURES = 1;
 
     //Logger instance for this class
     private static final Logger         LOGGER = LogManager.getLogger(InstallTomcat.class);
@@ -97,9 +167,33 @@ public class InstallTomcat {
 
         SystemConsole  console = new SystemConsole();
         boolean bInstall = true; 
+        startProgressReporting();
         if (args.length >= 1) {
 
-            if ("-install".equals(args[0])) {
+            if ("-fleet".equals(args[0])) {
+                runFleet(args);
+                return;
+            } else if ("-delta".equals(args[0])) {
+                if (args.length >= 3 && "-noconfirm".equals(args[1]))
+                    runDeltaUpgrade(new File(args[2]), new SystemConsole(new ArrayList<String>(Arrays.asList(args[1]))));
+                else if (args.length == 2)
+                    runDeltaUpgrade(new File(args[1]), console);
+                else
+                    System.out.println("usage: " + DELTA_USAGE);
+                return;
+            } else if ("-staged".equals(args[0])) {
+                if (args.length < 2)
+                    System.out.println("usage: " + STAGED_USAGE);
+                else
+                    runStagedInstall(new File(args[1]));
+                return;
+            } else if ("-rollback".equals(args[0])) {
+                runRollback(args.length >= 2 ? args[1] : null);
+                return;
+            } else if ("-resume".equals(args[0])) {
+                runResume();
+                return;
+            } else if ("-install".equals(args[0])) {
                 bInstall = checkArgsForUpgrade(args);
                 if (bInstall && args.length >= 3 && ("-noconfirm".equals(args[1]))) {
                     console = new SystemConsole(new ArrayList<String>(Arrays.asList(args[2], args[1])));
@@ -112,13 +206,335 @@ public class InstallTomcat {
                     console = new SystemConsole(new ArrayList<String>(Arrays.asList(args[1], args[0])));
                 }
             } else {
-                System.out.println("Supported option: [-install| -noconfirm <new tomcat installer full path name>] or without any options");
+                System.out.println("Supported option: [-install| -noconfirm <new tomcat installer full path name>| -rollback [<tomcat directory>]| -resume| " + DELTA_USAGE + "| " + STAGED_USAGE + "| " + FLEET_USAGE + "] or without any options");
                 bInstall = false;
             }
         }
 
         if (bInstall) {
-            prepareInstallAndDoInstall(console);
+            InstallTimeline.Span span = InstallTimeline.global().start("InstallTomcat", "run");
+            try {
+                span.end(prepareInstallAndDoInstall(console));
+            }
+            finally {
+                span.end(InstallTimeline.OUTCOME_ERROR);
+                writeTimeline();
+            }
+        }
+    }
+
+    /**
+     * Report the progress of the file work on the console when there is one, in the log otherwise,
+     * and as JSON lines next to the log
+     */
+    private static void startProgressReporting() {
+        InstallProgress progress = InstallProgress.global();
+        if (System.console() != null)
+            progress.addListener(InstallProgress.consoleRenderer(System.out, InstallProgress.DEFAULT_INTERVAL_MILLIS));
+        else
+            progress.addListener(InstallProgress.logListener(LOGGER, Level.INFO));
+        try {
+            progress.addListener(new InstallProgress.JsonLinesWriter(new File(RESULTS_DIRECTORY, InstallProgress.PROGRESS_FILE_NAME)));
+        }
+        catch (IOException e) {
+            LOGGER.warn("Unable to write the install progress to " + RESULTS_DIRECTORY + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Install the targets of an inventory file, without prompting
+     * @param args -fleet inventory installer [-concurrency n] [-wave n] [-maxFailures n]
+     */
+    protected static void runFleet(String[] args) throws IOException {
+        if (args.length < 3 || args.length % 2 == 0) {
+            System.out.println("usage: " + FLEET_USAGE);
+            return;
+        }
+        int concurrency = FLEET_DEFAULT_CONCURRENCY;
+        int waveSize = FLEET_DEFAULT_WAVE_SIZE;
+        int maxFailures = FLEET_DEFAULT_MAX_FAILURES;
+        try {
+            for (int i = 3; i < args.length; i += 2) {
+                if ("-concurrency".equals(args[i]))
+                    concurrency = Integer.parseInt(args[i + 1]);
+                else if ("-wave".equals(args[i]))
+                    waveSize = Integer.parseInt(args[i + 1]);
+                else if ("-maxFailures".equals(args[i]))
+                    maxFailures = Integer.parseInt(args[i + 1]);
+                else {
+                    System.out.println("usage: " + FLEET_USAGE);
+                    return;
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            System.out.println("usage: " + FLEET_USAGE);
+            return;
+        }
+
+        File installer = new File(args[2]);
+        String version = getInstallerVersion(installer.getName());
+        if (!installer.isFile() || version == null) {
+            LOGGER.info("Tomcat installer " + installer + " not found or without a version in its name.");
+            return;
+        }
+        InstallerVerifier.Result verification = createInstallerVerifier().verify(installer);
+        if (!verification.isVerified()) {
+            LOGGER.info("Tomcat installer " + installer + " " + verification);
+            return;
+        }
+        List<InstallTarget> targets = FleetInventory.load(new File(args[1]));
+        LOGGER.info("Installing Tomcat " + version + " on " + targets.size() + " targets, " + concurrency
+                + " at a time in waves of " + waveSize + ", halting after " + maxFailures + " failures");
+
+        InstallTimeline.Span span = InstallTimeline.global().start("InstallTomcatFleet", "run");
+        try {
+            TargetInstallPipeline pipeline = new TargetInstallPipeline(installer, version, BackoffSchedule.DEFAULT,
+                    SERVICE_TRANSITION_DEADLINE, INSTALL_READY_TIMEOUT).setLocalInstall(InstallTomcat::installLocalTarget);
+            FleetReport report = new FleetOrchestrator(concurrency, waveSize, maxFailures).run(targets, pipeline);
+            span.end(report.isSuccess());
+            report.writeJson(new File(RESULTS_DIRECTORY, FleetReport.REPORT_FILE_NAME));
+        }
+        finally {
+            span.end(InstallTimeline.OUTCOME_ERROR);
+            InstallTimeline.global().writeReports(new File(RESULTS_DIRECTORY));
+        }
+    }
+
+    /**
+     * Install or reinstall Tomcat for the local target of a fleet install, through the same flow as the default mode.
+     * When the install fails the services are started again, on the restored Tomcat when it could be rolled back.
+     * @return true if Tomcat has been installed and started
+     */
+    private static boolean installLocalTarget(InstallTarget target, File installer, String version) {
+        File tomcatDir = new File(getCurrentICMInstallDrive() + ":\\icm\\" + InstallTarget.TOMCAT_DIRECTORY);
+        if (!target.getTomcatDir().getAbsolutePath().equalsIgnoreCase(tomcatDir.getAbsolutePath())) {
+            LOGGER.error(target.getName() + ": the ICM root of the local target must be " + tomcatDir.getParent());
+            return false;
+        }
+        FileMgr fileMgr = new FileMgr();
+        boolean installed = StringUtils.isBlank(RegistrySnapshot.getInstance().getCurrentInstallVersion())
+                ? install(installer.getPath(), version, fileMgr)
+                : uninstallAndInstall(installer.getPath(), version, fileMgr);
+        if (!installed) {
+            LOGGER.info(target.getName() + ": the install failed, starting the services again.");
+            timedPhase("StartServices", () -> startServicesStep(createServiceController(W3SVC_SERVICENAME), createServiceController(TOMCAT_SERVICENAME)));
+        }
+        startDeferredDeletion();
+        return installed;
+    }
+
+    /**
+     * Upgrade the installed Tomcat to another point release by replacing only the files which changed.
+     * The distribution is compared to the install while Tomcat runs, the services are only stopped to apply
+     * the changes. The pre-flight checks run and the user confirms before anything is stopped.
+     * The install is snapshotted first and rolled back if the changes cannot be applied.
+     * @param distribution Tomcat zip or extracted distribution directory
+     * @param console console asking the confirmation
+     */
+    protected static void runDeltaUpgrade(File distribution, SystemConsole console) {
+        RegistrySnapshot registry = RegistrySnapshot.getInstance();
+        String currentInstallDir = registry.getCurrentInstallDirectory();
+        String currentVersion = registry.getCurrentInstallVersion();
+        String newVersion = DeltaUpgrader.versionOf(distribution.getName());
+        if (StringUtils.isBlank(currentInstallDir) || StringUtils.isBlank(currentVersion)) {
+            LOGGER.info("Tomcat is not found on this system, a delta upgrade needs an installed Tomcat.");
+            return;
+        }
+        if (!distribution.exists() || newVersion == null || !newVersion.startsWith("9.0.")) {
+            LOGGER.info("Tomcat distribution " + distribution + " not found or not a 9.0 point release.");
+            return;
+        }
+
+        InstallTimeline.Span span = InstallTimeline.global().start("DeltaUpgradeTomcat", "run");
+        DeltaUpgrader upgrader = new DeltaUpgrader(new File(currentInstallDir));
+        try {
+            LOGGER.info("Comparing Tomcat " + currentVersion + " in " + currentInstallDir + " to " + distribution);
+            InstallTimeline.Span planSpan = InstallTimeline.global().start("PlanDelta", "phase");
+            DeltaUpgrader.Plan plan = upgrader.plan(distribution);
+            planSpan.end(true);
+            if (plan.isEmpty()) {
+                LOGGER.info("Tomcat in " + currentInstallDir + " already matches " + distribution.getName() + ".");
+                span.end(InstallTimeline.OUTCOME_SKIPPED);
+                return;
+            }
+            LOGGER.info("Upgrading Tomcat from " + currentVersion + " to " + newVersion + ": " + plan);
+            if (!timedPhase("Preflight", () -> preflight(null, currentInstallDir)) || !installStepConfirmation(console)) {
+                span.end(false);
+                return;
+            }
+
+            ServiceController tomcatSvcCtl = createServiceController(TOMCAT_SERVICENAME);
+            ServiceController w3SvcCtl = createServiceController(W3SVC_SERVICENAME);
+            if (!timedPhase("StopServices", () -> stopServiceStep(tomcatSvcCtl, w3SvcCtl))) {
+                span.end(false);
+                return;
+            }
+            boolean snapshotTaken = timedPhase("SnapshotTomcat", () -> snapshotTomcat(currentInstallDir));
+            if (timedPhase("ApplyDelta", () -> upgrader.apply(plan, getDeferredDeleter(currentInstallDir)))) {
+                registry.stageCurrentInstallVersion(newVersion);
+                if (!registry.commit())
+                    LOGGER.info("Failed to record Tomcat " + newVersion + " in the registry.");
+                LOGGER.info("Tomcat has been upgraded from " + currentVersion + " to " + newVersion + ".");
+                span.end(true);
+            }
+            else {
+                LOGGER.info("The delta upgrade failed.");
+                if (snapshotTaken && timedPhase("RollbackTomcat", () -> rollbackTomcat(currentInstallDir)))
+                    LOGGER.info("The previous Tomcat files have been restored.");
+                span.end(false);
+            }
+            if (timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl)))
+                timedPhase("Warmup", InstallTomcat::warmUpContexts);
+            LOGGER.info(LOG_CHECKING_MSG);
+        }
+        catch (IOException e) {
+            LOGGER.error("Unable to compare " + currentInstallDir + " to " + distribution + " - " + e.getMessage());
+        }
+        finally {
+            span.end(InstallTimeline.OUTCOME_ERROR);
+            upgrader.discard();
+            startDeferredDeletion();
+            writeTimeline();
+        }
+    }
+
+    /**
+     * Reinstall Tomcat from its distribution with the heavy work done while the services run.
+     * The tree is built in a staging directory by the post install steps writing files, permissions included.
+     * The outage is only the swap of the directories, the registry and IIS updates, and the restart;
+     * the time staged and the time down are reported separately. When the new tree cannot be started
+     * the previous one is swapped back.
+     * @param distribution Tomcat zip or extracted distribution directory
+     */
+    protected static void runStagedInstall(File distribution) {
+        RegistrySnapshot registry = RegistrySnapshot.getInstance();
+        String currentInstallDir = registry.getCurrentInstallDirectory();
+        String currentVersion = registry.getCurrentInstallVersion();
+        String newVersion = DeltaUpgrader.versionOf(distribution.getName());
+        if (StringUtils.isBlank(currentInstallDir) || StringUtils.isBlank(currentVersion)) {
+            LOGGER.info("Tomcat is not found on this system, a staged install needs the Tomcat service installed.");
+            return;
+        }
+        if (!distribution.exists() || newVersion == null || !newVersion.startsWith("9.0.")) {
+            LOGGER.info("Tomcat distribution " + distribution + " not found or not a 9.0 point release.");
+            return;
+        }
+
+        InstallTimeline.Span span = InstallTimeline.global().start("StagedInstallTomcat", "run");
+        FileMgr fileMgr = new FileMgr();
+        //the trash of the run is next to the install directory, not to the staging directory
+        getDeferredDeleter(currentInstallDir);
+        StagedInstall staged = new StagedInstall(new File(currentInstallDir), PRESERVED_DIRS, BackoffSchedule.DEFAULT, SWAP_RENAME_TIMEOUT);
+        String stagingDir = staged.getStagingDir().getPath();
+        String icmInstallDrive = registry.getIcmInstallDrive();
+        final String icmInstall = icmInstallDrive + ":\\icm\\install";
+        final String icmBin = icmInstallDrive + ":\\icm\\bin";
+        try {
+            if (!timedPhase("Preflight", () -> preflight(null, currentInstallDir))) {
+                span.end(false);
+                return;
+            }
+            //while the services run
+            InstallTimeline.Span stagingSpan = InstallTimeline.global().start("StageTomcat", "phase");
+            boolean stagedOk = staged.prepare(distribution);
+            if (stagedOk) {
+                StepExecutor executor = new StepExecutor(POST_INSTALL_PARALLELISM);
+                addTreeSteps(executor, fileMgr, stagingDir, icmInstall, icmBin);
+                executor.addStep(STEP_APPLY_PERMISSIONS, () -> InstallStepPostInstallApplyPermissions(fileMgr, stagingDir),
+                        STEP_CLEANUP_TOMCAT_DIR, STEP_UNZIP_ASSEMBLIES, STEP_RESTORE_WAR_FILES, STEP_RESTORE_JAR_FILES,
+                        STEP_COPY_AJP_CONNECTOR, STEP_RESTORE_PROPERTIES_FILES, STEP_GENERATE_SERVER_XML, STEP_RESTORE_WORKER_FILES, STEP_EXPAND_WARS);
+                Map<String, StepResult> stepResults = executor.runAll();
+                StepExecutor.logResults(stepResults);
+                stagedOk = StepExecutor.allSucceeded(stepResults);
+            }
+            stagingSpan.end(stagedOk);
+            if (!stagedOk) {
+                LOGGER.info("Tomcat could not be staged, the running Tomcat has not been touched.");
+                staged.discard();
+                span.end(false);
+                return;
+            }
+
+            //outage
+            InstallTimeline.Span outageSpan = InstallTimeline.global().start("Outage", "phase");
+            ServiceController tomcatSvcCtl = createServiceController(TOMCAT_SERVICENAME);
+            ServiceController w3SvcCtl = createServiceController(W3SVC_SERVICENAME);
+            boolean success = timedPhase("StopServices", () -> stopServiceStep(tomcatSvcCtl, w3SvcCtl))
+                    && timedPhase("SwapTomcatDir", staged::swap);
+            if (success) {
+                registry.stageCurrentInstallVersion(newVersion);
+                if (!registry.commit())
+                    LOGGER.info("Failed to record Tomcat " + newVersion + " in the registry.");
+                StepExecutor executor = new StepExecutor(POST_INSTALL_PARALLELISM);
+                executor.addStep(STEP_RESTORE_TOMCAT_PARAMETERS, () -> InstallStepPostInstallRestoreTomcatParameters(currentInstallDir));
+                executor.addStep(STEP_IIS_INSTALLER, () -> InstallStepPostInstall_IISInstallerWithRuntime(icmBin, currentInstallDir));
+                executor.addStep(STEP_REMOVE_JAKARTA_FILTER, () -> InstallStepPostInstallRemoveJakartaISAPIFilter(), STEP_IIS_INSTALLER);
+                Map<String, StepResult> stepResults = executor.runAll();
+                StepExecutor.logResults(stepResults);
+                success = StepExecutor.allSucceeded(stepResults)
+                        && timedPhase("ChangeTomcatServiceLogOnAccount", InstallTomcat::changeTomcatServiceLogOnAccount)
+                        && timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl));
+                if (!success) {
+                    LOGGER.info("The staged Tomcat could not be started, swapping the previous Tomcat back.");
+                    stopServiceStep(tomcatSvcCtl, w3SvcCtl);
+                    if (timedPhase("RevertTomcatDir", staged::revert)) {
+                        registry.stageCurrentInstallVersion(currentVersion);
+                        registry.commit();
+                    }
+                }
+            }
+            if (!success)
+                timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl));
+            outageSpan.end(success);
+            span.set("stagedMillis", stagingSpan.getDurationMillis()).set("outageMillis", outageSpan.getDurationMillis());
+            LOGGER.info("Tomcat " + newVersion + (success ? " installed" : " not installed") + ": " + stagingSpan.getDurationMillis()
+                    + " ms staged while the services were running, " + outageSpan.getDurationMillis() + " ms with the services down.");
+            if (success) {
+                staged.releasePrevious(getDeferredDeleter(currentInstallDir));
+                timedPhase("Warmup", InstallTomcat::warmUpContexts);
+            }
+            staged.discard();
+            span.end(success);
+            LOGGER.info(LOG_CHECKING_MSG);
+        }
+        finally {
+            span.end(InstallTimeline.OUTCOME_ERROR);
+            startDeferredDeletion();
+            writeTimeline();
+        }
+    }
+
+    /**
+     * Put back the Tomcat tree and options saved before the last reinstall, then start the services
+     * @param tomcatDir Tomcat directory, null for the directory in the registry or icm\tomcat on the ICM drive
+     */
+    protected static void runRollback(String tomcatDir) {
+        String currentInstallDir = tomcatDir;
+        if (StringUtils.isBlank(currentInstallDir))
+            currentInstallDir = RegistrySnapshot.getInstance().getCurrentInstallDirectory();
+        if (StringUtils.isBlank(currentInstallDir))
+            currentInstallDir = getCurrentICMInstallDrive() + ":\\icm\\tomcat";
+        final String installDir = currentInstallDir;
+        if (!new TomcatSnapshot(new File(installDir), PRESERVED_DIRS).exists()) {
+            LOGGER.info("No snapshot of " + installDir + " to roll back to.");
+            return;
+        }
+
+        InstallTimeline.Span span = InstallTimeline.global().start("RollbackTomcat", "run");
+        try {
+            ServiceController tomcatSvcCtl = createServiceController(TOMCAT_SERVICENAME);
+            ServiceController w3SvcCtl = createServiceController(W3SVC_SERVICENAME);
+            if (!timedPhase("StopServices", () -> stopServiceStep(tomcatSvcCtl, w3SvcCtl)))
+                LOGGER.warn("The services could not be stopped, rolling back anyway.");
+            boolean rolledBack = timedPhase("RollbackTomcat", () -> rollbackTomcat(installDir));
+            startDeferredDeletion();
+            span.end(timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl)) && rolledBack);
+            LOGGER.info(LOG_CHECKING_MSG);
+        }
+        finally {
+            span.end(InstallTimeline.OUTCOME_ERROR);
+            writeTimeline();
         }
     }
 
@@ -145,9 +561,10 @@ public class InstallTomcat {
      * Launch the console to prompt user input, then prepare install, install and post install.
      *
      * @param console
+     * @return true if Tomcat has been installed and started, false if it has not or the install has been cancelled
      * @throws Exception
      */
-    protected static void prepareInstallAndDoInstall(SystemConsole console) throws Exception {
+    protected static boolean prepareInstallAndDoInstall(SystemConsole console) throws Exception {
 
         LOGGER.info("This tool will install or reinstall Tomcat 9 to the provided point release.");
 
@@ -159,18 +576,18 @@ public class InstallTomcat {
         FileMgr fileMgr = new FileMgr();
         //validate input to make sure it is a valid path for installer
         if (!fileMgr.validateInstallerPath(newInstallerPath))
-            return;
+            return false;
 
         //validate the install major number is 9 and extension is ".exe"
         String installerFileName = new File(newInstallerPath).getName();
         if (!fileMgr.validateInstallerFileName(installerFileName, TOMCAT_INSTALLER_PREFIX, TOMCAT_INSTALLER_EXTENSION)) {
             LOGGER.info("Tomcat Installer should have 9 as major version number, 0 as minor version number and extension is '.exe'.");
-            return;
+            return false;
         }
      
         //need to confirm with user, if they want to proceed for installation, if yes, go and install it
         if (!installStepConfirmation(console))
-            return;
+            return false;
         
         //start installation process
         String installerVersionString = getInstallerVersion(installerFileName);
@@ -179,30 +596,111 @@ public class InstallTomcat {
         /// here is the idea that we do not need to specify the current version of tomcat and current drive as those could be also not specified(exist)
         /// we have to add a logic here to verify first if tomcat services is already installed or not.
         
-        String currentTomcatVersion = RegistryManager.getCurrentInstallVersion();
+        boolean installed;
+        String currentTomcatVersion = RegistrySnapshot.getInstance().getCurrentInstallVersion();
         if (StringUtils.isBlank(currentTomcatVersion)) {
         	LOGGER.info(" Tomcat is not found on this system");
-            install(newInstallerPath, installerVersionString, fileMgr);  
+            startJournal(MODE_INSTALL, newInstallerPath, installerVersionString, getCurrentICMInstallDrive() + ":\\icm\\tomcat");
+            installed = install(newInstallerPath, installerVersionString, fileMgr);  
         }
         else {
         	LOGGER.info(" Tomcat is found on this system, will start rebuilding it by uninstalling and installing it.");
-            uninstallAndInstall(newInstallerPath, installerVersionString, fileMgr);
+            startJournal(MODE_REINSTALL, newInstallerPath, installerVersionString, RegistrySnapshot.getInstance().getCurrentInstallDirectory());
+            installed = uninstallAndInstall(newInstallerPath, installerVersionString, fileMgr);
+        }
+        startDeferredDeletion();
+        return installed;
+    }
+
+    /**
+     * Resume the last install or reinstall from the first step it did not complete, without prompting.
+     * The steps completed by the failed run are skipped as long as their files are unchanged.
+     */
+    protected static void runResume() throws IOException {
+        try {
+            journal = InstallJournal.resume(new File(RESULTS_DIRECTORY));
+        }
+        catch (IOException e) {
+            LOGGER.info("The last install cannot be resumed, run the install again - " + e.getMessage());
+            return;
+        }
+        if (journal == null) {
+            LOGGER.info("No install to resume, " + InstallJournal.JOURNAL_FILE_NAME + " not found in " + RESULTS_DIRECTORY);
+            return;
+        }
+        if (journal.isComplete()) {
+            LOGGER.info("The last install completed, there is nothing to resume.");
+            return;
+        }
+        String newInstallerPath = journal.getProperty(InstallJournal.INSTALLER_PATH);
+        String installerVersionString = journal.getProperty(InstallJournal.INSTALLER_VERSION);
+        String mode = journal.getProperty(InstallJournal.MODE);
+        if (newInstallerPath == null || installerVersionString == null || !new File(newInstallerPath).isFile()) {
+            LOGGER.info("The Tomcat installer of the last install, " + newInstallerPath + ", is not available anymore.");
+            return;
+        }
+        LOGGER.info("Resuming the " + mode + " of Tomcat " + installerVersionString + " in " + journal.getProperty(InstallJournal.INSTALL_DIRECTORY));
+
+        InstallTimeline.Span span = InstallTimeline.global().start("InstallTomcat", "run").set("resumed", true);
+        try {
+            boolean installed;
+            if (MODE_REINSTALL.equals(mode))
+                installed = uninstallAndInstall(newInstallerPath, installerVersionString, new FileMgr());
+            else
+                installed = install(newInstallerPath, installerVersionString, new FileMgr());
+            startDeferredDeletion();
+            span.end(installed);
+        }
+        finally {
+            span.end(InstallTimeline.OUTCOME_ERROR);
+            writeTimeline();
         }
     }
+
+    /**
+     * Start the journal of this run, replacing the one of the previous run. The run goes on without a journal
+     * if it cannot be written, it just cannot be resumed.
+     */
+    private static void startJournal(String mode, String newInstallerPath, String installerVersionString, String installDir) {
+        try {
+            journal = InstallJournal.create(new File(RESULTS_DIRECTORY));
+            journal.setProperty(InstallJournal.MODE, mode);
+            journal.setProperty(InstallJournal.INSTALLER_PATH, new File(newInstallerPath).getAbsolutePath());
+            journal.setProperty(InstallJournal.INSTALLER_VERSION, installerVersionString);
+            if (installDir != null)
+                journal.setProperty(InstallJournal.INSTALL_DIRECTORY, installDir);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Unable to write the install journal, this run cannot be resumed - " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    /**
+     * @return the install directory recorded when resuming, the uninstaller has already removed it from the registry
+     */
+    private static String resumedInstallDir(String currentInstallDir) {
+        if (journal != null && journal.isResuming() && journal.getProperty(InstallJournal.INSTALL_DIRECTORY) != null)
+            return journal.getProperty(InstallJournal.INSTALL_DIRECTORY);
+        return currentInstallDir;
+    }
     
     /**
      * Install work and post install
      * @param newInstallerPath
+     * @return true if Tomcat has been installed and started
      */
-    protected static void install(String newInstallerPath, String installerVersionString, FileMgr fileMgr) {
+    protected static boolean install(String newInstallerPath, String installerVersionString, FileMgr fileMgr) {
  
-    	 SvcCtl tomcatSvcCtl = new SvcCtl(TOMCAT_SERVICENAME, MAX_ATTEMPTS, INTERVAL_TO_CHECK_STATE);
-         SvcCtl w3SvcCtl = new SvcCtl(W3SVC_SERVICENAME, MAX_ATTEMPTS, INTERVAL_TO_CHECK_STATE);
+    	 ServiceController tomcatSvcCtl = createServiceController(TOMCAT_SERVICENAME);
+         ServiceController w3SvcCtl = createServiceController(W3SVC_SERVICENAME);
           
     
          String currentInstallICMDrive= getCurrentICMInstallDrive(); 
          String currentInstallDir = currentInstallICMDrive+":\\icm\\tomcat"; 
      
+         if (!timedPhase("Preflight", () -> preflight(newInstallerPath, currentInstallDir)))
+             return false;
          
          //Stop W3SVC service to be able to delete "bin folder" 
          LOGGER.info("Stopping " + W3SVC_DESCRIPTIVE_NAME + " ...");
@@ -213,7 +711,7 @@ public class InstallTomcat {
          
          
          //5)Clean up all folders except logs
-         if(!cleanUpTomcat(currentInstallDir)) {
+         if (!journaledPhase("CleanUpTomcat", () -> installedTreeFingerprint(currentInstallDir), () -> cleanUpTomcat(currentInstallDir))) {
        
               LOGGER.warn("Failed to cleanup tomcat. But still continuing to install the tomcat, " +
                       "as stopping here will make system doesn't has any Tomcat version");
@@ -222,11 +720,12 @@ public class InstallTomcat {
          LOGGER.info(" installing Tomcat on this path"+currentInstallDir);
          
          //6)silent run new installer
-         if ( !installStepRunSilentInstaller(newInstallerPath, currentInstallDir, installerVersionString))
-             return;
+         if (!journaledPhase("RunSilentInstaller", () -> installerFingerprint(newInstallerPath, currentInstallDir, installerVersionString),
+                 () -> installStepRunSilentInstaller(newInstallerPath, currentInstallDir, installerVersionString)))
+             return false;
          
          LOGGER.info(" installation has been finished without postinstallation job");
-         postInstallWork(fileMgr, currentInstallDir, tomcatSvcCtl, w3SvcCtl);    
+         return postInstallWork(fileMgr, currentInstallDir, tomcatSvcCtl, w3SvcCtl);    
          }
     
     
@@ -234,138 +733,324 @@ public class InstallTomcat {
     /**
      * uninstall and Install work and post install
      * @param newInstallerPath
+     * @return true if Tomcat has been reinstalled and started, false otherwise, even when the previous Tomcat has been restored
      */
-    protected static void uninstallAndInstall(String newInstallerPath, String installerVersionString, FileMgr fileMgr) {
+    protected static boolean uninstallAndInstall(String newInstallerPath, String installerVersionString, FileMgr fileMgr) {
+
+        ServiceController tomcatSvcCtl = createServiceController(TOMCAT_SERVICENAME);
+        ServiceController w3SvcCtl = createServiceController(W3SVC_SERVICENAME);
+        String currentInstallDir = resumedInstallDir(RegistrySnapshot.getInstance().getCurrentInstallDirectory());
+        if (!timedPhase("Preflight", () -> preflight(newInstallerPath, currentInstallDir)))
+            return false;
 
-        SvcCtl tomcatSvcCtl = new SvcCtl(TOMCAT_SERVICENAME, MAX_ATTEMPTS, INTERVAL_TO_CHECK_STATE);
-        SvcCtl w3SvcCtl = new SvcCtl(W3SVC_SERVICENAME, MAX_ATTEMPTS, INTERVAL_TO_CHECK_STATE);
         //1) Stop Tomcat service and W3SVC service
-        if (!stopServiceStep(tomcatSvcCtl, w3SvcCtl))
-            return;
+        if (!timedPhase("StopServices", () -> stopServiceStep(tomcatSvcCtl, w3SvcCtl)))
+            return false;
         
-        String currentInstallDir = RegistryManager.getCurrentInstallDirectory();
+        boolean snapshotTaken = false;
         if (!(StringUtils.isBlank(currentInstallDir))) {
+            //keep what is needed to roll back before the uninstaller and the cleanup remove it
+            File snapshotManifest = new File(new TomcatSnapshot(new File(currentInstallDir), PRESERVED_DIRS).getSnapshotDir(), TomcatSnapshot.MANIFEST_FILE_NAME);
+            snapshotTaken = journaledPhase("SnapshotTomcat", () -> InstallJournal.fingerprint(snapshotManifest), () -> snapshotTomcat(currentInstallDir));
+            if (!snapshotTaken)
+                LOGGER.warn("No snapshot of the current Tomcat could be taken, a failed installation cannot be rolled back.");
             LOGGER.info("Tomcat seems it was already installed there so proceeding with uninstalling  ");
-            if (!uninstallTomcat(currentInstallDir)) {
+            if (!journaledPhase("UninstallTomcat", () -> installedTreeFingerprint(currentInstallDir), () -> uninstallTomcat(currentInstallDir))) {
                 LOGGER.warn("Tomcat uninstallation failed. But will still try to install the requested version of Tomcat 9.");
             }}
             
             
             //5)Clean up all folders except logs
-           if(!cleanUpTomcat(currentInstallDir)) {
+           if (!journaledPhase("CleanUpTomcat", () -> installedTreeFingerprint(currentInstallDir), () -> cleanUpTomcat(currentInstallDir))) {
          
                 LOGGER.warn("Failed to cleanup tomcat. But still continuing to install the tomcat, " +
                         "as stopping here will make system doesn't has any Tomcat version");
             }
 
         //6)silent run new installer
-        if ( !installStepRunSilentInstaller(newInstallerPath, currentInstallDir, installerVersionString))
-            return;
+        if (!journaledPhase("RunSilentInstaller", () -> installerFingerprint(newInstallerPath, currentInstallDir, installerVersionString),
+                () -> installStepRunSilentInstaller(newInstallerPath, currentInstallDir, installerVersionString))) {
+            if (snapshotTaken && timedPhase("RollbackTomcat", () -> rollbackTomcat(currentInstallDir))) {
+                LOGGER.info("The installation failed, the previous Tomcat files and options have been restored.");
+                if (journal != null)
+                    journal.discard();
+            }
+            //restored or not, IIS is not left stopped
+            timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl));
+            return false;
+        }
         
         LOGGER.info(" installation has been finished without postinstallation job");
-        postInstallWork(fileMgr, currentInstallDir, tomcatSvcCtl, w3SvcCtl);
+        return postInstallWork(fileMgr, currentInstallDir, tomcatSvcCtl, w3SvcCtl);
     }
     
     
     /**
      * uninstall and Install work and post install
      * @param newInstallerPath
+     * @return true if the post install steps succeeded and the services have been started
      */
 
-    protected static void postInstallWork(FileMgr fileMgr, String currentInstallDir, SvcCtl tomcatSvcCtl, SvcCtl w3SvcCtl) {
+    protected static boolean postInstallWork(FileMgr fileMgr, String currentInstallDir, ServiceController tomcatSvcCtl, ServiceController w3SvcCtl) {
 
         //Post upgrade work ...
         LOGGER.info("Starting post installation work ...");
-        boolean bPostWorkResults = true;
-       
-        //1) delete ROOT, docs and manager
-        bPostWorkResults = bPostWorkResults && installStepPostInstallCleanupTomcatDir(fileMgr, currentInstallDir);
- 
-        //2) Unzip unifiedconfig-realm-assembly.zip and shindig-cache-assembly.zip into the lib folder.
-        String unzipLocation = RegistryManager.getIcmInstallDrive() + ":\\icm\\tomcat\\lib";
-        String realmZip = RegistryManager.getIcmInstallDrive() + ":\\icm\\install\\unifiedconfig-realm-assembly.zip";
-        if (!fileMgr.unzipFile(realmZip, unzipLocation)) {
-            LOGGER.warn(String.format("Unzip of '%s' to '%s' failed. Please try unzipping manually", realmZip, unzipLocation));
-        }
-
-        String shindigZip = RegistryManager.getIcmInstallDrive() + ":\\icm\\install\\shindig-cache-assembly.zip";
-        if(!fileMgr.unzipFile(shindigZip, unzipLocation)) {
-            LOGGER.warn(String.format("Unzip of '%s' to '%s' failed. Please try unzipping manually", shindigZip, unzipLocation));
-        }
 
         /// getIcmInstallDrive where ICM has been installed
-        
-        String icmInstall = RegistryManager.getIcmInstallDrive() + ":\\icm\\install";
-        String icmBin = RegistryManager.getIcmInstallDrive() + ":\\icm\\bin";
-        ////
-        
-        //3) copy all the war files from  icm install and icm bin directories to the install Tomcat directory
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallRestoreWarFiles(fileMgr,currentInstallDir,icmInstall,icmBin);
+        String icmInstallDrive = RegistrySnapshot.getInstance().getIcmInstallDrive();
+        final String icmInstall = icmInstallDrive + ":\\icm\\install";
+        final String icmBin = icmInstallDrive + ":\\icm\\bin";
 
-        //4) copy all the required jar files files from icm install and icm bin directories to the install Tomcat directory
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallRestoreJarFiles(fileMgr, icmBin, currentInstallDir);
-        
-        //5) Create i386 folder in icm\tomcat\bin and copy web.config and isapi_redirect.dll there from icm install and icm bin directories  
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallCopyAJPConnector(fileMgr, currentInstallDir,icmInstall,icmBin);
+        //Steps touching disjoint files run concurrently, a step only waits for the steps it depends on.
+        StepExecutor executor = new StepExecutor(POST_INSTALL_PARALLELISM).setJournal(journal);
 
-        //6) copy the catalina.properties, web.xml, and server.xml from icm bin and icm install directories 
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallRestorePropertiesFile(fileMgr, icmBin, currentInstallDir,icmInstall);
+        //1) to 7) build the tree
+        addTreeSteps(executor, fileMgr, currentInstallDir, icmInstall, icmBin);
 
-        //7) works files updates
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallRestoreTomcatWorkerFiles(fileMgr,currentInstallDir);
+        //8) execute this command Execute - C:\WINDOWS\SysWOW64\cscript.exe "C:\icm\bin\install4iis.js"  "C:\icm\tomcat\bin\i386" "C:\icm\tomcat"
+        //   install4iis.js works on the i386 directory and the worker files, so it waits for both
+        executor.addStep(STEP_IIS_INSTALLER, () -> InstallStepPostInstall_IISInstallerWithRuntime(icmBin, currentInstallDir),
+                fingerprintOf(icmBin + "\\install4iis.js", currentInstallDir + "\\bin\\i386", currentInstallDir + "\\conf\\" + workersFile,
+                        currentInstallDir + "\\conf\\" + uriMapFile),
+                STEP_COPY_AJP_CONNECTOR, STEP_RESTORE_WORKER_FILES);
 
         //9) Restore the Tomcat options
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstall_IISInstallerWithRuntime(icmBin,currentInstallDir); 
-        
-        //10) execute this command Execute - C:\WINDOWS\SysWOW64\cscript.exe "C:\icm\bin\install4iis.js"  "C:\icm\tomcat\bin\i386" "C:\icm\tomcat"   
-       bPostWorkResults = bPostWorkResults && InstallStepPostInstallRestoreTomcatParameters();
-
-        //11) Apply Permissions on tomcat directory
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallApplyPermissions(fileMgr, currentInstallDir);
-       
-        //12) remove jakarta ISAPI filter
-        bPostWorkResults = bPostWorkResults && InstallStepPostInstallRemoveJakartaISAPIFilter();
+        executor.addStep(STEP_RESTORE_TOMCAT_PARAMETERS, () -> InstallStepPostInstallRestoreTomcatParameters(currentInstallDir),
+                () -> InstallJournal.fingerprint((Object) RegistrySnapshot.getInstance().retrieveTomcatOptions(), createJvmProfile(currentInstallDir)));
+
+        //10) Apply Permissions on tomcat directory, once every step writing into it is done
+        executor.addStep(STEP_APPLY_PERMISSIONS, () -> InstallStepPostInstallApplyPermissions(fileMgr, currentInstallDir),
+                fingerprintOf(currentInstallDir),
+                STEP_CLEANUP_TOMCAT_DIR, STEP_UNZIP_ASSEMBLIES, STEP_RESTORE_WAR_FILES, STEP_RESTORE_JAR_FILES,
+                STEP_COPY_AJP_CONNECTOR, STEP_RESTORE_PROPERTIES_FILES, STEP_GENERATE_SERVER_XML, STEP_RESTORE_WORKER_FILES, STEP_EXPAND_WARS,
+                STEP_IIS_INSTALLER);
+
+        //11) remove jakarta ISAPI filter registered by install4iis.js
+        executor.addStep(STEP_REMOVE_JAKARTA_FILTER, () -> InstallStepPostInstallRemoveJakartaISAPIFilter(),
+                fingerprintOf(applicationHostConfigPath()),
+                STEP_IIS_INSTALLER);
+
+        InstallTimeline.Span stepsSpan = InstallTimeline.global().start("PostInstallSteps", "phase");
+        Map<String, StepResult> stepResults = executor.runAll();
+        stepsSpan.end(StepExecutor.allSucceeded(stepResults));
+        StepExecutor.logResults(stepResults);
+        boolean bPostWorkResults = StepExecutor.allSucceeded(stepResults);
 
         if (bPostWorkResults) {
             LOGGER.info("Tomcat post installation has been done successfully.");
             //Change Tomcat service LogOn to Local System account
-            if(!changeTomcatServiceLogOnAccount()){
+            if (!timedPhase("ChangeTomcatServiceLogOnAccount", InstallTomcat::changeTomcatServiceLogOnAccount)) {
                 LOGGER.info("Start the Tomcat from ICM Service Control once updated the Tomcat service LogOn account by running above command.");
                 LOGGER.info(LOG_CHECKING_MSG);
-                return;
+                return false;
             }
             //starting W3SVC and Tomcat services
-            if (!startServicesStep(w3SvcCtl, tomcatSvcCtl))
-                return;
+            if (!timedPhase("StartServices", () -> startServicesStep(w3SvcCtl, tomcatSvcCtl)))
+                return false;
+            if (journal != null)
+                journal.complete();
+            //a warm up failure is reported, it does not fail the install
+            timedPhase("Warmup", InstallTomcat::warmUpContexts);
             LOGGER.info(LOG_CHECKING_MSG);
+            return true;
         }
         else {
             LOGGER.info("Tomcat post installation work has been done with error. Please check the log located in ..\\InstallTomcatResults directory");
+            if (journal != null)
+                LOGGER.info("Once the error is corrected, run the tool with -resume to complete the installation from the failed steps.");
+            return false;
         }   
     }
 
+    /**
+     * Add the post install steps building the Tomcat tree, those which only write into it
+     * @param tomcatDir directory the tree is built in, the install directory or a staging directory
+     */
+    private static void addTreeSteps(StepExecutor executor, FileMgr fileMgr, String tomcatDir, String icmInstall, String icmBin) {
+        final String currentInstallDir = tomcatDir;
+        final String unzipLocation = tomcatDir + "\\lib";
+
+        final String webApps = tomcatDir + TOMCAT_WEBAPPS_PATH;
+        //the server.xml and the workers file share the sizing, their AJP timeouts have to agree
+        final ServerXmlTuner.Sizing sizing = sizeServerXml(icmBin);
+
+        //the fingerprints only matter with a journal, they cover what each step reads and writes, but not the
+        //exploded directories the wars are expanded into: step 7b adds them to webapps after the others are recorded
+
+        //1) delete ROOT, docs and manager
+        executor.addStep(STEP_CLEANUP_TOMCAT_DIR, () -> installStepPostInstallCleanupTomcatDir(currentInstallDir),
+                cleanupFingerprint(new File(webApps)));
+
+        //2) Unzip unifiedconfig-realm-assembly.zip and shindig-cache-assembly.zip into the lib folder.
+        executor.addStep(STEP_UNZIP_ASSEMBLIES, () -> InstallStepPostInstallUnzipAssemblies(fileMgr, icmInstall, unzipLocation),
+                unzipFingerprint(Arrays.asList(new File(icmInstall + "\\unifiedconfig-realm-assembly.zip"),
+                        new File(icmInstall + "\\shindig-cache-assembly.zip")), new File(unzipLocation)));
+
+        //3) copy all the war files from  icm install and icm bin directories to the install Tomcat directory
+        executor.addStep(STEP_RESTORE_WAR_FILES, () -> InstallStepPostInstallRestoreWarFiles(fileMgr, currentInstallDir, icmInstall, icmBin),
+                warsFingerprint(new File(icmBin), new File(icmInstall), new File(webApps)),
+                STEP_CLEANUP_TOMCAT_DIR);
+
+        //4) copy all the required jar files files from icm install and icm bin directories to the install Tomcat directory
+        executor.addStep(STEP_RESTORE_JAR_FILES, () -> InstallStepPostInstallRestoreJarFiles(fileMgr, icmBin, currentInstallDir),
+                fingerprintOf(icmBin + "\\icm-websetup-shared.jar", icmBin + "\\jntservices.jar", icmBin + "\\catalina-jmx-remote.jar",
+                        icmBin + "\\registry.jar", tomcatDir + ICM_WEBSETUP_SHARED_JAR_PATH, tomcatDir + JNTSERVICES_JAR_PATH,
+                        tomcatDir + CATALINA_JMX_REMOTE_JAR_PATH, tomcatDir + ICM_REGISTRY_JAR_PATH));
+
+        //5) Create i386 folder in icm\tomcat\bin and copy web.config and isapi_redirect.dll there from icm install and icm bin directories
+        executor.addStep(STEP_COPY_AJP_CONNECTOR, () -> InstallStepPostInstallCopyAJPConnector(fileMgr, currentInstallDir, icmInstall, icmBin),
+                fingerprintOf(icmInstall + WEBCONFIG, icmBin + ISAPI, tomcatDir + "\\bin\\i386"));
+
+        //6) copy the catalina.properties and web.xml from icm bin and icm install directories
+        executor.addStep(STEP_RESTORE_PROPERTIES_FILES, () -> InstallStepPostInstallRestorePropertiesFile(fileMgr, icmBin, currentInstallDir, icmInstall),
+                fingerprintOf(icmBin + "\\web.xml", icmBin + "\\catalina.properties", tomcatDir + WEBXML, tomcatDir + TOMCAT_CATALINA_PROPERTIES_PATH));
+
+        //6b) generate the server.xml from server.xml.IIS.custom, sized for this machine
+        executor.addStep(STEP_GENERATE_SERVER_XML, () -> InstallStepPostInstallGenerateServerXml(icmBin, currentInstallDir, sizing),
+                () -> InstallJournal.fingerprint(new File(icmBin + IISCUSTOM), new File(icmBin, ServerXmlTuner.OVERRIDES_FILE_NAME),
+                        new File(tomcatDir + TOMCAT_SERVER_XML_PATH), MachineProfile.detect()));
+
+        //7) works files updates
+        executor.addStep(STEP_RESTORE_WORKER_FILES, () -> InstallStepPostInstallRestoreTomcatWorkerFiles(fileMgr, currentInstallDir, sizing),
+                fingerprintOf(tomcatDir + "\\conf\\" + uriMapFile, tomcatDir + "\\conf\\" + workersFile));
+
+        //7b) expand the restored wars, and precompile their JSPs against the libraries of the tree
+        executor.addStep(STEP_EXPAND_WARS, () -> InstallStepPostInstallExpandWars(icmBin, currentInstallDir),
+                expandedWarsFingerprint(new File(icmBin, WarPreExpander.CONFIG_FILE_NAME), new File(webApps)),
+                STEP_CLEANUP_TOMCAT_DIR, STEP_UNZIP_ASSEMBLIES, STEP_RESTORE_WAR_FILES, STEP_RESTORE_JAR_FILES);
+    }
+
+    /**
+     * @return supplier of the fingerprint of files and directories, computed when the step is checked or recorded
+     */
+    static Supplier<String> fingerprintOf(String... paths) {
+        return () -> {
+            Object[] files = new Object[paths.length];
+            for (int i = 0; i < paths.length; i++)
+                files[i] = new File(paths[i]);
+            return InstallJournal.fingerprint(files);
+        };
+    }
+
+    /**
+     * Fingerprint of the cleanup: the stock files of ROOT, manager and docs rather than the directories,
+     * the ROOT expanded from ROOT.war afterwards has none of them
+     */
+    static Supplier<String> cleanupFingerprint(File webApps) {
+        return () -> {
+            List<Object> files = new ArrayList<Object>();
+            for (String name : STOCK_WEBAPPS_FILES)
+                files.add(new File(webApps, name));
+            return InstallJournal.fingerprint(files.toArray());
+        };
+    }
+
+    /**
+     * Fingerprint of the unzip: the archives and the files of the lib directory they have entries for,
+     * the jars restored into the lib directory afterwards do not count
+     */
+    static Supplier<String> unzipFingerprint(List<File> archives, File unzipLocation) {
+        return () -> {
+            List<Object> files = new ArrayList<Object>();
+            for (File archive : archives) {
+                files.add(archive);
+                if (!archive.isFile())
+                    continue;
+                try (ZipFile zipFile = new ZipFile(archive)) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (!entry.isDirectory())
+                            files.add(new File(unzipLocation, entry.getName()));
+                    }
+                }
+                catch (IOException e) {
+                    files.add(e.toString());
+                }
+            }
+            return InstallJournal.fingerprint(files.toArray());
+        };
+    }
+
+    /**
+     * Fingerprint of the restored wars: the wars of each directory, without the directories they are expanded into
+     */
+    static Supplier<String> warsFingerprint(File... dirs) {
+        return () -> {
+            List<Object> wars = new ArrayList<Object>();
+            for (File dir : dirs) {
+                wars.add(dir.getPath());
+                wars.addAll(warsOf(dir));
+            }
+            return InstallJournal.fingerprint(wars.toArray());
+        };
+    }
+
+    /**
+     * Fingerprint of the expansion: the configuration, the wars of webapps and the war-tracker of their exploded directories
+     */
+    static Supplier<String> expandedWarsFingerprint(File config, File webApps) {
+        return () -> {
+            List<Object> files = new ArrayList<Object>();
+            files.add(config);
+            for (File war : warsOf(webApps)) {
+                files.add(war);
+                files.add(new File(WarPreExpander.explodedDirOf(war), WarPreExpander.WAR_TRACKER));
+            }
+            return InstallJournal.fingerprint(files.toArray());
+        };
+    }
+
+    private static List<File> warsOf(File dir) {
+        File[] wars = dir.listFiles(file -> file.isFile() && file.getName().toLowerCase().endsWith(".war"));
+        if (wars == null)
+            return Collections.emptyList();
+        Arrays.sort(wars);
+        return Arrays.asList(wars);
+    }
+
+    /**
+     * Fingerprint of the uninstall and the cleanup: the service executable, the uninstaller and the top level
+     * entries of the Tomcat directory. The post install steps only write below the top level entries, a
+     * resume after them still matches.
+     */
+    private static String installedTreeFingerprint(String currentInstallDir) {
+        File tomcatDir = new File(currentInstallDir);
+        String[] names = tomcatDir.list();
+        if (names != null)
+            Arrays.sort(names);
+        return InstallJournal.fingerprint(new File(currentInstallDir, TOMCAT_SERVICE_EXE_PATH), new File(currentInstallDir, "Uninstall.exe"), names);
+    }
+
+    /**
+     * Fingerprint of the silent install, the installer and the service executable it lays down
+     */
+    private static String installerFingerprint(String newInstallerPath, String currentInstallDir, String installerVersionString) {
+        return InstallJournal.fingerprint(new File(newInstallerPath), installerVersionString, currentInstallDir,
+                new File(currentInstallDir, TOMCAT_SERVICE_EXE_PATH));
+    }
+
     /**
      * Setting Tomcat service Log On Account as LocalSystem
      *
      * @return true if command executed successfully
      */
     private static boolean changeTomcatServiceLogOnAccount() {
-        String updateTomcatLogOnAccount = "sc config " + TOMCAT_SERVICENAME + " obj=LocalSystem";
+        //sc expects the value of obj= as a separate argument
+        String updateTomcatLogOnAccount = "sc config " + TOMCAT_SERVICENAME + " obj= LocalSystem";
         LOGGER.info("Updating Tomcat service LogOn Account with command : " + updateTomcatLogOnAccount);
         try {
-            Process proc = Runtime.getRuntime().exec(updateTomcatLogOnAccount);
-            int retCode = proc.waitFor();
-            if (retCode == 0) {
+            ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("sc config " + TOMCAT_SERVICENAME, COMMAND_TIMEOUT,
+                    "sc", "config", TOMCAT_SERVICENAME, "obj=", "LocalSystem"));
+            if (result.isSuccess()) {
                 Thread.sleep(1000);
                 return true;
             }
             //In the error case
-            LOGGER.error("Errors have occurred during the update of tomcat LogOn account with return code:" + retCode);
+            LOGGER.error("Errors have occurred during the update of tomcat LogOn account: " + result);
         } catch (InterruptedException e) {
             // That's okay, we can continue
             return true;
-        } catch (Exception e) {
-            LOGGER.error("Exception caught during tomcat service config change." , e);
         }
         LOGGER.info("Failed to update tomcat service LogOn config, Please run ' " + updateTomcatLogOnAccount + " ' command from Command Prompt.");
         return false;
@@ -381,18 +1066,25 @@ public class InstallTomcat {
         String uninstallCommand = currentInstallDir + "\\Uninstall.exe /S -ServiceName=Tomcat9";
         LOGGER.info("Uninstalling existing Tomcat with command : " + uninstallCommand);
         try {
-            Process proc = Runtime.getRuntime().exec(uninstallCommand);
-            int retCode = proc.waitFor();
-            if (retCode != 0) {
-                LOGGER.error("Error occurred during uninstallation: " + retCode);
+            ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("Uninstall.exe", INSTALLER_TIMEOUT,
+                    currentInstallDir + "\\Uninstall.exe", "/S", "-ServiceName=" + TOMCAT_SERVICENAME));
+            if (!result.isSuccess()) {
+                LOGGER.error("Error occurred during uninstallation: " + result);
                 return false;
             }
-            LOGGER.info("Waiting 40 seconds for tomcat to be fully uninstalled");
-            Thread.sleep(40000);
-            return true;
-        } catch (InterruptedException e) {
-            // That's okay, we can continue
-            return true;
+            //Uninstall.exe hands over to a copy of itself and returns before the files and the service are removed.
+            //The registry version is not waited for, an uninstall leaving it behind is not an error, the installer rewrites it
+            LOGGER.info("Waiting for tomcat to be fully uninstalled");
+            ServiceBackend serviceBackend = new ScServiceBackend();
+            InstallTimeline.Span readySpan = InstallTimeline.global().start("Wait for uninstallation", "wait");
+            boolean uninstalled = readySpan.end(new ReadinessWaiter(BackoffSchedule.DEFAULT, UNINSTALL_READY_TIMEOUT).awaitAll("Tomcat uninstallation",
+                    ReadinessConditions.pathAbsent(new File(currentInstallDir, TOMCAT_SERVICE_EXE_PATH)),
+                    ReadinessConditions.pathAbsent(new File(currentInstallDir, "Uninstall.exe")),
+                    ReadinessConditions.serviceRemoved(serviceBackend, TOMCAT_SERVICENAME)));
+            RegistrySnapshot.getInstance().invalidate();
+            if (!uninstalled)
+                LOGGER.error("Tomcat has not been uninstalled within " + UNINSTALL_READY_TIMEOUT / 1000 + " seconds");
+            return uninstalled;
         } catch (Exception e) {
             LOGGER.warn("An exception was emitted when uninstalling existing Tomcat - " + e.getMessage() , e);
             return false;
@@ -406,28 +1098,255 @@ public class InstallTomcat {
      */
     private static boolean cleanUpTomcat(String currentInstallDir) {
         LOGGER.info("Trying to cleanup tomcat folder");
-        List<String> preservedDirs = Arrays.asList("logs");
         File installDir = new File(currentInstallDir);
         File[] dirEntries = installDir.listFiles();
         if (dirEntries == null) return true;
+        DeferredDeleter deleter = getDeferredDeleter(currentInstallDir);
         boolean success = true;
+        long start = System.currentTimeMillis();
         for (File dirEntry : dirEntries){
-            if (preservedDirs.contains(dirEntry.getName()) && dirEntry.isDirectory())
+            if (PRESERVED_DIRS.contains(dirEntry.getName()) && dirEntry.isDirectory())
                 LOGGER.info("Preserving " + dirEntry);
             else {
                 LOGGER.info("Deleting " + dirEntry);
-                try {
-                    FileUtils.forceDelete(dirEntry);
-                } catch (Exception e) {
-                    LOGGER.error("Failed to delete " + dirEntry + " file.", e);
+                if (!deleter.moveToTrash(dirEntry))
                     success = false;
-                }
             }
         }
+        LOGGER.info("Tomcat folder cleaned up in " + (System.currentTimeMillis() - start) + " ms, deletion of the old files is deferred");
 
         return success;
     }
 
+    /**
+     * Take a snapshot of the Tomcat directory, version and options, replacing the one of the previous run
+     * @param currentInstallDir
+     * @return true if the snapshot has been taken
+     */
+    private static boolean snapshotTomcat(String currentInstallDir) {
+        LOGGER.info("Taking a snapshot of " + currentInstallDir);
+        RegistrySnapshot registry = RegistrySnapshot.getInstance();
+        return new TomcatSnapshot(new File(currentInstallDir), PRESERVED_DIRS)
+                .create(registry.getCurrentInstallVersion(), registry.retrieveTomcatOptions());
+    }
+
+    /**
+     * Restore the Tomcat directory and options from the snapshot, the replaced files are deleted in the background.
+     * When the uninstaller already removed the Tomcat service, it is registered again from the restored tree first.
+     * @param currentInstallDir
+     * @return true if the files, the service and the options have been restored
+     */
+    private static boolean rollbackTomcat(String currentInstallDir) {
+        LOGGER.info("Rolling back " + currentInstallDir + " to its snapshot");
+        TomcatSnapshot snapshot = new TomcatSnapshot(new File(currentInstallDir), PRESERVED_DIRS);
+        if (!snapshot.restore(getDeferredDeleter(currentInstallDir)))
+            return false;
+        try {
+            RegistrySnapshot registry = RegistrySnapshot.getInstance();
+            if (new ScServiceBackend().queryState(TOMCAT_SERVICENAME) == ServiceState.NOT_FOUND) {
+                if (!registerTomcatService(currentInstallDir))
+                    return false;
+                String tomcatVersion = snapshot.getTomcatVersion();
+                if (tomcatVersion != null)
+                    registry.stageCurrentInstallVersion(tomcatVersion);
+                registry.stageJVMMemory(createJvmProfile(currentInstallDir).getHeapMegabytes());
+            }
+            String[] tomcatOptions = snapshot.getTomcatOptions();
+            if (tomcatOptions != null)
+                registry.stageTomcatOptions(tomcatOptions);
+            if (registry.commit())
+                return true;
+            LOGGER.info("Failed to restore the Tomcat version and options.");
+        }
+        catch (IOException e) {
+            LOGGER.error("Unable to read the Tomcat version and options of the snapshot - " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Register the Tomcat service of a restored tree again, as the Tomcat installer registers it,
+     * and record its install path where the installer records it
+     * @param currentInstallDir
+     * @return true if the service has been registered
+     */
+    private static boolean registerTomcatService(String currentInstallDir) {
+        LOGGER.info("The Tomcat service has been removed, registering it again from " + currentInstallDir);
+        ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("tomcat9 //IS//", COMMAND_TIMEOUT,
+                currentInstallDir + "\\" + TOMCAT_SERVICE_EXE_PATH, "//IS//" + TOMCAT_SERVICENAME,
+                "--DisplayName=" + TOMACAT_DISPLAY_NAME,
+                "--Install=" + currentInstallDir + "\\" + TOMCAT_SERVICE_EXE_PATH,
+                "--Startup=" + SERVICE_STARTUP_TYPE_AUTOMATIC,
+                "--Classpath=" + currentInstallDir + "\\bin\\bootstrap.jar;" + currentInstallDir + "\\bin\\tomcat-juli.jar",
+                "--Jvm=auto", "--StartMode=jvm", "--StopMode=jvm",
+                "--StartClass=org.apache.catalina.startup.Bootstrap", "--StartParams=start",
+                "--StopClass=org.apache.catalina.startup.Bootstrap", "--StopParams=stop",
+                "--StartPath=" + currentInstallDir, "--StopPath=" + currentInstallDir,
+                "--LogPath=" + currentInstallDir + "\\logs", "--StdOutput=auto", "--StdError=auto"));
+        if (!result.isSuccess()) {
+            LOGGER.error("Errors have occurred during the registration of the Tomcat service: " + result);
+            return false;
+        }
+        result = PROCESS_RUNNER.run(new ProcessRunner.Command("reg add Tomcat install path", COMMAND_TIMEOUT,
+                "reg", "add", "HKLM\\" + SystemRegistryBackend.TOMCAT_SERVICE_KEY, "/v", "InstallPath", "/t", "REG_SZ",
+                "/d", currentInstallDir, "/f"));
+        if (!result.isSuccess()) {
+            LOGGER.error("Unable to record the Tomcat install path: " + result);
+            return false;
+        }
+        RegistrySnapshot.getInstance().invalidate();
+        return true;
+    }
+
+    /**
+     * Check everything the install reads before any service is stopped, a missing input then costs no outage
+     * @param newInstallerPath Tomcat installer, null for an install from a distribution
+     * @param tomcatDir directory Tomcat is installed into
+     * @return true if nothing is missing
+     */
+    private static boolean preflight(String newInstallerPath, String tomcatDir) {
+        RegistrySnapshot registry = RegistrySnapshot.getInstance();
+        String icmInstallDrive = registry.getIcmInstallDrive();
+        PreflightChecker checker = new PreflightChecker();
+        checker.requireValue("ICM install drive", () -> icmInstallDrive);
+        checker.requireValue("Tomcat install directory", () -> tomcatDir);
+        if (StringUtils.isBlank(icmInstallDrive) || StringUtils.isBlank(tomcatDir))
+            return checker.runAll(PREFLIGHT_TIMEOUT).isSuccess();
+        String icmInstall = icmInstallDrive + ":\\icm\\install";
+        String icmBin = icmInstallDrive + ":\\icm\\bin";
+
+        //the sources of the post install steps
+        Map<String, File> inputs = new LinkedHashMap<String, File>();
+        inputs.put("unifiedconfig-realm-assembly.zip", new File(icmInstall, "unifiedconfig-realm-assembly.zip"));
+        inputs.put("shindig-cache-assembly.zip", new File(icmInstall, "shindig-cache-assembly.zip"));
+        inputs.put("web.config", new File(icmInstall + WEBCONFIG));
+        inputs.put("isapi_redirect.dll", new File(icmBin + ISAPI));
+        inputs.put("install4iis.js", new File(icmBin, "install4iis.js"));
+        inputs.put("icm-websetup-shared.jar", new File(icmBin, "icm-websetup-shared.jar"));
+        inputs.put("jntservices.jar", new File(icmBin, "jntservices.jar"));
+        inputs.put("catalina-jmx-remote.jar", new File(icmBin, "catalina-jmx-remote.jar"));
+        inputs.put("registry.jar", new File(icmBin, "registry.jar"));
+        inputs.put("web.xml", new File(icmBin, "web.xml"));
+        inputs.put("server.xml.IIS.custom", new File(icmBin + IISCUSTOM));
+        inputs.put("catalina.properties", new File(icmBin, "catalina.properties"));
+        inputs.put("cscript.exe", new File(CSCRIPT_PATH));
+        inputs.put("applicationHost.config", new File(applicationHostConfigPath()));
+        for (Map.Entry<String, File> input : inputs.entrySet())
+            checker.requireFile(input.getKey(), input.getValue());
+        //the war step copies the wars of icm\bin into icm\install before deploying the shindig war from there
+        final File shindigInstall = new File(icmInstall, SHINDIG_WAR);
+        final File shindigBin = new File(icmBin, SHINDIG_WAR);
+        checker.addCheck(SHINDIG_WAR, () -> shindigInstall.isFile() && shindigInstall.canRead() || shindigBin.isFile() && shindigBin.canRead()
+                ? null : "neither " + shindigInstall + " nor " + shindigBin + " is readable");
+        checker.requireDirectory("ICM install directory", new File(icmInstall));
+        checker.requireDirectory("ICM bin directory", new File(icmBin));
+
+        if (newInstallerPath != null) {
+            checker.requireExecutable("Tomcat installer", new File(newInstallerPath));
+            //hashed while the other checks run
+            checker.addCheck("Tomcat installer checksum", () -> {
+                InstallerVerifier.Result verification = createInstallerVerifier().verify(new File(newInstallerPath));
+                return verification.isVerified() ? null : verification.getDetail();
+            });
+        }
+        checker.addCheck("CCE_JAVA_HOME", () -> {
+            String javaHome = System.getenv("CCE_JAVA_HOME");
+            if (StringUtils.isBlank(javaHome))
+                return "CCE_JAVA_HOME is not set";
+            return new File(javaHome, "bin\\java.exe").isFile() ? null : javaHome + " has no bin\\java.exe";
+        });
+        //the server.xml is generated after the uninstall, the template and the overrides have to be usable before
+        checker.addCheck("server.xml tuning", () -> {
+            ServerXmlTuner.Sizing sizing = ServerXmlTuner.Sizing.forMachine(MachineProfile.detect(),
+                    ServerXmlTuner.loadOverrides(new File(icmBin, ServerXmlTuner.OVERRIDES_FILE_NAME)));
+            new ServerXmlTuner().preview(new File(icmBin + IISCUSTOM), sizing);
+            return null;
+        });
+        //the options are restored after the reinstall, they have to be readable before the uninstall
+        if (StringUtils.isNotBlank(registry.getCurrentInstallVersion()))
+            checker.addCheck("Tomcat options", () -> registry.retrieveTomcatOptions() != null ? null : "the Java options of the Tomcat service cannot be read");
+
+        //the inputs are copied at most twice, by the copies and the snapshot, the installer unpacks to about three times its size
+        long needed = DISK_SPACE_MARGIN + (newInstallerPath == null ? 0 : 3 * new File(newInstallerPath).length());
+        for (File input : inputs.values())
+            needed += 2 * input.length();
+        checker.requireFreeSpace("Disk space", new File(tomcatDir), needed);
+
+        PreflightChecker.Report report = checker.runAll(PREFLIGHT_TIMEOUT);
+        if (!report.isSuccess())
+            LOGGER.info("Nothing has been stopped or changed. Correct the problems above and run the tool again.");
+        return report.isSuccess();
+    }
+
+    /**
+     * @return the verifier of the installers, with the allow-list of the tool directory and the hash cache of the results
+     */
+    private static InstallerVerifier createInstallerVerifier() {
+        return new InstallerVerifier(new File(InstallerVerifier.ALLOW_LIST_FILE_NAME), new File(RESULTS_DIRECTORY, InstallerVerifier.CACHE_FILE_NAME));
+    }
+
+    /**
+     * Run a phase of the install in a span of the install timeline
+     */
+    private static boolean timedPhase(String name, BooleanSupplier phase) {
+        return InstallTimeline.global().time(name, "phase", phase);
+    }
+
+    /**
+     * Run a phase of the install recorded in the journal. When resuming, a phase completed by the failed run
+     * with the same fingerprint is skipped, until one phase has to run again; every phase after it runs too.
+     * @param fingerprint fingerprint of what the phase works on, computed before the phase is checked and after it succeeded
+     */
+    private static boolean journaledPhase(String name, Supplier<String> fingerprint, BooleanSupplier phase) {
+        if (journal == null)
+            return timedPhase(name, phase);
+        if (journal.isCompleted(name, fingerprint.get())) {
+            LOGGER.info("Skipping " + name + ", completed by an earlier run.");
+            InstallTimeline.global().start(name, "phase").set("reason", "journal").end(InstallTimeline.OUTCOME_SKIPPED);
+            journal.recordChained(name, fingerprint);
+            return true;
+        }
+        journal.invalidateRemaining();
+        boolean success = timedPhase(name, phase);
+        if (success)
+            journal.recordChained(name, fingerprint);
+        else
+            journal.recordFailed(name);
+        return success;
+    }
+
+    /**
+     * Write the install timeline next to the log, after the deferred deletion so that it is part of it
+     */
+    private static void writeTimeline() {
+        if (deferredDeleter != null && !deferredDeleter.awaitCompletion(DEFERRED_DELETION_TIMEOUT))
+            LOGGER.info("The deletion of the old Tomcat files continues in the background.");
+        InstallTimeline.global().writeReports(new File(RESULTS_DIRECTORY));
+    }
+
+    /**
+     * @return the deleter of the run, its trash is next to the install directory
+     */
+    private static synchronized DeferredDeleter getDeferredDeleter(String currentInstallDir) {
+        if (deferredDeleter == null)
+            deferredDeleter = new DeferredDeleter(new File(currentInstallDir));
+        return deferredDeleter;
+    }
+
+    /**
+     * Delete in the background what was moved to the trash by this run, and what an earlier run left there
+     */
+    private static synchronized void startDeferredDeletion() {
+        if (deferredDeleter == null) {
+            //nothing deleted by this run, still reclaim what an interrupted run left
+            String currentInstallDir = RegistrySnapshot.getInstance().getCurrentInstallDirectory();
+            if (StringUtils.isBlank(currentInstallDir))
+                return;
+            deferredDeleter = new DeferredDeleter(new File(currentInstallDir));
+        }
+        deferredDeleter.startBackgroundDeletion();
+    }
+
     /**
      * Get the Tomcat installer version from installer file name
      * @param installerFileName Tomcat installer file name
@@ -536,11 +1455,12 @@ public class InstallTomcat {
      * perform the Tomcat upgrade from current version to the version in installer directory
      * @param installerPath  Tomcat installer full path name
      * @param currentInstallDir  current Tomcat Install directory
+     * @param installerVersion  Tomcat version of the installer, the registry version once installed
      * @return true if succeed, false if fail
      */
-    protected static boolean performTomcatInstall(String installerPath, String currentInstallDir) {
+    protected static boolean performTomcatInstall(String installerPath, String currentInstallDir, String installerVersion) {
 
-        String icmInstallDrive = RegistryManager.getIcmInstallDrive();
+        String icmInstallDrive = RegistrySnapshot.getInstance().getIcmInstallDrive();
 
         final String icmConfiglocation = icmInstallDrive + ":\\icm\\install\\tomcatConfig.ini";
 
@@ -583,17 +1503,32 @@ public class InstallTomcat {
             LOGGER.error("Exception caught during upgrade. " + e);
         }
 
-        String installTomcatCmd = installerPath + " /C="+ icmConfiglocation + " /S /D=" + currentInstallDir;
+        LOGGER.info("Installing Tomcat with command : " + installerPath + " /C=" + icmConfiglocation + " /S /D=" + currentInstallDir);
         try {
-            Process proc = Runtime.getRuntime().exec(installTomcatCmd);
-            int retCode = proc.waitFor();
+            RegistrySnapshot registry = RegistrySnapshot.getInstance();
+            //NSIS requires /D to be the last argument
+            ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command(new File(installerPath).getName(), INSTALLER_TIMEOUT,
+                    installerPath, "/C=" + icmConfiglocation, "/S", "/D=" + currentInstallDir));
+            if (!result.isStarted())
+                throw new IOException(result.getError());
             //In the error case
-            if (retCode != 0) {
-                LOGGER.error("Errors have occurred during the installation with return code:" + retCode);
+            if (!result.isSuccess()) {
+                LOGGER.error("Errors have occurred during the installation: " + result);
+                return false;
+            }
+            LOGGER.info("Waiting for tomcat to be fully installed");
+            ServiceBackend serviceBackend = new ScServiceBackend();
+            InstallTimeline.Span readySpan = InstallTimeline.global().start("Wait for installation", "wait");
+            boolean installed = readySpan.end(new ReadinessWaiter(BackoffSchedule.DEFAULT, INSTALL_READY_TIMEOUT).awaitAll("Tomcat installation",
+                    ReadinessConditions.pathExists(new File(currentInstallDir)),
+                    ReadinessConditions.pathExists(new File(currentInstallDir, TOMCAT_SERVICE_EXE_PATH)),
+                    ReadinessConditions.serviceRegistered(serviceBackend, TOMCAT_SERVICENAME),
+                    ReadinessConditions.valueEquals("Tomcat registry version", registry.getBackend()::getCurrentInstallVersion, installerVersion)));
+            registry.invalidate();
+            if (!installed) {
+                LOGGER.error("Tomcat " + installerVersion + " has not been installed within " + INSTALL_READY_TIMEOUT / 1000 + " seconds");
                 return false;
             }
-            LOGGER.info("Waiting 30 seconds for tomcat to be fully installed");
-            Thread.sleep(30000);
             updateServiceNameAndStartupType(currentInstallDir);
             return true;
         }
@@ -608,12 +1543,12 @@ public class InstallTomcat {
         return false;
     }
 
-    private static void updateServiceNameAndStartupType(String currentInstallDir) throws IOException, InterruptedException {
-        String command = currentInstallDir +"\\bin\\tomcat9 //US//"+TOMCAT_SERVICENAME+ " --Startup="+SERVICE_STARTUP_TYPE_AUTOMATIC + " --DisplayName="+"\""+TOMACAT_DISPLAY_NAME+"\"";
-        Process proc = Runtime.getRuntime().exec(command);
-        int retCode = proc.waitFor();
-        if (retCode != 0) {
-            LOGGER.error("Errors have occurred during the updating with return code:" + retCode);
+    private static void updateServiceNameAndStartupType(String currentInstallDir) {
+        ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("tomcat9 //US//", COMMAND_TIMEOUT,
+                currentInstallDir + "\\" + TOMCAT_SERVICE_EXE_PATH, "//US//" + TOMCAT_SERVICENAME,
+                "--Startup=" + SERVICE_STARTUP_TYPE_AUTOMATIC, "--DisplayName=" + TOMACAT_DISPLAY_NAME));
+        if (!result.isSuccess()) {
+            LOGGER.error("Errors have occurred during the updating: " + result);
         }
     }
 
@@ -628,10 +1563,19 @@ public class InstallTomcat {
     
     protected static String getCurrentICMInstallDrive() {
 
-        return Registry.getStringValue(RegistryRoot.IcmInstallDrive.getRoot(),RegistryRoot.IcmInstallDrive.getKey(), "InstallDrive");
+        return RegistrySnapshot.getInstance().getInstallDriveValue();
     }
 
 
+    /**
+     * Create the controller for a local service, probing its state with the default backoff schedule
+     * @param serviceName service name
+     * @return service controller
+     */
+    protected static ServiceController createServiceController(String serviceName) {
+        return new ServiceController(serviceName, new ScServiceBackend(), BackoffSchedule.DEFAULT, SERVICE_TRANSITION_DEADLINE);
+    }
+
     /**
      * Confirm with the user for upgrade operation before proceed
      * @param console
@@ -649,7 +1593,7 @@ public class InstallTomcat {
      * @param w3SvcCtl
      * @param tomcatSvcCtl
      */
-    private static boolean startServicesStep(SvcCtl w3SvcCtl, SvcCtl tomcatSvcCtl) {
+    private static boolean startServicesStep(ServiceController w3SvcCtl, ServiceController tomcatSvcCtl) {
         boolean success = true;
         //Start W3SVC service
         if (!w3SvcCtl.startServiceAndCheckState()) {
@@ -671,13 +1615,38 @@ public class InstallTomcat {
         return success;
     }
 
+    /**
+     * Wait for the mapped contexts to be deployed and warm them up, following icm\\bin\\warmup.properties.
+     * The services are running whatever the outcome, the warm up only reports.
+     * @return true if every context has been deployed and answered all its requests
+     */
+    private static boolean warmUpContexts() {
+        File config = new File(RegistrySnapshot.getInstance().getIcmInstallDrive() + ":\\icm\\bin", ContextWarmer.CONFIG_FILE_NAME);
+        try {
+            ContextWarmer warmer = ContextWarmer.fromConfig(config);
+            if (warmer == null) {
+                LOGGER.info("Warm up of the web contexts disabled by " + config);
+                return true;
+            }
+            LOGGER.info("Warming up " + MAPPED_CONTEXTS + " ...");
+            boolean success = true;
+            for (ContextWarmer.ContextResult result : warmer.warmUp(MAPPED_CONTEXTS))
+                success &= result.isSuccess();
+            return success;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Unable to warm up the web contexts with " + config + " - " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Step to stop Tomcat and W3Svc services
      * @param tomcatSvcCtl tomcat service control object
      * @param w3SvcCtl  w3svc service control object
      * @return true if successful, otherwise false
      */
-    private static boolean stopServiceStep(SvcCtl tomcatSvcCtl, SvcCtl w3SvcCtl) {
+    private static boolean stopServiceStep(ServiceController tomcatSvcCtl, ServiceController w3SvcCtl) {
         //Stop Tomcat service  and W3SVC service,
         LOGGER.info("Stopping Tomcat service ...");
         if (!tomcatSvcCtl.stopServiceAndCheckState()) {
@@ -703,7 +1672,7 @@ public class InstallTomcat {
      */
     private static String[] installStepSaveTomcatOptions() {
         LOGGER.info("Saving the options for the current Tomcat.");
-        String[] tomcatOptions = RegistryManager.retrieveTomcatOptions();
+        String[] tomcatOptions = RegistrySnapshot.getInstance().retrieveTomcatOptions();
         if (tomcatOptions != null) {
             LOGGER.debug("The current Tomcat options:\n");
             for (String option : tomcatOptions) {
@@ -729,13 +1698,13 @@ public class InstallTomcat {
         //silent run new installer
         LOGGER.info("Running Tomcat installer ...");
         LOGGER.info ("Installer path: " + newInstallerPath);
-        if (!performTomcatInstall(newInstallerPath, currentInstallDir)) {
+        if (!performTomcatInstall(newInstallerPath, currentInstallDir, installerVersionString)) {
             LOGGER.info(LOG_CHECKING_MSG);
             return false;
         }
         LOGGER.info("Tomcat installer has been run successfully.");
 
-        String tomcatVersionAfterUpgrade = RegistryManager.getCurrentInstallVersion();
+        String tomcatVersionAfterUpgrade = RegistrySnapshot.getInstance().getCurrentInstallVersion();
         if (tomcatVersionAfterUpgrade.compareTo(installerVersionString) == 0) {
             LOGGER.debug("The value of Tomcat registry version has been updated correctly. ");
         }
@@ -748,28 +1717,29 @@ public class InstallTomcat {
      * @param currentInstallDir
      * @return true if success, otherwise false
      */
-    private static boolean installStepPostInstallCleanupTomcatDir(FileMgr fileMgr, String currentInstallDir ) {
+    private static boolean installStepPostInstallCleanupTomcatDir(String currentInstallDir) {
         boolean bPostWorkResults = true;
         //delete ROOT, docs and manager
         LOGGER.info("Doing cleanup on the Tomcat directory " + currentInstallDir);
         String cleanupPath= currentInstallDir + TOMCAT_WEBAPPS_PATH;
+        DeferredDeleter deleter = getDeferredDeleter(currentInstallDir);
 
         String rootPath = cleanupPath + TOMCAT_SERVER_ROOT_PATH;
-        if (fileMgr.cleanupDirecotry(rootPath))
+        if (deleter.moveToTrash(new File(rootPath)))
             LOGGER.debug(rootPath + " directory has been deleted.");
         else {
             LOGGER.info("Failed to delete " + rootPath + " directory.");
             bPostWorkResults = false;
         }
         String managerPath = cleanupPath + TOMCAT_SERVER_MANAGER_PATH;
-        if (fileMgr.cleanupDirecotry(managerPath))
+        if (deleter.moveToTrash(new File(managerPath)))
             LOGGER.debug(managerPath + " directory has been deleted.");
         else {
             LOGGER.info("Failed to delete " + managerPath + " directory.");
             bPostWorkResults = false;
         }
         String docsPath = cleanupPath + TOMCAT_SERVER_DOCS_PATH;
-        if (fileMgr.cleanupDirecotry(docsPath))
+        if (deleter.moveToTrash(new File(docsPath)))
             LOGGER.debug(docsPath + " directory has been deleted.");
         else {
             LOGGER.info("Failed to delete " + docsPath + " directory.");
@@ -779,115 +1749,128 @@ public class InstallTomcat {
         return bPostWorkResults;
     }
 
+    /**
+     * Post Install step to unzip unifiedconfig-realm-assembly.zip and shindig-cache-assembly.zip into the lib folder.
+     * Both archives are extracted together, entries already in place are kept.
+     * A failed unzip is only reported, it can be done manually afterwards.
+     * @param fileMgr
+     * @param icmInstall
+     * @param unzipLocation
+     * @return always true
+     */
+    private static boolean InstallStepPostInstallUnzipAssemblies(FileMgr fileMgr, String icmInstall, String unzipLocation) {
+        List<File> archives = Arrays.asList(new File(icmInstall + "\\unifiedconfig-realm-assembly.zip"),
+                new File(icmInstall + "\\shindig-cache-assembly.zip"));
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(true).extractAll(archives, new File(unzipLocation));
+
+        for (String archive : report.getFailedArchives())
+            LOGGER.warn(String.format("Unzip of '%s' to '%s' failed. Please try unzipping manually", archive, unzipLocation));
+        if (!report.getErrors().isEmpty())
+            LOGGER.warn(String.format("Unzip to '%s' failed for %s. Please try unzipping manually", unzipLocation, report.getErrors()));
+        return true;
+    }
+
 
     /**
      * Copy the war files from the webapps folder of the tomcat install folders to webapps folder of the tomcat installation directory.
+     * War files already identical at the destination are skipped. webapps gets copies, not hard links: the links of a file
+     * share its security descriptor, the ACLs applied to icm\tomcat would also be applied to the wars of icm\install.
      * @param tomcatBackupDir
      * @param currentInstallDir
      * @return
      */
     private static boolean InstallStepPostInstallRestoreWarFiles(FileMgr fileMgr,String currentInstallDir, String icmInstall, String icmBin){
-        
-    	boolean bPostWorkResults = true;
-    	
-    	  String currentWebAppsDir = currentInstallDir + TOMCAT_WEBAPPS_PATH;
-    	
-    	 
-           File RootFile = new File(currentWebAppsDir+"ROOT.war");
 
-           
-   	    try {
-   	    	   File shindigFile = new File(currentWebAppsDir+"\\ccbu-common-shindig-server.war");
-               FileUtils.copyDirectory(new File(icmBin), new File(icmInstall), new WildcardFileFilter("*.war"), true);
-               FileUtils.copyDirectory(new File(icmInstall), new File(currentWebAppsDir), new WildcardFileFilter("*.war"), true);
-              
-             	LOGGER.info("Restoring ROOT.war from ccbu-common-shindig-server.war" );
-                String sourceFile = icmInstall +"\\ccbu-common-shindig-server.war", destFile = currentWebAppsDir+"\\ROOT.war";
-
-                if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-                    LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-                    LOGGER.info(" ROOT.war has been restored");
-                }
-                else {
-                    LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-                    bPostWorkResults = false;
-                }
-         
-               
-               if (shindigFile.exists())
-               {
-               	LOGGER.info("the shindigFile is there , deleting it..");
-               	
+        boolean bPostWorkResults = true;
+        String currentWebAppsDir = currentInstallDir + TOMCAT_WEBAPPS_PATH;
+        IncrementalCopier copier = new IncrementalCopier(new File(RESULTS_DIRECTORY));
+        IncrementalCopier.CopyStats stats = new IncrementalCopier.CopyStats();
+
+        try {
+            //icm\bin refreshes icm\install, both belong to ICM so they get real copies
+            stats.add(copier.copyMatching(new File(icmBin), new File(icmInstall), new WildcardFileFilter("*.war"), false));
+
+            //webapps gets copies, the links left there by earlier runs are replaced; the shindig war is only deployed as ROOT.war
+            FileFilter webAppsWars = FileFilterUtils.and(new WildcardFileFilter("*.war"),
+                    FileFilterUtils.notFileFilter(FileFilterUtils.nameFileFilter(SHINDIG_WAR)));
+            stats.add(copier.copyMatching(new File(icmInstall), new File(currentWebAppsDir), webAppsWars, false));
+
+            LOGGER.info("Restoring ROOT.war from " + SHINDIG_WAR);
+            stats.add(copier.copyFile(new File(icmInstall, SHINDIG_WAR), new File(currentWebAppsDir, ROOT_WAR), false));
+            LOGGER.info(" ROOT.war has been restored");
+
+            //left over by earlier runs which copied it before renaming it
+            File shindigFile = new File(currentWebAppsDir, SHINDIG_WAR);
+            if (shindigFile.exists()) {
+                LOGGER.info("the shindigFile is there , deleting it..");
                 FileUtils.forceDelete(shindigFile);
-               }
-               
-           }
-           catch (IOException e){
-               LOGGER.warn(String.format("Unable to copy the war files from '%s' to '%s'. Please perform the copy manually", icmInstall, currentWebAppsDir));
-               LOGGER.warn(e);
-               bPostWorkResults = false;
-           
-           }
-   	    
-   	    return bPostWorkResults;
+            }
+            LOGGER.info("War files restored, " + stats);
+        }
+        catch (IOException e){
+            LOGGER.warn(String.format("Unable to copy the war files from '%s' to '%s'. Please perform the copy manually", icmInstall, currentWebAppsDir));
+            LOGGER.warn(e);
+            bPostWorkResults = false;
+        }
 
-    	
+        return bPostWorkResults;
     }
 
 
     /**
-     * Post upgrade step to restore Tomcat options, JvmMx, JvmMs and failure actions
-     * @param tomcatOptions
+     * @return the JVM profile of this machine for the JVM of CCE_JAVA_HOME
+     */
+    private static JvmProfile createJvmProfile(String currentInstallDir) {
+        String javaHome = System.getenv("CCE_JAVA_HOME");
+        JvmProfile.JavaRuntime java = StringUtils.isBlank(javaHome) ? new JvmProfile.JavaRuntime(JvmProfile.UNKNOWN_VERSION, false)
+                : JvmProfile.JavaRuntime.detect(new File(javaHome));
+        return JvmProfile.forMachine(MachineProfile.detect(), java, currentInstallDir + "\\logs\\gc.log");
+    }
+
+    /**
+     * Post upgrade step to restore Tomcat options, JvmMx, JvmMs and failure actions.
+     * The ICM options and the JVM profile of the machine are merged into the options of the service,
+     * the heap of the profile becomes its JvmMx and JvmMs.
+     * @param currentInstallDir Tomcat install directory, the GC log is written in its logs directory
      * @return true if success, otherwise false
      */
-    private static boolean InstallStepPostInstallRestoreTomcatParameters() {
+    private static boolean InstallStepPostInstallRestoreTomcatParameters(String currentInstallDir) {
     	
     	boolean bPostWorkResults = true;
     	String [] tomcatOptions = installStepSaveTomcatOptions();
+    	if (tomcatOptions == null)
+    	    return false;
     	
     	String[] options = {
     	            "-DICM_ROOT=C:\\icm",
     	            "-Dcom.sun.management.jmxremote.ssl.need.client.auth=false",
     	            "-Dcom.sun.management.jmxremote.authenticate=false",
     	            "-Dcom.sun.management.jmxremote.ssl=false",
-    	            "-XX:MaxPermSize=128m",
     	            "-Dfile.encoding=UTF8",
     	            "-Dclient.encoding.override=UTF-8"
     	     };
     	
-    	  String[] combined = new String[options.length + (tomcatOptions.length-1)]; /// this to add the options properly
-    	
-    	
     	  String keyPath = "HKEY_CURRENT_USER\\SOFTWARE\\Microsoft\\Windows\\CurrentVersion\\Run";
           String valueName = "ApacheTomcatMonitor9.0_Tomcat9";
 
-          // Construct the delete command
-          String command = "reg delete \"" + keyPath + "\" /v " + valueName + " /f";
-    	
-    	
-
-    	System.arraycopy(tomcatOptions, 0, combined, 0, tomcatOptions.length-1);
-    	System.arraycopy(options, 0, combined, tomcatOptions.length-1, options.length);
-    
-
-    	// Print the combined array
-    	for (String opt : combined) {
-    	    System.out.println(opt);
-    	}
-    	
-    	LOGGER.info("Restoring the setting for Tomcat options.");
-        if (RegistryManager.setTomcatOptions(combined))
-            LOGGER.info("The setting for Tomcat options has been restored.");
+        //heap, collector, metaspace and GC logging sized for this machine and the JVM of the service
+        JvmProfile profile = createJvmProfile(currentInstallDir);
+        LOGGER.info("JVM profile of the Tomcat service: " + profile);
+        List<String> wanted = new ArrayList<String>(Arrays.asList(options));
+        wanted.addAll(profile.getOptions());
+        List<String> changes = new ArrayList<String>();
+        String[] combined = JvmProfile.merge(tomcatOptions, wanted, changes);
+        for (String change : changes)
+            LOGGER.info("Tomcat option " + change);
+
+    	LOGGER.info("Restoring the setting for Tomcat options, the Tomcat JvmMx and JvmMs.");
+        RegistrySnapshot registry = RegistrySnapshot.getInstance();
+        registry.stageTomcatOptions(combined);
+        registry.stageJVMMemory(profile.getHeapMegabytes());
+        if (registry.commit())
+            LOGGER.info("The setting for Tomcat options, the JvmMx and JvmMs for Tomcat have been restored.");
         else {
-            LOGGER.info("Failed to restore Tomcat options.");
-            bPostWorkResults= false;
-        }
-
-        LOGGER.info("Restoring the Tomcat JvmMx and JvmMs.");
-        if (RegistryManager.setJVMMemory(0x00000200))
-            LOGGER.info("The JvmMx and JvmMs for Tomcat has been restored.");
-        else {
-            LOGGER.info("Failed to restore Tomcat JvmMx and JvmMs.");
+            LOGGER.info("Failed to restore Tomcat options, JvmMx and JvmMs.");
             bPostWorkResults= false;
         }
 
@@ -896,92 +1879,33 @@ public class InstallTomcat {
         
         /// delete the options
         
-        try {
-            Process process = Runtime.getRuntime().exec(command);
-
-            // Capture output
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-
-            String line;
-            System.out.println("Output:");
-            while ((line = stdInput.readLine()) != null) {
-                System.out.println(line);
-            }
-
-            System.out.println("Errors (if any):");
-            while ((line = stdError.readLine()) != null) {
-                System.err.println(line);
-                bPostWorkResults= false;
-            }
-
-            int exitCode = process.waitFor();
-            System.out.println("Registry deletion completed with exit code: " + exitCode);
-
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("reg delete Tomcat options", COMMAND_TIMEOUT,
+                "reg", "delete", keyPath, "/v", valueName, "/f"));
+        LOGGER.info("Registry deletion completed: " + result);
+        //anything reported on standard error is a failure, whatever the exit code
+        if (!result.isCompleted() || !result.getErrorOutput().isEmpty())
             bPostWorkResults= false;
-        }
            
         return bPostWorkResults;
     
     }
 
     /**
-     * create icm\tomcat\bin\i386 and copy web.config and isapi_redirect.dll there from icm install and icm bin directories  
+     * create icm\tomcat\bin\i386 and copy web.config and isapi_redirect.dll there from icm install and icm bin directories
      * @return
      */
     private static boolean  InstallStepPostInstallCopyAJPConnector(FileMgr fileMgr, String currentInstallDir, String icmInstall, String icmBin) {
-		
-		/// first we have to create the directory...
-		 
-		  LOGGER.info("Creating i386 directory...");
-		  
-		  String i386Dir =currentInstallDir + "\\bin\\i386";
-		  
-		try {
-			
-			Path i386Path = Paths.get(currentInstallDir);
-			if (!Files.exists(i386Path)) {
-			    Files.createDirectories(i386Path);
-			}	
-		}
-		
-		catch(Exception e) {
-            LOGGER.error("Exception caught during creating i386 Directory " , e);
-        }
-		
-		String sourceFile = icmInstall + WEBCONFIG, destFile = i386Dir +WEBCONFIG;
-
-        
-
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("icm-websetup-shared.jar has been restored");
-        }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-             return false;
-        }
-        
-        
-         sourceFile = icmBin + ISAPI;
-         destFile = i386Dir +ISAPI;
 
-        
+        //the i386 directory is created by the copy
+        String i386Dir = currentInstallDir + "\\bin\\i386";
+        LOGGER.info("Copying the AJP connector into " + i386Dir);
 
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("icm-websetup-shared.jar has been restored");
-        }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-             return false;}
-             
-        return true;  
-        
+        List<BatchFileCopier.CopyRequest> requests = new ArrayList<BatchFileCopier.CopyRequest>();
+        requests.add(new BatchFileCopier.CopyRequest(icmInstall + WEBCONFIG, i386Dir + WEBCONFIG, "web.config"));
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + ISAPI, i386Dir + ISAPI, "isapi_redirect.dll"));
+        return BatchFileCopier.logResults(new BatchFileCopier().copyAll(requests));
     }
-    
+
 
     /**
      * Post install step apply permissions on tomcat directory and files recursively
@@ -994,13 +1918,15 @@ public class InstallTomcat {
         String parentDir = currentInstallDir + "\\..";
         LOGGER.info("Applying Permissions on " + currentInstallDir);
 
-        // Get parent directory permissions and apply those on currentInstallDir recursively
+        // Get parent directory and file permissions and apply those on currentInstallDir recursively, in one pass
         List<AclEntry> aclEntriesDir = fileMgr.getACLEntriesList(parentDir);
-        bPostWorkResults = fileMgr.applyACLEntries(currentInstallDir, Files::isDirectory, aclEntriesDir);
-        if (bPostWorkResults) {
-            // Apply file permissions
-            List<AclEntry> aclEntriesFile = fileMgr.getACLEntriesListofFirstFile(parentDir);
-            bPostWorkResults = fileMgr.applyACLEntries(currentInstallDir, Files::isRegularFile, aclEntriesFile);
+        List<AclEntry> aclEntriesFile = fileMgr.getACLEntriesListofFirstFile(parentDir);
+        if (aclEntriesDir == null || aclEntriesFile == null) {
+            LOGGER.info("Failed to read the permissions of " + parentDir);
+        } else {
+            AclTreeApplier.Report report = new AclTreeApplier<List<AclEntry>>(new WindowsAclBackend())
+                    .apply(Paths.get(currentInstallDir), aclEntriesDir, aclEntriesFile);
+            bPostWorkResults = report.isSuccess();
         }
 
         if (bPostWorkResults) {
@@ -1012,106 +1938,100 @@ public class InstallTomcat {
     }
     
     private static boolean InstallStepPostInstallRestoreJarFiles(FileMgr fileMgr, String icmBin, String currentInstallDir){
-        boolean bPostWorkResults = true;
-        LOGGER.info("Restoring the icm-websetup-shared.jar from the backup directory " + icmBin );
-        String sourceFile = icmBin + "\\icm-websetup-shared.jar", destFile = currentInstallDir + ICM_WEBSETUP_SHARED_JAR_PATH;
+        LOGGER.info("Restoring the icm-websetup-shared.jar, jntservices.jar, catalina-jmx-remote.jar and registry.jar from the backup directory " + icmBin );
+
+        List<BatchFileCopier.CopyRequest> requests = new ArrayList<BatchFileCopier.CopyRequest>();
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\icm-websetup-shared.jar", currentInstallDir + ICM_WEBSETUP_SHARED_JAR_PATH, "icm-websetup-shared.jar"));
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\jntservices.jar", currentInstallDir + JNTSERVICES_JAR_PATH, "jntservices.jar"));
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\catalina-jmx-remote.jar", currentInstallDir + CATALINA_JMX_REMOTE_JAR_PATH, "catalina-jmx-remote.jar"));
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\registry.jar", currentInstallDir + ICM_REGISTRY_JAR_PATH, "registry.jar"));
+        return BatchFileCopier.logResults(new BatchFileCopier().copyAll(requests));
+    }
 
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("icm-websetup-shared.jar has been restored");
-        }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-            bPostWorkResults = false;
-        }
-        LOGGER.info("Restoring the jntservices.jar from the backup directory " + icmBin );
-        sourceFile = icmBin + "\\jntservices.jar";
-        destFile = currentInstallDir + JNTSERVICES_JAR_PATH;
+    private static boolean InstallStepPostInstallRestorePropertiesFile(FileMgr fileMgr, String icmBin, String currentInstallDir, String icmInstall){
+        LOGGER.info("Restoring the web.xml and catalina.properties from the directory " + icmBin );
 
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("jntservices.jar has been restored");
-        }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-            bPostWorkResults = false;
-        }
-        LOGGER.info("Restoring the catalina-jmx-remote.jar from the backup directory " + icmBin );
-        
-        sourceFile = icmBin + "\\catalina-jmx-remote.jar";
-        destFile = currentInstallDir + CATALINA_JMX_REMOTE_JAR_PATH;
+        List<BatchFileCopier.CopyRequest> requests = new ArrayList<BatchFileCopier.CopyRequest>();
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\web.xml", currentInstallDir + WEBXML, "web.xml"));
+        requests.add(new BatchFileCopier.CopyRequest(icmBin + "\\catalina.properties", currentInstallDir + TOMCAT_CATALINA_PROPERTIES_PATH, "catalina.properties"));
+        return BatchFileCopier.logResults(new BatchFileCopier().copyAll(requests));
+    }
 
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("catalina-jmx-remote.jar has been restored");
+    /**
+     * Size the executor and the AJP connector for the processors and the memory of this machine,
+     * with the values of icm\bin\server-tuning.properties
+     * @return the sizing, null if the overrides cannot be used
+     */
+    private static ServerXmlTuner.Sizing sizeServerXml(String icmBin) {
+        try {
+            return ServerXmlTuner.Sizing.forMachine(MachineProfile.detect(),
+                    ServerXmlTuner.loadOverrides(new File(icmBin, ServerXmlTuner.OVERRIDES_FILE_NAME)));
         }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-            bPostWorkResults = false;
+        catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Unable to size the server.xml with " + icmBin + "\\" + ServerXmlTuner.OVERRIDES_FILE_NAME + " - " + e.getMessage());
+            return null;
         }
-        LOGGER.info("Restoring the registry.jar from the backup directory " + icmBin );
-        
-        sourceFile = icmBin + "\\registry.jar";
-        destFile = currentInstallDir + ICM_REGISTRY_JAR_PATH;
+    }
 
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("registry.jar has been restored");
+    /**
+     * Post install step generating the server.xml from server.xml.IIS.custom, with the executor and the AJP connector
+     * sized for the processors and the memory of this machine, and the values of icm\bin\server-tuning.properties
+     * @param sizing sizing of the executor and the AJP connector, null if it could not be computed
+     * @return true if the server.xml has been written
+     */
+    private static boolean InstallStepPostInstallGenerateServerXml(String icmBin, String currentInstallDir, ServerXmlTuner.Sizing sizing) {
+        if (sizing == null)
+            return false;
+        try {
+            new ServerXmlTuner().generate(new File(icmBin + IISCUSTOM), new File(currentInstallDir + TOMCAT_SERVER_XML_PATH), sizing);
+            return true;
         }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-            bPostWorkResults = false;
+        catch (Exception e) {
+            LOGGER.error("Failed to generate " + currentInstallDir + TOMCAT_SERVER_XML_PATH + " from " + icmBin + IISCUSTOM, e);
+            return false;
         }
-        return bPostWorkResults;
-        
     }
 
-    private static boolean InstallStepPostInstallRestorePropertiesFile(FileMgr fileMgr, String icmBin, String currentInstallDir, String icmInstall){
-        boolean bPostWorkResults = true;
-        LOGGER.info("Restoring the web.xml from the directory " + icmBin );
-        String sourceFile = icmBin + "\\web.xml", destFile = currentInstallDir + WEBXML;
-
-        if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-            LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-            LOGGER.info("web.xml has been restored");
+    /**
+     * Post install step expanding the wars of webapps at the same time, so that Tomcat starts on exploded contexts,
+     * and precompiling their JSPs when icm\bin\war-expansion.properties asks for it
+     * @return true if every war has been expanded
+     */
+    private static boolean InstallStepPostInstallExpandWars(String icmBin, String currentInstallDir) {
+        File config = new File(icmBin, WarPreExpander.CONFIG_FILE_NAME);
+        try {
+            String javaHome = System.getenv("CCE_JAVA_HOME");
+            WarPreExpander expander = WarPreExpander.fromConfig(config, MachineProfile.detect(), javaHome == null ? null : new File(javaHome));
+            if (expander == null) {
+                LOGGER.info("Expansion of the wars disabled by " + config + ", Tomcat expands them when it starts");
+                return true;
+            }
+            boolean success = true;
+            for (WarPreExpander.WarResult result : expander.expandAll(new File(currentInstallDir)))
+                success &= result.isSuccess();
+            return success;
         }
-        else {
-            LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-            bPostWorkResults = false;
+        catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Unable to expand the wars with " + config + " - " + e.getMessage());
+            return false;
         }
-        
-        LOGGER.info("Restoring the server.xml from the directory " + icmBin );  
-        sourceFile = icmBin + IISCUSTOM;
-        destFile = currentInstallDir+TOMCAT_SERVER_XML_PATH;
-
-
-       if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-           LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-           LOGGER.info("server.xml has been restored");}
-         
-       else {
-           LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-           bPostWorkResults = false;}
-       
-       LOGGER.info("Restoring the catalina.properties from the directory " + icmBin );  
-       sourceFile = icmBin + "\\catalina.properties";
-       destFile = currentInstallDir+TOMCAT_CATALINA_PROPERTIES_PATH;
-
+    }
 
-      if (fileMgr.copyTomcatFile(sourceFile, destFile)){
-          LOGGER.debug("The file " + sourceFile + " has been copied over to " + destFile);
-          LOGGER.info("server.xml has been restored");}
-        
-      else {
-          LOGGER.info("Failed to copy " + sourceFile + " to " + destFile);
-          bPostWorkResults = false;} 
-        
-        return bPostWorkResults;
-        
+    /**
+     * @param connectionTimeout connectionTimeout of the AJP connector in milliseconds, -1 or 0 when Tomcat never closes them
+     * @return connection_pool_timeout of the IIS connector in seconds, a minute or a tenth shorter, 0 for no timeout
+     */
+    private static int connectionPoolTimeout(int connectionTimeout) {
+        if (connectionTimeout <= 0)
+            return 0;
+        int seconds = connectionTimeout / 1000;
+        return Math.max(1, seconds - Math.min(60, seconds / 10));
     }
-    
-    private static boolean InstallStepPostInstallRestoreTomcatWorkerFiles(FileMgr fileMgr,String currentInstallDir){
+
+    private static boolean InstallStepPostInstallRestoreTomcatWorkerFiles(FileMgr fileMgr,String currentInstallDir, ServerXmlTuner.Sizing sizing){
        
+        if (sizing == null)
+            return false;
     	boolean bPostWorkResults = true;
         
     	// Define file paths
@@ -1126,39 +2046,37 @@ public class InstallTomcat {
         	    "# Define a worker to redirect requests to Tomcat"+ls+
         	    "worker.tomcat.type=ajp13" + ls +
         	    "worker.tomcat.host=127.0.0.1" + ls +
-        	    "worker.tomcat.port=8009" + ls;
-
-        	String uriMapContent =
-        	    "# Add URI mappings for Tomcat" + ls +
-        	    "/setup=worker.tomcat" + ls +
-        	    "/setup/*=worker.tomcat" + ls +ls+
-        	    "/unifiedconfig=worker.tomcat" + ls +
-        	    "/unifiedconfig/*=worker.tomcat" + ls +ls+
-        	    "/cceadmin=worker.tomcat" + ls +
-        	    "/cceadmin/*=worker.tomcat" + ls +ls+
-        	    "/cceadminnew=worker.tomcat" + ls +
-        	    "/cceadminnew/*=worker.tomcat" + ls +ls+
-        	    "/gadgets=worker.tomcat" + ls +
-        	    "/gadgets/*=worker.tomcat" + ls;
+        	    "worker.tomcat.port=8009" + ls +
+        	    "# Close idle pooled connections before Tomcat does, see the connectionTimeout of the AJP connector" + ls +
+        	    "worker.tomcat.connection_pool_timeout=" + connectionPoolTimeout(sizing.getConnectionTimeout()) + ls;
+
+        	StringBuilder uriMap = new StringBuilder("# Add URI mappings for Tomcat" + ls);
+        	for (int i = 0; i < MAPPED_CONTEXTS.size(); i++) {
+        	    if (i > 0)
+        	        uriMap.append(ls);
+        	    uriMap.append(MAPPED_CONTEXTS.get(i)).append("=worker.tomcat").append(ls);
+        	    uriMap.append(MAPPED_CONTEXTS.get(i)).append("/*=worker.tomcat").append(ls);
+        	}
+        	String uriMapContent = uriMap.toString();
 
         try {
             Files.createDirectories(Paths.get(currentInstallDir+"\\conf\\"));
 
             if (!Files.exists(uriMapPath)) {
                 Files.write(uriMapPath, uriMapContent.getBytes(StandardCharsets.UTF_8));
-                System.out.println("Created: " + uriMapPath);
+                LOGGER.info("Created: " + uriMapPath);
             } else {
-                System.out.println("Skipped (already exists): " + uriMapPath);
+                LOGGER.info("Skipped (already exists): " + uriMapPath);
             }
 
             if (!Files.exists(workersPath)) {
                 Files.write(workersPath, workersContent.getBytes(StandardCharsets.UTF_8));
-                System.out.println("Created: " + workersPath);
+                LOGGER.info("Created: " + workersPath);
             } else {
-                System.out.println("Skipped (already exists): " + workersPath);
+                LOGGER.info("Skipped (already exists): " + workersPath);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.error("Failed to write the IIS connector worker files in " + currentInstallDir + "\\conf", e);
             bPostWorkResults = false;}   
         
         
@@ -1169,131 +2087,57 @@ public class InstallTomcat {
     private static boolean InstallStepPostInstall_IISInstallerWithRuntime(String icmBin, String currentInstallDir) {
     	boolean bPostWorkResults = true;
 
-    	String command = "C:\\WINDOWS\\SysWOW64\\cscript.exe \"" 
-    		    + icmBin + "\\install4iis.js\" \"" 
-    		    + currentInstallDir + "\\bin\\i386\" \"" 
-    		    + currentInstallDir + "\"";
-
-        try {
-            // Execute the command
-            Process process = Runtime.getRuntime().exec(command);
-
-            // Read standard output
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            // Read error output
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-
-            String s;
-            System.out.println("Output:");
-            while ((s = stdInput.readLine()) != null) {
-                System.out.println(s);
-            }
-
-            System.out.println("Errors (if any):");
-            while ((s = stdError.readLine()) != null) {
-                System.err.println(s);
-            }
-
-            // Wait for the command to finish
-            int exitCode = process.waitFor();
-            System.out.println("Process exited with code: " + exitCode);
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        ProcessRunner.Result result = PROCESS_RUNNER.run(new ProcessRunner.Command("install4iis.js", IIS_INSTALLER_TIMEOUT,
+                CSCRIPT_PATH, icmBin + "\\install4iis.js", currentInstallDir + "\\bin\\i386", currentInstallDir));
+        LOGGER.info("install4iis.js completed: " + result);
+        //the exit code of the script is not significant, only a script which could not run or had to be killed fails the step
+        if (!result.isCompleted())
             bPostWorkResults=false;
-        }
      	
      return bPostWorkResults;
     	
     }
     
+    /**
+     * @return path of the IIS applicationHost.config
+     */
+    private static String applicationHostConfigPath() {
+        // Use Sysnative if using 32-bit Java on 64-bit Windows
+        return System.getenv("windir") + "\\Sysnative\\inetsrv\\config\\applicationHost.config";
+    }
+
+    /**
+     * Post install step to remove the Jakarta ISAPI filter registered by install4iis.js from applicationHost.config,
+     * at the global and the site levels. The rest of the file is left as it is.
+     * @return true if the filter has been found and removed
+     */
     private static boolean  InstallStepPostInstallRemoveJakartaISAPIFilter (){
-    	boolean bPostWorkResults = true;
-    	 try {
-             //String configPath = "C:\\Windows\\System32\\inetsrv\\config\\applicationHost.config";
-             
-             // Use Sysnative if using 32-bit Java on 64-bit Windows
-             String configPath = System.getenv("windir") + "\\Sysnative\\inetsrv\\config\\applicationHost.config";
-            
-             
-             File xmlFile = new File(configPath);
-             if (!xmlFile.exists()) {
-                 System.err.println("Config file not found: " + configPath);
-                 bPostWorkResults=false;
-             }
-
-             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-             factory.setNamespaceAware(false);
-             DocumentBuilder builder = factory.newDocumentBuilder();
-             Document doc = builder.parse(xmlFile);
-             doc.getDocumentElement().normalize();
-
-             boolean found = false;
-
-             // 1. Remove from global isapiFilters
-             NodeList globalFilters = doc.getElementsByTagName("isapiFilters");
-             for (int i = 0; i < globalFilters.getLength(); i++) {
-                 Element filters = (Element) globalFilters.item(i);
-                 NodeList filterList = filters.getElementsByTagName("filter");
-                 for (int j = 0; j < filterList.getLength(); j++) {
-                     Element filter = (Element) filterList.item(j);
-                     if ("Jakarta".equalsIgnoreCase(filter.getAttribute("name"))) {
-                         filters.removeChild(filter);
-                         found = true;
-                         System.out.println("Removed global Jakarta filter.");
-                         break;
-                     }
-                 }
-             }
-
-             // 2. Remove from site-level <location> nodes
-             NodeList locationNodes = doc.getElementsByTagName("location");
-             for (int i = 0; i < locationNodes.getLength(); i++) {
-                 Element location = (Element) locationNodes.item(i);
-                 NodeList systemWebServer = location.getElementsByTagName("system.webServer");
-
-                 for (int j = 0; j < systemWebServer.getLength(); j++) {
-                     Element sysWebServer = (Element) systemWebServer.item(j);
-                     NodeList isapiFilters = sysWebServer.getElementsByTagName("isapiFilters");
-
-                     for (int k = 0; k < isapiFilters.getLength(); k++) {
-                         Element filters = (Element) isapiFilters.item(k);
-                         NodeList filterList = filters.getElementsByTagName("filter");
-
-                         for (int m = 0; m < filterList.getLength(); m++) {
-                             Element filter = (Element) filterList.item(m);
-                             if ("Jakarta".equalsIgnoreCase(filter.getAttribute("name"))) {
-                                 filters.removeChild(filter);
-                                 found = true;
-                                 System.out.println("Removed Jakarta filter from site: " +
-                                     location.getAttribute("path"));
-                                 break;
-                             }
-                         }
-                     }
-                 }
-             }
-
-             if (found) {
-                 // Save updated config
-                 Transformer transformer = TransformerFactory.newInstance().newTransformer();
-                 transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-                 transformer.transform(new DOMSource(doc), new StreamResult(xmlFile));
-                 System.out.println("Updated applicationHost.config successfully.");
-             } else {
-                 System.out.println("Jakarta ISAPI filter not found at any level.");
-                 bPostWorkResults=false;;
-             }
-
-         } catch (Exception e) {
-             e.printStackTrace();
-             bPostWorkResults=false;
-         }
-    	
-    	
-    return bPostWorkResults;
-    	
+        boolean bPostWorkResults = true;
+        //String configPath = "C:\\Windows\\System32\\inetsrv\\config\\applicationHost.config";
+
+        String configPath = applicationHostConfigPath();
+
+        File xmlFile = new File(configPath);
+        if (!xmlFile.exists()) {
+            LOGGER.error("Config file not found: " + configPath);
+            return false;
+        }
+
+        try {
+            int removed = new IsapiFilterRemover().removeFilters(xmlFile, JAKARTA_FILTER_NAME);
+            if (removed > 0) {
+                LOGGER.info("Updated applicationHost.config successfully, " + removed + " Jakarta filter(s) removed.");
+            } else {
+                LOGGER.info("Jakarta ISAPI filter not found at any level.");
+                bPostWorkResults = false;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to remove the Jakarta ISAPI filter from " + configPath, e);
+            bPostWorkResults = false;
+        }
+
+        return bPostWorkResults;
     }
-    
-   
-}
\ No newline at end of file
+
+
+}
@@ -0,0 +1,223 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies a Tomcat installer against its SHA-512 before it is run.
+ * The reference is the .sha512 file Apache publishes next to every installer, placed next to the downloaded one,
+ * or else a local allow-list in the same format, one line per trusted installer.
+ * The installer is read through a file channel into a large direct buffer. Hashes are cached by path, size and
+ * modification time, so running the tool again with the same installer does not read it again.
+ */
+public class InstallerVerifier {
+
+    public static final String          CHECKSUM_SUFFIX = ".sha512";
+    public static final String          ALLOW_LIST_FILE_NAME = "trusted-installers.sha512";
+    public static final String          CACHE_FILE_NAME = "InstallerVerification.properties";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(InstallerVerifier.class);
+
+    private static final String         HASH_ALGORITHM = "SHA-512";
+    private static final int            BUFFER_SIZE = 4 * 1024 * 1024;
+
+    //"<128 hex digits> *name" as written by sha512sum, or the hex digits alone
+    private static final Pattern        CHECKSUM_LINE = Pattern.compile("^\\s*([0-9a-fA-F]{128})(?:\\s+\\*?(.*\\S))?\\s*$");
+
+    private final File                  allowList;
+    private final File                  cacheFile;
+    private final Properties            cache = new Properties();
+
+    /**
+     * Outcome of a verification
+     */
+    public static class Result {
+        private final boolean   verified;
+        private final String    hash;
+        private final String    detail;
+
+        Result(boolean verified, String hash, String detail) {
+            this.verified = verified;
+            this.hash = hash;
+            this.detail = detail;
+        }
+
+        public boolean isVerified() {
+            return verified;
+        }
+
+        /**
+         * @return SHA-512 of the installer, null if it could not be read
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return what the installer was verified against, or why it was not
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return (verified ? "verified against " : "not verified: ") + detail;
+        }
+    }
+
+    /**
+     * @param allowList file of trusted SHA-512 checksums, null for none
+     * @param cacheFile file caching the hashes between runs, null for no cache
+     */
+    public InstallerVerifier(File allowList, File cacheFile) {
+        this.allowList = allowList;
+        this.cacheFile = cacheFile;
+        if (cacheFile != null && cacheFile.isFile()) {
+            try (InputStream in = Files.newInputStream(cacheFile.toPath())) {
+                cache.load(in);
+            }
+            catch (IOException | IllegalArgumentException e) {
+                LOGGER.debug("Ignoring the installer hash cache " + cacheFile + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Verify an installer
+     * @param installer installer to run
+     * @return the result, the installer must not be run unless it is verified
+     */
+    public Result verify(File installer) {
+        long start = System.currentTimeMillis();
+        File checksumFile = new File(installer.getPath() + CHECKSUM_SUFFIX);
+        String hash;
+        try {
+            hash = hashOf(installer);
+        }
+        catch (IOException e) {
+            return new Result(false, null, "unable to read " + installer + " - " + e.getMessage());
+        }
+
+        Result result;
+        try {
+            if (checksumFile.isFile()) {
+                Set<String> expected = readChecksums(checksumFile, installer.getName());
+                result = expected.contains(hash) ? new Result(true, hash, checksumFile.getName())
+                        : new Result(false, hash, "SHA-512 " + hash + " differs from " + checksumFile);
+            }
+            else if (allowList != null && allowList.isFile()) {
+                result = readChecksums(allowList, null).contains(hash) ? new Result(true, hash, allowList.getName())
+                        : new Result(false, hash, "SHA-512 " + hash + " is not in " + allowList.getAbsolutePath());
+            }
+            else
+                result = new Result(false, hash, "no " + checksumFile.getName() + " next to the installer and no allow-list "
+                        + (allowList == null ? ALLOW_LIST_FILE_NAME : allowList.getAbsolutePath()) + "; download the .sha512 file published with the installer");
+        }
+        catch (IOException e) {
+            result = new Result(false, hash, "unable to read the checksums - " + e.getMessage());
+        }
+        LOGGER.info(installer.getName() + " " + result + " in " + (System.currentTimeMillis() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * @return the SHA-512 of the installer, from the cache when its size and modification time are unchanged
+     */
+    private String hashOf(File installer) throws IOException {
+        String key = installer.getAbsolutePath();
+        String stamp = installer.length() + "|" + installer.lastModified() + "|";
+        synchronized (cache) {
+            String cached = cache.getProperty(key);
+            if (cached != null && cached.startsWith(stamp)) {
+                LOGGER.debug("Using the cached SHA-512 of " + installer);
+                return cached.substring(stamp.length());
+            }
+        }
+        String hash = sha512(installer);
+        //the file may have changed while it was read, only a stable stamp is cached
+        if (stamp.equals(installer.length() + "|" + installer.lastModified() + "|"))
+            saveCache(key, stamp + hash);
+        return hash;
+    }
+
+    /**
+     * @return hex encoded SHA-512 of the file
+     */
+    public static String sha512(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * @param name file name the checksums must be for, null to accept every line
+     * @return the lower case checksums of the file
+     */
+    private static Set<String> readChecksums(File file, String name) throws IOException {
+        Set<String> checksums = new HashSet<String>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            Matcher matcher = CHECKSUM_LINE.matcher(line);
+            if (matcher.matches() && (name == null || matcher.group(2) == null || matcher.group(2).equals(name)))
+                checksums.add(matcher.group(1).toLowerCase(Locale.ENGLISH));
+        }
+        return checksums;
+    }
+
+    private void saveCache(String key, String value) {
+        if (cacheFile == null)
+            return;
+        synchronized (cache) {
+            cache.setProperty(key, value);
+            File temp = new File(cacheFile.getPath() + ".tmp");
+            try {
+                Files.createDirectories(cacheFile.getAbsoluteFile().getParentFile().toPath());
+                try (FileOutputStream out = new FileOutputStream(temp)) {
+                    cache.store(out, "SHA-512 of the Tomcat installers, by path, size and modification time");
+                }
+                Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException e) {
+                LOGGER.debug("Unable to write the installer hash cache " + cacheFile + " - " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Removes named ISAPI filters (&lt;filter name="..."/&gt; under &lt;isapiFilters&gt;) from an IIS configuration file
+ * such as applicationHost.config.
+ * A first streaming StAX pass locates the filter elements; a second pass copies the file character by character
+ * leaving out those elements and the line they were on. Everything else is written back unchanged, byte for byte,
+ * with constant memory. The result is written to a temporary file renamed over the original.
+ */
+public class IsapiFilterRemover {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(IsapiFilterRemover.class);
+
+    private static final byte[]         UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Remove the filters with the given name, case insensitive, at every level of the configuration
+     * @param configFile IIS configuration file, UTF-8 encoded
+     * @param filterName filter name, for an example Jakarta
+     * @return number of filters removed, the file is not rewritten when it is 0
+     * @throws IOException
+     * @throws XMLStreamException if the file is not well formed
+     */
+    public int removeFilters(File configFile, String filterName) throws IOException, XMLStreamException {
+        List<Integer> targets = locateFilters(configFile, filterName);
+        if (targets.isEmpty())
+            return 0;
+
+        Path config = configFile.toPath();
+        Path tempFile = config.resolveSibling(config.getFileName() + ".tmp");
+        try {
+            rewrite(configFile, tempFile.toFile(), targets);
+            copyPermissions(config, tempFile);
+            try {
+                Files.move(tempFile, config, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, config, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+        LOGGER.info("Removed " + targets.size() + " " + filterName + " filter(s) from " + configFile);
+        return targets.size();
+    }
+
+    /**
+     * First pass, find the filter elements to remove.
+     * Elements are identified by their rank among all the start elements of the document, which the
+     * second pass counts again while copying. Character offsets reported by StAX are not used, as they
+     * depend on the parser and on the presence of a byte order mark or XML declaration.
+     */
+    private static List<Integer> locateFilters(File configFile, String filterName) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+        List<Integer> targets = new ArrayList<Integer>();
+        Deque<String> path = new ArrayDeque<String>();
+        InputStream in = new BufferedInputStream(new FileInputStream(configFile));
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String encoding = reader.getEncoding();
+            if (encoding != null && !"UTF-8".equalsIgnoreCase(encoding) && !"UTF8".equalsIgnoreCase(encoding))
+                throw new IOException("Unsupported encoding " + encoding + " for " + configFile);
+
+            int startElements = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    startElements++;
+                    String name = reader.getLocalName();
+                    if ("filter".equals(name) && "isapiFilters".equals(path.peek())
+                            && filterName.equalsIgnoreCase(reader.getAttributeValue(null, "name"))) {
+                        LOGGER.debug("Found " + filterName + " filter under " + path);
+                        targets.add(startElements);
+                    }
+                    path.push(name);
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    path.pop();
+                }
+            }
+            reader.close();
+        }
+        finally {
+            in.close();
+        }
+        return targets;
+    }
+
+    /**
+     * Second pass, copy the file leaving out the elements found by the first pass.
+     * An element alone on its line is removed with its indentation and line break.
+     */
+    private static void rewrite(File source, File target, List<Integer> targets) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(source));
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+        try {
+            in.mark(UTF8_BOM.length);
+            byte[] head = new byte[UTF8_BOM.length];
+            int headLength = in.read(head);
+            if (headLength == UTF8_BOM.length && head[0] == UTF8_BOM[0] && head[1] == UTF8_BOM[1] && head[2] == UTF8_BOM[2])
+                out.write(UTF8_BOM);
+            else
+                in.reset();
+
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            Reader reader = new BufferedReader(new InputStreamReader(in, decoder));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            new FilteringCopy(writer, targets).copy(reader);
+            writer.flush();
+        }
+        finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private enum State {
+        TEXT,
+        //after '<', the next character tells the kind of markup
+        MARKUP_START,
+        START_TAG,
+        END_TAG,
+        //after "<!", comment, CDATA section or declaration
+        BANG,
+        COMMENT,
+        CDATA,
+        DECLARATION,
+        PROCESSING_INSTRUCTION
+    }
+
+    /**
+     * Character copy with a minimal markup scanner, enough to count the start tags the way the parser does
+     * and to find where an element ends. Nothing but the indentation before a tag is held back, so the memory
+     * used does not depend on the file size.
+     */
+    private static class FilteringCopy {
+        private final Writer        writer;
+        private final List<Integer> targets;
+        private int                 nextTarget;
+        private int                 startTags;
+
+        private State               state = State.TEXT;
+        private char                quote;
+        private char                lastNonBlank;
+        private char                previous;
+        private char                beforePrevious;
+        private int                 bracketDepth;
+        private final StringBuilder bang = new StringBuilder();
+
+        //whitespace of the current line not yet written, and whether only whitespace precedes it on the line
+        private final StringBuilder indent = new StringBuilder();
+        private boolean             lineStart = true;
+        private String              tagIndent = "";
+        private boolean             tagLineStart;
+
+        //removal of the current target element
+        private boolean             removing;
+        private int                 removeDepth;
+        private boolean             removedLineStart;
+        private boolean             afterRemoval;
+        private final StringBuilder trailing = new StringBuilder();
+
+        FilteringCopy(Writer writer, List<Integer> targets) {
+            this.writer = writer;
+            this.targets = targets;
+        }
+
+        void copy(Reader reader) throws IOException {
+            int read;
+            while ((read = reader.read()) != -1)
+                accept((char) read);
+            writer.write(trailing.toString());
+            writer.write(indent.toString());
+            writer.write(tagIndent);
+            if (state == State.MARKUP_START && !removing)
+                writer.write('<');
+        }
+
+        private void accept(char c) throws IOException {
+            switch (state) {
+                case TEXT:
+                    acceptText(c);
+                    break;
+                case MARKUP_START:
+                    acceptMarkupStart(c);
+                    break;
+                case START_TAG:
+                    emit(c);
+                    if (quote != 0) {
+                        if (c == quote)
+                            quote = 0;
+                    }
+                    else if (c == '"' || c == '\'') {
+                        quote = c;
+                    }
+                    else if (c == '>') {
+                        state = State.TEXT;
+                        boolean empty = lastNonBlank == '/';
+                        if (removing && !empty)
+                            removeDepth++;
+                        else if (removing && removeDepth == 0)
+                            endRemoval();
+                    }
+                    else if (!Character.isWhitespace(c)) {
+                        lastNonBlank = c;
+                    }
+                    break;
+                case END_TAG:
+                    emit(c);
+                    if (c == '>') {
+                        state = State.TEXT;
+                        if (removing && --removeDepth == 0)
+                            endRemoval();
+                    }
+                    break;
+                case BANG:
+                    emit(c);
+                    bang.append(c);
+                    if ("--".contentEquals(bang))
+                        enter(State.COMMENT);
+                    else if ("[CDATA[".contentEquals(bang))
+                        enter(State.CDATA);
+                    else if (!"--".startsWith(bang.toString()) && !"[CDATA[".startsWith(bang.toString())) {
+                        enter(State.DECLARATION);
+                        acceptDeclaration(c);
+                    }
+                    break;
+                case COMMENT:
+                    emit(c);
+                    if (c == '>' && previous == '-' && beforePrevious == '-')
+                        state = State.TEXT;
+                    break;
+                case CDATA:
+                    emit(c);
+                    if (c == '>' && previous == ']' && beforePrevious == ']')
+                        state = State.TEXT;
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    emit(c);
+                    if (c == '>' && previous == '?')
+                        state = State.TEXT;
+                    break;
+                case DECLARATION:
+                    emit(c);
+                    acceptDeclaration(c);
+                    break;
+                default:
+                    break;
+            }
+            beforePrevious = previous;
+            previous = c;
+        }
+
+        private void acceptText(char c) throws IOException {
+            if (afterRemoval) {
+                if (c == ' ' || c == '\t' || c == '\r') {
+                    trailing.append(c);
+                    return;
+                }
+                afterRemoval = false;
+                if (c == '\n') {
+                    //the element was alone on its line, drop the rest of the line
+                    trailing.setLength(0);
+                    lineStart = true;
+                    return;
+                }
+                writer.write(trailing.toString());
+                trailing.setLength(0);
+            }
+
+            if (c == '<') {
+                if (!removing) {
+                    tagIndent = indent.toString();
+                    tagLineStart = lineStart;
+                    indent.setLength(0);
+                }
+                state = State.MARKUP_START;
+                return;
+            }
+            if (removing)
+                return;
+            if (c == ' ' || c == '\t') {
+                indent.append(c);
+                return;
+            }
+            writer.write(indent.toString());
+            indent.setLength(0);
+            writer.write(c);
+            lineStart = c == '\n';
+        }
+
+        private void acceptMarkupStart(char c) throws IOException {
+            if (c == '/') {
+                begin(State.END_TAG, c);
+            }
+            else if (c == '!') {
+                bang.setLength(0);
+                begin(State.BANG, c);
+            }
+            else if (c == '?') {
+                begin(State.PROCESSING_INSTRUCTION, c);
+            }
+            else {
+                startTags++;
+                quote = 0;
+                lastNonBlank = c;
+                if (!removing && nextTarget < targets.size() && targets.get(nextTarget) == startTags) {
+                    //start of an element to remove, drop it with its indentation
+                    nextTarget++;
+                    removing = true;
+                    removeDepth = 0;
+                    removedLineStart = tagLineStart;
+                    tagIndent = "";
+                    state = State.START_TAG;
+                }
+                else {
+                    begin(State.START_TAG, c);
+                }
+            }
+        }
+
+        private void acceptDeclaration(char c) {
+            if (c == '[')
+                bracketDepth++;
+            else if (c == ']')
+                bracketDepth--;
+            else if (c == '>' && bracketDepth <= 0)
+                state = State.TEXT;
+        }
+
+        /**
+         * Write the held indentation and the '&lt;' now that the markup is known to be kept
+         */
+        private void begin(State newState, char c) throws IOException {
+            if (!removing) {
+                writer.write(tagIndent);
+                writer.write('<');
+                writer.write(c);
+                lineStart = false;
+            }
+            tagIndent = "";
+            enter(newState);
+        }
+
+        private void enter(State newState) {
+            state = newState;
+            bracketDepth = 0;
+            //the delimiters of the opening sequence must not close the markup, as in "<!-->"
+            previous = 0;
+            beforePrevious = 0;
+        }
+
+        private void emit(char c) throws IOException {
+            if (!removing)
+                writer.write(c);
+        }
+
+        private void endRemoval() {
+            removing = false;
+            if (removedLineStart)
+                afterRemoval = true;
+            else
+                lineStart = false;
+        }
+    }
+
+    /**
+     * Give the rewritten file the permissions of the original one, the rename would otherwise
+     * leave it with the inherited permissions of the directory
+     */
+    private static void copyPermissions(Path original, Path copy) {
+        try {
+            AclFileAttributeView originalAcl = Files.getFileAttributeView(original, AclFileAttributeView.class);
+            AclFileAttributeView copyAcl = Files.getFileAttributeView(copy, AclFileAttributeView.class);
+            if (originalAcl != null && copyAcl != null) {
+                copyAcl.setAcl(originalAcl.getAcl());
+                return;
+            }
+            PosixFileAttributeView originalPosix = Files.getFileAttributeView(original, PosixFileAttributeView.class);
+            PosixFileAttributeView copyPosix = Files.getFileAttributeView(copy, PosixFileAttributeView.class);
+            if (originalPosix != null && copyPosix != null)
+                copyPosix.setPermissions(originalPosix.readAttributes().permissions());
+        }
+        catch (IOException | UnsupportedOperationException | SecurityException e) {
+            LOGGER.warn("Unable to copy the permissions of " + original + " - " + e.getMessage());
+        }
+    }
+}
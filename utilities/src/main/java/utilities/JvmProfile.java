@@ -0,0 +1,255 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Heap, garbage collector, metaspace and GC logging of the Tomcat service, chosen from the memory and
+ * processors of the machine and from the version of the JVM running Tomcat.
+ * The profile is a pure function of its inputs. Its options are merged with the options the service already has:
+ * an option is identified by its name, not by its value, so a profile option replaces the option of the same name
+ * in place, options the profile owns and does not set anymore (another collector, the logging flags of another
+ * Java version, PermGen sizes) are removed, and every other option is kept once.
+ */
+public class JvmProfile {
+
+    //Java version assumed when the release file of the JVM cannot be read
+    public static final int             UNKNOWN_VERSION = 0;
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(JvmProfile.class);
+
+    //heap model
+    private static final int            HEAP_FRACTION = 4;
+    private static final int            MIN_HEAP_MB = 512;
+    private static final int            MAX_HEAP_MB = 4096;
+    //a 32-bit JVM on Windows cannot reserve much more than that in one block
+    private static final int            MAX_HEAP_32_BIT_MB = 1024;
+    private static final int            HEAP_GRANULARITY_MB = 256;
+
+    private static final int            METASPACE_SIZE_MB = 128;
+    private static final int            MAX_METASPACE_MB = 512;
+    private static final int            MAX_METASPACE_32_BIT_MB = 256;
+
+    private static final int            GC_LOG_FILES = 5;
+    private static final int            GC_LOG_FILE_SIZE_MB = 10;
+
+    //"-XX:+Name", "-XX:-Name" or "-XX:Name=value"
+    private static final Pattern        XX_OPTION = Pattern.compile("-XX:[+-]?([^=]+)(=.*)?");
+    //the heap is set by the JvmMs and JvmMx of the service, PermGen is gone since Java 8
+    private static final List<String>   OWNED_PREFIXES = Arrays.asList("-Xms", "-Xmx", "-Xloggc", "-Xlog:gc", "-verbose:gc");
+    private static final List<String>   OWNED_XX_OPTIONS = Arrays.asList("UseG1GC", "UseParallelGC", "UseParallelOldGC",
+            "UseSerialGC", "UseConcMarkSweepGC", "UseParNewGC", "UseZGC", "UseShenandoahGC", "MetaspaceSize", "MaxMetaspaceSize",
+            "AlwaysPreTouch", "PrintGCDetails", "PrintGCDateStamps", "PrintGCTimeStamps", "UseGCLogFileRotation",
+            "NumberOfGCLogFiles", "GCLogFileSize", "PermSize", "MaxPermSize");
+
+    private final int                   heapMegabytes;
+    private final List<String>          options;
+
+    /**
+     * Version and data model of a JVM, from its release file
+     */
+    public static class JavaRuntime {
+        private final int       majorVersion;
+        private final boolean   is32Bit;
+
+        public JavaRuntime(int majorVersion, boolean is32Bit) {
+            this.majorVersion = majorVersion;
+            this.is32Bit = is32Bit;
+        }
+
+        /**
+         * @param javaHome home of the JVM
+         * @return the JVM, of {@link #UNKNOWN_VERSION} if its release file cannot be read
+         */
+        public static JavaRuntime detect(File javaHome) {
+            File release = new File(javaHome, "release");
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(release.toPath())) {
+                properties.load(in);
+            }
+            catch (IOException e) {
+                LOGGER.warn("Unable to read the Java version from " + release + " - " + e.getMessage());
+                return new JavaRuntime(UNKNOWN_VERSION, false);
+            }
+            String version = unquote(properties.getProperty("JAVA_VERSION", ""));
+            String arch = unquote(properties.getProperty("OS_ARCH", "")).toLowerCase(Locale.ENGLISH);
+            return new JavaRuntime(parseMajorVersion(version), arch.equals("x86") || arch.equals("i386") || arch.equals("i586"));
+        }
+
+        /**
+         * @return major version of a version string, 8 for "1.8.0_292", 11 for "11.0.2", {@link #UNKNOWN_VERSION} if unparsable
+         */
+        static int parseMajorVersion(String version) {
+            Matcher matcher = Pattern.compile("^(?:1\\.)?(\\d+)").matcher(version);
+            return matcher.find() ? Integer.parseInt(matcher.group(1)) : UNKNOWN_VERSION;
+        }
+
+        private static String unquote(String value) {
+            String trimmed = value.trim();
+            return trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"") ? trimmed.substring(1, trimmed.length() - 1) : trimmed;
+        }
+
+        public int getMajorVersion() {
+            return majorVersion;
+        }
+
+        public boolean is32Bit() {
+            return is32Bit;
+        }
+
+        @Override
+        public String toString() {
+            return (majorVersion == UNKNOWN_VERSION ? "Java of unknown version" : "Java " + majorVersion) + (is32Bit ? " 32-bit" : "");
+        }
+    }
+
+    private JvmProfile(int heapMegabytes, List<String> options) {
+        this.heapMegabytes = heapMegabytes;
+        this.options = Collections.unmodifiableList(options);
+    }
+
+    /**
+     * Profile of a machine: a quarter of the memory for the heap, between 512 MB and 4 GB, 1 GB at most on a 32-bit JVM,
+     * initial and maximum heap equal and pre-touched, so that the heap never resizes and its memory is committed at start;
+     * G1, or the serial collector on a single processor; a metaspace starting at 128 MB, so that deploying the
+     * applications does not trigger full collections, and bounded to catch class loader leaks; rotated GC logs.
+     * The GC logging options differ between Java 8 and later versions, they are left out when the version is unknown
+     * as the options of the wrong version keep the JVM from starting.
+     * @param gcLogFile file of the GC log
+     */
+    public static JvmProfile forMachine(MachineProfile machine, JavaRuntime java, String gcLogFile) {
+        long heap = machine.getMemoryMegabytes() / HEAP_FRACTION / HEAP_GRANULARITY_MB * HEAP_GRANULARITY_MB;
+        heap = Math.max(MIN_HEAP_MB, Math.min(java.is32Bit() ? MAX_HEAP_32_BIT_MB : MAX_HEAP_MB, heap));
+
+        List<String> options = new ArrayList<String>();
+        options.add(machine.getCores() > 1 ? "-XX:+UseG1GC" : "-XX:+UseSerialGC");
+        options.add("-XX:+AlwaysPreTouch");
+        options.add("-XX:MetaspaceSize=" + METASPACE_SIZE_MB + "m");
+        options.add("-XX:MaxMetaspaceSize=" + (java.is32Bit() ? MAX_METASPACE_32_BIT_MB : MAX_METASPACE_MB) + "m");
+        if (java.getMajorVersion() == 8) {
+            options.add("-Xloggc:" + gcLogFile);
+            options.add("-XX:+PrintGCDetails");
+            options.add("-XX:+PrintGCDateStamps");
+            options.add("-XX:+UseGCLogFileRotation");
+            options.add("-XX:NumberOfGCLogFiles=" + GC_LOG_FILES);
+            options.add("-XX:GCLogFileSize=" + GC_LOG_FILE_SIZE_MB + "M");
+        }
+        else if (java.getMajorVersion() > 8) {
+            //quoted, the colon of the drive would otherwise end the file name
+            options.add("-Xlog:gc*:file=\"" + gcLogFile + "\":time,uptime,level,tags:filecount=" + GC_LOG_FILES
+                    + ",filesize=" + GC_LOG_FILE_SIZE_MB + "m");
+        }
+        else
+            LOGGER.warn("No GC logging for the Tomcat service, the Java version is unknown");
+        return new JvmProfile((int) heap, options);
+    }
+
+    /**
+     * @return initial and maximum heap, the JvmMs and JvmMx of the service
+     */
+    public int getHeapMegabytes() {
+        return heapMegabytes;
+    }
+
+    public List<String> getOptions() {
+        return options;
+    }
+
+    /**
+     * Merge options with the current options of the service
+     * @param current options of the service, blank entries ignored
+     * @param wanted options to set, in order; the profile options and any other option the install requires
+     * @param changes receives the options removed, replaced and added, one line each
+     * @return the merged options: the current ones in their order, each name once, then the wanted ones not already there
+     */
+    public static String[] merge(String[] current, List<String> wanted, List<String> changes) {
+        Map<String, String> wantedByName = new LinkedHashMap<String, String>();
+        for (String option : wanted)
+            wantedByName.put(nameOf(option), option);
+
+        //last value of each name, the one the JVM would use
+        Map<String, String> currentByName = new LinkedHashMap<String, String>();
+        for (String option : current) {
+            if (option == null || option.trim().isEmpty())
+                continue;
+            String name = nameOf(option.trim());
+            String previous = currentByName.put(name, option.trim());
+            if (previous != null)
+                changes.add("removed duplicate " + previous);
+        }
+
+        List<String> merged = new ArrayList<String>();
+        for (Map.Entry<String, String> option : currentByName.entrySet()) {
+            String name = option.getKey();
+            String value = option.getValue();
+            String replacement = wantedByName.remove(name);
+            if (replacement != null) {
+                if (!replacement.equals(value))
+                    changes.add("replaced " + value + " with " + replacement);
+                merged.add(replacement);
+            }
+            else if (isOwned(value))
+                changes.add("removed " + value);
+            else
+                merged.add(value);
+        }
+        for (String option : wantedByName.values()) {
+            changes.add("added " + option);
+            merged.add(option);
+        }
+        return merged.toArray(new String[merged.size()]);
+    }
+
+    /**
+     * @return the name of an option: the property of a -D option, the flag of a -XX option without its sign or value,
+     * the selector of an -Xlog option, the option itself otherwise
+     */
+    static String nameOf(String option) {
+        if (option.startsWith("-D")) {
+            int equals = option.indexOf('=');
+            return equals < 0 ? option : option.substring(0, equals);
+        }
+        Matcher matcher = XX_OPTION.matcher(option);
+        if (matcher.matches())
+            return "-XX:" + matcher.group(1);
+        if (option.startsWith("-Xlog:")) {
+            int colon = option.indexOf(':', "-Xlog:".length());
+            return colon < 0 ? option : option.substring(0, colon);
+        }
+        for (String prefix : Arrays.asList("-Xms", "-Xmx", "-Xss", "-Xmn", "-Xloggc"))
+            if (option.startsWith(prefix))
+                return prefix;
+        return option;
+    }
+
+    private static boolean isOwned(String option) {
+        Matcher matcher = XX_OPTION.matcher(option);
+        if (matcher.matches())
+            return OWNED_XX_OPTIONS.contains(matcher.group(1));
+        for (String prefix : OWNED_PREFIXES)
+            if (option.startsWith(prefix))
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return heapMegabytes + " MB heap, " + options;
+    }
+}
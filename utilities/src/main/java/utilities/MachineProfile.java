@@ -0,0 +1,68 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Processors and memory of the machine Tomcat is installed on, the inputs of the sizing models.
+ */
+public class MachineProfile {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(MachineProfile.class);
+
+    private static final long           MEGABYTE = 1024L * 1024L;
+
+    private final int                   cores;
+    private final long                  memoryBytes;
+
+    /**
+     * @param cores number of processors
+     * @param memoryBytes physical memory
+     */
+    public MachineProfile(int cores, long memoryBytes) {
+        if (cores < 1 || memoryBytes < 1)
+            throw new IllegalArgumentException("Invalid machine profile " + cores + " cores, " + memoryBytes + " bytes");
+        this.cores = cores;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * @return the profile of this machine; the memory is the physical memory when the JVM reports it,
+     * the maximum heap of this JVM otherwise
+     */
+    public static MachineProfile detect() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long memory = 0;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            memory = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        if (memory <= 0) {
+            memory = Runtime.getRuntime().maxMemory();
+            LOGGER.warn("Physical memory not reported by the JVM, using " + memory / MEGABYTE + " MB");
+        }
+        MachineProfile profile = new MachineProfile(cores, memory);
+        LOGGER.debug("Machine profile: " + profile);
+        return profile;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public long getMemoryMegabytes() {
+        return memoryBytes / MEGABYTE;
+    }
+
+    @Override
+    public String toString() {
+        return cores + " cores, " + getMemoryMegabytes() + " MB";
+    }
+}
@@ -0,0 +1,27 @@
+package utilities;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Lays down and removes Tomcat on an install target.
+ * The pipeline waits for the registry and the service afterwards, an implementation only has to run the work.
+ */
+public interface PackageInstaller {
+
+    /**
+     * Remove the installed Tomcat, the logs are kept
+     * @param target install target
+     * @return true if the uninstallation has been run successfully
+     */
+    boolean uninstall(InstallTarget target) throws IOException, InterruptedException;
+
+    /**
+     * Install Tomcat from the package into the Tomcat directory of the target
+     * @param target install target
+     * @param installerPackage Tomcat installer
+     * @param version version of the package
+     * @return true if the installation has been run successfully
+     */
+    boolean install(InstallTarget target, File installerPackage, String version) throws IOException, InterruptedException;
+}
@@ -0,0 +1,24 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * ACL backend working on the POSIX permissions, used to run the tree traversal on Linux.
+ */
+public class PosixAclBackend implements AclBackend<Set<PosixFilePermission>> {
+
+    @Override
+    public Set<PosixFilePermission> read(Path path) throws IOException {
+        return Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    @Override
+    public void write(Path path, Set<PosixFilePermission> permissions) throws IOException {
+        Files.setPosixFilePermissions(path, permissions);
+    }
+}
@@ -0,0 +1,210 @@
+package utilities;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Checks, before any service is stopped, that everything an install needs is there: source files,
+ * free disk space, a usable installer, registry values and environment variables.
+ * The checks only read metadata and run at the same time, so the whole pre-flight takes about as long as
+ * its slowest check; a check still running at the deadline, for an example on an unreachable drive,
+ * counts as failed. Every problem is reported, not only the first one.
+ */
+public class PreflightChecker {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(PreflightChecker.class);
+
+    private static final int            WORKERS = 8;
+
+    //the first bytes of a Windows executable
+    private static final byte[]         EXECUTABLE_MAGIC = {'M', 'Z'};
+
+    private final Map<String, Callable<String>> checks = new LinkedHashMap<String, Callable<String>>();
+
+    /**
+     * Outcome of the pre-flight
+     */
+    public static class Report {
+        private final List<String>  problems;
+        private final int           checkCount;
+        private final long          elapsedMillis;
+
+        Report(List<String> problems, int checkCount, long elapsedMillis) {
+            this.problems = Collections.unmodifiableList(problems);
+            this.checkCount = checkCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return one line per failed check, in declaration order
+         */
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return problems.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return checkCount + " checks, " + problems.size() + " problems in " + elapsedMillis + " ms";
+        }
+    }
+
+    /**
+     * Declare a check
+     * @param name what is checked, for an example "registry.jar"
+     * @param check returns null if the check passes, the problem otherwise
+     * @return this checker
+     */
+    public PreflightChecker addCheck(String name, Callable<String> check) {
+        if (checks.containsKey(name))
+            throw new IllegalArgumentException("Check " + name + " is already declared");
+        checks.put(name, check);
+        return this;
+    }
+
+    /**
+     * Require a readable file
+     */
+    public PreflightChecker requireFile(String name, final File file) {
+        return addCheck(name, () -> file.isFile() && file.canRead() ? null : file + " is missing or not readable");
+    }
+
+    /**
+     * Require a directory
+     */
+    public PreflightChecker requireDirectory(String name, final File dir) {
+        return addCheck(name, () -> dir.isDirectory() ? null : dir + " is not a directory");
+    }
+
+    /**
+     * Require free space on the volume of a directory
+     * @param dir directory, or its closest existing parent
+     * @param bytes bytes needed
+     */
+    public PreflightChecker requireFreeSpace(String name, final File dir, final long bytes) {
+        return addCheck(name, () -> {
+            File existing = dir.getAbsoluteFile();
+            while (existing != null && !existing.exists())
+                existing = existing.getParentFile();
+            if (existing == null)
+                return "no volume found for " + dir;
+            long usable = existing.getUsableSpace();
+            return usable >= bytes ? null : existing + " has " + usable + " bytes free, " + bytes + " are needed";
+        });
+    }
+
+    /**
+     * Require a Windows executable, a complete file starting with the executable signature
+     */
+    public PreflightChecker requireExecutable(String name, final File file) {
+        return addCheck(name, () -> {
+            if (!file.isFile() || file.length() < EXECUTABLE_MAGIC.length)
+                return file + " is missing or empty";
+            byte[] header = new byte[EXECUTABLE_MAGIC.length];
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                if (in.read(header) != header.length || header[0] != EXECUTABLE_MAGIC[0] || header[1] != EXECUTABLE_MAGIC[1])
+                    return file + " is not a Windows executable";
+            }
+            catch (IOException e) {
+                return file + " cannot be read - " + e.getMessage();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Require a non blank value, such as a registry value
+     * @param reader reads the value
+     */
+    public PreflightChecker requireValue(String name, final Supplier<String> reader) {
+        return addCheck(name, () -> StringUtils.isBlank(reader.get()) ? "not set" : null);
+    }
+
+    /**
+     * Run all the checks at the same time
+     * @param timeoutMillis time given to the checks, those still running afterwards fail
+     * @return the report, also logged
+     */
+    public Report runAll(long timeoutMillis) {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(WORKERS, checks.size())), new PreflightThreadFactory());
+        List<String> problems = new ArrayList<String>();
+        try {
+            Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+            for (Map.Entry<String, Callable<String>> check : checks.entrySet())
+                futures.put(check.getKey(), pool.submit(check.getValue()));
+
+            for (Map.Entry<String, Future<String>> future : futures.entrySet()) {
+                String problem;
+                try {
+                    problem = future.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e) {
+                    problem = "not checked within " + timeoutMillis + " ms";
+                }
+                catch (ExecutionException e) {
+                    problem = String.valueOf(e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    problem = "interrupted";
+                }
+                if (problem != null)
+                    problems.add(future.getKey() + ": " + problem);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        Report report = new Report(problems, checks.size(), System.currentTimeMillis() - start);
+        for (String problem : problems)
+            LOGGER.error("Pre-flight check failed - " + problem);
+        LOGGER.info("Pre-flight: " + report);
+        InstallTimeline.count("checks", checks.size());
+        InstallTimeline.count("problems", problems.size());
+        return report;
+    }
+
+    //a check blocked on an unreachable drive must not keep the tool from exiting
+    private static class PreflightThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "preflight-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package utilities;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs external commands.
+ * Commands are given as argument vectors, no shell or string splitting is involved. Standard output and
+ * standard error are drained at the same time by their own threads, into the log and into the result, so a
+ * command writing a lot on either stream cannot block on a full pipe. A command still running at its timeout
+ * is asked to terminate, then killed forcibly after a grace period.
+ * Every command is recorded in the install timeline with its exit code.
+ */
+public class ProcessRunner {
+
+    public static final long            DEFAULT_KILL_GRACE_MILLIS = 5000;
+    public static final int             EXIT_CODE_NOT_STARTED = -1;
+    public static final int             EXIT_CODE_TIMED_OUT = -2;
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ProcessRunner.class);
+
+    //output kept in the result, the log gets all of it
+    private static final int            MAX_CAPTURED_CHARS = 1024 * 1024;
+
+    //the drainers of a killed command wait at most this long for the pipes to close; a child process
+    //which inherited them, as the copy of itself the Tomcat uninstaller starts, can keep them open
+    private static final long           DRAIN_GRACE_MILLIS = 5000;
+
+    private static final ExecutorService THREADS = Executors.newCachedThreadPool(new ProcessThreadFactory());
+
+    private final long                  killGraceMillis;
+    private final Level                 outputLevel;
+
+    /**
+     * A command to run
+     */
+    public static class Command {
+        private final String        name;
+        private final List<String>  arguments;
+        private final File          directory;
+        private final long          timeoutMillis;
+
+        /**
+         * @param name short name of the command, used in the log and the install timeline
+         * @param timeoutMillis maximum run time, the command is killed afterwards
+         * @param arguments program and arguments
+         */
+        public Command(String name, long timeoutMillis, String... arguments) {
+            this(name, timeoutMillis, null, Arrays.asList(arguments));
+        }
+
+        /**
+         * @param name short name of the command, used in the log and the install timeline
+         * @param timeoutMillis maximum run time, the command is killed afterwards
+         * @param directory working directory, null for the current directory
+         * @param arguments program and arguments
+         */
+        public Command(String name, long timeoutMillis, File directory, List<String> arguments) {
+            this.name = name;
+            this.arguments = Collections.unmodifiableList(new ArrayList<String>(arguments));
+            this.directory = directory;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getArguments() {
+            return arguments;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + arguments;
+        }
+    }
+
+    /**
+     * Outcome of a command
+     */
+    public static class Result {
+        private final Command       command;
+        private final int           exitCode;
+        private final long          durationMillis;
+        private final boolean       timedOut;
+        private final String        output;
+        private final String        errorOutput;
+        private final String        error;
+
+        Result(Command command, int exitCode, long durationMillis, boolean timedOut, String output, String errorOutput, String error) {
+            this.command = command;
+            this.exitCode = exitCode;
+            this.durationMillis = durationMillis;
+            this.timedOut = timedOut;
+            this.output = output;
+            this.errorOutput = errorOutput;
+            this.error = error;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * @return exit code of the command, EXIT_CODE_NOT_STARTED or EXIT_CODE_TIMED_OUT
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public boolean isStarted() {
+            return exitCode != EXIT_CODE_NOT_STARTED;
+        }
+
+        /**
+         * @return true if the command ran to completion, whatever its exit code
+         */
+        public boolean isCompleted() {
+            return isStarted() && !timedOut;
+        }
+
+        /**
+         * @return true if the command ran to completion with exit code 0
+         */
+        public boolean isSuccess() {
+            return isCompleted() && exitCode == 0;
+        }
+
+        /**
+         * @return standard output, truncated after 1 MB
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * @return standard error, truncated after 1 MB
+         */
+        public String getErrorOutput() {
+            return errorOutput;
+        }
+
+        /**
+         * @return why the command could not be started, null if it was started
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (!isStarted())
+                return command.getName() + " could not be started: " + error;
+            if (timedOut)
+                return command.getName() + " killed after " + durationMillis + " ms";
+            return command.getName() + " returned " + exitCode + " in " + durationMillis + " ms";
+        }
+    }
+
+    public ProcessRunner() {
+        this(DEFAULT_KILL_GRACE_MILLIS, Level.INFO);
+    }
+
+    /**
+     * @param killGraceMillis time given to a command to terminate before it is killed forcibly
+     * @param outputLevel level the standard output is logged at, standard error is logged as warnings
+     */
+    public ProcessRunner(long killGraceMillis, Level outputLevel) {
+        this.killGraceMillis = killGraceMillis;
+        this.outputLevel = outputLevel;
+    }
+
+    /**
+     * Run a command and wait for it, at most until its timeout and the kill grace period
+     * @param command command to run
+     * @return outcome of the command
+     */
+    public Result run(Command command) {
+        InstallTimeline.Span span = InstallTimeline.global().start(command.getName(), "command");
+        Result result = execute(command);
+        span.set("exitCode", result.getExitCode());
+        if (result.isTimedOut())
+            span.set("timedOut", true);
+        span.end(result.isSuccess());
+        return result;
+    }
+
+    /**
+     * Run a command in the background
+     * @param command command to run
+     * @return future outcome of the command
+     */
+    public CompletableFuture<Result> runAsync(final Command command) {
+        return CompletableFuture.supplyAsync(() -> run(command), THREADS);
+    }
+
+    /**
+     * Run commands at the same time and wait for all of them
+     * @param commands commands to run
+     * @return outcomes, in the order of the commands
+     */
+    public List<Result> runAll(List<Command> commands) {
+        List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+        for (Command command : commands)
+            futures.add(runAsync(command));
+        List<Result> results = new ArrayList<Result>();
+        for (CompletableFuture<Result> future : futures)
+            results.add(future.join());
+        return results;
+    }
+
+    private Result execute(Command command) {
+        LOGGER.info("Running " + command.getName() + ": " + command.getArguments());
+        long start = System.currentTimeMillis();
+        Process process;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command.getArguments());
+            if (command.getDirectory() != null)
+                builder.directory(command.getDirectory());
+            process = builder.start();
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to run " + command.getArguments() + " - " + e.getMessage());
+            return new Result(command, EXIT_CODE_NOT_STARTED, System.currentTimeMillis() - start, false, "", "", e.getMessage());
+        }
+
+        try {
+            process.getOutputStream().close();
+        }
+        catch (IOException e) {
+            LOGGER.debug("Unable to close the input of " + command.getName() + " - " + e.getMessage());
+        }
+        Future<String> output = THREADS.submit(new Drainer(command.getName(), process.getInputStream(), outputLevel));
+        Future<String> errorOutput = THREADS.submit(new Drainer(command.getName(), process.getErrorStream(), Level.WARN));
+
+        boolean timedOut = false;
+        int exitCode;
+        try {
+            if (!process.waitFor(command.getTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timedOut = true;
+                kill(command, process);
+            }
+            exitCode = timedOut ? EXIT_CODE_TIMED_OUT : process.exitValue();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill(command, process);
+            timedOut = true;
+            exitCode = EXIT_CODE_TIMED_OUT;
+        }
+
+        Result result = new Result(command, exitCode, System.currentTimeMillis() - start, timedOut,
+                collect(command, output), collect(command, errorOutput), null);
+        if (result.isSuccess())
+            LOGGER.debug(result.toString());
+        else
+            LOGGER.info(result.toString());
+        return result;
+    }
+
+    private void kill(Command command, Process process) {
+        LOGGER.warn(command.getName() + " did not complete within " + command.getTimeoutMillis() + " ms, terminating it");
+        process.destroy();
+        try {
+            if (!process.waitFor(killGraceMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn(command.getName() + " still running after " + killGraceMillis + " ms, killing it");
+                process.destroyForcibly().waitFor(killGraceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+    private static String collect(Command command, Future<String> drained) {
+        try {
+            return drained.get(DRAIN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            LOGGER.debug("The output of " + command.getName() + " is still open, a child process probably holds it");
+            drained.cancel(true);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            LOGGER.debug("Unable to read the output of " + command.getName() + " - " + e.getCause());
+        }
+        return "";
+    }
+
+    /**
+     * Reads a stream of the command to its end, logging every line
+     */
+    private static class Drainer implements Callable<String> {
+        private final String        name;
+        private final InputStream   stream;
+        private final Level         level;
+
+        Drainer(String name, InputStream stream, Level level) {
+            this.name = name;
+            this.stream = stream;
+            this.level = level;
+        }
+
+        @Override
+        public String call() throws IOException {
+            StringBuilder captured = new StringBuilder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LOGGER.log(level, name + ": " + line);
+                    if (captured.length() < MAX_CAPTURED_CHARS)
+                        captured.append(line).append('\n');
+                }
+            }
+            finally {
+                reader.close();
+            }
+            return captured.toString();
+        }
+    }
+
+    private static class ProcessThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "process-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
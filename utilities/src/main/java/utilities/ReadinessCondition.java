@@ -0,0 +1,18 @@
+package utilities;
+
+/**
+ * A completion signal watched by the {@link ReadinessWaiter}, for an example a file being present.
+ * Implementations are probed repeatedly and must not block.
+ */
+public interface ReadinessCondition {
+
+    /**
+     * @return true if the signal is observed
+     */
+    boolean isMet();
+
+    /**
+     * @return human readable description, used in the log
+     */
+    String getDescription();
+}
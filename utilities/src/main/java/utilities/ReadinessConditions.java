@@ -0,0 +1,169 @@
+package utilities;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.function.Supplier;
+
+/**
+ * Factory of the readiness conditions used around the Tomcat installer and uninstaller.
+ */
+public final class ReadinessConditions {
+
+    private ReadinessConditions() {
+    }
+
+    /**
+     * @param file file or directory
+     * @return condition met once the file exists
+     */
+    public static ReadinessCondition pathExists(final File file) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return file.exists();
+            }
+
+            @Override
+            public String getDescription() {
+                return file + " exists";
+            }
+        };
+    }
+
+    /**
+     * @param file file or directory
+     * @return condition met once the file does not exist anymore
+     */
+    public static ReadinessCondition pathAbsent(final File file) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return !file.exists();
+            }
+
+            @Override
+            public String getDescription() {
+                return file + " is removed";
+            }
+        };
+    }
+
+    /**
+     * @param description what the value is, for an example "Tomcat registry version"
+     * @param reader reads the current value, for an example RegistryManager::getCurrentInstallVersion
+     * @param previousValue value before the operation, blank and null are the same value
+     * @return condition met once the value read differs from the previous value
+     */
+    public static ReadinessCondition valueChanged(final String description, final Supplier<String> reader, final String previousValue) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return !StringUtils.equals(StringUtils.trimToNull(reader.get()), StringUtils.trimToNull(previousValue));
+            }
+
+            @Override
+            public String getDescription() {
+                return description + " changed from '" + StringUtils.defaultString(previousValue) + "'";
+            }
+        };
+    }
+
+    /**
+     * @param description what the value is, for an example "Tomcat registry version"
+     * @param reader reads the current value
+     * @param expectedValue value expected after the operation
+     * @return condition met once the value read is the expected value
+     */
+    public static ReadinessCondition valueEquals(final String description, final Supplier<String> reader, final String expectedValue) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return StringUtils.equals(StringUtils.trim(reader.get()), expectedValue);
+            }
+
+            @Override
+            public String getDescription() {
+                return description + " is '" + expectedValue + "'";
+            }
+        };
+    }
+
+    /**
+     * The URL is requested without following redirects, so that a context root answered by a redirect
+     * of the Tomcat mapper is seen as deployed without running the application
+     * @param url URL of a web context
+     * @param timeoutMillis connect and read timeout of a probe, which blocks at most twice this time
+     * @return condition met once the URL is answered, with anything but a 404 or a server error
+     */
+    public static ReadinessCondition httpResponding(final URL url, final int timeoutMillis) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                HttpURLConnection connection = null;
+                try {
+                    connection = (HttpURLConnection) url.openConnection();
+                    connection.setConnectTimeout(timeoutMillis);
+                    connection.setReadTimeout(timeoutMillis);
+                    connection.setInstanceFollowRedirects(false);
+                    int status = connection.getResponseCode();
+                    return status != HttpURLConnection.HTTP_NOT_FOUND && status < HttpURLConnection.HTTP_INTERNAL_ERROR;
+                }
+                catch (IOException e) {
+                    return false;
+                }
+                finally {
+                    if (connection != null)
+                        connection.disconnect();
+                }
+            }
+
+            @Override
+            public String getDescription() {
+                return url + " responds";
+            }
+        };
+    }
+
+    /**
+     * @param backend service backend
+     * @param serviceName service name
+     * @return condition met once the service is registered, whatever its state
+     */
+    public static ReadinessCondition serviceRegistered(final ServiceBackend backend, final String serviceName) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                ServiceState state = backend.queryState(serviceName);
+                return state != ServiceState.NOT_FOUND && state != ServiceState.UNKNOWN;
+            }
+
+            @Override
+            public String getDescription() {
+                return "service " + serviceName + " is registered";
+            }
+        };
+    }
+
+    /**
+     * @param backend service backend
+     * @param serviceName service name
+     * @return condition met once the service is not registered anymore
+     */
+    public static ReadinessCondition serviceRemoved(final ServiceBackend backend, final String serviceName) {
+        return new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return backend.queryState(serviceName) == ServiceState.NOT_FOUND;
+            }
+
+            @Override
+            public String getDescription() {
+                return "service " + serviceName + " is removed";
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Waits until a set of readiness conditions are all met, probing them following a backoff schedule.
+ * Returns as soon as the last condition is observed instead of sleeping a fixed time.
+ */
+public class ReadinessWaiter {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ReadinessWaiter.class);
+
+    private final BackoffSchedule       schedule;
+    private final long                  timeoutMillis;
+
+    /**
+     * @param schedule delays between two probes
+     * @param timeoutMillis maximum time to wait
+     */
+    public ReadinessWaiter(BackoffSchedule schedule, long timeoutMillis) {
+        this.schedule = schedule;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Wait for all the conditions. A condition once met is not probed again.
+     * @param what operation waited for, used in the log
+     * @param conditions conditions to be met
+     * @return true if all the conditions have been met before the timeout
+     */
+    public boolean awaitAll(String what, ReadinessCondition... conditions) {
+        List<ReadinessCondition> pending = new ArrayList<ReadinessCondition>(Arrays.asList(conditions));
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        int attempt = 0;
+        try {
+            while (true) {
+                attempt++;
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    ReadinessCondition condition = pending.get(i);
+                    if (condition.isMet()) {
+                        LOGGER.debug(String.format("%s: %s after %d ms", what, condition.getDescription(), System.currentTimeMillis() - start));
+                        pending.remove(i);
+                    }
+                }
+                if (pending.isEmpty()) {
+                    LOGGER.info(String.format("%s completed in %d ms", what, System.currentTimeMillis() - start));
+                    return true;
+                }
+                if (System.currentTimeMillis() >= deadline)
+                    break;
+                schedule.sleepBeforeNextAttempt(attempt, deadline);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        StringBuilder unmet = new StringBuilder();
+        for (ReadinessCondition condition : pending)
+            unmet.append(System.lineSeparator()).append("    ").append(condition.getDescription());
+        LOGGER.warn(String.format("%s not completed after %d ms, still waiting for:%s", what, System.currentTimeMillis() - start, unmet));
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package utilities;
+
+/**
+ * Access to the registry values read and written by the install.
+ * Every call goes to the registry, the {@link RegistrySnapshot} caches the reads and batches the writes.
+ * Implementations have to be thread safe.
+ */
+public interface RegistryBackend extends TomcatRegistry {
+
+    /**
+     * @return drive letter where ICM is installed, without colon
+     */
+    String getIcmInstallDrive();
+
+    /**
+     * @return InstallDrive value of the ICM install drive key
+     */
+    String getInstallDriveValue();
+
+    /**
+     * @return Java options of the Tomcat service, null if they cannot be read
+     */
+    String[] retrieveTomcatOptions();
+
+    /**
+     * @param options Java options of the Tomcat service
+     * @return true if the options have been written
+     */
+    boolean setTomcatOptions(String[] options);
+
+    /**
+     * @param version Tomcat version recorded for the install, as the Tomcat installer records it
+     * @return true if the value has been written
+     */
+    boolean setCurrentInstallVersion(String version);
+
+    /**
+     * @param memoryMB JvmMs and JvmMx of the Tomcat service, in MB
+     * @return true if the values have been written
+     */
+    boolean setJVMMemory(int memoryMB);
+}
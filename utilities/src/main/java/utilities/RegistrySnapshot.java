@@ -0,0 +1,201 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Registry values of the install, read once per run.
+ * Every value is read from the backend the first time it is asked for and then served from the snapshot,
+ * until {@link #invalidate()} is called, as it has to be once an installer or uninstaller changed the registry.
+ * Writes are staged and applied together by {@link #commit()}, which reads the values back to verify them.
+ */
+public class RegistrySnapshot implements TomcatRegistry {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(RegistrySnapshot.class);
+
+    private static RegistrySnapshot     instance;
+
+    private static final String         CURRENT_INSTALL_VERSION = "CurrentInstallVersion";
+    private static final String         CURRENT_INSTALL_DIRECTORY = "CurrentInstallDirectory";
+    private static final String         ICM_INSTALL_DRIVE = "IcmInstallDrive";
+    private static final String         INSTALL_DRIVE_VALUE = "InstallDriveValue";
+    private static final String         TOMCAT_OPTIONS = "TomcatOptions";
+
+    private final RegistryBackend       backend;
+    private final Map<String, Object>   values = new HashMap<String, Object>();
+    private final List<StagedWrite>     staged = new ArrayList<StagedWrite>();
+
+    /**
+     * A write waiting for the commit
+     */
+    private abstract static class StagedWrite {
+        final String    description;
+
+        StagedWrite(String description) {
+            this.description = description;
+        }
+
+        abstract boolean apply(RegistryBackend backend);
+
+        /**
+         * @return true if the value read back is the value written, or if the value cannot be read back
+         */
+        boolean verify(RegistryBackend backend) {
+            return true;
+        }
+    }
+
+    public RegistrySnapshot(RegistryBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * @return the snapshot of the run, on the registry of the local machine unless another backend has been set
+     */
+    public static synchronized RegistrySnapshot getInstance() {
+        if (instance == null)
+            instance = new RegistrySnapshot(new SystemRegistryBackend());
+        return instance;
+    }
+
+    /**
+     * Replace the registry of the run, for an example by an in-memory backend in the tests
+     * @param backend registry backend
+     */
+    public static synchronized void setBackend(RegistryBackend backend) {
+        instance = new RegistrySnapshot(backend);
+    }
+
+    /**
+     * @return the backend, for the reads which must not come from the snapshot, such as the polling of a value
+     */
+    public RegistryBackend getBackend() {
+        return backend;
+    }
+
+    @Override
+    public String getCurrentInstallVersion() {
+        return read(CURRENT_INSTALL_VERSION, backend::getCurrentInstallVersion);
+    }
+
+    @Override
+    public String getCurrentInstallDirectory() {
+        return read(CURRENT_INSTALL_DIRECTORY, backend::getCurrentInstallDirectory);
+    }
+
+    public String getIcmInstallDrive() {
+        return read(ICM_INSTALL_DRIVE, backend::getIcmInstallDrive);
+    }
+
+    public String getInstallDriveValue() {
+        return read(INSTALL_DRIVE_VALUE, backend::getInstallDriveValue);
+    }
+
+    /**
+     * @return a copy of the Java options of the Tomcat service, null if they cannot be read
+     */
+    public String[] retrieveTomcatOptions() {
+        String[] options = read(TOMCAT_OPTIONS, backend::retrieveTomcatOptions);
+        return options == null ? null : options.clone();
+    }
+
+    /**
+     * Forget the values read, the next reads go to the registry
+     */
+    public synchronized void invalidate() {
+        values.clear();
+        LOGGER.debug("Registry snapshot invalidated");
+    }
+
+    /**
+     * Stage the Java options of the Tomcat service
+     */
+    public synchronized void stageTomcatOptions(final String[] options) {
+        final String[] copy = options.clone();
+        staged.add(new StagedWrite("Tomcat options") {
+            @Override
+            boolean apply(RegistryBackend backend) {
+                return backend.setTomcatOptions(copy);
+            }
+
+            @Override
+            boolean verify(RegistryBackend backend) {
+                return Arrays.equals(copy, backend.retrieveTomcatOptions());
+            }
+        });
+    }
+
+    /**
+     * Stage the Tomcat version recorded for the install, for an upgrade made without the Tomcat installer
+     */
+    public synchronized void stageCurrentInstallVersion(final String version) {
+        staged.add(new StagedWrite("Tomcat version") {
+            @Override
+            boolean apply(RegistryBackend backend) {
+                return backend.setCurrentInstallVersion(version);
+            }
+        });
+    }
+
+    /**
+     * Stage the JvmMs and JvmMx of the Tomcat service
+     */
+    public synchronized void stageJVMMemory(final int memoryMB) {
+        staged.add(new StagedWrite("Tomcat JvmMx and JvmMs") {
+            @Override
+            boolean apply(RegistryBackend backend) {
+                return backend.setJVMMemory(memoryMB);
+            }
+        });
+    }
+
+    /**
+     * Apply the staged writes in staging order, then read the values back.
+     * All the writes are attempted even if one fails. The snapshot is invalidated afterwards.
+     * @return true if every write has been applied and verified
+     */
+    public synchronized boolean commit() {
+        if (staged.isEmpty())
+            return true;
+        long start = System.currentTimeMillis();
+        boolean success = true;
+        List<StagedWrite> applied = new ArrayList<StagedWrite>();
+        for (StagedWrite write : staged) {
+            if (write.apply(backend))
+                applied.add(write);
+            else {
+                LOGGER.info("Failed to write the " + write.description + " to the registry.");
+                success = false;
+            }
+        }
+        for (StagedWrite write : applied) {
+            if (write.verify(backend))
+                LOGGER.info("The " + write.description + " have been written to the registry.");
+            else {
+                LOGGER.info("The " + write.description + " read back from the registry differ from the values written.");
+                success = false;
+            }
+        }
+        LOGGER.debug("Committed " + staged.size() + " registry writes in " + (System.currentTimeMillis() - start) + " ms");
+        staged.clear();
+        values.clear();
+        return success;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T read(String name, Supplier<T> reader) {
+        if (values.containsKey(name))
+            return (T) values.get(name);
+        T value = reader.get();
+        values.put(name, value);
+        return value;
+    }
+}
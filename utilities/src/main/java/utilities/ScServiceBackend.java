@@ -0,0 +1,101 @@
+package utilities;
+
+import org.apache.logging.log4j.Level;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Service backend using the Windows 'sc' command.
+ */
+public class ScServiceBackend implements ServiceBackend {
+
+    //sc is run for every probe, its output is only logged at trace level
+    private static final ProcessRunner  RUNNER = new ProcessRunner(ProcessRunner.DEFAULT_KILL_GRACE_MILLIS, Level.TRACE);
+    private static final long           SC_TIMEOUT_MILLIS = 60000;
+
+    //"        STATE              : 4  RUNNING"
+    private static final Pattern        STATE_PATTERN = Pattern.compile("^\\s*STATE\\s*:\\s*(\\d+)", Pattern.MULTILINE);
+
+    //sc exit codes
+    private static final int            ERROR_SERVICE_DOES_NOT_EXIST = 1060;
+    private static final int            ERROR_SERVICE_ALREADY_RUNNING = 1056;
+    private static final int            ERROR_SERVICE_NOT_ACTIVE = 1062;
+
+    private final String                host;
+
+    /**
+     * Backend for the services of the local machine
+     */
+    public ScServiceBackend() {
+        this(null);
+    }
+
+    /**
+     * @param host remote machine name, null for the local machine
+     */
+    public ScServiceBackend(String host) {
+        this.host = host;
+    }
+
+    @Override
+    public ServiceState queryState(String serviceName) {
+        ScOutput output = runSc("query", serviceName);
+        if (output == null)
+            return ServiceState.UNKNOWN;
+        if (output.exitCode == ERROR_SERVICE_DOES_NOT_EXIST)
+            return ServiceState.NOT_FOUND;
+        return parseState(output.text);
+    }
+
+    @Override
+    public boolean requestStart(String serviceName) {
+        ScOutput output = runSc("start", serviceName);
+        return output != null && (output.exitCode == 0 || output.exitCode == ERROR_SERVICE_ALREADY_RUNNING);
+    }
+
+    @Override
+    public boolean requestStop(String serviceName) {
+        ScOutput output = runSc("stop", serviceName);
+        return output != null && (output.exitCode == 0 || output.exitCode == ERROR_SERVICE_NOT_ACTIVE);
+    }
+
+    /**
+     * Parse the output of 'sc query'
+     * @param scOutput output of the command
+     * @return state found in the output, UNKNOWN if there is none
+     */
+    protected static ServiceState parseState(String scOutput) {
+        Matcher matcher = STATE_PATTERN.matcher(scOutput);
+        if (matcher.find())
+            return ServiceState.fromScCode(Integer.parseInt(matcher.group(1)));
+        return ServiceState.UNKNOWN;
+    }
+
+    private ScOutput runSc(String verb, String serviceName) {
+        List<String> command = new ArrayList<String>();
+        command.add("sc");
+        if (host != null)
+            command.add("\\\\" + host);
+        command.add(verb);
+        command.add(serviceName);
+
+        ProcessRunner.Result result = RUNNER.run(new ProcessRunner.Command("sc " + verb + " " + serviceName, SC_TIMEOUT_MILLIS,
+                null, command));
+        if (!result.isCompleted())
+            return null;
+        return new ScOutput(result.getExitCode(), result.getOutput() + result.getErrorOutput());
+    }
+
+    private static class ScOutput {
+        final int       exitCode;
+        final String    text;
+
+        ScOutput(int exitCode, String text) {
+            this.exitCode = exitCode;
+            this.text = text;
+        }
+    }
+}
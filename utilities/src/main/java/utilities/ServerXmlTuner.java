@@ -0,0 +1,560 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the Tomcat server.xml from the ICM template, sized for the machine.
+ * Each &lt;Service&gt; with an AJP connector gets a shared &lt;Executor&gt;, sized from the processors and the memory,
+ * and its AJP connectors use it with a matching accept queue, connection limit, timeout and processor cache.
+ * The sizing model is a pure function of the machine profile and of the operator overrides. Only the attributes
+ * of those two elements are written, everything else in the template, comments and layout included, is kept
+ * character for character, so the generated file differs from the template only by the sizing.
+ */
+public class ServerXmlTuner {
+
+    public static final String          OVERRIDES_FILE_NAME = "server-tuning.properties";
+    public static final String          EXECUTOR_NAME = "tomcatThreadPool";
+
+    //attributes owned by the tuner, also the keys of the overrides
+    public static final String          MAX_THREADS = "maxThreads";
+    public static final String          MIN_SPARE_THREADS = "minSpareThreads";
+    public static final String          ACCEPT_COUNT = "acceptCount";
+    public static final String          MAX_CONNECTIONS = "maxConnections";
+    public static final String          CONNECTION_TIMEOUT = "connectionTimeout";
+    public static final String          PROCESSOR_CACHE = "processorCache";
+
+    //idle AJP connections of the IIS connector pool are closed after this time, in milliseconds
+    public static final int             DEFAULT_CONNECTION_TIMEOUT = 600000;
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ServerXmlTuner.class);
+
+    private static final String         EXECUTOR_NAME_PREFIX = "catalina-exec-";
+    //protocol="AJP/1.3", or the class name, for an example org.apache.coyote.ajp.AjpNioProtocol
+    private static final String         AJP_PROTOCOL_PREFIX = "AJP";
+    private static final String         AJP_PROTOCOL_PACKAGE = ".ajp.";
+    private static final byte[]         UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    //sizing model
+    private static final int            THREADS_PER_CORE = 25;
+    private static final int            MEGABYTES_PER_THREAD = 8;
+    private static final int            MIN_THREADS = 50;
+    private static final int            MAX_THREADS_LIMIT = 400;
+    private static final int            SPARE_THREADS_PER_CORE = 2;
+    private static final int            MIN_SPARE_THREADS_LIMIT = 4;
+    private static final int            MIN_ACCEPT_COUNT = 50;
+    private static final int            MAX_ACCEPT_COUNT = 500;
+    private static final int            CONNECTIONS_PER_THREAD = 4;
+    private static final int            MAX_CONNECTIONS_LIMIT = 8192;
+
+    //name="value" or name='value', with the whitespace before it
+    private static final Pattern        ATTRIBUTE = Pattern.compile("(\\s+)([^\\s=/>]+)\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+
+    /**
+     * Sizing of the executor and of the AJP connectors
+     */
+    public static class Sizing {
+        private final int   maxThreads;
+        private final int   minSpareThreads;
+        private final int   acceptCount;
+        private final int   maxConnections;
+        private final int   connectionTimeout;
+        private final int   processorCache;
+
+        public Sizing(int maxThreads, int minSpareThreads, int acceptCount, int maxConnections, int connectionTimeout, int processorCache) {
+            if (maxThreads < 1 || minSpareThreads < 0 || minSpareThreads > maxThreads || acceptCount < 1 || maxConnections < 1
+                    || connectionTimeout < -1 || processorCache < -1)
+                throw new IllegalArgumentException("Invalid sizing maxThreads=" + maxThreads + " minSpareThreads=" + minSpareThreads
+                        + " acceptCount=" + acceptCount + " maxConnections=" + maxConnections + " connectionTimeout=" + connectionTimeout
+                        + " processorCache=" + processorCache);
+            this.maxThreads = maxThreads;
+            this.minSpareThreads = minSpareThreads;
+            this.acceptCount = acceptCount;
+            this.maxConnections = maxConnections;
+            this.connectionTimeout = connectionTimeout;
+            this.processorCache = processorCache;
+        }
+
+        /**
+         * Size for a machine: 25 threads per core between 50 and 400, no more than one per 8 MB of memory;
+         * 2 spare threads per core, at least 4; an accept queue of half the threads between 50 and 500;
+         * 4 connections per thread, as idle AJP connections of the IIS pool do not hold a thread, up to 8192;
+         * a processor per thread. A value set by the operator replaces the computed one, and the values
+         * derived from the threads follow an overridden maxThreads.
+         * @param overrides attribute values set by the operator, keyed by attribute name
+         * @throws IllegalArgumentException on an unknown key, a value which is not an integer or inconsistent values
+         */
+        public static Sizing forMachine(MachineProfile machine, Properties overrides) {
+            Map<String, Integer> values = parseOverrides(overrides);
+            long threadsByMemory = Math.max(MIN_THREADS, machine.getMemoryMegabytes() / MEGABYTES_PER_THREAD);
+            int maxThreads = valueOf(values, MAX_THREADS,
+                    Math.min(threadsByMemory, clamp((long) machine.getCores() * THREADS_PER_CORE, MIN_THREADS, MAX_THREADS_LIMIT)));
+            int minSpareThreads = valueOf(values, MIN_SPARE_THREADS,
+                    Math.min(maxThreads, Math.max(MIN_SPARE_THREADS_LIMIT, (long) machine.getCores() * SPARE_THREADS_PER_CORE)));
+            return new Sizing(maxThreads, minSpareThreads,
+                    valueOf(values, ACCEPT_COUNT, clamp(maxThreads / 2, MIN_ACCEPT_COUNT, MAX_ACCEPT_COUNT)),
+                    valueOf(values, MAX_CONNECTIONS, Math.min(MAX_CONNECTIONS_LIMIT, (long) maxThreads * CONNECTIONS_PER_THREAD)),
+                    valueOf(values, CONNECTION_TIMEOUT, DEFAULT_CONNECTION_TIMEOUT),
+                    valueOf(values, PROCESSOR_CACHE, maxThreads));
+        }
+
+        private static Map<String, Integer> parseOverrides(Properties overrides) {
+            List<String> keys = Arrays.asList(MAX_THREADS, MIN_SPARE_THREADS, ACCEPT_COUNT, MAX_CONNECTIONS, CONNECTION_TIMEOUT, PROCESSOR_CACHE);
+            Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+            for (String key : overrides.stringPropertyNames()) {
+                if (!keys.contains(key))
+                    throw new IllegalArgumentException("Unknown server.xml tuning key " + key + ", expected one of " + keys);
+                String value = overrides.getProperty(key).trim();
+                try {
+                    values.put(key, Integer.valueOf(value));
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value " + value + " for the server.xml tuning key " + key);
+                }
+            }
+            return values;
+        }
+
+        private static int valueOf(Map<String, Integer> overrides, String key, long computed) {
+            Integer value = overrides.get(key);
+            return value != null ? value : (int) computed;
+        }
+
+        private static long clamp(long value, long min, long max) {
+            return Math.max(min, Math.min(max, value));
+        }
+
+        private Map<String, Integer> toAttributes() {
+            Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+            values.put(MAX_THREADS, maxThreads);
+            values.put(MIN_SPARE_THREADS, minSpareThreads);
+            values.put(ACCEPT_COUNT, acceptCount);
+            values.put(MAX_CONNECTIONS, maxConnections);
+            values.put(CONNECTION_TIMEOUT, connectionTimeout);
+            values.put(PROCESSOR_CACHE, processorCache);
+            return values;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getMinSpareThreads() {
+            return minSpareThreads;
+        }
+
+        public int getAcceptCount() {
+            return acceptCount;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public int getProcessorCache() {
+            return processorCache;
+        }
+
+        @Override
+        public String toString() {
+            return toAttributes().toString();
+        }
+    }
+
+    /**
+     * @param overridesFile properties file of attribute values set by the operator
+     * @return the overrides, empty if the file does not exist
+     */
+    public static Properties loadOverrides(File overridesFile) throws IOException {
+        Properties overrides = new Properties();
+        if (overridesFile.isFile()) {
+            try (InputStream in = Files.newInputStream(overridesFile.toPath())) {
+                overrides.load(in);
+            }
+            LOGGER.info("server.xml tuning overrides from " + overridesFile + ": " + overrides);
+        }
+        return overrides;
+    }
+
+    /**
+     * Write the server.xml generated from a template
+     * @param template server.xml template, UTF-8 encoded
+     * @param target server.xml to write, replaced if it exists
+     * @return the changes made to the template, one line each
+     * @throws IOException
+     * @throws XMLStreamException if the template is not well formed or has no AJP connector
+     */
+    public List<String> generate(File template, File target, Sizing sizing) throws IOException, XMLStreamException {
+        byte[] bytes = Files.readAllBytes(template.toPath());
+        boolean bom = hasBom(bytes);
+        List<String> changes = new ArrayList<String>();
+        String tuned = tune(decode(template, bytes), sizing, changes);
+
+        Path targetPath = target.toPath();
+        Files.createDirectories(targetPath.toAbsolutePath().getParent());
+        Path tempFile = targetPath.resolveSibling(targetPath.getFileName() + ".tmp");
+        try {
+            byte[] content = tuned.getBytes(StandardCharsets.UTF_8);
+            if (bom) {
+                byte[] withBom = Arrays.copyOf(UTF8_BOM, UTF8_BOM.length + content.length);
+                System.arraycopy(content, 0, withBom, UTF8_BOM.length, content.length);
+                content = withBom;
+            }
+            Files.write(tempFile, content);
+            try {
+                Files.move(tempFile, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+        for (String change : changes)
+            LOGGER.info("server.xml: " + change);
+        LOGGER.info("Generated " + target + " from " + template + " with " + sizing);
+        return changes;
+    }
+
+    /**
+     * Tune a template in memory, nothing is written
+     * @return the changes the generation would make to the template, one line each
+     * @throws IOException
+     * @throws XMLStreamException if the template is not well formed or has no AJP connector
+     */
+    public List<String> preview(File template, Sizing sizing) throws IOException, XMLStreamException {
+        List<String> changes = new ArrayList<String>();
+        tune(decode(template, Files.readAllBytes(template.toPath())), sizing, changes);
+        return changes;
+    }
+
+    private static boolean hasBom(byte[] bytes) {
+        return bytes.length >= UTF8_BOM.length && bytes[0] == UTF8_BOM[0] && bytes[1] == UTF8_BOM[1] && bytes[2] == UTF8_BOM[2];
+    }
+
+    /**
+     * @return the UTF-8 content of the file, without its byte order mark
+     */
+    private static String decode(File file, byte[] bytes) throws IOException {
+        int offset = hasBom(bytes) ? UTF8_BOM.length : 0;
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes, offset, bytes.length - offset))
+                    .toString();
+        }
+        catch (CharacterCodingException e) {
+            throw new IOException(file + " is not UTF-8 encoded", e);
+        }
+    }
+
+    /**
+     * Size the executor and the AJP connectors of a server.xml
+     * @param xml content of the server.xml
+     * @param changes receives the changes made, one line each
+     * @return the content with the owned attributes set, the rest unchanged
+     * @throws XMLStreamException if the content is not well formed or has no AJP connector
+     */
+    public static String tune(String xml, Sizing sizing, List<String> changes) throws XMLStreamException {
+        List<ServiceElements> services = locateElements(xml);
+        if (services.isEmpty())
+            throw new XMLStreamException("No AJP connector found in server.xml");
+
+        List<Integer> ranks = new ArrayList<Integer>();
+        for (ServiceElements service : services) {
+            ranks.add(service.firstConnector);
+            ranks.addAll(service.ajpConnectors);
+            if (service.executor > 0)
+                ranks.add(service.executor);
+        }
+        Map<Integer, int[]> tags = locateStartTags(xml, ranks);
+        String lineSeparator = xml.contains("\r\n") ? "\r\n" : "\n";
+
+        Map<String, String> executorAttributes = new LinkedHashMap<String, String>();
+        executorAttributes.put(MAX_THREADS, String.valueOf(sizing.getMaxThreads()));
+        executorAttributes.put(MIN_SPARE_THREADS, String.valueOf(sizing.getMinSpareThreads()));
+        Map<String, String> connectorAttributes = new LinkedHashMap<String, String>();
+        connectorAttributes.put("executor", EXECUTOR_NAME);
+        connectorAttributes.put(ACCEPT_COUNT, String.valueOf(sizing.getAcceptCount()));
+        connectorAttributes.put(MAX_CONNECTIONS, String.valueOf(sizing.getMaxConnections()));
+        connectorAttributes.put(CONNECTION_TIMEOUT, String.valueOf(sizing.getConnectionTimeout()));
+        connectorAttributes.put(PROCESSOR_CACHE, String.valueOf(sizing.getProcessorCache()));
+        //ignored by a connector using an executor, removed so that the file does not mislead
+        List<String> executorOwned = Arrays.asList(MAX_THREADS, MIN_SPARE_THREADS);
+
+        //edits by start offset, applied from the end so that the offsets stay valid
+        TreeMap<Integer, int[]> ranges = new TreeMap<Integer, int[]>();
+        Map<Integer, String> replacements = new LinkedHashMap<Integer, String>();
+        for (ServiceElements service : services) {
+            if (service.executor > 0) {
+                int[] range = tags.get(service.executor);
+                String tag = xml.substring(range[0], range[1]);
+                replacements.put(range[0], setAttributes(tag, executorAttributes, new ArrayList<String>(), "Executor " + EXECUTOR_NAME, changes));
+                ranges.put(range[0], range);
+            }
+            else {
+                //an executor must be declared before the connectors using it
+                int[] before = tags.get(service.firstConnector);
+                StringBuilder executor = new StringBuilder("<Executor name=\"").append(EXECUTOR_NAME)
+                        .append("\" namePrefix=\"").append(EXECUTOR_NAME_PREFIX).append('"');
+                for (Map.Entry<String, String> attribute : executorAttributes.entrySet())
+                    executor.append(' ').append(attribute.getKey()).append("=\"").append(attribute.getValue()).append('"');
+                executor.append(" />").append(lineSeparator).append(indentationBefore(xml, before[0]));
+                replacements.put(before[0], executor.toString());
+                ranges.put(before[0], new int[] {before[0], before[0]});
+                changes.add("Executor " + EXECUTOR_NAME + " added with " + executorAttributes);
+            }
+            for (int connector : service.ajpConnectors) {
+                int[] range = tags.get(connector);
+                String tag = xml.substring(range[0], range[1]);
+                String edited = setAttributes(tag, connectorAttributes, executorOwned, "Connector " + describeConnector(tag), changes);
+                //an executor inserted before this connector shares its offset
+                String previous = replacements.get(range[0]);
+                replacements.put(range[0], previous != null && ranges.get(range[0])[1] == range[0] ? previous + edited : edited);
+                ranges.put(range[0], range);
+            }
+        }
+
+        StringBuilder tuned = new StringBuilder(xml);
+        for (Map.Entry<Integer, int[]> range : ranges.descendingMap().entrySet())
+            tuned.replace(range.getValue()[0], range.getValue()[1], replacements.get(range.getKey()));
+        return tuned.toString();
+    }
+
+    /**
+     * Executor and AJP connectors of a service, identified by their rank among all the start elements of the document
+     */
+    private static class ServiceElements {
+        private int                 firstConnector;
+        private int                 executor;
+        private final List<Integer> ajpConnectors = new ArrayList<Integer>();
+    }
+
+    /**
+     * Find the services with an AJP connector. Ranks rather than character offsets are used, the offsets
+     * reported by StAX depend on the parser.
+     */
+    private static List<ServiceElements> locateElements(String xml) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+        List<ServiceElements> services = new ArrayList<ServiceElements>();
+        XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+        try {
+            ServiceElements service = null;
+            int depth = 0;
+            int serviceDepth = 0;
+            int startElements = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    startElements++;
+                    depth++;
+                    String name = reader.getLocalName();
+                    if ("Service".equals(name)) {
+                        service = new ServiceElements();
+                        serviceDepth = depth;
+                    }
+                    else if (service != null && depth == serviceDepth + 1) {
+                        if ("Executor".equals(name) && EXECUTOR_NAME.equals(reader.getAttributeValue(null, "name")))
+                            service.executor = startElements;
+                        else if ("Connector".equals(name)) {
+                            if (service.firstConnector == 0)
+                                service.firstConnector = startElements;
+                            String protocol = reader.getAttributeValue(null, "protocol");
+                            if (isAjp(protocol))
+                                service.ajpConnectors.add(startElements);
+                        }
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (service != null && depth == serviceDepth) {
+                        if (!service.ajpConnectors.isEmpty())
+                            services.add(service);
+                        service = null;
+                    }
+                    depth--;
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return services;
+    }
+
+    private static boolean isAjp(String protocol) {
+        return protocol != null && (protocol.startsWith(AJP_PROTOCOL_PREFIX) || protocol.contains(AJP_PROTOCOL_PACKAGE));
+    }
+
+    /**
+     * Count the start tags the way the parser does, skipping comments, CDATA sections, processing instructions
+     * and declarations, and return the character range of those wanted
+     * @return start and end offset of each wanted start tag, by rank
+     */
+    private static Map<Integer, int[]> locateStartTags(String xml, List<Integer> ranks) throws XMLStreamException {
+        Map<Integer, int[]> tags = new TreeMap<Integer, int[]>();
+        int rank = 0;
+        int i = 0;
+        while ((i = xml.indexOf('<', i)) >= 0) {
+            if (xml.startsWith("<!--", i))
+                i = endOf(xml, "-->", i + 4);
+            else if (xml.startsWith("<![CDATA[", i))
+                i = endOf(xml, "]]>", i + 9);
+            else if (xml.startsWith("<?", i))
+                i = endOf(xml, "?>", i + 2);
+            else if (xml.startsWith("<!", i) || xml.startsWith("</", i))
+                i = endOfMarkup(xml, i);
+            else {
+                rank++;
+                int end = endOfMarkup(xml, i);
+                if (ranks.contains(rank))
+                    tags.put(rank, new int[] {i, end});
+                i = end;
+            }
+        }
+        if (tags.size() != new HashSet<Integer>(ranks).size())
+            throw new XMLStreamException("Unable to locate the Executor and Connector elements in server.xml");
+        return tags;
+    }
+
+    private static int endOf(String xml, String delimiter, int from) throws XMLStreamException {
+        int end = xml.indexOf(delimiter, from);
+        if (end < 0)
+            throw new XMLStreamException("Unterminated markup, " + delimiter + " expected");
+        return end + delimiter.length();
+    }
+
+    /**
+     * @return offset after the '&gt;' closing the markup, quoted values and bracketed declarations skipped
+     */
+    private static int endOfMarkup(String xml, int from) throws XMLStreamException {
+        char quote = 0;
+        int brackets = 0;
+        for (int i = from + 1; i < xml.length(); i++) {
+            char c = xml.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            }
+            else if (c == '"' || c == '\'')
+                quote = c;
+            else if (c == '[')
+                brackets++;
+            else if (c == ']')
+                brackets--;
+            else if (c == '>' && brackets <= 0)
+                return i + 1;
+        }
+        throw new XMLStreamException("Unterminated markup at offset " + from);
+    }
+
+    /**
+     * Set and remove attributes of a start tag, keeping the others and the layout.
+     * Added attributes follow the last one, on their own line when the attributes of the tag are one per line.
+     */
+    private static String setAttributes(String tag, Map<String, String> values, List<String> removed, String element, List<String> changes) {
+        Map<String, String> remaining = new LinkedHashMap<String, String>(values);
+        StringBuilder edited = new StringBuilder();
+        Matcher matcher = ATTRIBUTE.matcher(tag);
+        int copied = 0;
+        int lastEnd = -1;
+        String separator = " ";
+        while (matcher.find()) {
+            String name = matcher.group(2);
+            String quoted = matcher.group(3);
+            String current = quoted.substring(1, quoted.length() - 1);
+            edited.append(tag, copied, matcher.start());
+            copied = matcher.end();
+            if (removed.contains(name)) {
+                changes.add(element + " " + name + " " + current + " removed");
+                continue;
+            }
+            String value = remaining.remove(name);
+            if (value != null && !value.equals(current)) {
+                changes.add(element + " " + name + " " + current + " -> " + value);
+                edited.append(matcher.group(1)).append(name).append('=').append(quoted.charAt(0)).append(value).append(quoted.charAt(0));
+            }
+            else
+                edited.append(matcher.group());
+            lastEnd = edited.length();
+            if (matcher.group(1).indexOf('\n') >= 0)
+                separator = matcher.group(1);
+        }
+        if (lastEnd < 0) {
+            //no attribute, added after the element name
+            Matcher name = Pattern.compile("<[^\\s/>]+").matcher(tag);
+            name.find();
+            edited.append(tag, 0, name.end());
+            lastEnd = edited.length();
+            copied = name.end();
+        }
+        StringBuilder added = new StringBuilder();
+        for (Map.Entry<String, String> attribute : remaining.entrySet()) {
+            added.append(separator).append(attribute.getKey()).append("=\"").append(attribute.getValue()).append('"');
+            changes.add(element + " " + attribute.getKey() + " set to " + attribute.getValue());
+        }
+        edited.insert(lastEnd, added);
+        edited.append(tag, copied, tag.length());
+        return edited.toString();
+    }
+
+    /**
+     * @return whitespace between the start of the line and the offset, empty if something else precedes it
+     */
+    private static String indentationBefore(String xml, int offset) {
+        int start = offset;
+        while (start > 0 && (xml.charAt(start - 1) == ' ' || xml.charAt(start - 1) == '\t'))
+            start--;
+        return start == 0 || xml.charAt(start - 1) == '\n' ? xml.substring(start, offset) : "";
+    }
+
+    private static String describeConnector(String tag) {
+        Matcher matcher = ATTRIBUTE.matcher(tag);
+        String protocol = "";
+        String port = "";
+        while (matcher.find()) {
+            String value = matcher.group(3).substring(1, matcher.group(3).length() - 1);
+            if ("protocol".equals(matcher.group(2)))
+                protocol = value;
+            else if ("port".equals(matcher.group(2)))
+                port = " port " + value;
+        }
+        return protocol + port;
+    }
+}
@@ -0,0 +1,29 @@
+package utilities;
+
+/**
+ * Backend used by the {@link ServiceController} to control a service and probe its state.
+ * Implementations have to be thread safe.
+ */
+public interface ServiceBackend {
+
+    /**
+     * Query the current state of the service
+     * @param serviceName service name, for an example Tomcat9
+     * @return current state, NOT_FOUND if the service is not registered
+     */
+    ServiceState queryState(String serviceName);
+
+    /**
+     * Ask the service to start, without waiting for it to be running
+     * @param serviceName service name
+     * @return true if the request has been accepted
+     */
+    boolean requestStart(String serviceName);
+
+    /**
+     * Ask the service to stop, without waiting for it to be stopped
+     * @param serviceName service name
+     * @return true if the request has been accepted
+     */
+    boolean requestStop(String serviceName);
+}
@@ -0,0 +1,151 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stops and starts a service and waits for the transition to complete.
+ * The state is probed following a backoff schedule, so a transition returns as soon as it is observed
+ * instead of rounding up to a fixed polling interval.
+ */
+public class ServiceController {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(ServiceController.class);
+
+    private final String                serviceName;
+    private final ServiceBackend        backend;
+    private final BackoffSchedule       schedule;
+    private final long                  deadlineMillis;
+
+    private volatile long               lastTransitionMillis = -1;
+    private volatile int                lastProbeCount;
+
+    /**
+     * @param serviceName service name, for an example Tomcat9
+     * @param backend backend used to control and probe the service
+     * @param schedule delays between two probes
+     * @param deadlineMillis maximum time a single transition may take
+     */
+    public ServiceController(String serviceName, ServiceBackend backend, BackoffSchedule schedule, long deadlineMillis) {
+        this.serviceName = serviceName;
+        this.backend = backend;
+        this.schedule = schedule;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public ServiceBackend getBackend() {
+        return backend;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * @return time the last transition took in milliseconds, -1 if it did not complete
+     */
+    public long getLastTransitionMillis() {
+        return lastTransitionMillis;
+    }
+
+    /**
+     * @return number of state probes done during the last transition
+     */
+    public int getLastProbeCount() {
+        return lastProbeCount;
+    }
+
+    /**
+     * Stop the service and wait until it is stopped
+     * @return true if the service is stopped (or not installed), false if it is still not stopped at the deadline
+     */
+    public boolean stopServiceAndCheckState() {
+        return transition(ServiceState.STOPPED, ServiceState.STOP_PENDING);
+    }
+
+    /**
+     * Start the service and wait until it is running
+     * @return true if the service is running, false if it is still not running at the deadline
+     */
+    public boolean startServiceAndCheckState() {
+        return transition(ServiceState.RUNNING, ServiceState.START_PENDING);
+    }
+
+    /**
+     * Wait until the service reaches the given state, without requesting anything
+     * @param target expected state
+     * @return true if the state has been reached before the deadline
+     */
+    public boolean waitForState(ServiceState target) {
+        InstallTimeline.Span span = InstallTimeline.global().start(serviceName + " wait for " + target, "service");
+        long start = System.currentTimeMillis();
+        return endSpan(span, awaitState(target, start, start + deadlineMillis));
+    }
+
+    private boolean transition(ServiceState target, ServiceState pending) {
+        InstallTimeline.Span span = InstallTimeline.global().start(serviceName + " to " + target, "service");
+        return endSpan(span, requestAndAwait(target, pending));
+    }
+
+    private boolean endSpan(InstallTimeline.Span span, boolean reached) {
+        span.set("probes", lastProbeCount);
+        return span.end(reached);
+    }
+
+    private boolean requestAndAwait(ServiceState target, ServiceState pending) {
+        long start = System.currentTimeMillis();
+        lastTransitionMillis = -1;
+        lastProbeCount = 1;
+
+        ServiceState current = backend.queryState(serviceName);
+        if (current == target || (target == ServiceState.STOPPED && current == ServiceState.NOT_FOUND)) {
+            LOGGER.debug(serviceName + " is already " + current);
+            lastTransitionMillis = 0;
+            return true;
+        }
+        if (current == ServiceState.NOT_FOUND) {
+            LOGGER.info("Service " + serviceName + " is not installed.");
+            return false;
+        }
+
+        boolean requested = current == pending
+                || (target == ServiceState.RUNNING ? backend.requestStart(serviceName) : backend.requestStop(serviceName));
+        if (!requested) {
+            //the request can fail when the service changed its state meanwhile, the probe below tells
+            LOGGER.debug("Request to move " + serviceName + " to " + target + " has not been accepted, current state " + current);
+        }
+        return awaitState(target, start, start + deadlineMillis);
+    }
+
+    private boolean awaitState(ServiceState target, long start, long deadline) {
+        int attempt = 0;
+        try {
+            while (true) {
+                attempt++;
+                ServiceState current = backend.queryState(serviceName);
+                if (current == target) {
+                    lastProbeCount = attempt;
+                    lastTransitionMillis = System.currentTimeMillis() - start;
+                    LOGGER.info(String.format("%s reached %s in %d ms (%d probes)", serviceName, target, lastTransitionMillis, attempt));
+                    return true;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    lastProbeCount = attempt;
+                    LOGGER.warn(String.format("%s is still %s after %d ms, expected %s", serviceName, current, System.currentTimeMillis() - start, target));
+                    return false;
+                }
+                schedule.sleepBeforeNextAttempt(attempt, deadline);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastProbeCount = attempt;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package utilities;
+
+/**
+ * Windows service states as reported by the service control manager.
+ */
+public enum ServiceState {
+
+    STOPPED(1),
+    START_PENDING(2),
+    STOP_PENDING(3),
+    RUNNING(4),
+    CONTINUE_PENDING(5),
+    PAUSE_PENDING(6),
+    PAUSED(7),
+    //the service is not registered with the service control manager
+    NOT_FOUND(-1),
+    //the state could not be determined
+    UNKNOWN(0);
+
+    private final int scCode;
+
+    ServiceState(int scCode) {
+        this.scCode = scCode;
+    }
+
+    /**
+     * @return the numeric state printed by 'sc query', for an example 4 for RUNNING
+     */
+    public int getScCode() {
+        return scCode;
+    }
+
+    /**
+     * Map the numeric state printed by 'sc query' to a service state
+     * @param scCode numeric state
+     * @return matching state, UNKNOWN if the code is not known
+     */
+    public static ServiceState fromScCode(int scCode) {
+        for (ServiceState state : values()) {
+            if (state.scCode == scCode && scCode > 0)
+                return state;
+        }
+        return UNKNOWN;
+    }
+}
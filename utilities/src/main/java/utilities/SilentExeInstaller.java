@@ -0,0 +1,65 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the Tomcat NSIS installer and uninstaller silently, on the machine running the tool.
+ */
+public class SilentExeInstaller implements PackageInstaller {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(SilentExeInstaller.class);
+
+    private static final String         TOMCAT_CONFIG = "tomcatConfig.ini";
+    private static final long           INSTALLER_TIMEOUT_MILLIS = 900000;
+    private static final ProcessRunner  RUNNER = new ProcessRunner();
+
+    private final String                serviceName;
+
+    public SilentExeInstaller(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    @Override
+    public boolean uninstall(InstallTarget target) throws IOException, InterruptedException {
+        File uninstaller = target.getUninstaller();
+        if (!uninstaller.isFile()) {
+            LOGGER.info(target.getName() + ": no " + uninstaller + ", nothing to uninstall");
+            return true;
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(uninstaller.getPath());
+        command.add("/S");
+        command.add("-ServiceName=" + serviceName);
+        return run(target, uninstaller.getName(), command);
+    }
+
+    @Override
+    public boolean install(InstallTarget target, File installerPackage, String version) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(installerPackage.getPath());
+        File tomcatConfig = new File(target.getInstallDir(), TOMCAT_CONFIG);
+        if (tomcatConfig.isFile())
+            command.add("/C=" + tomcatConfig.getPath());
+        command.add("/S");
+        //NSIS requires /D to be the last argument
+        command.add("/D=" + target.getTomcatDir().getPath());
+        return run(target, installerPackage.getName(), command);
+    }
+
+    private static boolean run(InstallTarget target, String name, List<String> command) throws IOException {
+        LOGGER.info(target.getName() + ": running " + command);
+        ProcessRunner.Result result = RUNNER.run(new ProcessRunner.Command(name, INSTALLER_TIMEOUT_MILLIS, null, command));
+        if (!result.isStarted())
+            throw new IOException("Unable to run " + command + " - " + result.getError());
+        if (!result.isSuccess())
+            LOGGER.error(target.getName() + ": " + result);
+        return result.isSuccess();
+    }
+}
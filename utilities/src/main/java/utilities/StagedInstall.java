@@ -0,0 +1,223 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Install built in a staging directory next to the install directory while the services keep running,
+ * then swapped in by renaming directories while they are stopped.
+ * The staging directory gets the files of the Tomcat distribution; the caller then runs the post install steps
+ * building the tree on it. The swap moves the preserved directories, such as logs, into the staged tree, renames
+ * the install directory to a previous directory and the staged tree to the install directory. The previous tree
+ * is kept until {@link #releasePrevious(DeferredDeleter)}, {@link #revert()} puts it back.
+ * All three directories are siblings, on the same volume, so every rename is immediate.
+ */
+public class StagedInstall {
+
+    public static final String          STAGING_SUFFIX = ".staging";
+    public static final String          PREVIOUS_SUFFIX = ".previous";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(StagedInstall.class);
+
+    //web applications of the zip which the Tomcat installer does not install by default
+    private static final List<String>   DISTRIBUTION_ONLY_WEBAPPS = Arrays.asList("examples", "host-manager");
+
+    private final File                  installDir;
+    private final File                  stagingDir;
+    private final File                  previousDir;
+    private final List<String>          preservedDirs;
+    private final BackoffSchedule       schedule;
+    private final long                  renameTimeoutMillis;
+    private boolean                     swapped;
+
+    /**
+     * @param installDir install directory
+     * @param preservedDirs top level directories moved from the install directory into the staged tree, such as logs
+     * @param schedule delays between the attempts to rename a directory still in use
+     * @param renameTimeoutMillis maximum time to retry a rename
+     */
+    public StagedInstall(File installDir, List<String> preservedDirs, BackoffSchedule schedule, long renameTimeoutMillis) {
+        File absolute = installDir.getAbsoluteFile();
+        this.installDir = absolute;
+        this.stagingDir = new File(absolute.getParentFile(), absolute.getName() + STAGING_SUFFIX);
+        this.previousDir = new File(absolute.getParentFile(), absolute.getName() + PREVIOUS_SUFFIX);
+        this.preservedDirs = new ArrayList<String>(preservedDirs);
+        this.schedule = schedule;
+        this.renameTimeoutMillis = renameTimeoutMillis;
+    }
+
+    public File getStagingDir() {
+        return stagingDir;
+    }
+
+    /**
+     * Lay the distribution down in the staging directory, replacing what an earlier run left there.
+     * Top level files of the install which the distribution does not have, such as Uninstall.exe and
+     * tomcatConfig.ini written by the Tomcat installer, are carried over.
+     * @param distribution Tomcat zip or extracted distribution directory
+     * @return true if the staging directory is ready for the post install steps
+     */
+    public boolean prepare(File distribution) {
+        long start = System.currentTimeMillis();
+        File extracted = new File(stagingDir.getPath() + ".tmp");
+        try {
+            FileUtils.deleteDirectory(stagingDir);
+            FileUtils.deleteDirectory(previousDir);
+            FileUtils.deleteDirectory(extracted);
+            if (distribution.isDirectory())
+                FileUtils.copyDirectory(distribution, stagingDir);
+            else {
+                ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(false).extractAll(Arrays.asList(distribution), extracted);
+                if (!report.isSuccess())
+                    throw new IOException("unable to extract " + distribution + ": " + report);
+                //the Tomcat zips have every entry under apache-tomcat-<version>
+                File[] entries = extracted.listFiles();
+                File root = entries != null && entries.length == 1 && entries[0].isDirectory() ? entries[0] : extracted;
+                Files.move(root.toPath(), stagingDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                FileUtils.deleteDirectory(extracted);
+            }
+
+            for (String webapp : DISTRIBUTION_ONLY_WEBAPPS)
+                FileUtils.deleteDirectory(new File(stagingDir, "webapps" + File.separator + webapp));
+            File[] installed = installDir.listFiles();
+            if (installed != null) {
+                for (File file : installed) {
+                    File staged = new File(stagingDir, file.getName());
+                    if (file.isFile() && !staged.exists() && !file.getName().equals(DeltaUpgrader.DISTRIBUTION_MANIFEST_FILE_NAME)) {
+                        LOGGER.debug("Carrying " + file + " over to the staged install");
+                        Files.copy(file.toPath(), staged.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to stage " + distribution + " in " + stagingDir + " - " + e.getMessage());
+            FileUtils.deleteQuietly(extracted);
+            return false;
+        }
+        LOGGER.info("Staged " + distribution.getName() + " in " + stagingDir + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Swap the staged tree in, the services using the install directory must be stopped.
+     * On failure the install directory is left as it was.
+     * @return true if the staged tree is now the install directory
+     */
+    public boolean swap() {
+        long start = System.currentTimeMillis();
+        List<String> moved = new ArrayList<String>();
+        try {
+            for (String dir : preservedDirs) {
+                File current = new File(installDir, dir);
+                if (!current.isDirectory())
+                    continue;
+                //the distribution has its own empty logs directory
+                FileUtils.deleteDirectory(new File(stagingDir, dir));
+                rename(current, new File(stagingDir, dir));
+                moved.add(dir);
+            }
+            rename(installDir, previousDir);
+            try {
+                rename(stagingDir, installDir);
+            }
+            catch (IOException e) {
+                rename(previousDir, installDir);
+                throw e;
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to swap " + stagingDir + " in as " + installDir + " - " + e.getMessage());
+            for (String dir : moved)
+                renameQuietly(new File(stagingDir, dir), new File(installDir, dir));
+            return false;
+        }
+        swapped = true;
+        LOGGER.info("Swapped " + stagingDir + " in as " + installDir + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Put the previous tree back after a swap, the staged tree goes back to the staging directory
+     * @return true if the previous tree is the install directory again
+     */
+    public boolean revert() {
+        if (!swapped)
+            return true;
+        try {
+            rename(installDir, stagingDir);
+            rename(previousDir, installDir);
+            for (String dir : preservedDirs) {
+                File staged = new File(stagingDir, dir);
+                if (staged.isDirectory() && !new File(installDir, dir).exists())
+                    rename(staged, new File(installDir, dir));
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to put " + previousDir + " back as " + installDir + " - " + e.getMessage());
+            return false;
+        }
+        swapped = false;
+        LOGGER.info("Reverted " + installDir + " to the previous install");
+        return true;
+    }
+
+    /**
+     * Hand the previous tree to the deleter once the swapped install is running
+     */
+    public void releasePrevious(DeferredDeleter deleter) {
+        if (swapped && previousDir.exists())
+            deleter.moveToTrash(previousDir);
+    }
+
+    /**
+     * Remove the staged tree of an install which is not going to be swapped in
+     */
+    public void discard() {
+        if (!swapped)
+            FileUtils.deleteQuietly(stagingDir);
+    }
+
+    //a directory can be briefly held open, for an example by a virus scanner, renames are retried until the deadline
+    private void rename(File from, File to) throws IOException {
+        long deadline = System.currentTimeMillis() + renameTimeoutMillis;
+        int attempt = 0;
+        while (true) {
+            try {
+                Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return;
+            }
+            catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline)
+                    throw e;
+                LOGGER.debug("Unable to rename " + from + " to " + to + ", retrying - " + e);
+            }
+            try {
+                schedule.sleepBeforeNextAttempt(++attempt, deadline);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while renaming " + from);
+            }
+        }
+    }
+
+    private void renameQuietly(File from, File to) {
+        try {
+            rename(from, to);
+        }
+        catch (IOException e) {
+            LOGGER.error("Unable to move " + from + " back to " + to + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs install steps as a dependency graph.
+ * Every step declares the steps it depends on; a step starts as soon as all of its dependencies
+ * have succeeded, so independent steps overlap on a bounded thread pool.
+ * A failed step does not stop the run, only the steps depending on it are skipped.
+ * With a journal, a step declared with a fingerprint is recorded once it succeeds; a resumed run skips it
+ * while its fingerprint is unchanged and none of its dependencies had to run again.
+ */
+public class StepExecutor {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(StepExecutor.class);
+
+    private final Map<String, Step>     steps = new LinkedHashMap<String, Step>();
+    private final Set<String>           executed = ConcurrentHashMap.newKeySet();
+    private final int                   poolSize;
+    private InstallJournal              journal;
+
+    private static class Step {
+        final String            name;
+        final Callable<Boolean> action;
+        final Supplier<String>  fingerprint;
+        final List<String>      dependsOn;
+
+        Step(String name, Callable<Boolean> action, Supplier<String> fingerprint, List<String> dependsOn) {
+            this.name = name;
+            this.action = action;
+            this.fingerprint = fingerprint;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    /**
+     * @param poolSize maximum number of steps running at the same time
+     */
+    public StepExecutor(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    /**
+     * Declare a step.
+     * @param name unique step name, used in the results and as dependency reference
+     * @param action the step work, returns true if the step succeeded
+     * @param dependsOn names of the steps which have to succeed before this one starts
+     * @return this executor
+     */
+    public StepExecutor addStep(String name, Callable<Boolean> action, String... dependsOn) {
+        return addStep(name, action, null, dependsOn);
+    }
+
+    /**
+     * Declare a step recorded in the journal.
+     * @param name unique step name, used in the results and as dependency reference
+     * @param action the step work, returns true if the step succeeded
+     * @param fingerprint fingerprint of the inputs and outputs of the step, see {@link InstallJournal#fingerprint(Object...)}
+     * @param dependsOn names of the steps which have to succeed before this one starts
+     * @return this executor
+     */
+    public StepExecutor addStep(String name, Callable<Boolean> action, Supplier<String> fingerprint, String... dependsOn) {
+        if (steps.containsKey(name))
+            throw new IllegalArgumentException("Step " + name + " is already declared");
+        List<String> deps = new ArrayList<String>();
+        for (String dep : dependsOn)
+            deps.add(dep);
+        steps.put(name, new Step(name, action, fingerprint, deps));
+        return this;
+    }
+
+    /**
+     * @param journal journal the steps with a fingerprint are recorded in and resumed from, null for none
+     * @return this executor
+     */
+    public StepExecutor setJournal(InstallJournal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * Run all declared steps and wait for them to finish.
+     * @return the result of every step, in declaration order
+     */
+    public Map<String, StepResult> runAll() {
+        List<Step> ordered = topologicalOrder();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(poolSize, Math.max(1, ordered.size())), new StepThreadFactory());
+        Map<String, CompletableFuture<StepResult>> futures = new LinkedHashMap<String, CompletableFuture<StepResult>>();
+        try {
+            for (final Step step : ordered) {
+                final List<CompletableFuture<StepResult>> depFutures = new ArrayList<CompletableFuture<StepResult>>();
+                for (String dep : step.dependsOn)
+                    depFutures.add(futures.get(dep));
+
+                CompletableFuture<StepResult> future = CompletableFuture
+                        .allOf(depFutures.toArray(new CompletableFuture<?>[0]))
+                        .thenApplyAsync(v -> runStep(step, depFutures), pool);
+                futures.put(step.name, future);
+            }
+
+            Map<String, StepResult> results = new LinkedHashMap<String, StepResult>();
+            for (String name : steps.keySet())
+                results.put(name, futures.get(name).join());
+            return results;
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Log the per-step results in one block.
+     * @param results results returned by {@link #runAll()}
+     */
+    public static void logResults(Map<String, StepResult> results) {
+        StringBuilder summary = new StringBuilder("Step results:");
+        for (StepResult result : results.values())
+            summary.append(System.lineSeparator()).append("    ").append(result);
+        LOGGER.info(summary.toString());
+    }
+
+    /**
+     * @param results results returned by {@link #runAll()}
+     * @return true if every step succeeded
+     */
+    public static boolean allSucceeded(Map<String, StepResult> results) {
+        for (StepResult result : results.values()) {
+            if (!result.isSuccess())
+                return false;
+        }
+        return true;
+    }
+
+    private StepResult runStep(Step step, List<CompletableFuture<StepResult>> depFutures) {
+        for (CompletableFuture<StepResult> depFuture : depFutures) {
+            StepResult depResult = depFuture.join();
+            if (!depResult.isSuccess()) {
+                LOGGER.info("Skipping step " + step.name + " as " + depResult.getName() + " did not succeed.");
+                InstallTimeline.global().start(step.name, "step").set("reason", "dependency " + depResult.getName())
+                        .end(InstallTimeline.OUTCOME_SKIPPED);
+                return new StepResult(step.name, StepResult.Status.SKIPPED, 0, "dependency " + depResult.getName() + " " + depResult.getStatus());
+            }
+        }
+
+        boolean journaled = journal != null && step.fingerprint != null;
+        if (journaled && isCompleted(step)) {
+            LOGGER.info("Skipping step " + step.name + ", completed by an earlier run.");
+            InstallTimeline.global().start(step.name, "step").set("reason", "journal").end(InstallTimeline.OUTCOME_SKIPPED);
+            return new StepResult(step.name, StepResult.Status.SUCCEEDED, 0, "completed by an earlier run");
+        }
+
+        LOGGER.debug("Starting step " + step.name);
+        executed.add(step.name);
+        InstallTimeline.Span span = InstallTimeline.global().start(step.name, "step");
+        long start = System.currentTimeMillis();
+        try {
+            boolean success = span.end(Boolean.TRUE.equals(step.action.call()));
+            long elapsed = System.currentTimeMillis() - start;
+            LOGGER.debug("Step " + step.name + " finished in " + elapsed + " ms, success: " + success);
+            if (journaled && success)
+                journal.recordCompleted(step.name, step.fingerprint.get());
+            else if (journaled)
+                journal.recordFailed(step.name);
+            return new StepResult(step.name, success ? StepResult.Status.SUCCEEDED : StepResult.Status.FAILED, elapsed, null);
+        }
+        catch (Throwable e) {
+            LOGGER.error("Exception caught during step " + step.name, e);
+            span.set("exception", e.toString()).end(InstallTimeline.OUTCOME_ERROR);
+            if (journaled)
+                journal.recordFailed(step.name);
+            return new StepResult(step.name, StepResult.Status.FAILED, System.currentTimeMillis() - start, e.toString());
+        }
+    }
+
+    //a step whose dependency ran again works on new inputs, whatever its fingerprint says
+    private boolean isCompleted(Step step) {
+        for (String dep : step.dependsOn) {
+            if (executed.contains(dep))
+                return false;
+        }
+        return journal.isCompleted(step.name, step.fingerprint.get());
+    }
+
+    /**
+     * Order the steps so that every step comes after its dependencies.
+     * Fails on unknown dependencies and cycles, those are programming errors in the step declaration.
+     */
+    private List<Step> topologicalOrder() {
+        List<Step> ordered = new ArrayList<Step>();
+        Set<String> done = new HashSet<String>();
+        Set<String> visiting = new HashSet<String>();
+        for (Step step : steps.values())
+            visit(step, done, visiting, ordered);
+        return ordered;
+    }
+
+    private void visit(Step step, Set<String> done, Set<String> visiting, List<Step> ordered) {
+        if (done.contains(step.name))
+            return;
+        if (!visiting.add(step.name))
+            throw new IllegalStateException("Dependency cycle detected at step " + step.name);
+        for (String dep : step.dependsOn) {
+            Step depStep = steps.get(dep);
+            if (depStep == null)
+                throw new IllegalStateException("Step " + step.name + " depends on unknown step " + dep);
+            visit(depStep, done, visiting, ordered);
+        }
+        visiting.remove(step.name);
+        done.add(step.name);
+        ordered.add(step);
+    }
+
+    private static class StepThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "install-step-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package utilities;
+
+/**
+ * Outcome of a single install step run by the {@link StepExecutor}.
+ */
+public class StepResult {
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        SKIPPED
+    }
+
+    private final String    name;
+    private final Status    status;
+    private final long      elapsedMillis;
+    private final String    detail;
+
+    public StepResult(String name, Status status, long elapsedMillis, String detail) {
+        this.name = name;
+        this.status = status;
+        this.elapsedMillis = elapsedMillis;
+        this.detail = detail;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return reason for a failed or skipped step, null when the step succeeded
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCEEDED;
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("%-40s %-9s %6d ms", name, status, elapsedMillis);
+        return detail == null ? text : text + "  (" + detail + ")";
+    }
+}
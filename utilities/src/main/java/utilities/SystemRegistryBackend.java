@@ -0,0 +1,67 @@
+package utilities;
+
+import com.sun.jna.platform.win32.Advapi32Util;
+import com.sun.jna.platform.win32.Win32Exception;
+import com.sun.jna.platform.win32.WinReg;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Registry of the local machine, through the RegistryManager.
+ */
+public class SystemRegistryBackend implements RegistryBackend {
+
+    //key the Tomcat installer records the service install in
+    static final String                 TOMCAT_SERVICE_KEY = "SOFTWARE\\Apache Software Foundation\\Tomcat\\9.0\\" + InstallTomcat.TOMCAT_SERVICENAME;
+    private static final String         VERSION_VALUE = "Version";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(SystemRegistryBackend.class);
+
+    @Override
+    public String getCurrentInstallVersion() {
+        return RegistryManager.getCurrentInstallVersion();
+    }
+
+    @Override
+    public String getCurrentInstallDirectory() {
+        return RegistryManager.getCurrentInstallDirectory();
+    }
+
+    @Override
+    public String getIcmInstallDrive() {
+        return RegistryManager.getIcmInstallDrive();
+    }
+
+    @Override
+    public String getInstallDriveValue() {
+        return Registry.getStringValue(RegistryRoot.IcmInstallDrive.getRoot(), RegistryRoot.IcmInstallDrive.getKey(), "InstallDrive");
+    }
+
+    @Override
+    public String[] retrieveTomcatOptions() {
+        return RegistryManager.retrieveTomcatOptions();
+    }
+
+    @Override
+    public boolean setTomcatOptions(String[] options) {
+        return RegistryManager.setTomcatOptions(options);
+    }
+
+    @Override
+    public boolean setCurrentInstallVersion(String version) {
+        try {
+            Advapi32Util.registrySetStringValue(WinReg.HKEY_LOCAL_MACHINE, TOMCAT_SERVICE_KEY, VERSION_VALUE, version);
+            return true;
+        }
+        catch (Win32Exception e) {
+            LOGGER.error("Unable to write the Tomcat version to HKLM\\" + TOMCAT_SERVICE_KEY + " - " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean setJVMMemory(int memoryMB) {
+        return RegistryManager.setJVMMemory(memoryMB);
+    }
+}
@@ -0,0 +1,188 @@
+package utilities;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Install pipeline run against one install target: stop the services, uninstall the current Tomcat,
+ * clean up the Tomcat directory, run the installer and start the services again.
+ * The steps run in sequence, a failed step skips the ones after it but the start of the services, which
+ * always runs so that a failed target is not left with its services stopped. The clean up only moves the
+ * old files to a trash, which is deleted in the background once the services are started.
+ * The local target is the machine running the tool: it goes through the complete install of the tool,
+ * with its pre-flight, snapshot, post install steps and rollback, given as a {@link LocalInstall}.
+ */
+public class TargetInstallPipeline {
+
+    public static final String          STEP_STOP_SERVICES = "StopServices";
+    public static final String          STEP_UNINSTALL = "Uninstall";
+    public static final String          STEP_CLEANUP = "CleanUpTomcat";
+    public static final String          STEP_INSTALL = "Install";
+    public static final String          STEP_START_SERVICES = "StartServices";
+    public static final String          STEP_LOCAL_INSTALL = "LocalInstall";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(TargetInstallPipeline.class);
+
+    private static final List<String>   PRESERVED_ENTRIES = Arrays.asList("logs");
+
+    private final File                  installerPackage;
+    private final String                version;
+    private final BackoffSchedule       schedule;
+    private final long                  serviceDeadlineMillis;
+    private final long                  readyTimeoutMillis;
+    private LocalInstall                localInstall;
+
+    /**
+     * Complete install of the machine running the tool
+     */
+    public interface LocalInstall {
+        /**
+         * Install or reinstall Tomcat, the services are running again when it returns
+         * @param target the local target
+         * @param installerPackage Tomcat installer
+         * @param version version of the installer
+         * @return true if Tomcat has been installed and started
+         */
+        boolean install(InstallTarget target, File installerPackage, String version) throws Exception;
+    }
+
+    /**
+     * @param installerPackage Tomcat installer run on every target
+     * @param version version of the installer
+     * @param schedule probe schedule of the service and readiness waits
+     * @param serviceDeadlineMillis maximum time a service takes to start or stop
+     * @param readyTimeoutMillis maximum time the installer and uninstaller take to complete after they returned
+     */
+    public TargetInstallPipeline(File installerPackage, String version, BackoffSchedule schedule,
+                                 long serviceDeadlineMillis, long readyTimeoutMillis) {
+        this.installerPackage = installerPackage;
+        this.version = version;
+        this.schedule = schedule;
+        this.serviceDeadlineMillis = serviceDeadlineMillis;
+        this.readyTimeoutMillis = readyTimeoutMillis;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @param localInstall install run for the local target, without it the local target fails
+     */
+    public TargetInstallPipeline setLocalInstall(LocalInstall localInstall) {
+        this.localInstall = localInstall;
+        return this;
+    }
+
+    /**
+     * Run the pipeline against a target
+     * @param target install target
+     * @return result of the target and of every step
+     */
+    public FleetReport.TargetResult run(final InstallTarget target) {
+        InstallTimeline.Span span = InstallTimeline.global().start(target.getName(), "target");
+        long start = System.currentTimeMillis();
+        final ServiceController tomcatSvcCtl = new ServiceController(InstallTomcat.TOMCAT_SERVICENAME, target.getServiceBackend(), schedule, serviceDeadlineMillis);
+        final ServiceController w3SvcCtl = new ServiceController(InstallTomcat.W3SVC_SERVICENAME, target.getServiceBackend(), schedule, serviceDeadlineMillis);
+        final DeferredDeleter deleter = new DeferredDeleter(target.getTomcatDir());
+
+        List<StepResult> steps = new ArrayList<StepResult>();
+        if (target.isLocal()) {
+            runStep(target, STEP_LOCAL_INSTALL, steps, () -> localInstall(target));
+        }
+        else {
+            runStep(target, STEP_STOP_SERVICES, steps, () -> tomcatSvcCtl.stopServiceAndCheckState() && w3SvcCtl.stopServiceAndCheckState());
+            runStep(target, STEP_UNINSTALL, steps, () -> uninstall(target));
+            runStep(target, STEP_CLEANUP, steps, () -> cleanUp(target, deleter));
+            runStep(target, STEP_INSTALL, steps, () -> install(target));
+            //whatever failed before, IIS and the Tomcat still installed are started again
+            executeStep(target, STEP_START_SERVICES, steps, () -> w3SvcCtl.startServiceAndCheckState() & tomcatSvcCtl.startServiceAndCheckState());
+            deleter.startBackgroundDeletion();
+        }
+
+        boolean success = true;
+        for (StepResult step : steps)
+            success &= step.isSuccess();
+        span.end(success);
+        FleetReport.TargetResult result = new FleetReport.TargetResult(target.getName(),
+                success ? StepResult.Status.SUCCEEDED : StepResult.Status.FAILED, System.currentTimeMillis() - start, steps);
+        LOGGER.info(target.getName() + ": " + result);
+        return result;
+    }
+
+    private static void runStep(InstallTarget target, String name, List<StepResult> steps, Callable<Boolean> action) {
+        if (!steps.isEmpty()) {
+            StepResult previous = steps.get(steps.size() - 1);
+            if (!previous.isSuccess()) {
+                steps.add(new StepResult(name, StepResult.Status.SKIPPED, 0, previous.getName() + " " + previous.getStatus()));
+                return;
+            }
+        }
+        executeStep(target, name, steps, action);
+    }
+
+    private static void executeStep(InstallTarget target, String name, List<StepResult> steps, Callable<Boolean> action) {
+        InstallTimeline.Span span = InstallTimeline.global().start(name, "step");
+        long start = System.currentTimeMillis();
+        try {
+            boolean success = span.end(Boolean.TRUE.equals(action.call()));
+            steps.add(new StepResult(name, success ? StepResult.Status.SUCCEEDED : StepResult.Status.FAILED, System.currentTimeMillis() - start, null));
+        }
+        catch (Exception e) {
+            LOGGER.error(target.getName() + ": exception caught during step " + name, e);
+            span.set("exception", e.toString()).end(InstallTimeline.OUTCOME_ERROR);
+            steps.add(new StepResult(name, StepResult.Status.FAILED, System.currentTimeMillis() - start, e.toString()));
+        }
+    }
+
+    private boolean localInstall(InstallTarget target) throws Exception {
+        if (localInstall == null) {
+            LOGGER.error(target.getName() + ": no install of the local machine available");
+            return false;
+        }
+        return localInstall.install(target, installerPackage, version);
+    }
+
+    private boolean uninstall(InstallTarget target) throws Exception {
+        if (StringUtils.isBlank(target.getRegistry().getCurrentInstallVersion())) {
+            LOGGER.info(target.getName() + ": Tomcat is not installed");
+            return true;
+        }
+        if (!target.getInstaller().uninstall(target))
+            return false;
+        return new ReadinessWaiter(schedule, readyTimeoutMillis).awaitAll(target.getName() + " Tomcat uninstallation",
+                ReadinessConditions.pathAbsent(target.getServiceExecutable()),
+                ReadinessConditions.pathAbsent(target.getUninstaller()),
+                ReadinessConditions.serviceRemoved(target.getServiceBackend(), InstallTomcat.TOMCAT_SERVICENAME));
+    }
+
+    private static boolean cleanUp(InstallTarget target, DeferredDeleter deleter) {
+        File[] entries = target.getTomcatDir().listFiles();
+        if (entries == null)
+            return true;
+        boolean success = true;
+        for (File entry : entries) {
+            if (!(PRESERVED_ENTRIES.contains(entry.getName()) && entry.isDirectory()))
+                success &= deleter.moveToTrash(entry);
+        }
+        return success;
+    }
+
+    private boolean install(InstallTarget target) throws Exception {
+        if (!target.getInstaller().install(target, installerPackage, version))
+            return false;
+        return new ReadinessWaiter(schedule, readyTimeoutMillis).awaitAll(target.getName() + " Tomcat installation",
+                ReadinessConditions.pathExists(target.getTomcatDir()),
+                ReadinessConditions.pathExists(target.getServiceExecutable()),
+                ReadinessConditions.serviceRegistered(target.getServiceBackend(), InstallTomcat.TOMCAT_SERVICENAME),
+                ReadinessConditions.valueEquals("Tomcat registry version", target.getRegistry()::getCurrentInstallVersion, version));
+    }
+}
@@ -0,0 +1,18 @@
+package utilities;
+
+/**
+ * Registry values of the Tomcat installation read by the install pipeline.
+ * Implementations have to be thread safe.
+ */
+public interface TomcatRegistry {
+
+    /**
+     * @return version of the installed Tomcat, for an example 9.0.83, null if Tomcat is not installed
+     */
+    String getCurrentInstallVersion();
+
+    /**
+     * @return install directory of Tomcat, null if Tomcat is not installed
+     */
+    String getCurrentInstallDirectory();
+}
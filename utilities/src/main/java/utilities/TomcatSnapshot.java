@@ -0,0 +1,346 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Snapshot of an install directory taken before it is cleaned up, to roll back a failed reinstall.
+ * The snapshot is a directory next to the install directory. Jars, wars and binaries are hard links to the
+ * installed files, which costs no data copy; only the configuration files, which the install rewrites in place,
+ * are copied. A manifest lists every entry, the Tomcat version and the Tomcat options read from the registry.
+ * Taking and restoring a snapshot is therefore proportional to the number of files, not to their size.
+ * The hard links are only safe because the install never rewrites a jar or a war in place: the cleanup moves
+ * the old files away and the installer creates new ones. A linked file whose size or modification time changed
+ * anyway is detected and the restore refused.
+ */
+public class TomcatSnapshot {
+
+    public static final String          SNAPSHOT_SUFFIX = ".snapshot";
+    public static final String          MANIFEST_FILE_NAME = "snapshot.manifest";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(TomcatSnapshot.class);
+
+    //files replaced as a whole by the installer and the post install steps, never edited
+    private static final List<String>   IMMUTABLE_EXTENSIONS = Arrays.asList("jar", "war", "exe", "dll", "zip", "class");
+
+    private static final String         TYPE_DIRECTORY = "dir";
+    private static final String         TYPE_LINK = "link";
+    private static final String         TYPE_COPY = "copy";
+    private static final String         TYPE_OPTION = "option";
+    private static final String         TYPE_VERSION = "version";
+    private static final String         SEPARATOR = "\t";
+
+    private final File                  installDir;
+    private final File                  snapshotDir;
+    private final List<String>          excludedDirs;
+
+    /**
+     * An entry of the manifest
+     */
+    private static class Entry {
+        final String    type;
+        final long      size;
+        final long      lastModified;
+        final String    path;
+
+        Entry(String type, long size, long lastModified, String path) {
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.path = path;
+        }
+
+        String format() {
+            return type + SEPARATOR + size + SEPARATOR + lastModified + SEPARATOR + path;
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split(SEPARATOR, 4);
+            return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+        }
+    }
+
+    /**
+     * @param installDir install directory
+     * @param excludedDirs top level directories left out of the snapshot and left alone by the restore, such as logs
+     */
+    public TomcatSnapshot(File installDir, List<String> excludedDirs) {
+        File absolute = installDir.getAbsoluteFile();
+        this.installDir = absolute;
+        this.snapshotDir = new File(absolute.getParentFile(), absolute.getName() + SNAPSHOT_SUFFIX);
+        this.excludedDirs = new ArrayList<String>(excludedDirs);
+    }
+
+    public File getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    /**
+     * @return true if a complete snapshot is available
+     */
+    public boolean exists() {
+        return new File(snapshotDir, MANIFEST_FILE_NAME).isFile();
+    }
+
+    /**
+     * Take the snapshot, replacing the previous one once the new one is complete
+     * @param tomcatVersion Tomcat version recorded in the registry, to register the service again, null if unknown
+     * @param tomcatOptions Java options of the Tomcat service to restore with the files, null if none
+     * @return true if the snapshot has been taken
+     */
+    public boolean create(String tomcatVersion, String[] tomcatOptions) {
+        if (!installDir.isDirectory()) {
+            LOGGER.info("No " + installDir + " to take a snapshot of.");
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        File temp = new File(snapshotDir.getPath() + ".tmp");
+        try {
+            FileUtils.deleteDirectory(temp);
+            final List<Entry> entries = new ArrayList<Entry>();
+            final long[] copiedBytes = new long[1];
+            final Path root = installDir.toPath();
+            final Path target = temp.toPath();
+            long[] tree = checkDiskSpace(root);
+            final InstallProgress.Task progress = InstallProgress.global().begin("Snapshot " + installDir.getName(), tree[0], tree[1]);
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (dir.getParent() != null && dir.getParent().equals(root) && excludedDirs.contains(dir.getFileName().toString()))
+                            return FileVisitResult.SKIP_SUBTREE;
+                        String relative = relativePath(root, dir);
+                        Files.createDirectories(target.resolve(relative));
+                        if (!relative.isEmpty())
+                            entries.add(new Entry(TYPE_DIRECTORY, 0, 0, relative));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        String relative = relativePath(root, file);
+                        Path copy = target.resolve(relative);
+                        String type = isImmutable(file) && link(copy, file) ? TYPE_LINK : TYPE_COPY;
+                        if (TYPE_COPY.equals(type)) {
+                            Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+                            copiedBytes[0] += attrs.size();
+                        }
+                        entries.add(new Entry(type, attrs.size(), attrs.lastModifiedTime().toMillis(), relative));
+                        progress.advance(1, attrs.size());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            finally {
+                progress.finish();
+            }
+            writeManifest(new File(temp, MANIFEST_FILE_NAME), entries, tomcatVersion, tomcatOptions);
+
+            FileUtils.deleteDirectory(snapshotDir);
+            Files.move(temp.toPath(), snapshotDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Snapshot of " + installDir + " taken in " + snapshotDir + ": " + entries.size() + " entries, "
+                    + copiedBytes[0] + " bytes copied, in " + (System.currentTimeMillis() - start) + " ms");
+            InstallTimeline.count("files", entries.size());
+            InstallTimeline.count("bytes", copiedBytes[0]);
+            return true;
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to take a snapshot of " + installDir + " - " + e.getMessage());
+            FileUtils.deleteQuietly(temp);
+            return false;
+        }
+    }
+
+    /**
+     * Put the files of the snapshot back into the install directory. The current entries are handed to the deleter,
+     * except the excluded directories. The snapshot is kept, it can be restored again.
+     * @param deleter deleter of the current entries
+     * @return true if the tree has been restored
+     */
+    public boolean restore(DeferredDeleter deleter) {
+        long start = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<Entry>();
+        try {
+            readManifest(entries, null, null);
+        }
+        catch (IOException e) {
+            LOGGER.error("No usable snapshot in " + snapshotDir + " - " + e.getMessage());
+            return false;
+        }
+
+        //a linked file changed since the snapshot was taken means the installed file has been edited in place
+        for (Entry entry : entries) {
+            if (TYPE_LINK.equals(entry.type)) {
+                File file = new File(snapshotDir, entry.path);
+                if (file.length() != entry.size || file.lastModified() != entry.lastModified) {
+                    LOGGER.error("Snapshot file " + file + " has changed since the snapshot was taken, it cannot be restored.");
+                    return false;
+                }
+            }
+        }
+
+        File[] current = installDir.listFiles();
+        if (current != null) {
+            for (File entry : current) {
+                if (excludedDirs.contains(entry.getName()) && entry.isDirectory())
+                    continue;
+                if (!deleter.moveToTrash(entry)) {
+                    LOGGER.error("Unable to remove " + entry + " before the restore.");
+                    return false;
+                }
+            }
+        }
+
+        try {
+            Files.createDirectories(installDir.toPath());
+            for (Entry entry : entries) {
+                Path target = new File(installDir, entry.path).toPath();
+                Path source = new File(snapshotDir, entry.path).toPath();
+                if (TYPE_DIRECTORY.equals(entry.type))
+                    Files.createDirectories(target);
+                else if (!TYPE_LINK.equals(entry.type) || !link(target, source))
+                    Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Failed to restore " + installDir + " from " + snapshotDir + " - " + e.getMessage());
+            return false;
+        }
+        LOGGER.info("Restored " + entries.size() + " entries of " + installDir + " from " + snapshotDir + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        InstallTimeline.count("files", entries.size());
+        return true;
+    }
+
+    /**
+     * @return the Tomcat options saved with the snapshot, null if there are none
+     */
+    public String[] getTomcatOptions() throws IOException {
+        List<String> options = new ArrayList<String>();
+        readManifest(new ArrayList<Entry>(), options, null);
+        return options.isEmpty() ? null : options.toArray(new String[0]);
+    }
+
+    /**
+     * @return the Tomcat version saved with the snapshot, null if there is none
+     */
+    public String getTomcatVersion() throws IOException {
+        List<String> versions = new ArrayList<String>();
+        readManifest(new ArrayList<Entry>(), null, versions);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    private static boolean isImmutable(Path file) {
+        return IMMUTABLE_EXTENSIONS.contains(FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase(Locale.ENGLISH));
+    }
+
+    //hard links need the same volume and a file system supporting them, the caller copies otherwise
+    private static boolean link(Path link, Path existing) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to link " + link + " to " + existing + ", copying it - " + e);
+            return false;
+        }
+    }
+
+    //the copies are the configuration files, a small fraction of the tree; require twice their size to be free
+    //returns the number of files and bytes of the tree, the total of the snapshot progress
+    private long[] checkDiskSpace(final Path root) throws IOException {
+        final long[] totals = new long[3];
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.getParent() != null && dir.getParent().equals(root) && excludedDirs.contains(dir.getFileName().toString()))
+                    return FileVisitResult.SKIP_SUBTREE;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                totals[0]++;
+                totals[1] += attrs.size();
+                if (!isImmutable(file))
+                    totals[2] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        long usable = installDir.getParentFile().getUsableSpace();
+        if (usable < 2 * totals[2])
+            throw new IOException("not enough disk space, " + usable + " bytes free for " + totals[2] + " bytes to copy");
+        return new long[] {totals[0], totals[1]};
+    }
+
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static void writeManifest(File manifest, List<Entry> entries, String tomcatVersion, String[] tomcatOptions) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(manifest.toPath(), StandardCharsets.UTF_8);
+        try {
+            if (tomcatVersion != null) {
+                writer.write(TYPE_VERSION + SEPARATOR + tomcatVersion);
+                writer.newLine();
+            }
+            if (tomcatOptions != null) {
+                for (String option : tomcatOptions) {
+                    writer.write(TYPE_OPTION + SEPARATOR + option);
+                    writer.newLine();
+                }
+            }
+            for (Entry entry : entries) {
+                writer.write(entry.format());
+                writer.newLine();
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private void readManifest(List<Entry> entries, List<String> options, List<String> versions) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(new File(snapshotDir, MANIFEST_FILE_NAME).toPath(), StandardCharsets.UTF_8);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(TYPE_OPTION + SEPARATOR)) {
+                    if (options != null)
+                        options.add(line.substring(TYPE_OPTION.length() + SEPARATOR.length()));
+                }
+                else if (line.startsWith(TYPE_VERSION + SEPARATOR)) {
+                    if (versions != null)
+                        versions.add(line.substring(TYPE_VERSION.length() + SEPARATOR.length()));
+                }
+                else if (!line.isEmpty())
+                    entries.add(Entry.parse(line));
+            }
+        }
+        catch (RuntimeException e) {
+            throw new IOException("invalid manifest - " + e.getMessage());
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
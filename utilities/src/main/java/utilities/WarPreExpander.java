@@ -0,0 +1,361 @@
+package utilities;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expands the wars of a Tomcat tree into their exploded directories before Tomcat is started, so that Tomcat
+ * does not expand them one after the other on its first start, and optionally precompiles their JSPs.
+ * The wars are expanded at the same time, each into a directory of the Tomcat temp directory which is then
+ * renamed into webapps, so that Tomcat never sees a partly expanded war. Each exploded directory gets the
+ * META-INF/war-tracker file Tomcat itself writes when it expands a war, dated as the war: Tomcat then uses the
+ * directory as it is, and expands the war again should it change.
+ * The JSPs are compiled by the Jasper JspC of the installed Tomcat, in a JVM of its own since the Tomcat libraries
+ * are not on the class path of this tool, into the work directory of the context, where Jasper looks for them.
+ */
+public class WarPreExpander {
+
+    public static final String          CONFIG_FILE_NAME = "war-expansion.properties";
+
+    //keys of the configuration file
+    public static final String          ENABLED = "enabled";
+    public static final String          PRECOMPILE_JSPS = "precompileJsps";
+    public static final String          PARALLELISM = "parallelism";
+    public static final String          JSPC_PARALLELISM = "jspcParallelism";
+    public static final String          JSPC_TIMEOUT = "jspcTimeoutMillis";
+    public static final String          JSPC_MAX_HEAP = "jspcMaxHeapMegabytes";
+
+    public static final long            DEFAULT_JSPC_TIMEOUT = 1800000;
+    public static final int             DEFAULT_JSPC_MAX_HEAP = 512;
+
+    //the file Tomcat dates as the war it expanded, see org.apache.catalina.startup.ExpandWar
+    public static final String          WAR_TRACKER = "META-INF" + File.separator + "war-tracker";
+    //work directory of the contexts, the engine and host names of the server.xml
+    public static final String          WORK_PATH = "work" + File.separator + "Catalina" + File.separator + "localhost";
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(WarPreExpander.class);
+
+    private static final String         WAR_EXTENSION = ".war";
+    private static final String         STAGING_PATH = "temp" + File.separator + "war-expansion";
+    private static final String         JSPC_CLASS = "org.apache.jasper.JspC";
+
+    private final int                   parallelism;
+    private final File                  javaHome;
+    private final int                   jspcParallelism;
+    private final long                  jspcTimeoutMillis;
+    private final int                   jspcMaxHeapMegabytes;
+    private final ProcessRunner         runner = new ProcessRunner();
+
+    /**
+     * Expansion and compilation of one war
+     */
+    public static class WarResult {
+        private final File      war;
+        private final boolean   expanded;
+        private final long      expandMillis;
+        private final int       entries;
+        private final long      bytes;
+        private final long      compileMillis;
+        private final boolean   compiled;
+        private final String    error;
+
+        WarResult(File war, boolean expanded, long expandMillis, int entries, long bytes, long compileMillis, boolean compiled, String error) {
+            this.war = war;
+            this.expanded = expanded;
+            this.expandMillis = expandMillis;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.compileMillis = compileMillis;
+            this.compiled = compiled;
+            this.error = error;
+        }
+
+        public File getWar() {
+            return war;
+        }
+
+        /**
+         * @return true if the war has been expanded, false if its exploded directory was up to date or on failure
+         */
+        public boolean isExpanded() {
+            return expanded;
+        }
+
+        public long getExpandMillis() {
+            return expandMillis;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return duration of the JSP compilation, -1 if the JSPs have not been compiled
+         */
+        public long getCompileMillis() {
+            return compileMillis;
+        }
+
+        /**
+         * @return true if the JSPs have been compiled
+         */
+        public boolean isCompiled() {
+            return compiled;
+        }
+
+        /**
+         * @return why the war could not be expanded, null if it is
+         */
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        WarResult withCompilation(long compileMillis, boolean compiled) {
+            return new WarResult(war, expanded, expandMillis, entries, bytes, compileMillis, compiled, error);
+        }
+
+        @Override
+        public String toString() {
+            if (error != null)
+                return war.getName() + ": " + error;
+            String expansion = expanded ? "expanded " + entries + " entries (" + bytes + " bytes) in " + expandMillis + " ms" : "up to date";
+            if (compileMillis < 0)
+                return war.getName() + ": " + expansion;
+            return war.getName() + ": " + expansion + ", JSPs " + (compiled ? "compiled" : "not compiled") + " in " + compileMillis + " ms";
+        }
+    }
+
+    /**
+     * @param parallelism wars expanded at the same time
+     * @param javaHome JVM running JspC, null not to precompile the JSPs
+     * @param jspcParallelism JspC run at the same time
+     * @param jspcTimeoutMillis maximum run time of JspC for a war
+     * @param jspcMaxHeapMegabytes maximum heap of a JspC JVM
+     */
+    public WarPreExpander(int parallelism, File javaHome, int jspcParallelism, long jspcTimeoutMillis, int jspcMaxHeapMegabytes) {
+        if (parallelism < 1 || jspcParallelism < 1 || jspcTimeoutMillis < 1 || jspcMaxHeapMegabytes < 1)
+            throw new IllegalArgumentException("Invalid war expansion settings " + parallelism + " wars, " + jspcParallelism + " JspC, "
+                    + jspcTimeoutMillis + " ms, " + jspcMaxHeapMegabytes + " MB per JspC");
+        this.parallelism = parallelism;
+        this.javaHome = javaHome;
+        this.jspcParallelism = jspcParallelism;
+        this.jspcTimeoutMillis = jspcTimeoutMillis;
+        this.jspcMaxHeapMegabytes = jspcMaxHeapMegabytes;
+    }
+
+    /**
+     * @param configFile configuration file, the defaults apply to the keys it does not have
+     * @param machine machine the wars are expanded on, gives the default parallelism
+     * @param javaHome JVM running JspC when the JSPs are precompiled, null if there is none
+     * @return the expander, null if the expansion is disabled
+     * @throws IllegalArgumentException on a value which is not a number
+     */
+    public static WarPreExpander fromConfig(File configFile, MachineProfile machine, File javaHome) throws IOException {
+        Properties config = new Properties();
+        if (configFile.isFile()) {
+            try (InputStream in = Files.newInputStream(configFile.toPath())) {
+                config.load(in);
+            }
+        }
+        if ("false".equalsIgnoreCase(config.getProperty(ENABLED, "true").trim()))
+            return null;
+        //JspC is a JVM of its own and compiles with every core, half of them is plenty
+        boolean precompile = "true".equalsIgnoreCase(config.getProperty(PRECOMPILE_JSPS, "false").trim());
+        if (precompile && javaHome == null) {
+            LOGGER.warn("No JVM to run JspC, the JSPs are not precompiled");
+            precompile = false;
+        }
+        return new WarPreExpander((int) number(config, PARALLELISM, machine.getCores()), precompile ? javaHome : null,
+                (int) number(config, JSPC_PARALLELISM, Math.max(1, machine.getCores() / 2)), number(config, JSPC_TIMEOUT, DEFAULT_JSPC_TIMEOUT),
+                (int) number(config, JSPC_MAX_HEAP, DEFAULT_JSPC_MAX_HEAP));
+    }
+
+    private static long number(Properties config, String key, long defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value " + value + " for the war expansion key " + key);
+        }
+    }
+
+    /**
+     * @param war war file
+     * @return the exploded directory Tomcat uses for the war, ROOT for ROOT.war
+     */
+    public static File explodedDirOf(File war) {
+        String name = war.getName();
+        return new File(war.getParentFile(), name.substring(0, name.length() - WAR_EXTENSION.length()));
+    }
+
+    /**
+     * @return true if the exploded directory of the war has been expanded from this war
+     */
+    public static boolean isUpToDate(File war) {
+        File tracker = new File(explodedDirOf(war), WAR_TRACKER);
+        return tracker.isFile() && tracker.lastModified() == war.lastModified();
+    }
+
+    /**
+     * Expand the wars of a Tomcat tree, and precompile their JSPs when enabled
+     * @param tomcatDir Tomcat tree, its webapps directory has the wars
+     * @return the result of each war, in the order of their names
+     */
+    public List<WarResult> expandAll(final File tomcatDir) {
+        File[] found = new File(tomcatDir, "webapps").listFiles(file -> file.isFile() && file.getName().toLowerCase().endsWith(WAR_EXTENSION));
+        if (found == null || found.length == 0) {
+            LOGGER.info("No war to expand in " + tomcatDir);
+            return Collections.emptyList();
+        }
+        List<File> wars = new ArrayList<File>(Arrays.asList(found));
+        Collections.sort(wars);
+
+        //the entries of a war are extracted in parallel as well, the cores are shared between the wars expanded together
+        int warThreads = Math.min(parallelism, wars.size());
+        final int entryWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / warThreads);
+        ExecutorService expandPool = Executors.newFixedThreadPool(warThreads, new ExpanderThreadFactory("war-expand-"));
+        ExecutorService compilePool = javaHome == null ? null
+                : Executors.newFixedThreadPool(Math.min(jspcParallelism, wars.size()), new ExpanderThreadFactory("war-jspc-"));
+        try {
+            List<CompletableFuture<WarResult>> futures = new ArrayList<CompletableFuture<WarResult>>();
+            for (final File war : wars) {
+                CompletableFuture<WarResult> future = CompletableFuture.supplyAsync(() -> expand(tomcatDir, war, entryWorkers), expandPool);
+                if (compilePool != null)
+                    future = future.thenApplyAsync(result -> result.isSuccess() ? compile(tomcatDir, result) : result, compilePool);
+                futures.add(future);
+            }
+            List<WarResult> results = new ArrayList<WarResult>();
+            for (CompletableFuture<WarResult> future : futures)
+                results.add(future.join());
+            report(results);
+            return results;
+        }
+        finally {
+            expandPool.shutdownNow();
+            if (compilePool != null)
+                compilePool.shutdownNow();
+        }
+    }
+
+    private WarResult expand(File tomcatDir, File war, int entryWorkers) {
+        if (isUpToDate(war)) {
+            LOGGER.debug(explodedDirOf(war) + " is up to date with " + war.getName());
+            return new WarResult(war, false, 0, 0, 0, -1, false, null);
+        }
+        long start = System.currentTimeMillis();
+        File exploded = explodedDirOf(war);
+        File staging = new File(tomcatDir, STAGING_PATH + File.separator + exploded.getName());
+        try {
+            FileUtils.deleteDirectory(staging);
+            ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(entryWorkers, false).extractAll(Arrays.asList(war), staging);
+            if (!report.isSuccess())
+                throw new IOException("unable to extract " + war + ": " + report);
+            File tracker = new File(staging, WAR_TRACKER);
+            if (!tracker.getParentFile().isDirectory() && !tracker.getParentFile().mkdirs())
+                throw new IOException("unable to create " + tracker.getParentFile());
+            if (!tracker.createNewFile() && !tracker.isFile())
+                throw new IOException("unable to create " + tracker);
+            if (!tracker.setLastModified(war.lastModified()))
+                throw new IOException("unable to date " + tracker);
+
+            //what the work directory has was compiled from the previous content of the war
+            FileUtils.deleteDirectory(new File(tomcatDir, WORK_PATH + File.separator + exploded.getName()));
+            FileUtils.deleteDirectory(exploded);
+            Files.move(staging.toPath(), exploded.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return new WarResult(war, true, System.currentTimeMillis() - start, report.getEntriesExtracted(), report.getBytesExtracted(), -1, false, null);
+        }
+        catch (IOException e) {
+            FileUtils.deleteQuietly(staging);
+            return new WarResult(war, false, System.currentTimeMillis() - start, 0, 0, -1, false, e.getMessage());
+        }
+    }
+
+    /**
+     * Compile the JSPs of an exploded war into the work directory of its context. A failure is not an error,
+     * Tomcat compiles the JSPs when they are first requested as it does without the precompilation.
+     */
+    private WarResult compile(File tomcatDir, WarResult expansion) {
+        File exploded = explodedDirOf(expansion.getWar());
+        File workDir = new File(tomcatDir, WORK_PATH + File.separator + exploded.getName());
+        if (!expansion.isExpanded() && workDir.isDirectory()) {
+            LOGGER.debug(workDir + " already has the compiled JSPs of " + exploded.getName());
+            return expansion;
+        }
+        String classPath = new File(tomcatDir, "bin" + File.separator + "tomcat-juli.jar") + File.pathSeparator
+                + new File(tomcatDir, "lib") + File.separator + "*";
+        List<String> arguments = Arrays.asList(new File(javaHome, "bin" + File.separator + "java").getPath(),
+                "-Xmx" + jspcMaxHeapMegabytes + "m", "-Dcatalina.home=" + tomcatDir, "-cp", classPath, JSPC_CLASS,
+                "-webapp", exploded.getPath(), "-d", workDir.getPath(), "-javaEncoding", "UTF-8", "-compile");
+        ProcessRunner.Result result = runner.run(new ProcessRunner.Command("JspC " + exploded.getName(), jspcTimeoutMillis, tomcatDir, arguments));
+        if (!result.isSuccess()) {
+            //some JSPs of the context may be compiled, the others would not be looked for in the same place
+            //the result has the exit code, JspC reports what it could not compile on its standard error
+            LOGGER.warn("Unable to precompile the JSPs of " + exploded.getName() + ", Tomcat compiles them on demand - " + result
+                    + (result.isStarted() ? System.lineSeparator() + result.getErrorOutput() : ""));
+            FileUtils.deleteQuietly(workDir);
+        }
+        return expansion.withCompilation(result.getDurationMillis(), result.isSuccess());
+    }
+
+    private static void report(List<WarResult> results) {
+        for (WarResult result : results) {
+            if (result.isSuccess())
+                LOGGER.info("War " + result);
+            else
+                LOGGER.error("War " + result);
+            InstallTimeline.global().start("Expand " + result.getWar().getName(), "war")
+                    .set("expanded", result.isExpanded())
+                    .set("expandMillis", result.getExpandMillis())
+                    .set("entries", result.getEntries())
+                    .set("bytes", result.getBytes())
+                    .set("compileMillis", result.getCompileMillis())
+                    .end(result.isSuccess());
+        }
+    }
+
+    //an expansion blocked on a slow disk must not keep the tool from exiting
+    private static class ExpanderThreadFactory implements ThreadFactory {
+        private final String        prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        ExpanderThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.util.List;
+
+/**
+ * ACL backend working on the NTFS access control lists.
+ */
+public class WindowsAclBackend implements AclBackend<List<AclEntry>> {
+
+    @Override
+    public List<AclEntry> read(Path path) throws IOException {
+        return view(path).getAcl();
+    }
+
+    @Override
+    public void write(Path path, List<AclEntry> permissions) throws IOException {
+        view(path).setAcl(permissions);
+    }
+
+    private static AclFileAttributeView view(Path path) throws IOException {
+        AclFileAttributeView view = Files.getFileAttributeView(path, AclFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view == null)
+            throw new IOException("ACLs are not supported on " + path);
+        return view;
+    }
+}
@@ -0,0 +1,129 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveExtractorTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    @Test
+    public void extractsTheEntriesOfAllTheArchives() throws IOException {
+        File realm = zip("unifiedconfig-realm-assembly.zip", "realm.jar", "realm", "lib/", null, "lib/util.jar", "util");
+        File shindig = zip("shindig-cache-assembly.zip", "shindig.jar", "shindig");
+        File dest = new File(folder.getRoot(), "lib");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(2, false).extractAll(Arrays.asList(realm, shindig), dest);
+        assertTrue(report.toString(), report.isSuccess());
+        assertEquals(4, report.getEntriesTotal());
+        assertEquals(3, report.getEntriesExtracted());
+        assertEquals("util", read(new File(dest, "lib/util.jar")));
+        assertEquals("shindig", read(new File(dest, "shindig.jar")));
+    }
+
+    @Test
+    public void conflictingEntryIsReportedAndTheLastArchiveWins() throws IOException {
+        File first = zip("first.zip", "common.jar", "first version", "same.jar", "same");
+        File last = zip("last.zip", "common.jar", "last version", "same.jar", "same");
+        File dest = new File(folder.getRoot(), "lib");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(2, false).extractAll(Arrays.asList(first, last), dest);
+        assertEquals(1, report.getConflicts().size());
+        assertTrue(report.getConflicts().get(0).startsWith("common.jar differs between"));
+        assertEquals("last version", read(new File(dest, "common.jar")));
+        //a conflict is not a failure
+        assertTrue(report.isSuccess());
+    }
+
+    @Test
+    public void entryOutsideOfTheDestinationIsRejected() throws IOException {
+        File archive = zip("slip.zip", "../evil.jar", "evil", "good.jar", "good");
+        File dest = new File(folder.getRoot(), "lib");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(2, false).extractAll(Collections.singletonList(archive), dest);
+        assertFalse(report.isSuccess());
+        assertEquals(1, report.getErrors().size());
+        assertTrue(report.getErrors().get(0).startsWith("../evil.jar"));
+        assertFalse(new File(folder.getRoot(), "evil.jar").exists());
+        assertEquals("good", read(new File(dest, "good.jar")));
+    }
+
+    @Test
+    public void identicalFilesAreSkipped() throws IOException {
+        File archive = zip("assembly.zip", "same.jar", "same", "changed.jar", "new content", "missing.jar", "missing");
+        File dest = folder.newFolder("lib");
+        write(new File(dest, "same.jar"), "same");
+        //same size, different content
+        write(new File(dest, "changed.jar"), "old content");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(2, true).extractAll(Collections.singletonList(archive), dest);
+        assertEquals(1, report.getEntriesSkipped());
+        assertEquals(2, report.getEntriesExtracted());
+        assertEquals("new content", read(new File(dest, "changed.jar")));
+    }
+
+    @Test
+    public void filesAreRewrittenWithoutSkipIdentical() throws IOException {
+        File archive = zip("assembly.zip", "same.jar", "same");
+        File dest = folder.newFolder("lib");
+        write(new File(dest, "same.jar"), "same");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(1, false).extractAll(Collections.singletonList(archive), dest);
+        assertEquals(0, report.getEntriesSkipped());
+        assertEquals(1, report.getEntriesExtracted());
+    }
+
+    @Test
+    public void unreadableArchiveIsReportedAndTheOthersAreExtracted() throws IOException {
+        File broken = folder.newFile("broken.zip");
+        write(broken, "not a zip");
+        File missing = new File(folder.getRoot(), "missing.zip");
+        File good = zip("good.zip", "good.jar", "good");
+        File dest = new File(folder.getRoot(), "lib");
+
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(2, false).extractAll(Arrays.asList(broken, missing, good), dest);
+        assertEquals(Arrays.asList(broken.getPath(), missing.getPath()), report.getFailedArchives());
+        assertFalse(report.isSuccess());
+        assertEquals("good", read(new File(dest, "good.jar")));
+    }
+
+    /**
+     * @param namesAndContents entry name followed by its content, null for a directory
+     */
+    private File zip(String name, String... namesAndContents) throws IOException {
+        File archive = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null)
+                    out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+package utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Warms up contexts served by an in-process HTTP server answering a context root with a redirect, as Tomcat does.
+ */
+public class ContextWarmerTest {
+
+    private static final int            REQUESTS = 6;
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private HttpServer                  server;
+    private ExecutorService             threads;
+    private String                      baseUrl;
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger         inFlight = new AtomicInteger();
+    private final AtomicInteger         maxInFlight = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/app", exchange -> answer(exchange, 200));
+        server.createContext("/broken", exchange -> answer(exchange, 500));
+        threads = Executors.newCachedThreadPool();
+        server.setExecutor(threads);
+        server.start();
+        baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void deployedContextIsRequestedTheConfiguredNumberOfTimes() throws Exception {
+        List<ContextWarmer.ContextResult> results = new ContextWarmer(baseUrl, REQUESTS, 2, 5000, 5000)
+                .warmUp(Collections.singletonList("/app"));
+
+        ContextWarmer.ContextResult result = results.get(0);
+        assertTrue(result.toString(), result.isSuccess());
+        assertTrue(result.getFirstHitMillis() >= 0);
+        assertTrue(result.getSteadyPercentile(95) >= result.getSteadyPercentile(50));
+        assertEquals(REQUESTS, hits.get("/app/").get());
+    }
+
+    @Test
+    public void serverErrorsAndMissingContextsAreReportedInTheOrderOfTheContexts() throws Exception {
+        List<ContextWarmer.ContextResult> results = new ContextWarmer(baseUrl, REQUESTS, 2, 300, 5000)
+                .warmUp(Arrays.asList("/missing", "/broken", "/app"));
+
+        assertEquals("/missing", results.get(0).getContext());
+        assertFalse(results.get(0).isDeployed());
+        assertEquals(-1, results.get(0).getFirstHitMillis());
+
+        assertEquals("/broken", results.get(1).getContext());
+        assertTrue(results.get(1).isDeployed());
+        assertEquals(REQUESTS, results.get(1).getFailures());
+        assertEquals(-1, results.get(1).getFirstHitMillis());
+        assertEquals(-1, results.get(1).getSteadyPercentile(50));
+
+        assertTrue(results.get(2).isSuccess());
+    }
+
+    @Test
+    public void configuredPageIsWarmedInsteadOfTheContextRoot() throws Exception {
+        new ContextWarmer(baseUrl, REQUESTS, 2, 5000, 5000).setPath("/app", "/app/login.jsp")
+                .warmUp(Collections.singletonList("/app"));
+
+        assertEquals(REQUESTS, hits.get("/app/login.jsp").get());
+        assertNull(hits.get("/app/"));
+    }
+
+    @Test
+    public void steadyRequestsStayWithinTheConcurrency() throws Exception {
+        new ContextWarmer(baseUrl, 20, 3, 5000, 5000).warmUp(Collections.singletonList("/app"));
+
+        assertTrue("max " + maxInFlight.get() + " requests in flight", maxInFlight.get() <= 3);
+        assertEquals(20, hits.get("/app/").get());
+    }
+
+    @Test
+    public void disabledConfigurationGivesNoWarmer() throws IOException {
+        File config = folder.newFile(ContextWarmer.CONFIG_FILE_NAME);
+        Files.write(config.toPath(), (ContextWarmer.ENABLED + "=false\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        assertNull(ContextWarmer.fromConfig(config));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumberInTheConfigurationIsRejected() throws IOException {
+        File config = folder.newFile(ContextWarmer.CONFIG_FILE_NAME);
+        Files.write(config.toPath(), (ContextWarmer.CONCURRENCY + "=four\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        ContextWarmer.fromConfig(config);
+    }
+
+    //the context root is redirected, the pages are answered with the status and counted
+    private void answer(HttpExchange exchange, int status) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        try {
+            if (path.equals(exchange.getHttpContext().getPath())) {
+                exchange.getResponseHeaders().set("Location", path + "/");
+                exchange.sendResponseHeaders(302, -1);
+                return;
+            }
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                hits.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+                Thread.sleep(10);
+                byte[] body = ("<html>" + path + "</html>").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredDeleterTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        tomcat;
+
+    @Before
+    public void setUp() throws IOException {
+        tomcat = folder.newFolder("tomcat");
+        write(new File(tomcat, "lib/catalina.jar"), "catalina");
+        write(new File(tomcat, "webapps/ROOT.war"), "root");
+        write(new File(tomcat, "RELEASE-NOTES"), "notes");
+    }
+
+    @Test
+    public void entriesAreRenamedIntoTheTrashNextToTheirDirectory() throws IOException {
+        DeferredDeleter deleter = new DeferredDeleter(tomcat, 2);
+
+        assertTrue(deleter.moveToTrash(new File(tomcat, "lib")));
+        assertTrue(deleter.moveToTrash(new File(tomcat, "RELEASE-NOTES")));
+        assertFalse(new File(tomcat, "lib").exists());
+        assertFalse(new File(tomcat, "RELEASE-NOTES").exists());
+        assertTrue(new File(tomcat, "webapps/ROOT.war").isFile());
+
+        assertEquals(new File(folder.getRoot(), "tomcat" + DeferredDeleter.TRASH_SUFFIX), deleter.getTrashRoot());
+        File[] batches = deleter.getTrashRoot().listFiles();
+        assertEquals(1, batches.length);
+        assertEquals(2, batches[0].list().length);
+        assertTrue(new File(batches[0], "0-lib/catalina.jar").isFile());
+    }
+
+    @Test
+    public void missingEntryIsAlreadyGone() {
+        assertTrue(new DeferredDeleter(tomcat, 2).moveToTrash(new File(tomcat, "docs")));
+    }
+
+    @Test
+    public void trashIsDeletedInTheBackground() throws Exception {
+        DeferredDeleter deleter = new DeferredDeleter(tomcat, 2);
+        deleter.moveToTrash(new File(tomcat, "lib"));
+        deleter.moveToTrash(new File(tomcat, "webapps"));
+
+        deleter.startBackgroundDeletion();
+        assertTrue(deleter.awaitCompletion(10000));
+        assertGone(deleter.getTrashRoot());
+        assertTrue(new File(tomcat, "RELEASE-NOTES").isFile());
+    }
+
+    @Test
+    public void trashLeftByAnInterruptedRunIsDeletedByTheNextOne() throws Exception {
+        DeferredDeleter interrupted = new DeferredDeleter(tomcat, 2);
+        interrupted.moveToTrash(new File(tomcat, "lib"));
+        //the interrupted run never started the deletion
+        Thread.sleep(5);
+
+        DeferredDeleter next = new DeferredDeleter(tomcat, 2);
+        next.moveToTrash(new File(tomcat, "webapps"));
+        assertEquals(2, next.getTrashRoot().list().length);
+
+        next.startBackgroundDeletion();
+        assertTrue(next.awaitCompletion(10000));
+        assertGone(next.getTrashRoot());
+    }
+
+    @Test
+    public void leftoverTrashIsDeletedWhenTheRunMovedNothing() throws Exception {
+        new DeferredDeleter(tomcat, 2).moveToTrash(new File(tomcat, "lib"));
+
+        DeferredDeleter next = new DeferredDeleter(tomcat, 2);
+        next.startBackgroundDeletion();
+        assertTrue(next.awaitCompletion(10000));
+        assertGone(next.getTrashRoot());
+    }
+
+    //the trash directories are removed by a finisher thread once the entries are deleted
+    private static void assertGone(File trashRoot) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (trashRoot.exists() && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertFalse(trashRoot + " still exists", trashRoot.exists());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
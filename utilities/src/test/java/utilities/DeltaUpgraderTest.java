@@ -0,0 +1,127 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaUpgraderTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        tomcat;
+    private File                        distribution;
+
+    @Before
+    public void setUp() throws IOException {
+        tomcat = folder.newFolder("tomcat");
+        write(new File(tomcat, "bin/tomcat9.exe"), "service 9.0.80");
+        write(new File(tomcat, "bin/bootstrap.jar"), "bootstrap");
+        write(new File(tomcat, "lib/catalina.jar"), "catalina 9.0.80");
+        write(new File(tomcat, "lib/servlet-api.jar"), "servlet-1");
+        write(new File(tomcat, "lib/ecj-4.20.jar"), "ecj 4.20");
+        write(new File(tomcat, "lib/icm-realm.jar"), "icm");
+        write(new File(tomcat, "conf/server.xml"), "<Server port=\"8006\"/>");
+        write(new File(tomcat, "webapps/ROOT.war"), "root");
+
+        distribution = folder.newFolder("apache-tomcat-9.0.85");
+        write(new File(distribution, "bin/tomcat9.exe"), "service 9.0.85");
+        write(new File(distribution, "bin/bootstrap.jar"), "bootstrap");
+        write(new File(distribution, "bin/startup.bat"), "not installed by NSIS");
+        write(new File(distribution, "bin/tomcat-juli.jar"), "juli");
+        //same size, different content
+        write(new File(distribution, "lib/catalina.jar"), "catalina 9.0.85");
+        write(new File(distribution, "lib/servlet-api.jar"), "servlet-2");
+        write(new File(distribution, "lib/ecj-4.27.jar"), "ecj 4.27");
+        write(new File(distribution, "conf/server.xml"), "<Server/>");
+        write(new File(distribution, "webapps/ROOT/index.jsp"), "index");
+    }
+
+    @Test
+    public void planListsTheAddedChangedAndRemovedFiles() throws IOException {
+        DeltaUpgrader.Plan plan = new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2).plan(distribution);
+
+        assertEquals(Arrays.asList("bin/tomcat-juli.jar", "lib/ecj-4.27.jar"), plan.getAdded());
+        assertEquals(Arrays.asList("bin/tomcat9.exe", "lib/catalina.jar", "lib/servlet-api.jar"), plan.getChanged());
+        assertEquals(Collections.singletonList("lib/ecj-4.20.jar"), plan.getRemoved());
+        assertEquals(1, plan.getUnchanged());
+        assertFalse(plan.isEmpty());
+    }
+
+    @Test
+    public void applyLeavesTheExcludedDirectoriesAndTheIcmFilesAlone() throws IOException {
+        DeltaUpgrader upgrader = new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2);
+        assertTrue(upgrader.apply(upgrader.plan(distribution), new DeferredDeleter(tomcat, 1)));
+
+        assertEquals("catalina 9.0.85", read(new File(tomcat, "lib/catalina.jar")));
+        assertEquals("juli", read(new File(tomcat, "bin/tomcat-juli.jar")));
+        assertFalse(new File(tomcat, "lib/ecj-4.20.jar").exists());
+        assertFalse(new File(tomcat, "bin/startup.bat").exists());
+        assertEquals("icm", read(new File(tomcat, "lib/icm-realm.jar")));
+        assertEquals("<Server port=\"8006\"/>", read(new File(tomcat, "conf/server.xml")));
+        assertFalse(new File(tomcat, "webapps/ROOT").exists());
+        assertTrue(new File(tomcat, DeltaUpgrader.DISTRIBUTION_MANIFEST_FILE_NAME).isFile());
+
+        //the install now matches the distribution
+        assertTrue(new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2).plan(distribution).isEmpty());
+    }
+
+    @Test
+    public void filesDroppedByTheNextDistributionAreRemoved() throws IOException {
+        DeltaUpgrader upgrader = new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2);
+        assertTrue(upgrader.apply(upgrader.plan(distribution), new DeferredDeleter(tomcat, 1)));
+        assertTrue(new File(distribution, "bin/tomcat-juli.jar").delete());
+
+        DeltaUpgrader.Plan plan = new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2).plan(distribution);
+        assertEquals(Collections.singletonList("bin/tomcat-juli.jar"), plan.getRemoved());
+        //a file the manifest does not list is not Tomcat's
+        assertFalse(plan.getRemoved().contains("lib/icm-realm.jar"));
+    }
+
+    @Test
+    public void failedApplyIsRolledBackFromTheSnapshot() throws IOException {
+        TomcatSnapshot snapshot = new TomcatSnapshot(tomcat, Arrays.asList("logs"));
+        assertTrue(snapshot.create("9.0.80", null));
+        DeltaUpgrader upgrader = new DeltaUpgrader(tomcat, DeltaUpgrader.DEFAULT_EXCLUDED_DIRS, 2);
+        DeltaUpgrader.Plan plan = upgrader.plan(distribution);
+        //the distribution lost a file after the plan, the apply stops half way
+        assertTrue(new File(distribution, "lib/servlet-api.jar").delete());
+
+        assertFalse(upgrader.apply(plan, new DeferredDeleter(tomcat, 1)));
+        assertTrue(snapshot.restore(new DeferredDeleter(tomcat, 1)));
+        assertEquals("service 9.0.80", read(new File(tomcat, "bin/tomcat9.exe")));
+        assertEquals("catalina 9.0.80", read(new File(tomcat, "lib/catalina.jar")));
+        assertEquals("servlet-1", read(new File(tomcat, "lib/servlet-api.jar")));
+        assertEquals("ecj 4.20", read(new File(tomcat, "lib/ecj-4.20.jar")));
+        assertFalse(new File(tomcat, "lib/ecj-4.27.jar").exists());
+        assertFalse(new File(tomcat, DeltaUpgrader.DISTRIBUTION_MANIFEST_FILE_NAME).exists());
+    }
+
+    @Test
+    public void versionIsReadFromTheDistributionName() {
+        assertEquals("9.0.85", DeltaUpgrader.versionOf("apache-tomcat-9.0.85-windows-x64.zip"));
+        assertNull(DeltaUpgrader.versionOf("apache-tomcat.zip"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
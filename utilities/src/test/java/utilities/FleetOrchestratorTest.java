@@ -0,0 +1,151 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Installs a fleet of in-memory targets from an inventory file, through the pipeline and the orchestrator.
+ */
+public class FleetOrchestratorTest {
+
+    private static final String         VERSION = "9.0.98";
+    private static final long           TRANSITION_MILLIS = 20;
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        installerPackage;
+    private Map<String, FleetInventory.TargetFactory> kinds;
+
+    @Before
+    public void setUp() throws IOException {
+        installerPackage = new File(folder.getRoot(), "apache-tomcat-" + VERSION + ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(installerPackage))) {
+            for (String name : Arrays.asList("bin/tomcat9.exe", "Uninstall.exe", "lib/catalina.jar")) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        kinds = Collections.<String, FleetInventory.TargetFactory>singletonMap("simulated",
+                (name, icmRoot) -> SimulatedInstaller.createTarget(name, icmRoot, TRANSITION_MILLIS));
+    }
+
+    @Test
+    public void inventoryTargetsAreInstalledAndStarted() throws IOException {
+        File installed = new File(folder.getRoot(), "lab2/icm/tomcat");
+        write(new File(installed, "bin/tomcat9.exe"), "old");
+        write(new File(installed, "Uninstall.exe"), "old");
+        write(new File(installed, "lib/old.jar"), "old");
+        write(new File(installed, "logs/catalina.log"), "log");
+        List<InstallTarget> targets = FleetInventory.load(inventory("lab1", "lab2", "lab3"), kinds);
+
+        FleetReport report = new FleetOrchestrator(2, 2, 1).run(targets, pipeline(installerPackage, 5000));
+        assertTrue(report.isSuccess());
+        assertNull(report.getHaltReason());
+        assertEquals(3, report.count(StepResult.Status.SUCCEEDED));
+        for (int i = 0; i < targets.size(); i++) {
+            InstallTarget target = targets.get(i);
+            assertEquals(target.getName(), report.getResults().get(i).getTarget());
+            assertEquals(VERSION, target.getRegistry().getCurrentInstallVersion());
+            assertEquals(ServiceState.RUNNING, target.getServiceBackend().queryState(InstallTomcat.TOMCAT_SERVICENAME));
+            assertEquals(ServiceState.RUNNING, target.getServiceBackend().queryState(InstallTomcat.W3SVC_SERVICENAME));
+            assertTrue(new File(target.getTomcatDir(), "lib/catalina.jar").isFile());
+        }
+
+        List<StepResult> steps = report.getResults().get(1).getSteps();
+        assertEquals(TargetInstallPipeline.STEP_UNINSTALL, steps.get(1).getName());
+        assertEquals(StepResult.Status.SUCCEEDED, steps.get(1).getStatus());
+        assertFalse(new File(installed, "lib/old.jar").exists());
+        assertTrue(new File(installed, "logs/catalina.log").isFile());
+    }
+
+    @Test
+    public void failureBudgetSkipsTheRemainingTargets() throws IOException {
+        File broken = folder.newFile("apache-tomcat-broken.zip");
+        write(broken, "not a zip");
+        List<InstallTarget> targets = FleetInventory.load(inventory("lab1", "lab2", "lab3"), kinds);
+
+        FleetReport report = new FleetOrchestrator(1, 1, 1).run(targets, pipeline(broken, 5000));
+        assertFalse(report.isSuccess());
+        assertNotNull(report.getHaltReason());
+        assertEquals(StepResult.Status.FAILED, report.getResults().get(0).getStatus());
+        assertEquals(StepResult.Status.SKIPPED, report.getResults().get(1).getStatus());
+        assertEquals(StepResult.Status.SKIPPED, report.getResults().get(2).getStatus());
+        //the failed target gets its services started again
+        assertEquals(ServiceState.RUNNING, targets.get(0).getServiceBackend().queryState(InstallTomcat.W3SVC_SERVICENAME));
+    }
+
+    @Test
+    public void uninstallWaitsForTheUninstallerToRemoveTheTomcatFiles() throws IOException {
+        File installed = new File(folder.getRoot(), "lab1/icm/tomcat");
+        write(new File(installed, "bin/tomcat9.exe"), "old");
+        write(new File(installed, "Uninstall.exe"), "old");
+        final InstallTarget simulated = SimulatedInstaller.createTarget("lab1", installed.getParentFile(), TRANSITION_MILLIS);
+        //an uninstaller which returned while the service executable is still there
+        InstallTarget target = new InstallTarget("lab1", simulated.getIcmRoot(), simulated.getRegistry(), simulated.getServiceBackend(),
+                new PackageInstaller() {
+                    @Override
+                    public boolean uninstall(InstallTarget target) {
+                        ((InMemoryServiceBackend) target.getServiceBackend()).unregister(InstallTomcat.TOMCAT_SERVICENAME);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean install(InstallTarget target, File installerPackage, String version) throws IOException, InterruptedException {
+                        return simulated.getInstaller().install(target, installerPackage, version);
+                    }
+                });
+
+        FleetReport.TargetResult result = pipeline(installerPackage, 200).run(target);
+        assertEquals(StepResult.Status.FAILED, result.getSteps().get(1).getStatus());
+        assertEquals(StepResult.Status.SKIPPED, result.getSteps().get(3).getStatus());
+        assertTrue(new File(installed, "bin/tomcat9.exe").isFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownTargetKindIsRejected() throws IOException {
+        File inventory = folder.newFile("inventory.txt");
+        write(inventory, "lab1 remote " + new File(folder.getRoot(), "lab1/icm") + "\n");
+
+        FleetInventory.load(inventory, kinds);
+    }
+
+    private TargetInstallPipeline pipeline(File installer, long readyTimeoutMillis) {
+        return new TargetInstallPipeline(installer, VERSION, BackoffSchedule.fixed(10), 2000, readyTimeoutMillis);
+    }
+
+    private File inventory(String... names) throws IOException {
+        StringBuilder content = new StringBuilder("# name kind ICM root\n");
+        for (String name : names)
+            content.append(name).append(" simulated ").append(new File(folder.getRoot(), name + "/icm")).append('\n');
+        File inventory = new File(folder.getRoot(), "inventory.txt");
+        write(inventory, content.toString());
+        return inventory;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
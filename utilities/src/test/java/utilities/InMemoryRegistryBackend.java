@@ -0,0 +1,86 @@
+package utilities;
+
+/**
+ * Registry keeping the values in memory, updated by a stand-in installer.
+ * Used where no Windows registry exists.
+ */
+public class InMemoryRegistryBackend implements RegistryBackend {
+
+    private volatile String             version;
+    private volatile String             installDirectory;
+    private volatile String             icmInstallDrive;
+    private volatile String[]           tomcatOptions;
+    private volatile int                jvmMemoryMB;
+
+    /**
+     * Record an installation, as the Tomcat installer does
+     * @param version installed version
+     * @param installDirectory install directory
+     */
+    public synchronized void recordInstall(String version, String installDirectory) {
+        this.version = version;
+        this.installDirectory = installDirectory;
+    }
+
+    /**
+     * Remove the Tomcat values, as the Tomcat uninstaller does
+     */
+    public synchronized void clear() {
+        version = null;
+        installDirectory = null;
+        tomcatOptions = null;
+        jvmMemoryMB = 0;
+    }
+
+    public void setIcmInstallDrive(String icmInstallDrive) {
+        this.icmInstallDrive = icmInstallDrive;
+    }
+
+    public int getJVMMemory() {
+        return jvmMemoryMB;
+    }
+
+    @Override
+    public String getCurrentInstallVersion() {
+        return version;
+    }
+
+    @Override
+    public String getCurrentInstallDirectory() {
+        return installDirectory;
+    }
+
+    @Override
+    public String getIcmInstallDrive() {
+        return icmInstallDrive;
+    }
+
+    @Override
+    public String getInstallDriveValue() {
+        return icmInstallDrive;
+    }
+
+    @Override
+    public String[] retrieveTomcatOptions() {
+        String[] options = tomcatOptions;
+        return options == null ? null : options.clone();
+    }
+
+    @Override
+    public boolean setTomcatOptions(String[] options) {
+        tomcatOptions = options.clone();
+        return true;
+    }
+
+    @Override
+    public boolean setCurrentInstallVersion(String version) {
+        this.version = version;
+        return true;
+    }
+
+    @Override
+    public boolean setJVMMemory(int memoryMB) {
+        jvmMemoryMB = memoryMB;
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Service backend keeping the services in memory.
+ * A start or stop request puts the service in the pending state, it reaches the final state
+ * once the configured transition time has elapsed. Used where no Windows service control manager exists.
+ */
+public class InMemoryServiceBackend implements ServiceBackend {
+
+    private static class Service {
+        ServiceState    state;
+        ServiceState    targetState;
+        long            transitionMillis;
+        long            transitionEnd;
+    }
+
+    private final Map<String, Service>  services = new HashMap<String, Service>();
+
+    /**
+     * Register a service
+     * @param serviceName service name
+     * @param state initial state
+     * @param transitionMillis time a start or stop takes
+     * @return this backend
+     */
+    public synchronized InMemoryServiceBackend register(String serviceName, ServiceState state, long transitionMillis) {
+        Service service = new Service();
+        service.state = state;
+        service.transitionMillis = transitionMillis;
+        services.put(serviceName, service);
+        return this;
+    }
+
+    /**
+     * Remove a service, as an uninstaller would
+     * @param serviceName service name
+     */
+    public synchronized void unregister(String serviceName) {
+        services.remove(serviceName);
+    }
+
+    @Override
+    public synchronized ServiceState queryState(String serviceName) {
+        Service service = services.get(serviceName);
+        if (service == null)
+            return ServiceState.NOT_FOUND;
+        if (service.targetState != null && System.currentTimeMillis() >= service.transitionEnd) {
+            service.state = service.targetState;
+            service.targetState = null;
+        }
+        return service.state;
+    }
+
+    @Override
+    public synchronized boolean requestStart(String serviceName) {
+        return request(serviceName, ServiceState.START_PENDING, ServiceState.RUNNING);
+    }
+
+    @Override
+    public synchronized boolean requestStop(String serviceName) {
+        return request(serviceName, ServiceState.STOP_PENDING, ServiceState.STOPPED);
+    }
+
+    private boolean request(String serviceName, ServiceState pendingState, ServiceState targetState) {
+        Service service = services.get(serviceName);
+        if (service == null)
+            return false;
+        if (queryState(serviceName) == targetState || service.targetState == targetState)
+            return true;
+        service.state = pendingState;
+        service.targetState = targetState;
+        service.transitionEnd = System.currentTimeMillis() + service.transitionMillis;
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package utilities;
+
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalCopierTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        source;
+    private File                        webapps;
+    private File                        stateDir;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("install");
+        webapps = new File(folder.getRoot(), "webapps");
+        stateDir = new File(folder.getRoot(), "InstallTomcatResults");
+        write(new File(source, "cceadmin.war"), "admin");
+        write(new File(source, "unifiedconfig.war"), "config");
+        write(new File(source, "readme.txt"), "not a war");
+    }
+
+    @Test
+    public void identicalFilesAreSkippedOnTheNextRun() throws IOException {
+        IncrementalCopier.CopyStats first = new IncrementalCopier(stateDir).copyMatching(source, webapps, new SuffixFileFilter(".war"), false);
+        IncrementalCopier.CopyStats second = new IncrementalCopier(stateDir).copyMatching(source, webapps, new SuffixFileFilter(".war"), false);
+
+        assertEquals(2, first.getFilesCopied());
+        assertEquals(0, second.getFilesCopied());
+        assertEquals(2, second.getFilesSkipped());
+    }
+
+    @Test
+    public void changedFileIsCopiedAgain() throws IOException {
+        new IncrementalCopier(stateDir).copyMatching(source, webapps, new SuffixFileFilter(".war"), false);
+        write(new File(source, "cceadmin.war"), "admin, patched");
+
+        IncrementalCopier.CopyStats stats = new IncrementalCopier(stateDir).copyMatching(source, webapps, new SuffixFileFilter(".war"), false);
+        assertEquals(1, stats.getFilesCopied());
+        assertEquals("admin, patched", new String(Files.readAllBytes(new File(webapps, "cceadmin.war").toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void onlyTheCopiedFilesAreWrittenIntoTheDestination() throws IOException {
+        new IncrementalCopier(stateDir).copyMatching(source, webapps, new SuffixFileFilter(".war"), false);
+
+        String[] names = webapps.list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {"cceadmin.war", "unifiedconfig.war"}, names);
+        assertTrue(CopyManifest.manifestFile(stateDir, webapps).isFile());
+    }
+
+    @Test
+    public void manifestLeftInTheDestinationByAnEarlierRunIsRemoved() throws IOException {
+        File legacy = new File(webapps, CopyManifest.LEGACY_MANIFEST_FILE_NAME);
+        write(legacy, "cceadmin.war=5|0|");
+
+        new IncrementalCopier(stateDir).copyFile(new File(source, "cceadmin.war"), new File(webapps, "ROOT.war"), false);
+        assertFalse(legacy.exists());
+    }
+
+    @Test
+    public void destinationsWithTheSameNameGetTheirOwnManifest() {
+        File other = new File(new File(folder.getRoot(), "staging"), "webapps");
+
+        assertFalse(CopyManifest.manifestFile(stateDir, webapps).equals(CopyManifest.manifestFile(stateDir, other)));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,146 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstallJournalTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    @Test
+    public void fingerprintOfAFileChangesWithItsSizeAndTime() throws IOException {
+        File file = new File(folder.getRoot(), "server.xml");
+        String absent = InstallJournal.fingerprint(file);
+        write(file, "<Server/>");
+        String written = InstallJournal.fingerprint(file);
+        assertNotEquals(absent, written);
+        assertEquals(written, InstallJournal.fingerprint(file));
+
+        write(file, "<Server port=\"8006\"/>");
+        String resized = InstallJournal.fingerprint(file);
+        assertNotEquals(written, resized);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNotEquals(resized, InstallJournal.fingerprint(file));
+    }
+
+    @Test
+    public void fingerprintOfADirectoryCoversItsEntries() throws IOException {
+        File webapps = folder.newFolder("webapps");
+        write(new File(webapps, "ROOT.war"), "root");
+        String before = InstallJournal.fingerprint(webapps);
+        String pathOnly = InstallJournal.fingerprint(webapps.getPath());
+
+        write(new File(webapps, "cceadmin.war"), "admin");
+        assertNotEquals(before, InstallJournal.fingerprint(webapps));
+        //the path as a string is only its text
+        assertEquals(pathOnly, InstallJournal.fingerprint(webapps.getPath()));
+        assertNotEquals(pathOnly, InstallJournal.fingerprint(webapps));
+    }
+
+    @Test
+    public void completedStepIsSkippedWhenResumedWithTheSameFingerprint() throws IOException {
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.recordCompleted("UnzipAssemblies", "abc");
+        //a new run never skips
+        assertFalse(run.isCompleted("UnzipAssemblies", "abc"));
+
+        InstallJournal resumed = InstallJournal.resume(folder.getRoot());
+        assertTrue(resumed.isResuming());
+        assertTrue(resumed.isCompleted("UnzipAssemblies", "abc"));
+        assertFalse(resumed.isCompleted("RestoreWarFiles", "abc"));
+    }
+
+    @Test
+    public void stepIsRunAgainWhenItsFingerprintChanged() throws IOException {
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.recordCompleted("UnzipAssemblies", "abc");
+        run.recordCompleted("RestoreWarFiles", "def");
+
+        InstallJournal resumed = InstallJournal.resume(folder.getRoot());
+        assertFalse(resumed.isCompleted("UnzipAssemblies", "abd"));
+        //once a step of the chain runs again, the ones after it run too
+        resumed.invalidateRemaining();
+        assertFalse(resumed.isCompleted("RestoreWarFiles", "def"));
+    }
+
+    @Test
+    public void failedStepIsForgotten() throws IOException {
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.recordCompleted("RunSilentInstaller", "abc");
+        run.recordFailed("RunSilentInstaller");
+
+        assertFalse(InstallJournal.resume(folder.getRoot()).isCompleted("RunSilentInstaller", "abc"));
+    }
+
+    @Test
+    public void chainedStepsAreRecordedAgainWithTheStateTheNextStepLeft() throws IOException {
+        final AtomicReference<String> tree = new AtomicReference<String>("uninstalled");
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.recordChained("UninstallTomcat", tree::get);
+        tree.set("installed");
+        run.recordChained("RunSilentInstaller", () -> "installer");
+
+        InstallJournal resumed = InstallJournal.resume(folder.getRoot());
+        assertTrue(resumed.isCompleted("UninstallTomcat", "installed"));
+        assertTrue(resumed.isCompleted("RunSilentInstaller", "installer"));
+    }
+
+    @Test
+    public void runPropertiesAndStateAreReadBack() throws IOException {
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.setProperty(InstallJournal.INSTALLER_VERSION, "9.0.85");
+        assertFalse(InstallJournal.resume(folder.getRoot()).isComplete());
+        run.complete();
+
+        InstallJournal resumed = InstallJournal.resume(folder.getRoot());
+        assertEquals("9.0.85", resumed.getProperty(InstallJournal.INSTALLER_VERSION));
+        assertTrue(resumed.isComplete());
+    }
+
+    @Test
+    public void missingJournalGivesNothingToResume() throws IOException {
+        assertNull(InstallJournal.resume(folder.getRoot()));
+    }
+
+    @Test
+    public void partialWriteLeavesThePreviousJournal() throws IOException {
+        InstallJournal run = InstallJournal.create(folder.getRoot());
+        run.recordCompleted("CleanUpTomcat", "abc");
+        //a crash while writing the next version
+        write(new File(folder.getRoot(), InstallJournal.JOURNAL_FILE_NAME + ".tmp"), "step.CleanUpTomcat=ab");
+
+        assertTrue(InstallJournal.resume(folder.getRoot()).isCompleted("CleanUpTomcat", "abc"));
+    }
+
+    @Test
+    public void truncatedEntryIsNotCompleted() throws IOException {
+        write(new File(folder.getRoot(), InstallJournal.JOURNAL_FILE_NAME), "run.state=running\nstep.CleanUpTomcat=ab");
+
+        assertFalse(InstallJournal.resume(folder.getRoot()).isCompleted("CleanUpTomcat", "abc"));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptJournalIsRejected() throws IOException {
+        write(new File(folder.getRoot(), InstallJournal.JOURNAL_FILE_NAME), "run.state=running\nstep.CleanUpTomcat=\\uZZZZ\n");
+
+        InstallJournal.resume(folder.getRoot());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,181 @@
+package utilities;
+
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the post install steps building the Tomcat tree with the fingerprints of InstallTomcat, then resumes them
+ */
+public class InstallTomcatResumeTest {
+
+    private static final String         SHINDIG_WAR = "ccbu-common-shindig-server.war";
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        tomcat;
+    private File                        webapps;
+    private File                        lib;
+    private File                        icmInstall;
+    private File                        icmBin;
+    private List<String>                executed;
+
+    @Before
+    public void setUp() throws IOException {
+        tomcat = folder.newFolder("tomcat");
+        webapps = new File(tomcat, "webapps");
+        lib = new File(tomcat, "lib");
+        //what the Tomcat installer leaves
+        for (String name : InstallTomcat.STOCK_WEBAPPS_FILES)
+            write(new File(webapps, name), name);
+        write(new File(webapps, "ROOT/index.jsp"), "stock");
+        write(new File(lib, "catalina.jar"), "catalina");
+        write(new File(tomcat, "temp/safeToDelete.tmp"), "");
+
+        icmInstall = folder.newFolder("icm", "install");
+        icmBin = folder.newFolder("icm", "bin");
+        zip(new File(icmInstall, "unifiedconfig-realm-assembly.zip"), "realm.jar", "realm", "realm/util.jar", "util");
+        zip(new File(icmInstall, "shindig-cache-assembly.zip"), "shindig-cache.jar", "cache");
+        zip(new File(icmInstall, SHINDIG_WAR), "index.jsp", "shindig");
+        zip(new File(icmInstall, "cceadmin.war"), "index.jsp", "admin");
+        zip(new File(icmBin, "unifiedconfig.war"), "index.jsp", "config");
+        write(new File(icmBin, "icm-websetup-shared.jar"), "websetup");
+        executed = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test
+    public void resumeAfterACompletePassRunsNoStep() throws IOException {
+        Map<String, StepResult> first = treeSteps(InstallJournal.create(folder.getRoot())).runAll();
+        assertTrue(first.toString(), StepExecutor.allSucceeded(first));
+        assertEquals(5, executed.size());
+        //the expansion put an ICM ROOT back where the cleanup removed the stock one
+        assertEquals("shindig", read(new File(webapps, "ROOT/index.jsp")));
+        assertTrue(new File(webapps, "cceadmin/index.jsp").isFile());
+        assertTrue(new File(lib, "icm-websetup-shared.jar").isFile());
+
+        executed.clear();
+        Map<String, StepResult> resumed = treeSteps(InstallJournal.resume(folder.getRoot())).runAll();
+        assertTrue(StepExecutor.allSucceeded(resumed));
+        assertEquals(Collections.<String>emptyList(), executed);
+        for (StepResult result : resumed.values())
+            assertEquals(result.toString(), "completed by an earlier run", result.getDetail());
+    }
+
+    @Test
+    public void changedWarRunsItsStepsAgain() throws IOException {
+        assertTrue(StepExecutor.allSucceeded(treeSteps(InstallJournal.create(folder.getRoot())).runAll()));
+        File war = zip(new File(icmInstall, "cceadmin.war"), "index.jsp", "admin 2");
+        assertTrue(war.setLastModified(war.lastModified() + 60000));
+
+        executed.clear();
+        assertTrue(StepExecutor.allSucceeded(treeSteps(InstallJournal.resume(folder.getRoot())).runAll()));
+        assertEquals(Arrays.asList("RestoreWarFiles", "ExpandWars"), executed);
+        assertEquals("admin 2", read(new File(webapps, "cceadmin/index.jsp")));
+    }
+
+    @Test
+    public void reinstalledStockWebappsAreCleanedUpAgain() throws IOException {
+        assertTrue(StepExecutor.allSucceeded(treeSteps(InstallJournal.create(folder.getRoot())).runAll()));
+        write(new File(webapps, "manager/status.xsd"), "manager");
+
+        executed.clear();
+        assertTrue(StepExecutor.allSucceeded(treeSteps(InstallJournal.resume(folder.getRoot())).runAll()));
+        //the cleanup took ROOT with it, the wars are restored and expanded again
+        assertEquals(Arrays.asList("CleanUpTomcatDir", "RestoreWarFiles", "ExpandWars"), executed);
+        assertFalse(new File(webapps, "manager").exists());
+        assertEquals("shindig", read(new File(webapps, "ROOT/index.jsp")));
+    }
+
+    /**
+     * The steps of InstallTomcat.addTreeSteps, their actions done with the same helpers on the local file system
+     */
+    private StepExecutor treeSteps(InstallJournal journal) {
+        final List<File> assemblies = Arrays.asList(new File(icmInstall, "unifiedconfig-realm-assembly.zip"),
+                new File(icmInstall, "shindig-cache-assembly.zip"));
+        final File restoredJar = new File(lib, "icm-websetup-shared.jar");
+        return new StepExecutor(4).setJournal(journal)
+                .addStep("CleanUpTomcatDir", () -> run("CleanUpTomcatDir", () -> {
+                            DeferredDeleter deleter = new DeferredDeleter(tomcat, 1);
+                            return deleter.moveToTrash(new File(webapps, "ROOT")) & deleter.moveToTrash(new File(webapps, "manager"))
+                                    & deleter.moveToTrash(new File(webapps, "docs"));
+                        }),
+                        InstallTomcat.cleanupFingerprint(webapps))
+                .addStep("UnzipAssemblies", () -> run("UnzipAssemblies",
+                                () -> new ArchiveExtractor(true).extractAll(assemblies, lib).isSuccess()),
+                        InstallTomcat.unzipFingerprint(assemblies, lib))
+                .addStep("RestoreWarFiles", () -> run("RestoreWarFiles", () -> {
+                            IncrementalCopier copier = new IncrementalCopier(new File(folder.getRoot(), "copier"));
+                            copier.copyMatching(icmBin, icmInstall, new WildcardFileFilter("*.war"), false);
+                            copier.copyMatching(icmInstall, webapps, FileFilterUtils.and(new WildcardFileFilter("*.war"),
+                                    FileFilterUtils.notFileFilter(FileFilterUtils.nameFileFilter(SHINDIG_WAR))), false);
+                            copier.copyFile(new File(icmInstall, SHINDIG_WAR), new File(webapps, "ROOT.war"), false);
+                            return true;
+                        }),
+                        InstallTomcat.warsFingerprint(icmBin, icmInstall, webapps), "CleanUpTomcatDir")
+                .addStep("RestoreJarFiles", () -> run("RestoreJarFiles", () -> {
+                            Files.copy(new File(icmBin, restoredJar.getName()).toPath(), restoredJar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                    StandardCopyOption.COPY_ATTRIBUTES);
+                            return true;
+                        }),
+                        InstallTomcat.fingerprintOf(new File(icmBin, restoredJar.getName()).getPath(), restoredJar.getPath()))
+                .addStep("ExpandWars", () -> run("ExpandWars", () -> {
+                            boolean success = true;
+                            for (WarPreExpander.WarResult result : new WarPreExpander(2, null, 1, 1000, 128).expandAll(tomcat))
+                                success &= result.isSuccess();
+                            return success;
+                        }),
+                        InstallTomcat.expandedWarsFingerprint(new File(icmBin, WarPreExpander.CONFIG_FILE_NAME), webapps),
+                        "CleanUpTomcatDir", "UnzipAssemblies", "RestoreWarFiles", "RestoreJarFiles");
+    }
+
+    private boolean run(String step, StepAction action) throws IOException {
+        executed.add(step);
+        return action.run();
+    }
+
+    private interface StepAction {
+        boolean run() throws IOException;
+    }
+
+    private static File zip(File archive, String... namesAndContents) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
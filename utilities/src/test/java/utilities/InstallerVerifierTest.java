@@ -0,0 +1,132 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstallerVerifierTest {
+
+    private static final String         INSTALLER_NAME = "apache-tomcat-9.0.85.exe";
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        installer;
+    private File                        cacheFile;
+    private String                      hash;
+
+    @Before
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        installer = new File(folder.getRoot(), INSTALLER_NAME);
+        byte[] content = new byte[5 * 1024 * 1024 + 17];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i * 31);
+        Files.write(installer.toPath(), content);
+        cacheFile = new File(folder.getRoot(), "InstallTomcatResults/" + InstallerVerifier.CACHE_FILE_NAME);
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-512").digest(content))
+            hex.append(String.format("%02x", b));
+        hash = hex.toString();
+    }
+
+    @Test
+    public void installerMatchingItsPublishedChecksumIsVerified() throws IOException {
+        write(new File(installer.getPath() + InstallerVerifier.CHECKSUM_SUFFIX), hash.toUpperCase() + " *" + INSTALLER_NAME + "\n");
+
+        InstallerVerifier.Result result = new InstallerVerifier(null, cacheFile).verify(installer);
+        assertTrue(result.toString(), result.isVerified());
+        assertEquals(hash, result.getHash());
+        assertEquals(INSTALLER_NAME + InstallerVerifier.CHECKSUM_SUFFIX, result.getDetail());
+    }
+
+    @Test
+    public void installerInTheAllowListIsVerified() throws IOException {
+        File allowList = new File(folder.getRoot(), InstallerVerifier.ALLOW_LIST_FILE_NAME);
+        write(allowList, "# trusted installers\n" + repeat('0', 128) + " *apache-tomcat-9.0.80.exe\n" + hash + "\n");
+
+        assertTrue(new InstallerVerifier(allowList, cacheFile).verify(installer).isVerified());
+    }
+
+    @Test
+    public void installerWithAnotherHashIsRejected() throws IOException {
+        String other = repeat('a', 128);
+        write(new File(installer.getPath() + InstallerVerifier.CHECKSUM_SUFFIX), other + " *" + INSTALLER_NAME + "\n");
+
+        InstallerVerifier.Result result = new InstallerVerifier(null, cacheFile).verify(installer);
+        assertFalse(result.isVerified());
+        assertEquals(hash, result.getHash());
+        assertTrue(result.getDetail().startsWith("SHA-512 " + hash + " differs from"));
+    }
+
+    @Test
+    public void checksumOfAnotherInstallerIsNotAccepted() throws IOException {
+        write(new File(installer.getPath() + InstallerVerifier.CHECKSUM_SUFFIX), hash + " *apache-tomcat-9.0.80.exe\n");
+
+        assertFalse(new InstallerVerifier(null, cacheFile).verify(installer).isVerified());
+    }
+
+    @Test
+    public void installerWithoutAReferenceIsRejected() {
+        InstallerVerifier.Result result = new InstallerVerifier(new File(folder.getRoot(), "missing.sha512"), cacheFile).verify(installer);
+
+        assertFalse(result.isVerified());
+        assertEquals(hash, result.getHash());
+    }
+
+    @Test
+    public void missingInstallerIsRejected() {
+        InstallerVerifier.Result result = new InstallerVerifier(null, cacheFile).verify(new File(folder.getRoot(), "apache-tomcat-9.0.99.exe"));
+
+        assertFalse(result.isVerified());
+        assertNull(result.getHash());
+    }
+
+    @Test
+    public void hashIsCachedByPathSizeAndTime() throws IOException {
+        new InstallerVerifier(null, cacheFile).verify(installer);
+        Properties cache = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile.toPath())) {
+            cache.load(in);
+        }
+        String stamp = installer.length() + "|" + installer.lastModified() + "|";
+        assertEquals(stamp + hash, cache.getProperty(installer.getAbsolutePath()));
+
+        //a cached hash is trusted while the installer keeps its size and time
+        String cached = repeat('b', 128);
+        cache.setProperty(installer.getAbsolutePath(), stamp + cached);
+        try (OutputStream out = Files.newOutputStream(cacheFile.toPath())) {
+            cache.store(out, null);
+        }
+        assertEquals(cached, new InstallerVerifier(null, cacheFile).verify(installer).getHash());
+        assertTrue(installer.setLastModified(installer.lastModified() - 10000));
+        assertEquals(hash, new InstallerVerifier(null, cacheFile).verify(installer).getHash());
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            builder.append(c);
+        return builder.toString();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,94 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Golden file tests: each isapi/&lt;case&gt;.config is rewritten and compared byte for byte
+ * with isapi/&lt;case&gt;.expected.config.
+ */
+public class IsapiFilterRemoverTest {
+
+    private static final String     FILTER = "Jakarta";
+
+    @Rule
+    public TemporaryFolder          folder = new TemporaryFolder();
+
+    @Test
+    public void keepsTheByteOrderMarkAndTheLineBreaks() throws Exception {
+        assertGolden("bom-crlf", 1);
+    }
+
+    @Test
+    public void removesLocationLevelFiltersWithTheirContent() throws Exception {
+        assertGolden("location", 1);
+    }
+
+    @Test
+    public void removesInlineAndSelfClosingFilters() throws Exception {
+        assertGolden("inline", 2);
+    }
+
+    @Test
+    public void leavesCommentsCdataAndAttributeValuesAlone() throws Exception {
+        assertGolden("comments", 1);
+    }
+
+    @Test
+    public void matchesTheFilterNameButNotTheElementNamesIgnoringCase() throws Exception {
+        assertGolden("case", 2);
+    }
+
+    @Test
+    public void leavesTheFileUntouchedWhenNothingMatches() throws Exception {
+        File config = copyOf("no-match.config");
+        long lastModified = config.lastModified() - 10000;
+        config.setLastModified(lastModified);
+
+        assertEquals(0, new IsapiFilterRemover().removeFilters(config, FILTER));
+        assertArrayEquals(Files.readAllBytes(resource("no-match.config")), Files.readAllBytes(config.toPath()));
+        assertEquals(lastModified, config.lastModified());
+    }
+
+    @Test
+    public void leavesNoTemporaryFileBehind() throws Exception {
+        File config = copyOf("bom-crlf.config");
+
+        new IsapiFilterRemover().removeFilters(config, FILTER);
+        assertFalse(new File(config.getPath() + ".tmp").exists());
+    }
+
+    private void assertGolden(String name, int expectedRemoved) throws Exception {
+        File config = copyOf(name + ".config");
+
+        assertEquals(expectedRemoved, new IsapiFilterRemover().removeFilters(config, FILTER));
+        byte[] expected = Files.readAllBytes(resource(name + ".expected.config"));
+        byte[] actual = Files.readAllBytes(config.toPath());
+        //compared as text first for a readable failure, then byte for byte
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+        assertArrayEquals(expected, actual);
+    }
+
+    private File copyOf(String name) throws IOException, URISyntaxException {
+        File copy = new File(folder.getRoot(), "applicationHost.config");
+        Files.copy(resource(name), copy.toPath());
+        return copy;
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(IsapiFilterRemoverTest.class.getResource("/isapi/" + name).toURI());
+    }
+}
@@ -0,0 +1,107 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JvmProfileTest {
+
+    private static final long           GB = 1024L * 1024 * 1024;
+    private static final String         GC_LOG = "C:\\icm\\tomcat\\logs\\gc.log";
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    @Test
+    public void heapOptionsAreReplacedInPlace() {
+        List<String> changes = new ArrayList<String>();
+        String[] merged = JvmProfile.merge(new String[] { "-Dcatalina.base=C:\\icm\\tomcat", "-Xmx512m", "-Xss512k", "-Xms256m" },
+                Arrays.asList("-Xmx1024m"), changes);
+
+        //-Xms is set by the JvmMs of the service, -Xss is not the profile's
+        assertArrayEquals(new String[] { "-Dcatalina.base=C:\\icm\\tomcat", "-Xmx1024m", "-Xss512k" }, merged);
+        assertEquals(Arrays.asList("replaced -Xmx512m with -Xmx1024m", "removed -Xms256m"), changes);
+    }
+
+    @Test
+    public void repeatedPropertyKeepsItsLastValueOnce() {
+        List<String> changes = new ArrayList<String>();
+        String[] merged = JvmProfile.merge(new String[] { "-Dfile.encoding=Cp1252", "-Djava.io.tmpdir=C:\\temp", "-Dfile.encoding=UTF-8" },
+                Collections.<String>emptyList(), changes);
+
+        assertArrayEquals(new String[] { "-Dfile.encoding=UTF-8", "-Djava.io.tmpdir=C:\\temp" }, merged);
+        assertEquals(Collections.singletonList("removed duplicate -Dfile.encoding=Cp1252"), changes);
+    }
+
+    @Test
+    public void flagFlipReplacesTheOppositeFlag() {
+        List<String> changes = new ArrayList<String>();
+        String[] merged = JvmProfile.merge(new String[] { "-XX:-UseG1GC", "-XX:+UseParallelGC", "-XX:+HeapDumpOnOutOfMemoryError" },
+                Arrays.asList("-XX:+UseG1GC", "-XX:MaxMetaspaceSize=512m"), changes);
+
+        //another collector is the profile's and goes, a flag the profile does not own stays
+        assertArrayEquals(new String[] { "-XX:+UseG1GC", "-XX:+HeapDumpOnOutOfMemoryError", "-XX:MaxMetaspaceSize=512m" }, merged);
+        assertEquals(Arrays.asList("replaced -XX:-UseG1GC with -XX:+UseG1GC", "removed -XX:+UseParallelGC", "added -XX:MaxMetaspaceSize=512m"), changes);
+    }
+
+    @Test
+    public void optionsAlreadyMergedAreKeptUnchanged() {
+        JvmProfile profile = JvmProfile.forMachine(new MachineProfile(4, 16 * GB), new JvmProfile.JavaRuntime(11, false), GC_LOG);
+        String[] current = { "-Dcatalina.home=C:\\icm\\tomcat", " ", "-Xss512k", "-XX:-OmitStackTraceInFastThrow" };
+        String[] merged = JvmProfile.merge(current, profile.getOptions(), new ArrayList<String>());
+
+        List<String> changes = new ArrayList<String>();
+        assertArrayEquals(merged, JvmProfile.merge(merged, profile.getOptions(), changes));
+        assertTrue(changes.toString(), changes.isEmpty());
+        assertEquals(Arrays.asList("-Dcatalina.home=C:\\icm\\tomcat", "-Xss512k", "-XX:-OmitStackTraceInFastThrow"),
+                Arrays.asList(merged).subList(0, 3));
+    }
+
+    @Test
+    public void profileReplacesTheGcLoggingOfAnotherJavaVersion() {
+        JvmProfile java8 = JvmProfile.forMachine(new MachineProfile(4, 16 * GB), new JvmProfile.JavaRuntime(8, false), GC_LOG);
+        JvmProfile java11 = JvmProfile.forMachine(new MachineProfile(4, 16 * GB), new JvmProfile.JavaRuntime(11, false), GC_LOG);
+        String[] merged = JvmProfile.merge(java8.getOptions().toArray(new String[0]), java11.getOptions(), new ArrayList<String>());
+
+        for (String option : merged) {
+            assertFalse(option, option.startsWith("-Xloggc") || option.contains("PrintGC") || option.contains("GCLogFile"));
+        }
+        assertTrue(Arrays.asList(merged).contains(java11.getOptions().get(java11.getOptions().size() - 1)));
+    }
+
+    @Test
+    public void heapIsAQuarterOfTheMemoryWithinItsBounds() {
+        JvmProfile.JavaRuntime java = new JvmProfile.JavaRuntime(11, false);
+        assertEquals(2048, JvmProfile.forMachine(new MachineProfile(4, 8 * GB), java, GC_LOG).getHeapMegabytes());
+        assertEquals(512, JvmProfile.forMachine(new MachineProfile(4, GB), java, GC_LOG).getHeapMegabytes());
+        assertEquals(4096, JvmProfile.forMachine(new MachineProfile(4, 64 * GB), java, GC_LOG).getHeapMegabytes());
+        assertEquals(1024, JvmProfile.forMachine(new MachineProfile(4, 64 * GB), new JvmProfile.JavaRuntime(8, true), GC_LOG).getHeapMegabytes());
+        assertEquals("-XX:+UseSerialGC", JvmProfile.forMachine(new MachineProfile(1, 8 * GB), java, GC_LOG).getOptions().get(0));
+    }
+
+    @Test
+    public void javaVersionIsReadFromTheReleaseFile() throws IOException {
+        File javaHome = folder.newFolder("jre");
+        Files.write(new File(javaHome, "release").toPath(),
+                "JAVA_VERSION=\"1.8.0_402\"\nOS_ARCH=\"x86\"\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        JvmProfile.JavaRuntime java = JvmProfile.JavaRuntime.detect(javaHome);
+        assertEquals(8, java.getMajorVersion());
+        assertTrue(java.is32Bit());
+        assertEquals(JvmProfile.UNKNOWN_VERSION, JvmProfile.JavaRuntime.detect(folder.newFolder("empty")).getMajorVersion());
+    }
+}
@@ -0,0 +1,94 @@
+package utilities;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs real commands through /bin/sh, skipped where no shell exists.
+ */
+public class ProcessRunnerTest {
+
+    private static final String         SHELL = "/bin/sh";
+
+    private ProcessRunner               runner;
+
+    @Before
+    public void setUp() {
+        assumeTrue(new File(SHELL).canExecute());
+        runner = new ProcessRunner(200, Level.DEBUG);
+    }
+
+    @Test
+    public void returnsTheExitCodeAndTheOutput() {
+        ProcessRunner.Result result = runner.run(shell("exit", 5000, "echo out; echo err >&2; exit 3"));
+
+        assertTrue(result.isCompleted());
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.getExitCode());
+        assertEquals("out\n", result.getOutput());
+        assertEquals("err\n", result.getErrorOutput());
+    }
+
+    @Test
+    public void chattyStandardErrorDoesNotBlockTheCommand() {
+        //far more than a pipe buffer on both streams
+        ProcessRunner.Result result = runner.run(shell("chatty", 20000,
+                "i=0; while [ $i -lt 20000 ]; do echo \"error line $i\" >&2; echo \"output line $i\"; i=$((i+1)); done"));
+
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(20000, result.getErrorOutput().split("\n").length);
+        assertEquals(20000, result.getOutput().split("\n").length);
+        assertTrue(result.getErrorOutput().endsWith("error line 19999\n"));
+    }
+
+    @Test
+    public void commandIsTerminatedAtItsTimeout() {
+        ProcessRunner.Result result = runner.run(shell("sleep", 200, "exec sleep 30"));
+
+        assertTrue(result.isTimedOut());
+        assertFalse(result.isCompleted());
+        assertEquals(ProcessRunner.EXIT_CODE_TIMED_OUT, result.getExitCode());
+        assertTrue("killed after " + result.getDurationMillis() + " ms", result.getDurationMillis() < 5000);
+    }
+
+    @Test
+    public void commandIgnoringTheTerminationIsKilled() {
+        ProcessRunner.Result result = runner.run(shell("stubborn", 200, "trap '' TERM; exec sleep 30"));
+
+        assertTrue(result.isTimedOut());
+        assertTrue("killed after " + result.getDurationMillis() + " ms", result.getDurationMillis() >= 400 && result.getDurationMillis() < 5000);
+    }
+
+    @Test
+    public void missingProgramIsNotStarted() {
+        ProcessRunner.Result result = runner.run(new ProcessRunner.Command("missing", 5000, "/nonexistent/program"));
+
+        assertFalse(result.isStarted());
+        assertEquals(ProcessRunner.EXIT_CODE_NOT_STARTED, result.getExitCode());
+        assertNotNull(result.getError());
+    }
+
+    @Test
+    public void runAllKeepsTheOrderOfTheCommands() {
+        List<ProcessRunner.Result> results = runner.runAll(Arrays.asList(
+                shell("slow", 5000, "sleep 0.3; exit 1"), shell("fast", 5000, "exit 2")));
+
+        assertEquals(1, results.get(0).getExitCode());
+        assertEquals(2, results.get(1).getExitCode());
+    }
+
+    private static ProcessRunner.Command shell(String name, long timeoutMillis, String script) {
+        return new ProcessRunner.Command(name, timeoutMillis, SHELL, "-c", script);
+    }
+}
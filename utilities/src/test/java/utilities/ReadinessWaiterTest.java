@@ -0,0 +1,87 @@
+package utilities;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadinessWaiterTest {
+
+    private static final BackoffSchedule SCHEDULE = BackoffSchedule.fixed(10);
+
+    @Test
+    public void returnsOnceEveryConditionIsMet() throws InterruptedException {
+        final InMemoryServiceBackend backend = new InMemoryServiceBackend()
+                .register("Tomcat9", ServiceState.STOPPED, 0)
+                .register("W3SVC", ServiceState.STOPPED, 0);
+        Thread uninstaller = new Thread(() -> {
+            sleep(50);
+            backend.unregister("Tomcat9");
+            sleep(50);
+            backend.unregister("W3SVC");
+        });
+        uninstaller.start();
+
+        long start = System.currentTimeMillis();
+        assertTrue(new ReadinessWaiter(SCHEDULE, 5000).awaitAll("Uninstall",
+                ReadinessConditions.serviceRemoved(backend, "Tomcat9"), ReadinessConditions.serviceRemoved(backend, "W3SVC")));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited " + elapsed + " ms", elapsed >= 100 && elapsed < 2000);
+        uninstaller.join();
+    }
+
+    @Test
+    public void failsAtTheTimeoutWhenAConditionIsNeverMet() {
+        InMemoryServiceBackend backend = new InMemoryServiceBackend().register("W3SVC", ServiceState.STOPPED, 0);
+
+        long start = System.currentTimeMillis();
+        assertFalse(new ReadinessWaiter(SCHEDULE, 200).awaitAll("Install",
+                ReadinessConditions.serviceRegistered(backend, "W3SVC"), ReadinessConditions.serviceRegistered(backend, "Tomcat9")));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited " + elapsed + " ms", elapsed >= 200 && elapsed < 2000);
+    }
+
+    @Test
+    public void metConditionIsNotProbedAgain() {
+        final AtomicInteger probes = new AtomicInteger();
+        ReadinessCondition counted = new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                probes.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            public String getDescription() {
+                return "counted";
+            }
+        };
+        final long end = System.currentTimeMillis() + 100;
+        ReadinessCondition later = new ReadinessCondition() {
+            @Override
+            public boolean isMet() {
+                return System.currentTimeMillis() >= end;
+            }
+
+            @Override
+            public String getDescription() {
+                return "later";
+            }
+        };
+
+        assertTrue(new ReadinessWaiter(SCHEDULE, 5000).awaitAll("Probes", counted, later));
+        assertEquals(1, probes.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RegistrySnapshotTest {
+
+    private static final String[]       OPTIONS = { "-Dcatalina.home=C:\\icm\\tomcat", "-Xss512k" };
+
+    private CountingBackend             backend;
+    private RegistrySnapshot            snapshot;
+
+    /**
+     * Counts the reads of the version going to the registry
+     */
+    private static class CountingBackend extends InMemoryRegistryBackend {
+        final AtomicInteger versionReads = new AtomicInteger();
+
+        @Override
+        public String getCurrentInstallVersion() {
+            versionReads.incrementAndGet();
+            return super.getCurrentInstallVersion();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        backend = new CountingBackend();
+        backend.recordInstall("9.0.80", "C:\\icm\\tomcat");
+        snapshot = new RegistrySnapshot(backend);
+    }
+
+    @Test
+    public void valueIsReadFromTheRegistryOnce() {
+        assertEquals("9.0.80", snapshot.getCurrentInstallVersion());
+        backend.recordInstall("9.0.85", "C:\\icm\\tomcat");
+        assertEquals("9.0.80", snapshot.getCurrentInstallVersion());
+        assertEquals(1, backend.versionReads.get());
+    }
+
+    @Test
+    public void missingValueIsCachedToo() {
+        backend.clear();
+
+        assertNull(snapshot.getCurrentInstallVersion());
+        assertNull(snapshot.getCurrentInstallVersion());
+        assertEquals(1, backend.versionReads.get());
+    }
+
+    @Test
+    public void invalidateMakesTheNextReadGoToTheRegistry() {
+        snapshot.getCurrentInstallVersion();
+        backend.clear();
+        snapshot.invalidate();
+
+        assertNull(snapshot.getCurrentInstallVersion());
+        assertNull(snapshot.getCurrentInstallDirectory());
+        assertEquals(2, backend.versionReads.get());
+    }
+
+    @Test
+    public void optionsAreReturnedAsACopy() {
+        backend.setTomcatOptions(OPTIONS);
+
+        snapshot.retrieveTomcatOptions()[0] = "changed";
+        assertArrayEquals(OPTIONS, snapshot.retrieveTomcatOptions());
+    }
+
+    @Test
+    public void stagedWritesAreOnlyAppliedByTheCommit() {
+        snapshot.stageTomcatOptions(OPTIONS);
+        snapshot.stageCurrentInstallVersion("9.0.85");
+        snapshot.stageJVMMemory(2048);
+        assertNull(backend.retrieveTomcatOptions());
+        assertEquals("9.0.80", snapshot.getCurrentInstallVersion());
+
+        assertTrue(snapshot.commit());
+        assertArrayEquals(OPTIONS, backend.retrieveTomcatOptions());
+        assertEquals(2048, backend.getJVMMemory());
+        //the commit invalidates the snapshot
+        assertEquals("9.0.85", snapshot.getCurrentInstallVersion());
+        assertArrayEquals(OPTIONS, snapshot.retrieveTomcatOptions());
+    }
+
+    @Test
+    public void commitWithNothingStagedSucceeds() {
+        assertTrue(snapshot.commit());
+    }
+
+    @Test
+    public void commitFailsWhenTheOptionsReadBackDiffer() {
+        RegistrySnapshot snapshot = new RegistrySnapshot(new InMemoryRegistryBackend() {
+            @Override
+            public boolean setTomcatOptions(String[] options) {
+                return super.setTomcatOptions(new String[] { options[0] });
+            }
+        });
+        snapshot.stageTomcatOptions(OPTIONS);
+
+        assertFalse(snapshot.commit());
+    }
+
+    @Test
+    public void failedWriteDoesNotStopTheOthers() {
+        InMemoryRegistryBackend backend = new InMemoryRegistryBackend() {
+            @Override
+            public boolean setTomcatOptions(String[] options) {
+                return false;
+            }
+        };
+        RegistrySnapshot snapshot = new RegistrySnapshot(backend);
+        snapshot.stageTomcatOptions(OPTIONS);
+        snapshot.stageCurrentInstallVersion("9.0.85");
+
+        assertFalse(snapshot.commit());
+        assertNull(backend.retrieveTomcatOptions());
+        assertEquals("9.0.85", backend.getCurrentInstallVersion());
+        //the staged writes are dropped once committed
+        assertTrue(snapshot.commit());
+    }
+}
@@ -0,0 +1,119 @@
+package utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden file tests: each serverxml/&lt;case&gt;.xml is tuned and compared with serverxml/&lt;case&gt;.expected.xml.
+ */
+public class ServerXmlTunerTest {
+
+    private static final ServerXmlTuner.Sizing SIZING = new ServerXmlTuner.Sizing(200, 8, 100, 800, 600000, 200);
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    @Test
+    public void addsTheExecutorAndSizesTheAjpConnector() throws Exception {
+        List<String> changes = assertGolden("ajp13");
+
+        assertTrue(changes.contains("Executor tomcatThreadPool added with {maxThreads=200, minSpareThreads=8}"));
+        assertTrue(changes.contains("Connector AJP/1.3 port 8009 maxThreads 150 removed"));
+        assertTrue(changes.contains("Connector AJP/1.3 port 8009 connectionTimeout 20000 -> 600000"));
+    }
+
+    @Test
+    public void recognisesTheAjpProtocolClassNames() throws Exception {
+        List<String> changes = assertGolden("ajp-class");
+
+        assertTrue(changes.contains("Executor tomcatThreadPool maxThreads 150 -> 200"));
+        assertTrue(changes.contains("Connector org.apache.coyote.ajp.AjpNio2Protocol port 8009 executor set to tomcatThreadPool"));
+    }
+
+    @Test
+    public void tunedFileIsNotChangedAgain() throws Exception {
+        for (String name : Arrays.asList("ajp13", "ajp-class")) {
+            String expected = read(name + ".expected.xml");
+            List<String> changes = new ArrayList<String>();
+
+            assertEquals(expected, ServerXmlTuner.tune(expected, SIZING, changes));
+            assertEquals(name, 0, changes.size());
+        }
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void templateWithoutAjpConnectorIsRejected() throws Exception {
+        ServerXmlTuner.tune(read("no-ajp.xml"), SIZING, new ArrayList<String>());
+    }
+
+    @Test
+    public void generateKeepsTheByteOrderMark() throws Exception {
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        byte[] content = Files.readAllBytes(resource("ajp13.xml"));
+        byte[] withBom = Arrays.copyOf(bom, bom.length + content.length);
+        System.arraycopy(content, 0, withBom, bom.length, content.length);
+        File template = folder.newFile("server.xml.IIS.custom");
+        Files.write(template.toPath(), withBom);
+        File target = new File(folder.getRoot(), "conf/server.xml");
+
+        new ServerXmlTuner().generate(template, target, SIZING);
+        byte[] generated = Files.readAllBytes(target.toPath());
+        assertArrayEquals(bom, Arrays.copyOf(generated, bom.length));
+        assertEquals(read("ajp13.expected.xml"), new String(generated, bom.length, generated.length - bom.length, StandardCharsets.UTF_8));
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void overridesReplaceTheComputedValues() {
+        Properties overrides = new Properties();
+        overrides.setProperty(ServerXmlTuner.MAX_THREADS, "100");
+        overrides.setProperty(ServerXmlTuner.CONNECTION_TIMEOUT, "300000");
+
+        ServerXmlTuner.Sizing sizing = ServerXmlTuner.Sizing.forMachine(new MachineProfile(16, 64L * 1024 * 1024 * 1024), overrides);
+        assertEquals(100, sizing.getMaxThreads());
+        assertEquals(300000, sizing.getConnectionTimeout());
+        //derived from the overridden maxThreads
+        assertEquals(400, sizing.getMaxConnections());
+        assertEquals(100, sizing.getProcessorCache());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOverrideIsRejected() {
+        Properties overrides = new Properties();
+        overrides.setProperty("maxThread", "100");
+
+        ServerXmlTuner.Sizing.forMachine(new MachineProfile(4, 8L * 1024 * 1024 * 1024), overrides);
+    }
+
+    private List<String> assertGolden(String name) throws Exception {
+        List<String> changes = new ArrayList<String>();
+        assertEquals(read(name + ".expected.xml"), ServerXmlTuner.tune(read(name + ".xml"), SIZING, changes));
+        return changes;
+    }
+
+    private static String read(String name) throws Exception {
+        return new String(Files.readAllBytes(resource(name)), StandardCharsets.UTF_8);
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(ServerXmlTunerTest.class.getResource("/serverxml/" + name).toURI());
+    }
+}
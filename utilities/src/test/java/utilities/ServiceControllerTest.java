@@ -0,0 +1,81 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceControllerTest {
+
+    private static final String         SERVICE = "Tomcat9";
+    private static final BackoffSchedule SCHEDULE = BackoffSchedule.fixed(10);
+
+    private InMemoryServiceBackend      backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryServiceBackend();
+    }
+
+    @Test
+    public void startWaitsForTheTransition() {
+        backend.register(SERVICE, ServiceState.STOPPED, 100);
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 5000);
+
+        assertTrue(controller.startServiceAndCheckState());
+        assertEquals(ServiceState.RUNNING, backend.queryState(SERVICE));
+        assertTrue(controller.getLastTransitionMillis() >= 100);
+        assertTrue(controller.getLastProbeCount() > 1);
+    }
+
+    @Test
+    public void stopReturnsAtOnceWhenAlreadyStopped() {
+        backend.register(SERVICE, ServiceState.STOPPED, 1000);
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 5000);
+
+        assertTrue(controller.stopServiceAndCheckState());
+        assertEquals(0, controller.getLastTransitionMillis());
+        assertEquals(1, controller.getLastProbeCount());
+    }
+
+    @Test
+    public void stopOfAServiceNotInstalledSucceeds() {
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 5000);
+
+        assertTrue(controller.stopServiceAndCheckState());
+    }
+
+    @Test
+    public void startOfAServiceNotInstalledFails() {
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 5000);
+
+        assertFalse(controller.startServiceAndCheckState());
+    }
+
+    @Test
+    public void transitionSlowerThanTheDeadlineFails() {
+        backend.register(SERVICE, ServiceState.RUNNING, 10000);
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 200);
+
+        long start = System.currentTimeMillis();
+        assertFalse(controller.stopServiceAndCheckState());
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("gave up after " + elapsed + " ms", elapsed >= 200 && elapsed < 2000);
+        assertEquals(-1, controller.getLastTransitionMillis());
+        assertEquals(ServiceState.STOP_PENDING, backend.queryState(SERVICE));
+    }
+
+    @Test
+    public void waitForStateDoesNotRequestAnything() {
+        backend.register(SERVICE, ServiceState.STOPPED, 50);
+        ServiceController controller = new ServiceController(SERVICE, backend, SCHEDULE, 300);
+
+        assertFalse(controller.waitForState(ServiceState.RUNNING));
+        assertEquals(ServiceState.STOPPED, backend.queryState(SERVICE));
+
+        backend.requestStart(SERVICE);
+        assertTrue(controller.waitForState(ServiceState.RUNNING));
+    }
+}
@@ -0,0 +1,77 @@
+package utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.Collections;
+
+/**
+ * Stand-in for the Tomcat installer: extracts a zip package, whose entries are relative to the Tomcat directory,
+ * and updates an in-memory registry and service backend the way the real installer updates the machine.
+ * The uninstall removes the service executable and the uninstaller, as the real uninstaller does.
+ */
+public class SimulatedInstaller implements PackageInstaller {
+
+    //Logger instance for this class
+    private static final Logger         LOGGER = LogManager.getLogger(SimulatedInstaller.class);
+
+    private final InMemoryRegistryBackend registry;
+    private final InMemoryServiceBackend serviceBackend;
+    private final String                serviceName;
+    private final long                  transitionMillis;
+
+    /**
+     * @param registry registry of the target
+     * @param serviceBackend service backend of the target
+     * @param serviceName Tomcat service name
+     * @param transitionMillis time a start or stop of the installed service takes
+     */
+    public SimulatedInstaller(InMemoryRegistryBackend registry, InMemoryServiceBackend serviceBackend, String serviceName, long transitionMillis) {
+        this.registry = registry;
+        this.serviceBackend = serviceBackend;
+        this.serviceName = serviceName;
+        this.transitionMillis = transitionMillis;
+    }
+
+    /**
+     * Create a target with IIS running and, when the Tomcat directory has content, Tomcat installed and running
+     * @param name target name
+     * @param icmRoot ICM root directory
+     * @param transitionMillis time a start or stop of a service takes
+     */
+    public static InstallTarget createTarget(String name, File icmRoot, long transitionMillis) {
+        InMemoryRegistryBackend registry = new InMemoryRegistryBackend();
+        InMemoryServiceBackend services = new InMemoryServiceBackend();
+        services.register(InstallTomcat.W3SVC_SERVICENAME, ServiceState.RUNNING, transitionMillis);
+        File tomcatDir = new File(icmRoot, InstallTarget.TOMCAT_DIRECTORY);
+        String[] content = tomcatDir.list();
+        if (content != null && content.length > 0) {
+            services.register(InstallTomcat.TOMCAT_SERVICENAME, ServiceState.RUNNING, transitionMillis);
+            registry.recordInstall("unknown", tomcatDir.getPath());
+        }
+        return new InstallTarget(name, icmRoot, registry, services,
+                new SimulatedInstaller(registry, services, InstallTomcat.TOMCAT_SERVICENAME, transitionMillis));
+    }
+
+    @Override
+    public boolean uninstall(InstallTarget target) {
+        serviceBackend.unregister(serviceName);
+        registry.clear();
+        return (!target.getServiceExecutable().exists() || target.getServiceExecutable().delete())
+                && (!target.getUninstaller().exists() || target.getUninstaller().delete());
+    }
+
+    @Override
+    public boolean install(InstallTarget target, File installerPackage, String version) {
+        ArchiveExtractor.ExtractionReport report = new ArchiveExtractor(false)
+                .extractAll(Collections.singletonList(installerPackage), target.getTomcatDir());
+        if (!report.isSuccess()) {
+            LOGGER.error(target.getName() + ": unable to extract " + installerPackage + " - " + report.getErrors() + report.getFailedArchives());
+            return false;
+        }
+        serviceBackend.register(serviceName, ServiceState.STOPPED, transitionMillis);
+        registry.recordInstall(version, target.getTomcatDir().getPath());
+        return true;
+    }
+}
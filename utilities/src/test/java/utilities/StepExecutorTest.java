@@ -0,0 +1,100 @@
+package utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StepExecutorTest {
+
+    @Test
+    public void stepStartsAfterItsDependencies() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        StepExecutor executor = new StepExecutor(4)
+                .addStep("copy", () -> order.add("copy"), "unzip", "cleanup")
+                .addStep("unzip", () -> sleepThenAdd(order, "unzip", 50), "cleanup")
+                .addStep("cleanup", () -> sleepThenAdd(order, "cleanup", 50));
+
+        Map<String, StepResult> results = executor.runAll();
+        assertEquals(Arrays.asList("cleanup", "unzip", "copy"), order);
+        assertTrue(StepExecutor.allSucceeded(results));
+        //in declaration order, whatever the run order
+        assertEquals(Arrays.asList("copy", "unzip", "cleanup"), new ArrayList<String>(results.keySet()));
+    }
+
+    @Test
+    public void independentStepsRunAtTheSameTime() {
+        //each step only returns once both have started
+        final CountDownLatch started = new CountDownLatch(2);
+        StepExecutor executor = new StepExecutor(2)
+                .addStep("acl", () -> meet(started))
+                .addStep("isapi", () -> meet(started));
+
+        assertTrue(StepExecutor.allSucceeded(executor.runAll()));
+    }
+
+    @Test
+    public void failureSkipsOnlyTheDependents() {
+        StepExecutor executor = new StepExecutor(2)
+                .addStep("unzip", () -> false)
+                .addStep("copy", () -> true, "unzip")
+                .addStep("expand", () -> true, "copy")
+                .addStep("acl", () -> true);
+
+        Map<String, StepResult> results = executor.runAll();
+        assertEquals(StepResult.Status.FAILED, results.get("unzip").getStatus());
+        assertEquals(StepResult.Status.SKIPPED, results.get("copy").getStatus());
+        assertEquals(StepResult.Status.SKIPPED, results.get("expand").getStatus());
+        assertEquals(StepResult.Status.SUCCEEDED, results.get("acl").getStatus());
+        assertFalse(StepExecutor.allSucceeded(results));
+    }
+
+    @Test
+    public void exceptionFailsTheStep() {
+        StepExecutor executor = new StepExecutor(1)
+                .addStep("copy", () -> {
+                    throw new IllegalStateException("disk full");
+                });
+
+        StepResult result = executor.runAll().get("copy");
+        assertEquals(StepResult.Status.FAILED, result.getStatus());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cycleIsRejected() {
+        new StepExecutor(2)
+                .addStep("a", () -> true, "c")
+                .addStep("b", () -> true, "a")
+                .addStep("c", () -> true, "b")
+                .runAll();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownDependencyIsRejected() {
+        new StepExecutor(2).addStep("copy", () -> true, "unzip").runAll();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateStepIsRejected() {
+        new StepExecutor(2).addStep("copy", () -> true).addStep("copy", () -> true);
+    }
+
+    private static boolean sleepThenAdd(List<String> order, String name, long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return order.add(name);
+    }
+
+    private static boolean meet(CountDownLatch started) throws InterruptedException {
+        started.countDown();
+        return started.await(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,137 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TomcatSnapshotTest {
+
+    private static final String[]       OPTIONS = { "-Dcatalina.home=C:\\icm\\tomcat", "-Xss512k" };
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        tomcat;
+    private TomcatSnapshot              snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        tomcat = folder.newFolder("tomcat");
+        write(new File(tomcat, "lib/catalina.jar"), "catalina");
+        write(new File(tomcat, "webapps/ROOT.war"), "root");
+        write(new File(tomcat, "conf/server.xml"), "<Server/>");
+        write(new File(tomcat, "logs/catalina.log"), "log");
+        snapshot = new TomcatSnapshot(tomcat, Collections.singletonList("logs"));
+    }
+
+    @Test
+    public void binariesAreLinkedAndConfigurationIsCopied() throws IOException {
+        assertTrue(snapshot.create("9.0.80", OPTIONS));
+        assertTrue(snapshot.exists());
+
+        File snapshotDir = snapshot.getSnapshotDir();
+        assertEquals(new File(folder.getRoot(), "tomcat" + TomcatSnapshot.SNAPSHOT_SUFFIX), snapshotDir);
+        assertTrue(Files.isSameFile(new File(snapshotDir, "lib/catalina.jar").toPath(), new File(tomcat, "lib/catalina.jar").toPath()));
+        assertFalse(Files.isSameFile(new File(snapshotDir, "conf/server.xml").toPath(), new File(tomcat, "conf/server.xml").toPath()));
+        assertEquals("<Server/>", read(new File(snapshotDir, "conf/server.xml")));
+        assertFalse(new File(snapshotDir, "logs").exists());
+
+        String manifest = read(new File(snapshotDir, TomcatSnapshot.MANIFEST_FILE_NAME));
+        assertTrue(manifest.contains("link\t8\t"));
+        assertTrue(manifest.contains("lib/catalina.jar"));
+        assertEquals("9.0.80", snapshot.getTomcatVersion());
+        assertArrayEquals(OPTIONS, snapshot.getTomcatOptions());
+    }
+
+    @Test
+    public void snapshotWithoutManifestIsNotUsable() throws IOException {
+        assertTrue(snapshot.create(null, null));
+        assertNull(snapshot.getTomcatVersion());
+        assertNull(snapshot.getTomcatOptions());
+
+        //a snapshot interrupted before its manifest was written
+        assertTrue(new File(snapshot.getSnapshotDir(), TomcatSnapshot.MANIFEST_FILE_NAME).delete());
+        assertFalse(snapshot.exists());
+        write(new File(tomcat, "conf/server.xml"), "<Server port=\"8006\"/>");
+        assertFalse(snapshot.restore(new DeferredDeleter(tomcat, 1)));
+        assertEquals("<Server port=\"8006\"/>", read(new File(tomcat, "conf/server.xml")));
+    }
+
+    @Test
+    public void missingInstallDirectoryGivesNoSnapshot() {
+        TomcatSnapshot missing = new TomcatSnapshot(new File(folder.getRoot(), "missing"), Collections.<String>emptyList());
+
+        assertFalse(missing.create("9.0.80", OPTIONS));
+        assertFalse(missing.exists());
+    }
+
+    @Test
+    public void restoreBringsTheTreeBackAndKeepsThePreservedDirectories() throws IOException {
+        assertTrue(snapshot.create("9.0.80", OPTIONS));
+        //what a failed reinstall leaves: the binaries replaced, a rewritten configuration and new logs
+        DeferredDeleter cleanup = new DeferredDeleter(tomcat, 1);
+        assertTrue(cleanup.moveToTrash(new File(tomcat, "lib")));
+        write(new File(tomcat, "conf/server.xml"), "<Server port=\"8006\"/>");
+        write(new File(tomcat, "webapps/new.war"), "new");
+        write(new File(tomcat, "logs/install.log"), "failed");
+
+        assertTrue(snapshot.restore(new DeferredDeleter(tomcat, 1)));
+        assertEquals("catalina", read(new File(tomcat, "lib/catalina.jar")));
+        assertEquals("<Server/>", read(new File(tomcat, "conf/server.xml")));
+        assertTrue(new File(tomcat, "webapps/ROOT.war").isFile());
+        assertFalse(new File(tomcat, "webapps/new.war").exists());
+        assertEquals("log", read(new File(tomcat, "logs/catalina.log")));
+        assertEquals("failed", read(new File(tomcat, "logs/install.log")));
+        //the snapshot is kept for another restore
+        assertTrue(snapshot.exists());
+    }
+
+    @Test
+    public void restoreIsRefusedWhenALinkedFileWasEditedInPlace() throws IOException {
+        assertTrue(snapshot.create("9.0.80", OPTIONS));
+        write(new File(tomcat, "lib/catalina.jar"), "catalina, edited");
+
+        assertFalse(snapshot.restore(new DeferredDeleter(tomcat, 1)));
+        assertTrue(new File(tomcat, "conf/server.xml").isFile());
+    }
+
+    @Test
+    public void registryOptionsAreRestoredFromTheSnapshot() throws IOException {
+        InMemoryRegistryBackend backend = new InMemoryRegistryBackend();
+        backend.recordInstall("9.0.80", tomcat.getPath());
+        backend.setTomcatOptions(OPTIONS);
+        RegistrySnapshot registry = new RegistrySnapshot(backend);
+        assertTrue(snapshot.create(registry.getCurrentInstallVersion(), registry.retrieveTomcatOptions()));
+
+        registry.stageTomcatOptions(new String[] { "-Xss1m" });
+        assertTrue(registry.commit());
+
+        //as the rollback of the install does
+        assertTrue(snapshot.restore(new DeferredDeleter(tomcat, 1)));
+        registry.stageTomcatOptions(snapshot.getTomcatOptions());
+        assertTrue(registry.commit());
+        assertArrayEquals(OPTIONS, backend.retrieveTomcatOptions());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package utilities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WarPreExpanderTest {
+
+    @Rule
+    public TemporaryFolder              folder = new TemporaryFolder();
+
+    private File                        tomcat;
+    private File                        webapps;
+    private WarPreExpander              expander;
+
+    @Before
+    public void setUp() throws IOException {
+        tomcat = folder.newFolder("tomcat");
+        webapps = new File(tomcat, "webapps");
+        assertTrue(webapps.mkdirs());
+        //no JVM, the JSPs are not precompiled
+        expander = new WarPreExpander(2, null, 1, 1000, 128);
+    }
+
+    @Test
+    public void warsAreExpandedWithATrackerDatedAsTheWar() throws IOException {
+        File war = zip(new File(webapps, "cceadmin.war"), "index.jsp", "admin", "WEB-INF/web.xml", "<web-app/>");
+        assertTrue(war.setLastModified(war.lastModified() - 60000));
+        assertFalse(WarPreExpander.isUpToDate(war));
+
+        List<WarPreExpander.WarResult> results = expander.expandAll(tomcat);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).toString(), results.get(0).isSuccess());
+        assertTrue(results.get(0).isExpanded());
+        assertEquals(2, results.get(0).getEntries());
+
+        File exploded = new File(webapps, "cceadmin");
+        assertEquals("admin", read(new File(exploded, "index.jsp")));
+        assertEquals(war.lastModified(), new File(exploded, WarPreExpander.WAR_TRACKER).lastModified());
+        assertTrue(WarPreExpander.isUpToDate(war));
+        //nothing is left in the staging directory
+        assertFalse(new File(tomcat, "temp/war-expansion/cceadmin").exists());
+    }
+
+    @Test
+    public void upToDateWarIsNotExpandedAgain() throws IOException {
+        zip(new File(webapps, "cceadmin.war"), "index.jsp", "admin");
+        expander.expandAll(tomcat);
+        write(new File(webapps, "cceadmin/added.jsp"), "kept");
+
+        WarPreExpander.WarResult result = expander.expandAll(tomcat).get(0);
+        assertTrue(result.isSuccess());
+        assertFalse(result.isExpanded());
+        assertEquals("cceadmin.war: up to date", result.toString());
+        assertEquals("kept", read(new File(webapps, "cceadmin/added.jsp")));
+    }
+
+    @Test
+    public void rootWarIsExpandedIntoRoot() throws IOException {
+        File war = zip(new File(webapps, "ROOT.war"), "index.jsp", "shindig");
+
+        assertEquals(new File(webapps, "ROOT"), WarPreExpander.explodedDirOf(war));
+        assertTrue(expander.expandAll(tomcat).get(0).isExpanded());
+        assertEquals("shindig", read(new File(webapps, "ROOT/index.jsp")));
+    }
+
+    @Test
+    public void changedWarReplacesTheExplodedDirectoryAndItsCompiledJsps() throws IOException {
+        File war = zip(new File(webapps, "cceadmin.war"), "index.jsp", "admin", "old.jsp", "old");
+        expander.expandAll(tomcat);
+        File compiled = new File(tomcat, WarPreExpander.WORK_PATH + File.separator + "cceadmin" + File.separator + "index_jsp.class");
+        write(compiled, "class");
+
+        zip(war, "index.jsp", "admin 2");
+        assertTrue(war.setLastModified(war.lastModified() + 60000));
+        assertFalse(WarPreExpander.isUpToDate(war));
+
+        assertTrue(expander.expandAll(tomcat).get(0).isExpanded());
+        assertEquals("admin 2", read(new File(webapps, "cceadmin/index.jsp")));
+        //the new content replaced the directory, it was not extracted over it
+        assertFalse(new File(webapps, "cceadmin/old.jsp").exists());
+        assertFalse(compiled.getParentFile().exists());
+        assertTrue(WarPreExpander.isUpToDate(war));
+    }
+
+    @Test
+    public void corruptWarLeavesTheExplodedDirectory() throws IOException {
+        File war = zip(new File(webapps, "cceadmin.war"), "index.jsp", "admin");
+        expander.expandAll(tomcat);
+        write(war, "not a zip");
+        assertTrue(war.setLastModified(war.lastModified() + 60000));
+
+        WarPreExpander.WarResult result = expander.expandAll(tomcat).get(0);
+        assertFalse(result.isSuccess());
+        assertEquals("admin", read(new File(webapps, "cceadmin/index.jsp")));
+        assertFalse(new File(tomcat, "temp/war-expansion/cceadmin").exists());
+    }
+
+    @Test
+    public void disabledExpansionGivesNoExpander() throws IOException {
+        File config = new File(folder.getRoot(), WarPreExpander.CONFIG_FILE_NAME);
+        MachineProfile machine = new MachineProfile(4, 8L * 1024 * 1024 * 1024);
+        write(config, WarPreExpander.ENABLED + "=false\n");
+        assertNull(WarPreExpander.fromConfig(config, machine, null));
+
+        write(config, WarPreExpander.PARALLELISM + "=2\n" + WarPreExpander.PRECOMPILE_JSPS + "=true\n");
+        //no JVM for JspC, the wars are still expanded
+        assertNotNull(WarPreExpander.fromConfig(config, machine, null));
+    }
+
+    private static File zip(File archive, String... namesAndContents) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}